@@ -81,6 +81,18 @@ public interface CourierService
 	 */
 	List getDeliveries(String address);
 
+	/**
+	 * Access and de-queue the Deliveries queued up for a particular session client window, waiting up to timeout milliseconds for one to be queued if none are
+	 * pending. This lets a client hold a request open (long-poll) instead of receiving an empty reply every few seconds.
+	 * 
+	 * @param address
+	 *        The address of client window.
+	 * @param timeout
+	 *        The longest time to wait (milliseconds) for a Delivery. 0 or less means don't wait.
+	 * @return a List of Delivery objects addressed to this session client window, empty if none arrived before the timeout.
+	 */
+	List getDeliveries(String address, long timeout);
+
 	/**
 	 * Check to see if there are any deliveries queued up for a particular session client window.
 	 * 
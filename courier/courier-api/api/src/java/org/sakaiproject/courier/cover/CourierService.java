@@ -69,6 +69,15 @@ public class CourierService
 		return service.getDeliveries(param0);
 	}
 
+	public static java.util.List getDeliveries(java.lang.String param0, long param1)
+	{
+		org.sakaiproject.courier.api.CourierService service = getInstance();
+		if (service == null)
+			return null;
+
+		return service.getDeliveries(param0, param1);
+	}
+
 	public static boolean hasDeliveries(java.lang.String param0)
 	{
 		org.sakaiproject.courier.api.CourierService service = getInstance();
@@ -30,6 +30,7 @@ import java.util.Timer;
 import java.util.TimerTask;
 import java.util.Vector;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -94,6 +95,15 @@ public class BasicCourierService implements CourierService
 	**/
 	protected boolean m_aggressiveCleanup = false;
 
+	/** Configuration: the most requests that may be parked waiting for a delivery at one time. */
+	protected int m_maxWaiters = 20;
+
+	/** The number of requests currently parked in getDeliveries(address, timeout). */
+	protected AtomicInteger m_waiters = new AtomicInteger();
+
+	/** Set once destroy() has run, so parked requests stop waiting. */
+	protected volatile boolean m_destroyed = false;
+
 	/**
 	 * Configuration: set how often to check for inactive deliveries (seconds).
 	 * 
@@ -120,12 +130,14 @@ public class BasicCourierService implements CourierService
 	{
 		M_log.info("init()");
 		m_addresses.clear();
+		m_destroyed = false;
 		locks = new Object[nLocks];
 		for (int i = 0; i < nLocks; i++)
 		    locks[i] = new Object();
 		
 		m_checkEvery = ServerConfigurationService.getInt("courier.maintThreadChecks", 300);
 		m_aggressiveCleanup = ServerConfigurationService.getBoolean("courier.aggressiveCleanup", false);
+		m_maxWaiters = ServerConfigurationService.getInt("courier.longpoll.maxWaiters", 20);
 		
 		// start the maintenance thread
 		if (m_checkEvery > 0)
@@ -143,7 +155,19 @@ public class BasicCourierService implements CourierService
 	{
 		M_log.info("destroy()");
 		m_addresses.clear();
-		locks = null;
+		m_destroyed = true;
+
+		// release any parked requests, the locks stay so they can finish with them
+		if (locks != null)
+		{
+			for (Object lock : locks)
+			{
+				synchronized (lock)
+				{
+					lock.notifyAll();
+				}
+			}
+		}
 		
 		if (m_maintenance != null)
 		{
@@ -177,8 +201,9 @@ public class BasicCourierService implements CourierService
 			M_log.debug("deliver(Delivery " + delivery + ")");
 
 		final String address = delivery.getAddress();
+		final Object lock = locks[slot(address)];
 
-		synchronized(locks[slot(address)]) {
+		synchronized(lock) {
 
 		    // find the entry in m_addresses
 		    List<Delivery> deliveries = m_addresses.get(address);
@@ -189,9 +214,12 @@ public class BasicCourierService implements CourierService
 				m_addresses.put(address, deliveries);
 		    }
 
-		    // if this doesn't exist in the list already, add it
+		    // if this doesn't exist in the list already, add it, otherwise the pending one covers it
 		    if (!deliveries.contains(delivery)) {
 		    	deliveries.add(delivery);
+
+		    	// wake any request parked on this slot, it will check its own address
+		    	lock.notifyAll();
 		    }
 		}
 	}
@@ -291,6 +319,65 @@ public class BasicCourierService implements CourierService
 		return deliveries;
 	}
 
+	/**
+	 * Access and de-queue the Deliveries queued up for a particular session client window, parking the calling thread
+	 * until one is queued or the timeout passes. Once m_maxWaiters requests are parked, further ones don't wait.
+	 * 
+	 * @param address
+	 *        The address of client window.
+	 * @param timeout
+	 *        The longest time to wait (milliseconds) for a Delivery. 0 or less means don't wait.
+	 * @return a List of Delivery objects addressed to this session client window.
+	 */
+	@SuppressWarnings("unchecked")
+	public List getDeliveries(String address, long timeout)
+	{
+		if (M_log.isDebugEnabled())
+			M_log.debug("getDeliveries(String " + address + ", long " + timeout + ")");
+
+		if (timeout <= 0) return getDeliveries(address);
+
+		if (m_waiters.incrementAndGet() > m_maxWaiters)
+		{
+			m_waiters.decrementAndGet();
+			M_log.debug("too many parked courier requests, not waiting for: " + address);
+			return getDeliveries(address);
+		}
+
+		try
+		{
+			final Object lock = locks[slot(address)];
+			final long deadline = System.currentTimeMillis() + timeout;
+
+			synchronized(lock) {
+			    long remaining = timeout;
+			    while (remaining > 0 && !m_destroyed && !hasPending(address)) {
+			    	lock.wait(remaining);
+			    	remaining = deadline - System.currentTimeMillis();
+			    }
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		finally
+		{
+			m_waiters.decrementAndGet();
+		}
+
+		return getDeliveries(address);
+	}
+
+	/**
+	 * Check for queued deliveries; the caller must hold the lock for the address slot.
+	 */
+	private boolean hasPending(String address)
+	{
+		List<Delivery> deliveries = m_addresses.get(address);
+		return deliveries != null && !deliveries.isEmpty();
+	}
+
 	/**
 	 * Check to see if there are any deliveries queued up for a particular
 	 * session client window.
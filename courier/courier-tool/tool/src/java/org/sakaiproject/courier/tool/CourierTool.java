@@ -58,6 +58,9 @@ public class CourierTool extends HttpServlet
 
 	private SessionManager sessionManager = (SessionManager)
 			ComponentManager.get(SessionManager.class);
+
+	/** How long (milliseconds) to hold a request open waiting for a delivery, 0 to answer straight away. */
+	protected long m_longPollTimeout = 0;
 	
 	/**
 	 * Shutdown the servlet.
@@ -129,9 +132,6 @@ public class CourierTool extends HttpServlet
 						}
 					}
 					
-					// form the reply
-					sendDeliveries(res, deliveries);
-	
 					// refresh our presence at the location (placement)
 					if (M_log.isDebugEnabled()) M_log.debug("setting presence: " + placementId);
 					PresenceUpdater.setPresence(placementId);
@@ -143,6 +143,15 @@ public class CourierTool extends HttpServlet
 						if (M_log.isDebugEnabled()) M_log.debug("setting second presence: " + secondPlacementId);
 						PresenceUpdater.setPresence(secondPlacementId);
 					}
+
+					// nothing to send yet, so park until something is queued rather than sending an empty reply
+					if (deliveries.isEmpty() && m_longPollTimeout > 0)
+					{
+						deliveries = CourierService.getDeliveries(deliveryId, m_longPollTimeout);
+					}
+
+					// form the reply
+					sendDeliveries(res, deliveries);
 				} else {
 					//This courier request was not meant for this user (i.e., session), so we won't honour it
 					M_log.debug("out-of-session courier request: requestUserId=" + requestUserId + " session user=" + session.getUserId());
@@ -179,7 +188,9 @@ public class CourierTool extends HttpServlet
 	{
 		super.init(config);
 
-		M_log.info("init()");
+		m_longPollTimeout = 1000L * ServerConfigurationService.getInt("courier.longpoll.timeout", 0);
+
+		M_log.info("init() long-poll timeout: " + m_longPollTimeout);
 	}
 
 	/**
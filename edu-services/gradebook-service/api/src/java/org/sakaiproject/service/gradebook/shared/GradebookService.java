@@ -585,6 +585,22 @@ public interface GradebookService {
 	 * or if gradableObjectIds contains items that are not members of the gradebook with uid = gradebookUid
 	 */
 	public Map<Long, List<GradeDefinition>> getGradesWithoutCommentsForStudentsForItems(String gradebookUid, List<Long> gradableOjbectIds, List<String> studentIds);
+
+	/**
+	 * Get the grade records, with comments, for the given list of students and the given assignments, in one go.
+	 * This is the bulk equivalent of calling {@link #getGradesForStudentsForItem} for each assignment: the same
+	 * grader permissions are applied to each assignment, but the grades and comments are fetched in a handful of queries
+	 * rather than several queries per assignment.
+	 * This can only be called by an instructor or TA that has access, not student.
+	 *
+	 * @param gradebookUid
+	 * @param assignmentIds
+	 * @param studentIds
+	 * @return a Map of assignment ids to a List of GradeDefinitions for the students that have a grade or a comment
+	 * on that assignment. Assignments with no grades for the students, or that are not in the gradebook, are omitted.
+	 * @throws SecurityException if the current user is not authorized to grade in this gradebook
+	 */
+	public Map<Long, List<GradeDefinition>> getGradesForStudentsForItems(String gradebookUid, List<Long> assignmentIds, List<String> studentIds);
 	
 	/**
 	 * 
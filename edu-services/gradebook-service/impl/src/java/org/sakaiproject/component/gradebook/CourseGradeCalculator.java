@@ -0,0 +1,293 @@
+/**********************************************************************************
+ *
+ * $Id$
+ *
+ ***********************************************************************************
+ *
+ * Copyright (c) 2016 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.opensource.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **********************************************************************************/
+package org.sakaiproject.component.gradebook;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sakaiproject.service.gradebook.shared.GradebookService;
+import org.sakaiproject.tool.gradebook.Assignment;
+import org.sakaiproject.tool.gradebook.AssignmentGradeRecord;
+import org.sakaiproject.tool.gradebook.Category;
+import org.sakaiproject.tool.gradebook.Gradebook;
+
+/**
+ * Works out the course grade points earned and possible for the students of a gradebook.
+ *
+ * The counted assignments and the categories are indexed once, into arrays of points possible
+ * and category positions, so that each student's grade records can be totalled in a single pass
+ * with array lookups, rather than by searching the assignment and category lists for every grade.
+ * An instance holds scratch arrays for the student being totalled, so must not be shared between threads.
+ */
+class CourseGradeCalculator {
+
+	private static final Logger log = LoggerFactory.getLogger(CourseGradeCalculator.class);
+
+	private final Gradebook gradebook;
+	private final boolean hasCategories;
+
+	/** the counted assignments, in the order given */
+	private final Map<Long, Integer> assignmentIndex;
+	private final double[] pointsPossible;
+	private final boolean[] extraCredit;
+	/** the position in categories of each counted assignment's category, or -1 */
+	private final int[] assignmentCategory;
+
+	/** the categories which have not been removed, in the order given */
+	private final Map<Long, Integer> categoryIndex;
+	private final Category[] categories;
+
+	// scratch space for the student being totalled
+	private final boolean[] taken;
+	private final boolean[] categoryTaken;
+	private final double[] categoryScore;
+	private final boolean[] categoryScored;
+	private final double[] categoryPossible;
+	private final boolean[] categoryHasPossible;
+
+	/**
+	 * @param gradebook the gradebook
+	 * @param categories the categories of the gradebook, may be null
+	 * @param countedAssigns the assignments that are included in the course grade
+	 */
+	@SuppressWarnings("rawtypes")
+	CourseGradeCalculator(Gradebook gradebook, List categories, List<Assignment> countedAssigns) {
+		this.gradebook = gradebook;
+		this.hasCategories = categories != null;
+
+		List<Category> live = new ArrayList<Category>();
+		this.categoryIndex = new HashMap<Long, Integer>();
+		if (categories != null) {
+			for (Object o : categories) {
+				Category cate = (Category) o;
+				if (cate != null && !cate.isRemoved() && !categoryIndex.containsKey(cate.getId())) {
+					categoryIndex.put(cate.getId(), live.size());
+					live.add(cate);
+				}
+			}
+		}
+		this.categories = live.toArray(new Category[live.size()]);
+
+		int size = countedAssigns.size();
+		this.assignmentIndex = new HashMap<Long, Integer>();
+		this.pointsPossible = new double[size];
+		this.extraCredit = new boolean[size];
+		this.assignmentCategory = new int[size];
+		for (int i = 0; i < size; i++) {
+			Assignment assign = countedAssigns.get(i);
+			assignmentIndex.put(assign.getId(), i);
+			pointsPossible[i] = assign.getPointsPossible() != null ? assign.getPointsPossible() : 0;
+			extraCredit[i] = assign.isExtraCredit();
+			assignmentCategory[i] = getCategoryIndex(assign);
+		}
+
+		this.taken = new boolean[size];
+		this.categoryTaken = new boolean[this.categories.length];
+		this.categoryScore = new double[this.categories.length];
+		this.categoryScored = new boolean[this.categories.length];
+		this.categoryPossible = new double[this.categories.length];
+		this.categoryHasPossible = new boolean[this.categories.length];
+	}
+
+	/**
+	 * @return the points earned by a student, with weighted categories applied, and the literal total of the points earned
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	List getTotalPointsEarned(String studentId, List<AssignmentGradeRecord> gradeRecs) {
+		int gbGradeType = gradebook.getGrade_type();
+		if (gbGradeType != GradebookService.GRADE_TYPE_POINTS && gbGradeType != GradebookService.GRADE_TYPE_PERCENTAGE) {
+			log.error("Wrong grade type in CourseGradeCalculator.getTotalPointsEarned");
+			return new ArrayList();
+		}
+
+		if (gradeRecs == null) {
+			if (log.isDebugEnabled()) log.debug("getTotalPointsEarned for studentId=" + studentId + " returning 0 because null gradeRecs");
+			List returnList = new ArrayList();
+			returnList.add(new Double(0));
+			returnList.add(new Double(0));
+			returnList.add(new Double(0)); // 3rd one is for the pre-adjusted course grade
+			return returnList;
+		}
+
+		int categoryType = gradebook.getCategory_type();
+		boolean weighted = categoryType == GradebookService.CATEGORY_TYPE_WEIGHTED_CATEGORY && hasCategories;
+		Arrays.fill(taken, false);
+		Arrays.fill(categoryScore, 0);
+		Arrays.fill(categoryScored, false);
+		Arrays.fill(categoryPossible, 0);
+		Arrays.fill(categoryHasPossible, false);
+
+		double totalPointsEarned = 0;
+		BigDecimal literalTotalPointsEarned = new BigDecimal(0d);
+		boolean anyTaken = false;
+
+		for (AssignmentGradeRecord gradeRec : gradeRecs) {
+			if (gradeRec.getPointsEarned() == null || gradeRec.getDroppedFromGrade()) {
+				continue;
+			}
+			Assignment go = gradeRec.getAssignment();
+			int a = indexOf(go);
+			if (a < 0 || !go.isIncludedInCalculations()) {
+				continue;
+			}
+			double pointsEarned = gradeRec.getPointsEarned().doubleValue();
+			if (categoryType == GradebookService.CATEGORY_TYPE_NO_CATEGORY || categoryType == GradebookService.CATEGORY_TYPE_ONLY_CATEGORY) {
+				totalPointsEarned += pointsEarned;
+				literalTotalPointsEarned = (new BigDecimal(pointsEarned)).add(literalTotalPointsEarned);
+				taken[a] = true;
+				anyTaken = true;
+			} else if (weighted) {
+				int c = getCategoryIndex(go);
+				if (c >= 0) {
+					taken[a] = true;
+					anyTaken = true;
+					literalTotalPointsEarned = (new BigDecimal(pointsEarned)).add(literalTotalPointsEarned);
+					categoryScore[c] += pointsEarned;
+					categoryScored[c] = true;
+				}
+			}
+		}
+
+		if (weighted) {
+			for (int a = 0; a < taken.length; a++) {
+				int c = assignmentCategory[a];
+				if (taken[a] && c >= 0 && !extraCredit[a]) {
+					categoryPossible[c] += pointsPossible[a];
+					categoryHasPossible[c] = true;
+				}
+			}
+		}
+
+		if (!anyTaken) {
+			totalPointsEarned = -1;
+		}
+
+		if (categoryType == GradebookService.CATEGORY_TYPE_WEIGHTED_CATEGORY) {
+			for (int c = 0; c < categories.length; c++) {
+				if (categoryScored[c] && categoryHasPossible[c]) {
+					totalPointsEarned += categoryScore[c] * categories[c].getWeight().doubleValue() / categoryPossible[c];
+				}
+			}
+		}
+
+		if (log.isDebugEnabled()) log.debug("getTotalPointsEarned for studentId=" + studentId + " returning " + totalPointsEarned);
+		List returnList = new ArrayList();
+		returnList.add(new Double(totalPointsEarned));
+		returnList.add(new Double((new BigDecimal(literalTotalPointsEarned.doubleValue(), GradebookService.MATH_CONTEXT)).doubleValue()));
+		return returnList;
+	}
+
+	/**
+	 * @return the points possible for a student, being the total category weight of the categories graded
+	 * for weighted categories unless literalTotal is set, or -1 if the student has no counted grades
+	 */
+	double getTotalPointsPossible(String studentId, List<AssignmentGradeRecord> studentGradeRecs, boolean literalTotal) {
+		int gbGradeType = gradebook.getGrade_type();
+		if (gbGradeType != GradebookService.GRADE_TYPE_POINTS && gbGradeType != GradebookService.GRADE_TYPE_PERCENTAGE) {
+			log.error("Wrong grade type in CourseGradeCalculator.getTotalPointsPossible");
+			return -1;
+		}
+
+		if (studentGradeRecs == null) {
+			if (log.isDebugEnabled()) log.debug("Returning 0 from getTotalPointsPossible since studentGradeRecs was null");
+			return 0;
+		}
+
+		int categoryType = gradebook.getCategory_type();
+		Arrays.fill(taken, false);
+		Arrays.fill(categoryTaken, false);
+		boolean anyTaken = false;
+
+		for (AssignmentGradeRecord gradeRec : studentGradeRecs) {
+			Assignment assign = gradeRec.getAssignment();
+			boolean extraCredit = assign.isExtraCredit();
+			if (categoryType != GradebookService.CATEGORY_TYPE_NO_CATEGORY && assign.getCategory() != null && assign.getCategory().isExtraCredit()) {
+				extraCredit = true;
+			}
+			int a = indexOf(assign);
+			// only "counted" grade records
+			if (a < 0 || !assign.isCounted() || assign.getUngraded() || assign.isRemoved()
+					|| assign.getPointsPossible() == null || assign.getPointsPossible() <= 0 || gradeRec.getDroppedFromGrade() || extraCredit) {
+				continue;
+			}
+			if (gradeRec.getPointsEarned() == null) {
+				continue;
+			}
+			if (categoryType == GradebookService.CATEGORY_TYPE_NO_CATEGORY) {
+				taken[a] = true;
+				anyTaken = true;
+			} else if ((categoryType == GradebookService.CATEGORY_TYPE_ONLY_CATEGORY || categoryType == GradebookService.CATEGORY_TYPE_WEIGHTED_CATEGORY) && hasCategories) {
+				int c = getCategoryIndex(assign);
+				if (c >= 0 && (categories[c].isExtraCredit() == null || !categories[c].isExtraCredit())) {
+					taken[a] = true;
+					categoryTaken[c] = true;
+					anyTaken = true;
+				}
+			}
+		}
+
+		if (!anyTaken) {
+			return -1;
+		}
+
+		double totalPointsPossible = 0;
+		if (!literalTotal && categoryType == GradebookService.CATEGORY_TYPE_WEIGHTED_CATEGORY) {
+			for (int c = 0; c < categories.length; c++) {
+				if (categoryTaken[c]) {
+					totalPointsPossible += categories[c].getWeight().doubleValue();
+				}
+			}
+			return totalPointsPossible;
+		}
+		for (int a = 0; a < taken.length; a++) {
+			if (taken[a]) {
+				totalPointsPossible += pointsPossible[a];
+			}
+		}
+		return totalPointsPossible;
+	}
+
+	/**
+	 * @return the position of the assignment among the counted assignments, or -1 if it is not counted
+	 */
+	private int indexOf(Assignment assign) {
+		if (assign == null) {
+			return -1;
+		}
+		Integer a = assignmentIndex.get(assign.getId());
+		return a != null ? a : -1;
+	}
+
+	private int getCategoryIndex(Assignment assign) {
+		if (assign.getCategory() == null) {
+			return -1;
+		}
+		Integer c = categoryIndex.get(assign.getCategory().getId());
+		return c != null ? c : -1;
+	}
+}
@@ -983,19 +983,18 @@ public class GradebookServiceHibernateImpl extends BaseHibernateManager implemen
     	                        }
     	                    }
     	                }
-				//double totalPointsPossible = getTotalPointsInternal(gradebookId, session);
-				//if(log.isDebugEnabled()) log.debug("Total points = " + totalPointsPossible);
+				// index the counted assignments and categories once for all the students
+				CourseGradeCalculator calculator = new CourseGradeCalculator(gradebook, cates, countedAssigns);
 
 				for(Iterator iter = records.iterator(); iter.hasNext();) {
 					CourseGradeRecord cgr = (CourseGradeRecord)iter.next();
-					//double totalPointsEarned = getTotalPointsEarnedInternal(gradebookId, cgr.getStudentId(), session);
 					List<AssignmentGradeRecord> studentGradeRecs = gradeRecMap.get(cgr.getStudentId());
     				
     				applyDropScores(studentGradeRecs);
-					List totalEarned = getTotalPointsEarnedInternal(cgr.getStudentId(), gradebook, cates, studentGradeRecs, countedAssigns);
+					List totalEarned = calculator.getTotalPointsEarned(cgr.getStudentId(), studentGradeRecs);
 					double totalPointsEarned = ((Double)totalEarned.get(0)).doubleValue();
 					double literalTotalPointsEarned = ((Double)totalEarned.get(1)).doubleValue();
-					double totalPointsPossible = getTotalPointsInternal(gradebook, cates, cgr.getStudentId(), studentGradeRecs, countedAssigns, false);
+					double totalPointsPossible = calculator.getTotalPointsPossible(cgr.getStudentId(), studentGradeRecs, false);
 					cgr.initNonpersistentFields(totalPointsPossible, totalPointsEarned, literalTotalPointsEarned);
 					if(log.isDebugEnabled()) log.debug("Points earned = " + cgr.getPointsEarned());
 					if(log.isDebugEnabled()) log.debug("Points possible = " + cgr.getTotalPointsPossible());
@@ -1011,10 +1010,11 @@ public class GradebookServiceHibernateImpl extends BaseHibernateManager implemen
 	@SuppressWarnings({ "unchecked", "rawtypes" })
 	private List filterAndPopulateCourseGradeRecordsByStudents(CourseGrade courseGrade, Collection gradeRecords, Collection studentUids) {
 		List filteredRecords = new ArrayList();
+		Set students = new HashSet(studentUids);
 		Set missingStudents = new HashSet(studentUids);
 		for (Iterator iter = gradeRecords.iterator(); iter.hasNext(); ) {
 			CourseGradeRecord cgr = (CourseGradeRecord)iter.next();
-			if (studentUids.contains(cgr.getStudentId())) {
+			if (students.contains(cgr.getStudentId())) {
 				filteredRecords.add(cgr);
 				missingStudents.remove(cgr.getStudentId());
 			}
@@ -1027,248 +1027,6 @@ public class GradebookServiceHibernateImpl extends BaseHibernateManager implemen
 		return filteredRecords;
 	}
 	
-	@SuppressWarnings({ "rawtypes", "unchecked" })
-	private double getTotalPointsInternal(final Gradebook gradebook, final List categories, final String studentId, List<AssignmentGradeRecord> studentGradeRecs, List<Assignment> countedAssigns, boolean literalTotal)
-        {
-            int gbGradeType = gradebook.getGrade_type();
-            if( gbGradeType != GradebookService.GRADE_TYPE_POINTS && gbGradeType != GradebookService.GRADE_TYPE_PERCENTAGE)
-            {
-                if(log.isInfoEnabled()) log.error("Wrong grade type in GradebookCalculationImpl.getTotalPointsInternal");
-                return -1;
-            }
-
-            if (studentGradeRecs == null || countedAssigns == null) {
-                if (log.isDebugEnabled()) log.debug("Returning 0 from getTotalPointsInternal " +
-                        "since studentGradeRecs or countedAssigns was null");
-                return 0;
-            }
-
-            double totalPointsPossible = 0;
-
-            HashSet<Assignment> countedSet = new HashSet<Assignment>(countedAssigns);
-
-            // we need to filter this list to identify only "counted" grade recs
-            List<AssignmentGradeRecord> countedGradeRecs = new ArrayList<AssignmentGradeRecord>();
-            for (AssignmentGradeRecord gradeRec : studentGradeRecs) {
-                Assignment assign = gradeRec.getAssignment();
-                boolean extraCredit = assign.isExtraCredit();
-                if(gradebook.getCategory_type() != GradebookService.CATEGORY_TYPE_NO_CATEGORY && assign.getCategory() != null && assign.getCategory().isExtraCredit())
-                    extraCredit = true;
-
-                if (assign.isCounted() && !assign.getUngraded() && !assign.isRemoved() && countedSet.contains(assign) &&
-                        assign.getPointsPossible() != null && assign.getPointsPossible() > 0 && !gradeRec.getDroppedFromGrade() && !extraCredit) {
-                    countedGradeRecs.add(gradeRec);
-                }
-            }
-
-            Set assignmentsTaken = new HashSet();
-            Set categoryTaken = new HashSet();
-            for (AssignmentGradeRecord gradeRec : countedGradeRecs)
-            {
-                if (gradeRec.getPointsEarned() != null && !gradeRec.getPointsEarned().equals("")) 
-                {
-                    Double pointsEarned = new Double(gradeRec.getPointsEarned());
-                    Assignment go = gradeRec.getAssignment();
-                    if (pointsEarned != null) 
-                    {
-                        if(gradebook.getCategory_type() == GradebookService.CATEGORY_TYPE_NO_CATEGORY)
-                        {
-                            assignmentsTaken.add(go.getId());
-                        }
-                        else if ((gradebook.getCategory_type() == GradebookService.CATEGORY_TYPE_ONLY_CATEGORY || gradebook
-                                .getCategory_type() == GradebookService.CATEGORY_TYPE_WEIGHTED_CATEGORY)
-                                && go != null && categories != null)
-                        {
-                            //                              assignmentsTaken.add(go.getId());
-                            //                          }
-                            //                          else if(gradebook.getCategory_type() == GradebookService.CATEGORY_TYPE_WEIGHTED_CATEGORY && go != null && categories != null)
-                            //                          {
-                            for(int i=0; i<categories.size(); i++)
-                            {
-                                Category cate = (Category) categories.get(i);
-                                if(cate != null && !cate.isRemoved() && go.getCategory() != null && cate.getId().equals(go.getCategory().getId()) && ((cate.isExtraCredit()!=null && !cate.isExtraCredit()) || cate.isExtraCredit()==null))
-                                {
-                                    assignmentsTaken.add(go.getId());
-                                    categoryTaken.add(cate.getId());
-                                    break;
-                                }
-                            }
-                        }
-                    }
-                }
-            }
-
-            if(!assignmentsTaken.isEmpty())
-            {
-                if(!literalTotal && gradebook.getCategory_type() == GradebookService.CATEGORY_TYPE_WEIGHTED_CATEGORY)
-                {
-                    for(int i=0; i<categories.size(); i++)
-                    {
-                        Category cate = (Category) categories.get(i);
-                        if(cate != null && !cate.isRemoved() && categoryTaken.contains(cate.getId()) )
-                        {
-                            totalPointsPossible += cate.getWeight().doubleValue();
-                        }
-                    }
-                    return totalPointsPossible;
-                }
-                Iterator assignmentIter = countedAssigns.iterator();
-                while (assignmentIter.hasNext()) 
-                {
-                    Assignment asn = (Assignment) assignmentIter.next();
-                    if(asn != null)
-                    {
-                        Double pointsPossible = asn.getPointsPossible();
-
-                        if(gradebook.getCategory_type() == GradebookService.CATEGORY_TYPE_NO_CATEGORY && assignmentsTaken.contains(asn.getId()))
-                        {
-                            totalPointsPossible += pointsPossible.doubleValue();
-                        }
-                        else if(gradebook.getCategory_type() == GradebookService.CATEGORY_TYPE_ONLY_CATEGORY && assignmentsTaken.contains(asn.getId()))
-                        {
-                            totalPointsPossible += pointsPossible.doubleValue();
-                        }else if(literalTotal && gradebook.getCategory_type() == GradebookService.CATEGORY_TYPE_WEIGHTED_CATEGORY && assignmentsTaken.contains(asn.getId()))
-                        {
-                            totalPointsPossible += pointsPossible.doubleValue();
-                        }
-                    }
-                }
-            }
-            else
-                totalPointsPossible = -1;
-
-            return totalPointsPossible;
-        }
-
-	       
-	@SuppressWarnings({ "rawtypes", "unchecked" })
-	private List getTotalPointsEarnedInternal(final String studentId, final Gradebook gradebook, final List categories,
-	        final List<AssignmentGradeRecord> gradeRecs, List<Assignment> countedAssigns) 
-	{
-	    int gbGradeType = gradebook.getGrade_type();
-	    if( gbGradeType != GradebookService.GRADE_TYPE_POINTS && gbGradeType != GradebookService.GRADE_TYPE_PERCENTAGE)
-	    {
-	        if(log.isInfoEnabled()) log.error("Wrong grade type in GradebookCalculationImpl.getTotalPointsEarnedInternal");
-	        return new ArrayList();
-	    }
-
-	    if (gradeRecs == null || countedAssigns == null) {
-	        if (log.isDebugEnabled()) log.debug("getTotalPointsEarnedInternal for " +
-	                "studentId=" + studentId + " returning 0 because null gradeRecs or countedAssigns");
-	        List returnList = new ArrayList();
-	        returnList.add(new Double(0));
-	        returnList.add(new Double(0));
-	        returnList.add(new Double(0)); // 3rd one is for the pre-adjusted course grade
-	        return returnList;
-	    }
-
-
-	    double totalPointsEarned = 0;
-	    BigDecimal literalTotalPointsEarned = new BigDecimal(0d);
-
-	    Map cateScoreMap = new HashMap();
-	    Map cateTotalScoreMap = new HashMap();
-
-	    Set assignmentsTaken = new HashSet();
-	    for (AssignmentGradeRecord gradeRec : gradeRecs)
-	    {
-	        if(gradeRec.getPointsEarned() != null && !gradeRec.getPointsEarned().equals("") && !gradeRec.getDroppedFromGrade())
-	        {
-	            Assignment go = gradeRec.getAssignment();
-	            if (go.isIncludedInCalculations() && countedAssigns.contains(go))
-	            {
-	                Double pointsEarned = new Double(gradeRec.getPointsEarned());
-	                //if(gbGradeType == GradebookService.GRADE_TYPE_POINTS)
-	                //{
-	                if(gradebook.getCategory_type() == GradebookService.CATEGORY_TYPE_NO_CATEGORY)
-	                {
-	                    totalPointsEarned += pointsEarned.doubleValue();
-	                    literalTotalPointsEarned = (new BigDecimal(pointsEarned.doubleValue())).add(literalTotalPointsEarned);
-	                    assignmentsTaken.add(go.getId());
-	                }
-	                else if(gradebook.getCategory_type() == GradebookService.CATEGORY_TYPE_ONLY_CATEGORY && go != null)
-	                {
-	                    totalPointsEarned += pointsEarned.doubleValue();
-	                    literalTotalPointsEarned = (new BigDecimal(pointsEarned.doubleValue())).add(literalTotalPointsEarned);
-	                    assignmentsTaken.add(go.getId());
-	                }
-	                else if(gradebook.getCategory_type() == GradebookService.CATEGORY_TYPE_WEIGHTED_CATEGORY && go != null && categories != null)
-	                {
-	                    for(int i=0; i<categories.size(); i++)
-	                    {
-	                        Category cate = (Category) categories.get(i);
-	                        if(cate != null && !cate.isRemoved() && go.getCategory() != null && cate.getId().equals(go.getCategory().getId()))
-	                        {
-	                            assignmentsTaken.add(go.getId());
-	                            literalTotalPointsEarned = (new BigDecimal(pointsEarned.doubleValue())).add(literalTotalPointsEarned);
-	                            if(cateScoreMap.get(cate.getId()) != null)
-	                            {
-	                                cateScoreMap.put(cate.getId(), new Double(((Double)cateScoreMap.get(cate.getId())).doubleValue() + pointsEarned.doubleValue()));
-	                            }
-	                            else
-	                            {
-	                                cateScoreMap.put(cate.getId(), new Double(pointsEarned));
-	                            }
-	                            break;
-	                        }
-	                    }
-	                }
-	            }
-	        }                       
-	    }
-
-	    if(gradebook.getCategory_type() == GradebookService.CATEGORY_TYPE_WEIGHTED_CATEGORY && categories != null)
-	    {
-	        Iterator assgnsIter = countedAssigns.iterator();
-	        while (assgnsIter.hasNext()) 
-	        {
-	            Assignment asgn = (Assignment)assgnsIter.next();
-	            if(assignmentsTaken.contains(asgn.getId()))
-	            {
-	                for(int i=0; i<categories.size(); i++)
-	                {
-	                    Category cate = (Category) categories.get(i);
-	                    if(cate != null && !cate.isRemoved() && asgn.getCategory() != null && cate.getId().equals(asgn.getCategory().getId()) && !asgn.isExtraCredit())
-	                    {
-
-	                        if(cateTotalScoreMap.get(cate.getId()) == null)
-	                        {                                                               
-	                            cateTotalScoreMap.put(cate.getId(), asgn.getPointsPossible());
-	                        }
-	                        else
-	                        {                                                               
-	                            cateTotalScoreMap.put(cate.getId(), new Double(((Double)cateTotalScoreMap.get(cate.getId())).doubleValue() + asgn.getPointsPossible().doubleValue()));                                                  
-	                        }
-
-	                    }
-	                }
-	            }
-	        }
-	    }
-
-	    if(assignmentsTaken.isEmpty())
-	        totalPointsEarned = -1;
-
-	    if(gradebook.getCategory_type() == GradebookService.CATEGORY_TYPE_WEIGHTED_CATEGORY)
-	    {
-	        for(int i=0; i<categories.size(); i++)
-	        {
-	            Category cate = (Category) categories.get(i);
-	            if(cate != null && !cate.isRemoved() && cateScoreMap.get(cate.getId()) != null && cateTotalScoreMap.get(cate.getId()) != null)
-	            {
-	                totalPointsEarned += ((Double)cateScoreMap.get(cate.getId())).doubleValue() * cate.getWeight().doubleValue() / ((Double)cateTotalScoreMap.get(cate.getId())).doubleValue();
-	            }
-	        }
-	    }
-
-	    if (log.isDebugEnabled()) log.debug("getTotalPointsEarnedInternal for studentId=" + studentId + " returning " + totalPointsEarned);
-	    List returnList = new ArrayList();
-	    returnList.add(new Double(totalPointsEarned));
-	    returnList.add(new Double((new BigDecimal(literalTotalPointsEarned.doubleValue(), GradebookService.MATH_CONTEXT)).doubleValue()));
-
-	    return returnList;
-	}
-
 	/**
 	 * Internal method to get a gradebook based on its id.
 	 * @param id
@@ -1896,6 +1654,191 @@ public class GradebookServiceHibernateImpl extends BaseHibernateManager implemen
 		return gradesMap;
 	}
 
+	@Override
+	public Map<Long, List<GradeDefinition>> getGradesForStudentsForItems(final String gradebookUid, final List<Long> assignmentIds, List<String> studentIds)
+	{
+		if (assignmentIds == null)
+		{
+			throw new IllegalArgumentException("null assignmentIds passed to getGradesForStudentsForItems");
+		}
+
+		Map<Long, List<GradeDefinition>> gradesMap = new HashMap<Long, List<GradeDefinition>>();
+		if (assignmentIds.isEmpty() || studentIds == null || studentIds.isEmpty())
+		{
+			return gradesMap;
+		}
+
+		final Gradebook gradebook = getGradebook(gradebookUid);
+		if (!authz.isUserAbleToGrade(gradebook.getUid()))
+		{
+			throw new SecurityException("User " + authn.getUserUid() +
+					" attempted to access grade information without permission in gb " +
+					gradebook.getUid() + " using gradebookService.getGradesForStudentsForItems");
+		}
+
+		// the live assignments of the gradebook that were asked for. Any others are ignored, as getGradesForStudentsForItem does
+		List<Assignment> allAssignments = (List<Assignment>) getHibernateTemplate().execute(new HibernateCallback() {
+			@Override
+			public Object doInHibernate(Session session) throws HibernateException {
+				return getAssignments(gradebook.getId(), session);
+			}
+		});
+		Set<Long> requestedIds = new HashSet<Long>(assignmentIds);
+		Map<Long, Assignment> assignments = new HashMap<Long, Assignment>();
+		for (Assignment assignment : allAssignments)
+		{
+			if (requestedIds.contains(assignment.getId()))
+			{
+				assignments.put(assignment.getId(), assignment);
+			}
+		}
+		if (assignments.isEmpty())
+		{
+			return gradesMap;
+		}
+
+		// the students the current user may view for each assignment. This only depends on the category,
+		// so is worked out once per category rather than once per assignment
+		Set<String> requestedStudents = new HashSet<String>(studentIds);
+		Map<Long, Set<String>> categoryStudents = new HashMap<Long, Set<String>>();
+		Map<Long, Set<String>> assignmentStudents = new HashMap<Long, Set<String>>();
+		for (Assignment assignment : assignments.values())
+		{
+			Long categoryId = assignment.getCategory() != null ? assignment.getCategory().getId() : null;
+			Set<String> viewable = categoryStudents.get(categoryId);
+			if (viewable == null)
+			{
+				viewable = new HashSet<String>();
+				Map enrRecFunctionMap = authz.findMatchingEnrollmentsForItem(gradebook.getUid(), categoryId, gradebook.getCategory_type(), null, null);
+				for (Object o : enrRecFunctionMap.keySet())
+				{
+					EnrollmentRecord enr = (EnrollmentRecord) o;
+					if (enr != null && requestedStudents.contains(enr.getUser().getUserUid()))
+					{
+						viewable.add(enr.getUser().getUserUid());
+					}
+				}
+				categoryStudents.put(categoryId, viewable);
+			}
+			assignmentStudents.put(assignment.getId(), viewable);
+		}
+
+		List<Long> ids = new ArrayList<Long>(assignments.keySet());
+		Set<String> allViewable = new HashSet<String>();
+		for (Set<String> viewable : categoryStudents.values())
+		{
+			allViewable.addAll(viewable);
+		}
+		List<String> students = new ArrayList<String>(allViewable);
+
+		// retrieve the grading comments for all of the assignments and students
+		Map<Long, Map<String, String>> commentTextMap = new HashMap<Long, Map<String, String>>();
+		for (Comment comment : getCommentsForGbItems(ids, students))
+		{
+			Long assignmentId = comment.getGradableObject().getId();
+			if (assignmentStudents.get(assignmentId).contains(comment.getStudentId()))
+			{
+				Map<String, String> studentIdCommentTextMap = commentTextMap.get(assignmentId);
+				if (studentIdCommentTextMap == null)
+				{
+					studentIdCommentTextMap = new HashMap<String, String>();
+					commentTextMap.put(assignmentId, studentIdCommentTextMap);
+				}
+				studentIdCommentTextMap.put(comment.getStudentId(), comment.getCommentText());
+			}
+		}
+
+		// now, we can populate the grade information
+		List<AssignmentGradeRecord> gradeRecs = new ArrayList<AssignmentGradeRecord>();
+		for (AssignmentGradeRecord agr : getAllAssignmentGradeRecordsForGbItems(ids, students))
+		{
+			if (assignmentStudents.get(agr.getAssignment().getId()).contains(agr.getStudentId()))
+			{
+				gradeRecs.add(agr);
+			}
+		}
+		if (gradebook.getGrade_type() == GradebookService.GRADE_TYPE_LETTER) {
+			convertPointsToLetterGrade(gradebook, gradeRecs);
+		} else if (gradebook.getGrade_type() == GradebookService.GRADE_TYPE_PERCENTAGE) {
+			convertPointsToPercentage(gradebook, gradeRecs);
+		}
+
+		Map<Long, Set<String>> studentsWithGradeRec = new HashMap<Long, Set<String>>();
+		for (AssignmentGradeRecord agr : gradeRecs)
+		{
+			Long assignmentId = agr.getAssignment().getId();
+			Map<String, String> studentIdCommentTextMap = commentTextMap.get(assignmentId);
+			String commentText = studentIdCommentTextMap != null ? studentIdCommentTextMap.get(agr.getStudentId()) : null;
+			GradeDefinition gradeDef = convertGradeRecordToGradeDefinition(agr, assignments.get(assignmentId), gradebook, commentText);
+
+			List<GradeDefinition> gradeList = gradesMap.get(assignmentId);
+			if (gradeList == null)
+			{
+				gradeList = new ArrayList<GradeDefinition>();
+				gradesMap.put(assignmentId, gradeList);
+				studentsWithGradeRec.put(assignmentId, new HashSet<String>());
+			}
+			gradeList.add(gradeDef);
+			studentsWithGradeRec.get(assignmentId).add(agr.getStudentId());
+		}
+
+		// if student has a comment but no grade add an empty grade definition with the comment
+		for (Map.Entry<Long, Map<String, String>> entry : commentTextMap.entrySet())
+		{
+			Long assignmentId = entry.getKey();
+			Assignment assignment = assignments.get(assignmentId);
+			Set<String> graded = studentsWithGradeRec.get(assignmentId);
+			for (Map.Entry<String, String> comment : entry.getValue().entrySet())
+			{
+				if (graded == null || !graded.contains(comment.getKey()))
+				{
+					AssignmentGradeRecord emptyGradeRecord = new AssignmentGradeRecord(assignment, comment.getKey(), null);
+					GradeDefinition gradeDef = convertGradeRecordToGradeDefinition(emptyGradeRecord, assignment, gradebook, comment.getValue());
+
+					List<GradeDefinition> gradeList = gradesMap.get(assignmentId);
+					if (gradeList == null)
+					{
+						gradeList = new ArrayList<GradeDefinition>();
+						gradesMap.put(assignmentId, gradeList);
+					}
+					gradeList.add(gradeDef);
+				}
+			}
+		}
+
+		return gradesMap;
+	}
+
+	/**
+	 * Gets all Comments on the gradableObjectIds limited to students specified by studentUids
+	 */
+	private List<Comment> getCommentsForGbItems(final List<Long> gradableObjectIds, final List<String> studentUids)
+	{
+		HibernateCallback hc = new HibernateCallback()
+		{
+			@Override
+			public Object doInHibernate(Session session) throws HibernateException
+			{
+				List<Comment> comments = new ArrayList<Comment>();
+				// For Oracle's "in" limit, iterate over gbItems and students 1000 at a time
+				for (int minGbo = 0; minGbo < gradableObjectIds.size(); minGbo += MAX_NUMBER_OF_SQL_PARAMETERS_IN_LIST)
+				{
+					int maxGbo = Math.min(gradableObjectIds.size(), minGbo + MAX_NUMBER_OF_SQL_PARAMETERS_IN_LIST);
+					for (int minStudent = 0; minStudent < studentUids.size(); minStudent += MAX_NUMBER_OF_SQL_PARAMETERS_IN_LIST)
+					{
+						int maxStudent = Math.min(studentUids.size(), minStudent + MAX_NUMBER_OF_SQL_PARAMETERS_IN_LIST);
+						Query q = session.createQuery("from Comment as c where c.gradableObject.id in (:gradableObjectIds) and c.studentId in (:studentUids)");
+						q.setParameterList("gradableObjectIds", gradableObjectIds.subList(minGbo, maxGbo));
+						q.setParameterList("studentUids", studentUids.subList(minStudent, maxStudent));
+						comments.addAll(q.list());
+					}
+				}
+				return comments;
+			}
+		};
+		return (List<Comment>) getHibernateTemplate().execute(hc);
+	}
+
 	/**
 	 * Converts an AssignmentGradeRecord into a GradeDefinition object.
 	 * @param gradeRecord
@@ -2663,8 +2606,9 @@ public class GradebookServiceHibernateImpl extends BaseHibernateManager implemen
 	        }
 
 	        if (allGradeRecs != null) {
+	            Set<String> students = new HashSet<String>(studentUids);
 	            for (AssignmentGradeRecord gradeRec : allGradeRecs) {
-	                if (studentUids.contains(gradeRec.getStudentId())) {
+	                if (students.contains(gradeRec.getStudentId())) {
 	                    String studentId = gradeRec.getStudentId();
 	                    List<AssignmentGradeRecord> gradeRecList = filteredGradeRecs.get(studentId);
 	                    if (gradeRecList == null) {
@@ -0,0 +1,88 @@
+/**
+ * $Id$
+ * $URL$
+ **************************************************************************
+ * Copyright (c) 2016 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.opensource.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.sakaiproject.entitybroker.providers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.sakaiproject.entitybroker.EntityView;
+import org.sakaiproject.entitybroker.entityprovider.CoreEntityProvider;
+import org.sakaiproject.entitybroker.entityprovider.annotations.EntityCustomAction;
+import org.sakaiproject.entitybroker.entityprovider.capabilities.ActionsExecutable;
+import org.sakaiproject.entitybroker.entityprovider.capabilities.Outputable;
+import org.sakaiproject.entitybroker.entityprovider.extension.ActionReturn;
+import org.sakaiproject.entitybroker.entityprovider.extension.Formats;
+import org.sakaiproject.entitybroker.util.AbstractEntityProvider;
+import org.sakaiproject.memory.api.CacheAdvice;
+import org.sakaiproject.memory.api.MemoryService;
+
+/**
+ * Read only access to the memory service cache workload and sizing advice (admins only),
+ * /direct/memory/advice for all caches, add heap=true to also estimate the heap used by each cache
+ * and /direct/memory/config for just the recommended memory.* settings
+ */
+public class MemoryEntityProvider extends AbstractEntityProvider implements CoreEntityProvider, Outputable, ActionsExecutable {
+
+    private MemoryService memoryService;
+    public void setMemoryService(MemoryService memoryService) {
+        this.memoryService = memoryService;
+    }
+
+    public static String PREFIX = "memory";
+    public String getEntityPrefix() {
+        return PREFIX;
+    }
+
+    @EntityCustomAction(action="advice",viewKey=EntityView.VIEW_LIST)
+    public Object getAdvice(Map<String, Object> params) {
+        checkAdmin();
+        boolean sampleHeap = params != null && "true".equals(params.get("heap"));
+        return new ActionReturn(memoryService.getCacheAdvice(sampleHeap));
+    }
+
+    @EntityCustomAction(action="config",viewKey=EntityView.VIEW_LIST)
+    public Object getRecommendedConfig() {
+        checkAdmin();
+        List<String> config = new ArrayList<String>();
+        for (CacheAdvice advice : memoryService.getCacheAdvice(false)) {
+            if (advice.isChangeRecommended()) {
+                config.add(advice.getRecommendedConfig());
+            }
+        }
+        return new ActionReturn(config);
+    }
+
+    public boolean entityExists(String id) {
+        return false;
+    }
+
+    public String[] getHandledOutputFormats() {
+        return new String[] { Formats.XML, Formats.JSON, Formats.TXT };
+    }
+
+    private void checkAdmin() {
+        String currentUserRef = developerHelperService.getCurrentUserReference();
+        if (! developerHelperService.isUserAdmin(currentUserRef)) {
+            throw new SecurityException("Only admins can access the memory service cache advice, user is not an admin: " + currentUserRef);
+        }
+    }
+
+}
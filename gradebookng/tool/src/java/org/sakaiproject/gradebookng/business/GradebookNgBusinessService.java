@@ -399,7 +399,7 @@ public class GradebookNgBusinessService {
 
 		final Gradebook gradebook = this.getGradebook();
 		if (gradebook != null) {
-			rval = this.gradebookService.getCourseGradeForStudents(gradebook.getUid(), this.getGradeableUsers());
+			rval = this.gradebookService.getCourseGradeForStudents(gradebook.getUid(), studentUuids);
 		}
 		return rval;
 	}
@@ -577,6 +577,69 @@ public class GradebookNgBusinessService {
 		return rval;
 	}
 
+	/**
+	 * Save the grades and comments for an assignment for a number of students in one go, eg for an import. Ignores the concurrency check.
+	 *
+	 * The grades are all checked and compared against the stored grades by the gradebook service, and only those that have changed
+	 * are written, in a single transaction. Students with a null grade only have their comment saved, if it has changed.
+	 *
+	 * @param assignmentId id of the gradebook assignment
+	 * @param gradeDefs the student uuid, grade and comment for each student. The grade is in the gradebook's entry type.
+	 *
+	 * @return OK, or ERROR if a grade or comment was invalid or could not be saved. If a grade was invalid, no grades are saved.
+	 */
+	public GradeSaveResponse saveGradesAndComments(final Long assignmentId, final List<GradeDefinition> gradeDefs) {
+
+		final Gradebook gradebook = this.getGradebook();
+		if (gradebook == null) {
+			return GradeSaveResponse.ERROR;
+		}
+
+		// split out the comment only updates, and check the comments before anything is saved
+		final List<GradeDefinition> grades = new ArrayList<>();
+		final Map<String, String> comments = new HashMap<>();
+		for (final GradeDefinition gradeDef : gradeDefs) {
+			// see saveGrade for the comment length restriction
+			if (StringUtils.length(gradeDef.getGradeComment()) > 500) {
+				log.error("Comment too long. Maximum 500 characters.");
+				return GradeSaveResponse.ERROR;
+			}
+
+			if (gradeDef.getGrade() == null) {
+				comments.put(gradeDef.getStudentUid(), StringUtils.trimToNull(gradeDef.getGradeComment()));
+			} else {
+				grades.add(gradeDef);
+			}
+		}
+
+		try {
+			// note, the service converts the raw grades as it does for saveGrade
+			if (!grades.isEmpty()) {
+				this.gradebookService.saveGradesAndComments(gradebook.getUid(), assignmentId, grades);
+			}
+
+			// get the stored comments in one go, so we only update those that have changed
+			if (!comments.isEmpty()) {
+				final Map<String, String> storedComments = new HashMap<>();
+				final List<GradeDefinition> storedDefs = this.gradebookService.getGradesForStudentsForItem(gradebook.getUid(),
+						assignmentId, new ArrayList<>(comments.keySet()));
+				for (final GradeDefinition def : storedDefs) {
+					storedComments.put(def.getStudentUid(), StringUtils.trimToNull(def.getGradeComment()));
+				}
+
+				for (final Map.Entry<String, String> entry : comments.entrySet()) {
+					if (!StringUtils.equals(storedComments.get(entry.getKey()), entry.getValue())) {
+						this.gradebookService.setAssignmentScoreComment(gradebook.getUid(), assignmentId, entry.getKey(), entry.getValue());
+					}
+				}
+			}
+		} catch (InvalidGradeException | GradebookNotFoundException | AssessmentNotFoundException | IllegalArgumentException e) {
+			log.error("An error occurred saving the grades. " + e.getClass() + ": " + e.getMessage());
+			return GradeSaveResponse.ERROR;
+		}
+		return GradeSaveResponse.OK;
+	}
+
 	/**
 	 * Build the matrix of assignments, students and grades for all students
 	 *
@@ -725,17 +788,11 @@ public class GradebookNgBusinessService {
 		// building the category list
 		final Map<Long, Set<Long>> categoryAssignments = new TreeMap<>();
 
-		// iterate over assignments and get the grades for each
-		// note, the returned list only includes entries where there is a grade
-		// for the user
-		// we also build the category lookup map here
+		// TA permission check. If there are categories and they don't have
+		// access to an assignment's category, skip it
+		final List<Assignment> visibleAssignments = new ArrayList<>();
 		for (final Assignment assignment : assignments) {
-
 			final Long categoryId = assignment.getCategoryId();
-			final Long assignmentId = assignment.getId();
-
-			// TA permission check. If there are categories and they don't have
-			// access to this one, skip it
 			if (role == GbRole.TA) {
 
 				log.debug("TA processing category: " + categoryId);
@@ -744,6 +801,26 @@ public class GradebookNgBusinessService {
 					continue;
 				}
 			}
+			visibleAssignments.add(assignment);
+		}
+
+		// get the grades for all of the assignments in one go, rather than an assignment at a time
+		// note, the returned lists only include entries where there is a grade
+		// for the user
+		final List<Long> visibleAssignmentIds = new ArrayList<>();
+		for (final Assignment assignment : visibleAssignments) {
+			visibleAssignmentIds.add(assignment.getId());
+		}
+		final Map<Long, List<GradeDefinition>> gradeDefs = this.gradebookService.getGradesForStudentsForItems(gradebook.getUid(),
+				visibleAssignmentIds, studentUuids);
+		stopwatch.timeWithContext("buildGradeMatrix", "getGradesForStudentsForItems", stopwatch.getTime());
+
+		// iterate over assignments and add the grades for each
+		// we also build the category lookup map here
+		for (final Assignment assignment : visibleAssignments) {
+
+			final Long categoryId = assignment.getCategoryId();
+			final Long assignmentId = assignment.getId();
 
 			// TA stub out. So that we can support 'per grade' permissions for a
 			// TA, we need a stub record for every student
@@ -772,14 +849,12 @@ public class GradebookNgBusinessService {
 				categoryAssignments.put(categoryId, values);
 			}
 
-			// get grades
-			final List<GradeDefinition> defs = this.gradebookService.getGradesForStudentsForItem(gradebook.getUid(),
-					assignment.getId(), studentUuids);
-			stopwatch.timeWithContext("buildGradeMatrix", "getGradesForStudentsForItem: " + assignment.getId(),
-					stopwatch.getTime());
-
 			// iterate the definitions returned and update the record for each
 			// student with the grades
+			final List<GradeDefinition> defs = gradeDefs.get(assignmentId);
+			if (defs == null) {
+				continue;
+			}
 			for (final GradeDefinition def : defs) {
 				final GbStudentGradeInfo sg = matrix.get(def.getStudentUid());
 
@@ -792,8 +867,6 @@ public class GradebookNgBusinessService {
 					sg.addGrade(assignment.getId(), new GbGradeInfo(def));
 				}
 			}
-			stopwatch.timeWithContext("buildGradeMatrix", "updatedStudentGradeInfo: " + assignment.getId(),
-					stopwatch.getTime());
 		}
 		stopwatch.timeWithContext("buildGradeMatrix", "matrix built", stopwatch.getTime());
 
@@ -24,7 +24,6 @@ import org.sakaiproject.gradebookng.business.GradeSaveResponse;
 import org.sakaiproject.gradebookng.business.GradebookNgBusinessService;
 import org.sakaiproject.gradebookng.business.model.ProcessedGradeItem;
 import org.sakaiproject.gradebookng.business.model.ProcessedGradeItem.Type;
-import org.sakaiproject.gradebookng.business.model.ProcessedGradeItemDetail;
 import org.sakaiproject.gradebookng.business.util.MessageHelper;
 import org.sakaiproject.gradebookng.tool.model.ImportWizardModel;
 import org.sakaiproject.gradebookng.tool.pages.GradebookPage;
@@ -33,6 +32,7 @@ import org.sakaiproject.service.gradebook.shared.Assignment;
 import org.sakaiproject.service.gradebook.shared.AssignmentHasIllegalPointsException;
 import org.sakaiproject.service.gradebook.shared.ConflictingAssignmentNameException;
 import org.sakaiproject.service.gradebook.shared.ConflictingExternalIdException;
+import org.sakaiproject.service.gradebook.shared.GradeDefinition;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -137,60 +137,44 @@ public class GradeImportConfirmationStep extends Panel {
 					itemsToSave.forEach(processedGradeItem -> {
 						log.debug("Processing item: " + processedGradeItem);
 
-						final List<ProcessedGradeItemDetail> processedGradeItemDetails = processedGradeItem.getProcessedGradeItemDetails();
+						//get data
+						// if its an update/modify, this will get the id
+						Long assignmentId = processedGradeItem.getItemId();
 
-						processedGradeItemDetails.forEach(processedGradeItemDetail -> {
-							log.debug("Processing detail: " + processedGradeItemDetail);
+						final String assignmentTitle = StringUtils.trim(processedGradeItem.getItemTitle());
 
-							//get data
-							// if its an update/modify, this will get the id
-							Long assignmentId = processedGradeItem.getItemId();
+						// a newly created assignment will have a null ID here and need a lookup from the map to get the ID
+						if (assignmentId == null) {
+							assignmentId = assignmentMap.get(assignmentTitle);
+						}
+						//TODO if assignmentId is still null, there will be a problem
 
-							final String assignmentTitle = StringUtils.trim(processedGradeItem.getItemTitle());
+						// save the whole column in one go
+						final List<GradeDefinition> gradeDefs = new ArrayList<>();
+						processedGradeItem.getProcessedGradeItemDetails().forEach(processedGradeItemDetail -> {
+							log.debug("Processing detail: " + processedGradeItemDetail);
 
-							// a newly created assignment will have a null ID here and need a lookup from the map to get the ID
-							if (assignmentId == null) {
-								assignmentId = assignmentMap.get(assignmentTitle);
-							}
-							//TODO if assignmentId is still null, there will be a problem
+							final GradeDefinition gradeDef = new GradeDefinition();
+							gradeDef.setStudentUid(processedGradeItemDetail.getStudentUuid());
+							gradeDef.setGradeComment(processedGradeItemDetail.getComment());
 
-							// just save comment
-							if(processedGradeItem.getType() == ProcessedGradeItem.Type.COMMENT) {
-								saveComment(assignmentId, processedGradeItemDetail);
+							// just save comment, otherwise save grade (including comments)
+							if (processedGradeItem.getType() == ProcessedGradeItem.Type.GB_ITEM) {
+								gradeDef.setGrade(processedGradeItemDetail.getGrade());
 							}
+							gradeDefs.add(gradeDef);
+						});
 
-							// save grade (including comments)
-							if(processedGradeItem.getType() == ProcessedGradeItem.Type.GB_ITEM) {
-
-								final GradeSaveResponse response = saveGrade(assignmentId, processedGradeItemDetail);
-
-								// handle the response types
-								switch(response) {
-									case OK:
-										// sweet
-										break;
-									case OVER_LIMIT:
-										// no worries!
-										break;
-									case NO_CHANGE:
-										// Try to save just the comments
-										saveComment(assignmentId, processedGradeItemDetail);
-										break;
-									case CONCURRENT_EDIT:
-										// this will be handled eventually
-										break;
-									case ERROR:
-										// uh oh
-										getSession().error(new ResourceModel("importExport.error.grade").getObject());
-										GradeImportConfirmationStep.this.errors = true;
-										break;
-									default:
-										break;
-								}
-								log.info("Saved grade for assignment id: " +  assignmentId + ", student: " + processedGradeItemDetail.getStudentEid() + ", grade: " + processedGradeItemDetail.getGrade() + ", comment: " + processedGradeItemDetail.getComment() + ", status: " + response);
+						final GradeSaveResponse response = GradeImportConfirmationStep.this.businessService.saveGradesAndComments(assignmentId, gradeDefs);
+						if (response == GradeSaveResponse.ERROR) {
+							if (processedGradeItem.getType() == ProcessedGradeItem.Type.COMMENT) {
+								getSession().error(new ResourceModel("importExport.error.comment").getObject());
+							} else {
+								getSession().error(new ResourceModel("importExport.error.grade").getObject());
 							}
-
-						});
+							GradeImportConfirmationStep.this.errors = true;
+						}
+						log.info("Saved " + gradeDefs.size() + " " + processedGradeItem.getType() + " values for assignment id: " + assignmentId + ", status: " + response);
 					});
 				}
 
@@ -333,25 +317,4 @@ public class GradeImportConfirmationStep extends Panel {
 	}
 
 
-	private void saveComment(final Long assignmentId, final ProcessedGradeItemDetail processedGradeItemDetail) {
-		final String currentComment = StringUtils.trimToNull(GradeImportConfirmationStep.this.businessService.getAssignmentGradeComment(assignmentId, processedGradeItemDetail.getStudentUuid()));
-		final String newComment = StringUtils.trimToNull(processedGradeItemDetail.getComment());
-
-		if (!StringUtils.equals(currentComment, newComment)) {
-			final boolean success = GradeImportConfirmationStep.this.businessService.updateAssignmentGradeComment(assignmentId, processedGradeItemDetail.getStudentUuid(), newComment);
-			log.info("Saving comment: " + success + ", " + assignmentId + ", "+ processedGradeItemDetail.getStudentEid() + ", " + processedGradeItemDetail.getComment());
-			if (!success) {
-				getSession().error(new ResourceModel("importExport.error.comment").getObject());
-				this.errors = true;
-			}
-		}
-	}
-
-	private GradeSaveResponse saveGrade(final Long assignmentId, final ProcessedGradeItemDetail processedGradeItemDetail) {
-		return GradeImportConfirmationStep.this.businessService.saveGrade(assignmentId,
-			processedGradeItemDetail.getStudentUuid(),
-			processedGradeItemDetail.getGrade(), processedGradeItemDetail.getComment());
-	}
-
-
 }
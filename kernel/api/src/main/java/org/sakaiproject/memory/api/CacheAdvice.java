@@ -0,0 +1,223 @@
+/******************************************************************************
+ * $URL$
+ * $Id$
+ ******************************************************************************
+ *
+ * Copyright (c) 2003-2016 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *       http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *****************************************************************************/
+
+package org.sakaiproject.memory.api;
+
+import java.io.Serializable;
+
+/**
+ * The observed workload of a single cache over a sampling window and the sizing recommended for it.
+ * Produced by {@link MemoryService#getCacheAdvice(boolean)}.
+ */
+public class CacheAdvice implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private String cacheName;
+    private long windowSeconds;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long loads;
+    private double averageLoadMillis;
+    private long size = -1;
+    private long heapBytes = -1;
+    private long maxEntries = -1;
+    private long timeToLiveSeconds = -1;
+    private long recommendedMaxEntries = -1;
+    private long recommendedTimeToLiveSeconds = -1;
+    private String reason;
+
+    public CacheAdvice() {}
+
+    public CacheAdvice(String cacheName) {
+        this.cacheName = cacheName;
+    }
+
+    /**
+     * @return hits / (hits + misses) over the window, 0 if there were no requests
+     */
+    public double getHitRatio() {
+        long total = hits + misses;
+        return total > 0 ? (double) hits / total : 0d;
+    }
+
+    /**
+     * @return evictions per second over the window
+     */
+    public double getEvictionRate() {
+        return windowSeconds > 0 ? (double) evictions / windowSeconds : 0d;
+    }
+
+    /**
+     * @return the estimated heap bytes per entry OR -1 if the heap was not sampled
+     */
+    public long getBytesPerEntry() {
+        return (heapBytes >= 0 && size > 0) ? heapBytes / size : -1;
+    }
+
+    /**
+     * @return true if the advisor recommends a different maxEntries or timeToLive than is configured
+     */
+    public boolean isChangeRecommended() {
+        return (recommendedMaxEntries >= 0 && recommendedMaxEntries != maxEntries)
+                || (recommendedTimeToLiveSeconds >= 0 && recommendedTimeToLiveSeconds != timeToLiveSeconds);
+    }
+
+    /**
+     * @return the sakai.properties line which applies the recommendation, null if no change is recommended
+     */
+    public String getRecommendedConfig() {
+        if (!isChangeRecommended()) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder("memory.").append(cacheName).append("=");
+        sb.append("maxElementsInMemory=").append(recommendedMaxEntries >= 0 ? recommendedMaxEntries : maxEntries);
+        long ttl = recommendedTimeToLiveSeconds >= 0 ? recommendedTimeToLiveSeconds : timeToLiveSeconds;
+        if (ttl >= 0) {
+            sb.append(",timeToLiveSeconds=").append(ttl);
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return cacheName + ": window=" + windowSeconds + "s hits=" + hits + " misses=" + misses
+                + " hit%=" + Math.round(getHitRatio() * 100) + " evictions=" + evictions
+                + " loads=" + loads + " avgLoadMs=" + Math.round(averageLoadMillis)
+                + " size=" + size + "/" + maxEntries + " ttl=" + timeToLiveSeconds
+                + (heapBytes >= 0 ? " heapBytes=" + heapBytes : "")
+                + (isChangeRecommended() ? " RECOMMEND " + getRecommendedConfig() : "")
+                + (reason != null ? " (" + reason + ")" : "");
+    }
+
+    public String getCacheName() {
+        return cacheName;
+    }
+
+    public void setCacheName(String cacheName) {
+        this.cacheName = cacheName;
+    }
+
+    public long getWindowSeconds() {
+        return windowSeconds;
+    }
+
+    public void setWindowSeconds(long windowSeconds) {
+        this.windowSeconds = windowSeconds;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public void setHits(long hits) {
+        this.hits = hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public void setMisses(long misses) {
+        this.misses = misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public void setEvictions(long evictions) {
+        this.evictions = evictions;
+    }
+
+    public long getLoads() {
+        return loads;
+    }
+
+    public void setLoads(long loads) {
+        this.loads = loads;
+    }
+
+    public double getAverageLoadMillis() {
+        return averageLoadMillis;
+    }
+
+    public void setAverageLoadMillis(double averageLoadMillis) {
+        this.averageLoadMillis = averageLoadMillis;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    public long getHeapBytes() {
+        return heapBytes;
+    }
+
+    public void setHeapBytes(long heapBytes) {
+        this.heapBytes = heapBytes;
+    }
+
+    public long getMaxEntries() {
+        return maxEntries;
+    }
+
+    public void setMaxEntries(long maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    public long getTimeToLiveSeconds() {
+        return timeToLiveSeconds;
+    }
+
+    public void setTimeToLiveSeconds(long timeToLiveSeconds) {
+        this.timeToLiveSeconds = timeToLiveSeconds;
+    }
+
+    public long getRecommendedMaxEntries() {
+        return recommendedMaxEntries;
+    }
+
+    public void setRecommendedMaxEntries(long recommendedMaxEntries) {
+        this.recommendedMaxEntries = recommendedMaxEntries;
+    }
+
+    public long getRecommendedTimeToLiveSeconds() {
+        return recommendedTimeToLiveSeconds;
+    }
+
+    public void setRecommendedTimeToLiveSeconds(long recommendedTimeToLiveSeconds) {
+        this.recommendedTimeToLiveSeconds = recommendedTimeToLiveSeconds;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    public void setReason(String reason) {
+        this.reason = reason;
+    }
+
+}
@@ -41,4 +41,50 @@ public interface CacheStatistics {
      */
     public long getCacheMisses();
 
+    /**
+     * The number of get requests that were satisfied by the local near cache in front of a distributed cache,
+     * always 0 when the cache has no near cache.
+     * NOTE: these are not counted in {@link #getCacheHits()} which only covers the main cache.
+     */
+    default long getNearCacheHits() {
+        return 0;
+    }
+
+    /**
+     * The number of get requests that were NOT satisfied by the local near cache and had to go to the main cache,
+     * always 0 when the cache has no near cache.
+     */
+    default long getNearCacheMisses() {
+        return 0;
+    }
+
+    /**
+     * The number of entries removed from the cache to make room for others (not counting expiries or explicit removes),
+     * always 0 when the implementation cannot tell.
+     */
+    default long getCacheEvictions() {
+        return 0;
+    }
+
+    /**
+     * The number of times the attached CacheLoader was called to fill a miss.
+     */
+    default long getCacheLoads() {
+        return 0;
+    }
+
+    /**
+     * The total time (in milliseconds) spent in the attached CacheLoader filling misses.
+     */
+    default long getCacheLoadTime() {
+        return 0;
+    }
+
+    /**
+     * The number of entries currently in the cache (on this server), -1 if the implementation cannot tell.
+     */
+    default long getCacheSize() {
+        return -1;
+    }
+
 }
@@ -21,6 +21,7 @@
 
 package org.sakaiproject.memory.api;
 
+import java.util.List;
 import java.util.Properties;
 
 /**
@@ -242,6 +243,17 @@ public interface MemoryService // CacheManager
      */
     public String getStatus();
 
+    /**
+     * Get the observed workload of every cache (hit ratio, eviction rate, load time, size) over the recent window
+     * along with a recommended maxEntries and timeToLive for each. Rates are rolling, they cover the time since
+     * the previous sampling window started (or since the server started for the first call).
+     *
+     * @param sampleHeap if true then also estimate the heap used by each cache by sizing a sample of its entries,
+     *                   this is expensive and should only be done on demand
+     * @return the advice for each cache (sorted by cache name)
+     */
+    List<CacheAdvice> getCacheAdvice(boolean sampleHeap);
+
     /**
      * Construct a Cache. Attempts to keep complete on Event notification by calling the refresher.
      *
@@ -24,6 +24,8 @@ package org.sakaiproject.memory.mock;
 import org.sakaiproject.memory.api.Cache;
 import org.sakaiproject.memory.api.*;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -114,4 +116,9 @@ public class MemoryService implements org.sakaiproject.memory.api.MemoryService
     public String getStatus() {
         return caches.toString();
     }
+
+    @Override
+    public List<CacheAdvice> getCacheAdvice(boolean sampleHeap) {
+        return new ArrayList<CacheAdvice>(0);
+    }
 }
@@ -0,0 +1,194 @@
+/**********************************************************************************
+ * $URL$
+ * $Id$
+ ***********************************************************************************
+ *
+ * Copyright (c) 2016 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.opensource.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **********************************************************************************/
+
+package org.sakaiproject.thread_local.api;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * RequestMemo holds the results of lookups made while processing a single request, so that services can answer the same lookup again
+ * without going back to their (possibly distributed) caches. The RequestFilter binds one into the ThreadLocalManager at the start of
+ * each request and it is dropped with the other thread bindings when the request ends, so outside of a request there is no memo and
+ * {@link #current(ThreadLocalManager)} returns null.
+ * </p>
+ * <p>
+ * Services opt in by looking values up by region (usually the service name) and key before doing the real work, and must remove the
+ * entries (or the whole region) they change. The objects held are handed out as is to every caller in the request.
+ * </p>
+ */
+public class RequestMemo implements ThreadBound
+{
+	/** Key in the ThreadLocalManager for the current request's memo. */
+	public static final String CURRENT_REQUEST_MEMO = "org.sakaiproject.thread_local.api.RequestMemo";
+
+	/** Server wide counts by region: [0] lookups, [1] hits. */
+	protected static final ConcurrentHashMap<String, AtomicLong[]> STATISTICS = new ConcurrentHashMap<String, AtomicLong[]>();
+
+	/** The memoized values by region then key. */
+	protected final Map<String, Map<String, Object>> m_regions = new HashMap<String, Map<String, Object>>();
+
+	/**
+	 * Access the memo for the current request.
+	 *
+	 * @param threadLocalManager
+	 *        The ThreadLocalManager.
+	 * @return The memo bound to the current request, or null if there is none.
+	 */
+	public static RequestMemo current(ThreadLocalManager threadLocalManager)
+	{
+		if (threadLocalManager == null) return null;
+		Object memo = threadLocalManager.get(CURRENT_REQUEST_MEMO);
+		return (memo instanceof RequestMemo) ? (RequestMemo) memo : null;
+	}
+
+	/**
+	 * Find a memoized value, counting the lookup.
+	 *
+	 * @param region
+	 *        The region (service) name.
+	 * @param key
+	 *        The key within the region.
+	 * @return The value, or null if not memoized in this request.
+	 */
+	public Object get(String region, String key)
+	{
+		Map<String, Object> values = m_regions.get(region);
+		Object rv = (values == null) ? null : values.get(key);
+
+		AtomicLong[] counts = statistics(region);
+		counts[0].incrementAndGet();
+		if (rv != null) counts[1].incrementAndGet();
+
+		return rv;
+	}
+
+	/**
+	 * Memoize a value for the rest of the request.
+	 *
+	 * @param region
+	 *        The region (service) name.
+	 * @param key
+	 *        The key within the region.
+	 * @param value
+	 *        The value, or null to remove it.
+	 */
+	public void put(String region, String key, Object value)
+	{
+		if (value == null)
+		{
+			remove(region, key);
+			return;
+		}
+
+		Map<String, Object> values = m_regions.get(region);
+		if (values == null)
+		{
+			values = new HashMap<String, Object>();
+			m_regions.put(region, values);
+		}
+		values.put(key, value);
+	}
+
+	/**
+	 * Forget a memoized value.
+	 *
+	 * @param region
+	 *        The region (service) name.
+	 * @param key
+	 *        The key within the region.
+	 */
+	public void remove(String region, String key)
+	{
+		Map<String, Object> values = m_regions.get(region);
+		if (values != null) values.remove(key);
+	}
+
+	/**
+	 * Forget all the values memoized in a region.
+	 *
+	 * @param region
+	 *        The region (service) name.
+	 */
+	public void removeRegion(String region)
+	{
+		m_regions.remove(region);
+	}
+
+	/**
+	 * Forget all the values memoized in a region whose keys start with a prefix.
+	 *
+	 * @param region
+	 *        The region (service) name.
+	 * @param prefix
+	 *        The key prefix.
+	 */
+	public void removePrefix(String region, String prefix)
+	{
+		Map<String, Object> values = m_regions.get(region);
+		if (values == null) return;
+
+		for (Iterator<String> i = values.keySet().iterator(); i.hasNext();)
+		{
+			if (i.next().startsWith(prefix)) i.remove();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void unbind()
+	{
+		m_regions.clear();
+	}
+
+	/**
+	 * Access the server wide counts of lookups made against request memos.
+	 *
+	 * @return A map of region to {lookups, hits}, where hits are the lookups saved, sorted by region.
+	 */
+	public static Map<String, long[]> getStatistics()
+	{
+		Map<String, long[]> rv = new TreeMap<String, long[]>();
+		for (Map.Entry<String, AtomicLong[]> e : STATISTICS.entrySet())
+		{
+			rv.put(e.getKey(), new long[] { e.getValue()[0].get(), e.getValue()[1].get() });
+		}
+		return rv;
+	}
+
+	protected static AtomicLong[] statistics(String region)
+	{
+		AtomicLong[] counts = STATISTICS.get(region);
+		if (counts == null)
+		{
+			counts = new AtomicLong[] { new AtomicLong(), new AtomicLong() };
+			AtomicLong[] existing = STATISTICS.putIfAbsent(region, counts);
+			if (existing != null) counts = existing;
+		}
+		return counts;
+	}
+}
@@ -36,6 +36,7 @@ import org.sakaiproject.component.api.ServerConfigurationService;
 import org.sakaiproject.component.cover.ComponentManager;
 import org.sakaiproject.event.api.UsageSession;
 import org.sakaiproject.event.api.UsageSessionService;
+import org.sakaiproject.thread_local.api.RequestMemo;
 import org.sakaiproject.thread_local.api.ThreadLocalManager;
 import org.sakaiproject.tool.api.ClosingException;
 import org.sakaiproject.tool.api.RebuildBreakdownService;
@@ -253,6 +254,9 @@ public class RequestFilter implements Filter
 	protected String m_UACompatible = null;
             
 	protected boolean isLTIProviderAllowed = false;
+
+	/** Bind a RequestMemo to each request so services can skip repeated lookups (off by default, see KNL-1241). */
+	protected boolean m_requestMemo = false;
 	// knl-640
 	private String chsDomain;
 	private String appUrl;
@@ -424,6 +428,12 @@ public class RequestFilter implements Filter
 					// some useful info
 					threadLocalManager.set(ServerConfigurationService.CURRENT_SERVER_URL, serverUrl(req));
 
+					// lookups memoized for this request only, dropped with the other bindings in the clear() below
+					if (m_requestMemo)
+					{
+						threadLocalManager.set(RequestMemo.CURRENT_REQUEST_MEMO, new RequestMemo());
+					}
+
 					// make sure we have a session
 					Session s = assureSession(req, resp);
 
@@ -815,6 +825,8 @@ public class RequestFilter implements Filter
 
 		isLTIProviderAllowed = (serverConfigurationService.getString(SAKAI_BLTI_PROVIDER_TOOLS,null)!=null);
 
+		m_requestMemo = serverConfigurationService.getBoolean("request.memo.enabled", false);
+
 		m_redirectRandomNode = serverConfigurationService.getBoolean(SAKAI_CLUSTER_REDIRECT_RANDOM, true);
 
 	}
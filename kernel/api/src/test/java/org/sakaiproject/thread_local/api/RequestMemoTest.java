@@ -0,0 +1,76 @@
+package org.sakaiproject.thread_local.api;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class RequestMemoTest {
+
+    @Test
+    public void testGetPutRemove() {
+        RequestMemo memo = new RequestMemo();
+        Assert.assertNull(memo.get("test.region", "a"));
+        memo.put("test.region", "a", "A");
+        memo.put("test.region", "b", "B");
+        Assert.assertEquals("A", memo.get("test.region", "a"));
+        Assert.assertNull(memo.get("test.other", "a"));
+
+        memo.remove("test.region", "a");
+        Assert.assertNull(memo.get("test.region", "a"));
+        Assert.assertEquals("B", memo.get("test.region", "b"));
+
+        memo.put("test.region", "b", null);
+        Assert.assertNull(memo.get("test.region", "b"));
+    }
+
+    @Test
+    public void testRemoveRegionAndPrefix() {
+        RequestMemo memo = new RequestMemo();
+        memo.put("test.region", "user1@/site/a", "access");
+        memo.put("test.region", "user2@/site/a", "maintain");
+        memo.put("test.other", "x", "X");
+        memo.removePrefix("test.region", "user1@");
+        Assert.assertNull(memo.get("test.region", "user1@/site/a"));
+        Assert.assertEquals("maintain", memo.get("test.region", "user2@/site/a"));
+        memo.removeRegion("test.region");
+        Assert.assertNull(memo.get("test.region", "user2@/site/a"));
+        Assert.assertEquals("X", memo.get("test.other", "x"));
+    }
+
+    @Test
+    public void testUnbindClears() {
+        RequestMemo memo = new RequestMemo();
+        memo.put("test.region", "a", "A");
+        memo.unbind();
+        Assert.assertNull(memo.get("test.region", "a"));
+    }
+
+    @Test
+    public void testStatistics() {
+        RequestMemo memo = new RequestMemo();
+        memo.get("test.stats", "a");
+        memo.put("test.stats", "a", "A");
+        memo.get("test.stats", "a");
+        memo.get("test.stats", "a");
+        long[] counts = RequestMemo.getStatistics().get("test.stats");
+        Assert.assertEquals(3, counts[0]);
+        Assert.assertEquals(2, counts[1]);
+    }
+
+    @Test
+    public void testCurrent() {
+        final Map<String, Object> bindings = new HashMap<String, Object>();
+        ThreadLocalManager tlm = new ThreadLocalManager() {
+            public void set(String name, Object value) { bindings.put(name, value); }
+            public void clear() { bindings.clear(); }
+            public Object get(String name) { return bindings.get(name); }
+        };
+        Assert.assertNull(RequestMemo.current(tlm));
+        Assert.assertNull(RequestMemo.current(null));
+        RequestMemo memo = new RequestMemo();
+        tlm.set(RequestMemo.CURRENT_REQUEST_MEMO, memo);
+        Assert.assertSame(memo, RequestMemo.current(tlm));
+    }
+}
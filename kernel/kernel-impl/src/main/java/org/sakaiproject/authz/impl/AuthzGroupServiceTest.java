@@ -27,6 +27,7 @@ import org.sakaiproject.component.api.ServerConfigurationService;
 import org.sakaiproject.db.api.SqlService;
 import org.sakaiproject.entity.api.EntityManager;
 import org.sakaiproject.event.api.EventTrackingService;
+import org.sakaiproject.thread_local.api.ThreadLocalManager;
 import org.sakaiproject.time.api.TimeService;
 import org.sakaiproject.user.api.UserDirectoryService;
 import org.sakaiproject.tool.api.SessionManager;
@@ -112,6 +113,14 @@ public class AuthzGroupServiceTest extends DbAuthzGroupService
 		return null;
 	}
 
+	/**
+	 * @return the ThreadLocalManager collaborator.
+	 */
+	protected ThreadLocalManager threadLocalManager()
+	{
+		return null;
+	}
+
     @Override
     public Set<String> getMaintainRoles() {
         return null;
@@ -31,6 +31,8 @@ import org.sakaiproject.event.api.EventTrackingService;
 import org.sakaiproject.exception.PermissionException;
 import org.sakaiproject.javax.PagingPosition;
 import org.sakaiproject.site.api.SiteService;
+import org.sakaiproject.thread_local.api.RequestMemo;
+import org.sakaiproject.thread_local.api.ThreadLocalManager;
 import org.sakaiproject.time.api.Time;
 import org.sakaiproject.time.api.TimeService;
 import org.sakaiproject.tool.api.SessionManager;
@@ -59,6 +61,12 @@ public abstract class BaseAuthzGroupService implements AuthzGroupService
 	/** Storage manager for this service. */
 	protected Storage m_storage = null;
 
+	/** The RequestMemo region holding the user roles already looked up in the current request. */
+	protected static final String MEMO_REGION = AuthzGroupService.class.getName();
+
+	/** Marks a user with no role in a group in the RequestMemo. */
+	protected static final String NO_ROLE = "";
+
 	/** The initial portion of a relative access point URL. */
 	protected String m_relativeAccessPoint = null;
 
@@ -250,6 +258,11 @@ public abstract class BaseAuthzGroupService implements AuthzGroupService
 	 */
 	protected abstract UserDirectoryService userDirectoryService();
 
+	/**
+	 * @return the ThreadLocalManager collaborator.
+	 */
+	protected abstract ThreadLocalManager threadLocalManager();
+
 	protected List<AuthzGroupAdvisor> authzGroupAdvisors;
 	
 	protected SiteService siteService;
@@ -639,6 +652,7 @@ public abstract class BaseAuthzGroupService implements AuthzGroupService
 		}
 		// complete the azGroup
 		m_storage.save(azGroup);
+		forgetMemoizedRoles();
 
 		// track it
 		String event = ((BaseAuthzGroup) azGroup).getEvent();
@@ -701,6 +715,7 @@ public abstract class BaseAuthzGroupService implements AuthzGroupService
 		
 		// add user to the azGroup
 		m_storage.addNewUser(azGroup, userId, roleId, maxSize);
+		forgetMemoizedRoles();
 
 		// track it
 		// KNL-523 set the event
@@ -740,6 +755,7 @@ public abstract class BaseAuthzGroupService implements AuthzGroupService
 		}
 		// remove user from the azGroup
 		m_storage.removeUser(azGroup, userId);
+		forgetMemoizedRoles();
 
 		// track it
 		// KNL-523 set the event
@@ -894,6 +910,7 @@ public abstract class BaseAuthzGroupService implements AuthzGroupService
         } // End KNL-1230
 		// complete the azGroup
 		m_storage.remove(azGroup);
+		forgetMemoizedRoles();
 
 		// track it
 		eventTrackingService().post(eventTrackingService().newEvent(SECURE_REMOVE_AUTHZ_GROUP, azGroup.getReference(), true));
@@ -991,7 +1008,36 @@ public abstract class BaseAuthzGroupService implements AuthzGroupService
 	 */
 	public String getUserRole(String userId, String azGroupId)
 	{
-		return m_storage.getUserRole(userId, azGroupId);
+		// the same role is often asked for many times in one request
+		RequestMemo memo = RequestMemo.current(threadLocalManager());
+		if (memo == null)
+		{
+			return m_storage.getUserRole(userId, azGroupId);
+		}
+
+		String key = userId + "@" + azGroupId;
+		String role = (String) memo.get(MEMO_REGION, key);
+		if (role == null)
+		{
+			role = m_storage.getUserRole(userId, azGroupId);
+			// remember "no role" as well
+			memo.put(MEMO_REGION, key, (role == null) ? NO_ROLE : role);
+		}
+		return (NO_ROLE.equals(role)) ? null : role;
+	}
+
+	/**
+	 * Drop the roles (and, as site membership comes from the site's groups, the sites) held in the current request's memo, so the rest
+	 * of this request sees a change to any group.
+	 */
+	protected void forgetMemoizedRoles()
+	{
+		RequestMemo memo = RequestMemo.current(threadLocalManager());
+		if (memo != null)
+		{
+			memo.removeRegion(MEMO_REGION);
+			memo.removeRegion(SiteService.class.getName());
+		}
 	}
 
 	/**
@@ -1052,6 +1098,7 @@ public abstract class BaseAuthzGroupService implements AuthzGroupService
 				Map providerGrants = new ProviderMap(m_provider, m_provider.getGroupRolesForUser(eid));
 
 				m_storage.refreshUser(userId, providerGrants);
+				forgetMemoizedRoles();
 			}
 
 			// update site security for this user - get the user's realms for the three site locks
@@ -30,7 +30,10 @@ import org.sakaiproject.component.api.ServerConfigurationService;
 import org.sakaiproject.component.cover.ComponentManager;
 import org.sakaiproject.event.api.EventTrackingService;
 import org.sakaiproject.memory.api.*;
+import org.sakaiproject.thread_local.api.RequestMemo;
 
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 /**
@@ -50,6 +53,8 @@ public class BaseMemoryService implements MemoryService {
 
     MemoryService memoryService;
 
+    CacheTelemetry cacheTelemetry;
+
     /**
      * Service INIT
      */
@@ -101,12 +106,20 @@ public class BaseMemoryService implements MemoryService {
         if (memoryService == null) {
             throw new IllegalStateException("Unable to INIT MemoryService, no service could be started, system cannot operate with caching");
         }
+        if (serverConfigurationService != null && serverConfigurationService.getBoolean("memory.telemetry.jmx", true)) {
+            cacheTelemetry = new CacheTelemetry(this);
+            cacheTelemetry.register();
+        }
     }
 
     /**
      * Service SHUTDOWN
      */
     public void destroy() {
+        if (cacheTelemetry != null) {
+            cacheTelemetry.unregister();
+            cacheTelemetry = null;
+        }
         if (memoryService != null) {
             if (memoryService instanceof EhcacheMemoryService) {
                 ((EhcacheMemoryService)memoryService).destroy();
@@ -190,7 +203,21 @@ public class BaseMemoryService implements MemoryService {
 
     @Override
     public String getStatus() {
-        return memoryService.getStatus();
+        StringBuilder buf = new StringBuilder(memoryService.getStatus());
+        Map<String, long[]> memoStats = RequestMemo.getStatistics();
+        if (!memoStats.isEmpty()) {
+            // lookups answered from the per request memo never reached the caches above
+            buf.append("\n** Request Memo (lookups, saved)\n");
+            for (Map.Entry<String, long[]> entry : memoStats.entrySet()) {
+                buf.append(entry.getKey()).append(": ").append(entry.getValue()[0]).append(", ").append(entry.getValue()[1]).append("\n");
+            }
+        }
+        return buf.toString();
+    }
+
+    @Override
+    public List<CacheAdvice> getCacheAdvice(boolean sampleHeap) {
+        return memoryService.getCacheAdvice(sampleHeap);
     }
 
     // DEPRECATED METHODS BELOW
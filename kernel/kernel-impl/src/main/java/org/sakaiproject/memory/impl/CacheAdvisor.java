@@ -0,0 +1,175 @@
+/******************************************************************************
+ * $URL$
+ * $Id$
+ ******************************************************************************
+ *
+ * Copyright (c) 2003-2016 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *       http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *****************************************************************************/
+
+package org.sakaiproject.memory.impl;
+
+import org.sakaiproject.memory.api.CacheAdvice;
+import org.sakaiproject.memory.api.CacheStatistics;
+import org.sakaiproject.memory.api.Configuration;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Turns the cumulative statistics of a cache into rolling workload figures and a sizing recommendation.
+ * A baseline sample is kept per cache and replaced once it is older than the window,
+ * the figures always cover the time since the previous baseline (so between one and two windows).
+ *
+ * The rules are deliberately simple:
+ * <ul>
+ * <li>a cache which is full and evicting a meaningful share of its misses should be allowed to grow</li>
+ * <li>a large cache which stays mostly empty and never evicts can be shrunk</li>
+ * <li>a cache whose misses are expensive to load and which expires entries long before it fills up can keep them longer</li>
+ * </ul>
+ */
+public class CacheAdvisor {
+
+    /** a cache is "full" above this share of maxEntries */
+    static final double FULL = 0.9d;
+    /** a cache is "mostly empty" below this share of maxEntries */
+    static final double EMPTY = 0.25d;
+    /** evictions above this share of misses mean the cache is too small */
+    static final double EVICTING = 0.1d;
+    /** never recommend shrinking below this many entries */
+    static final long MIN_ENTRIES = 1000;
+    /** loads slower than this (ms) are expensive */
+    static final double SLOW_LOAD_MILLIS = 20d;
+    /** never recommend a time to live longer than this (seconds) */
+    static final long MAX_TTL = 3600;
+
+    private final long windowMillis;
+    private final Sample start = new Sample(System.currentTimeMillis());
+    private final ConcurrentHashMap<String, Sample[]> samples = new ConcurrentHashMap<String, Sample[]>();
+
+    /**
+     * @param windowSeconds the length of the rolling window
+     */
+    public CacheAdvisor(long windowSeconds) {
+        this.windowMillis = Math.max(1, windowSeconds) * 1000L;
+    }
+
+    /**
+     * @param name the cache name
+     * @param stats the current (cumulative) statistics for the cache
+     * @param config [OPTIONAL] the cache configuration, null if not known (no sizing recommendation is made)
+     * @param heapBytes the estimated heap use of the cache, -1 if not sampled
+     * @return the advice for this cache
+     */
+    public CacheAdvice advise(String name, CacheStatistics stats, Configuration config, long heapBytes) {
+        Sample current = new Sample(stats);
+        Sample previous = roll(name, current);
+
+        CacheAdvice advice = new CacheAdvice(name);
+        advice.setWindowSeconds((current.time - previous.time) / 1000L);
+        // counters go back to zero when a cache is cleared so never report a negative delta
+        advice.setHits(Math.max(0, current.hits - previous.hits));
+        advice.setMisses(Math.max(0, current.misses - previous.misses));
+        advice.setEvictions(Math.max(0, current.evictions - previous.evictions));
+        long loads = Math.max(0, current.loads - previous.loads);
+        advice.setLoads(loads);
+        advice.setAverageLoadMillis(loads > 0 ? (double) Math.max(0, current.loadTime - previous.loadTime) / loads : 0d);
+        advice.setSize(stats.getCacheSize());
+        advice.setHeapBytes(heapBytes);
+        if (config != null) {
+            advice.setMaxEntries(config.getMaxEntries());
+            advice.setTimeToLiveSeconds(config.isEternal() ? 0 : config.getTimeToLiveSeconds());
+            recommend(advice);
+        }
+        return advice;
+    }
+
+    /**
+     * Apply the sizing rules to the observed figures
+     * @param advice the advice with the figures and configuration filled in
+     */
+    void recommend(CacheAdvice advice) {
+        long max = advice.getMaxEntries();
+        long size = advice.getSize();
+        long ttl = advice.getTimeToLiveSeconds();
+        if (max <= 0 || size < 0) {
+            advice.setReason("size or maxEntries unknown");
+            return;
+        }
+        double fill = (double) size / max;
+        if (fill >= FULL && advice.getEvictions() > EVICTING * Math.max(1, advice.getMisses())) {
+            advice.setRecommendedMaxEntries(max * 2);
+            advice.setReason("full and evicting " + advice.getEvictions() + " entries for " + advice.getMisses() + " misses");
+        } else if (fill < EMPTY && max > MIN_ENTRIES && advice.getEvictions() == 0) {
+            advice.setRecommendedMaxEntries(Math.max(MIN_ENTRIES, size * 2));
+            advice.setReason("only " + Math.round(fill * 100) + "% full and never evicting");
+        } else if (ttl > 0 && ttl < MAX_TTL && fill < FULL && advice.getEvictions() == 0
+                && advice.getAverageLoadMillis() >= SLOW_LOAD_MILLIS && advice.getHitRatio() < 0.9d) {
+            advice.setRecommendedTimeToLiveSeconds(Math.min(MAX_TTL, ttl * 2));
+            advice.setReason("misses cost " + Math.round(advice.getAverageLoadMillis()) + "ms to load and entries expire before the cache fills");
+        } else {
+            advice.setReason("no change");
+        }
+    }
+
+    /**
+     * @return the sample to compare the current one against
+     */
+    private Sample roll(String name, Sample current) {
+        Sample[] pair = samples.get(name);
+        if (pair == null) {
+            // first sample, figures are cumulative since the advisor started
+            pair = samples.putIfAbsent(name, new Sample[] { start, current });
+            if (pair == null) {
+                return start;
+            }
+        }
+        synchronized (pair) {
+            if (current.time - pair[1].time >= windowMillis) {
+                pair[0] = pair[1];
+                pair[1] = current;
+            }
+            return pair[0];
+        }
+    }
+
+    private static class Sample {
+        final long time;
+        final long hits;
+        final long misses;
+        final long evictions;
+        final long loads;
+        final long loadTime;
+
+        /** an empty sample taken at the given time */
+        Sample(long time) {
+            this.time = time;
+            this.hits = 0;
+            this.misses = 0;
+            this.evictions = 0;
+            this.loads = 0;
+            this.loadTime = 0;
+        }
+
+        Sample(CacheStatistics stats) {
+            this.time = System.currentTimeMillis();
+            this.hits = stats.getCacheHits();
+            this.misses = stats.getCacheMisses();
+            this.evictions = stats.getCacheEvictions();
+            this.loads = stats.getCacheLoads();
+            this.loadTime = stats.getCacheLoadTime();
+        }
+    }
+
+}
@@ -0,0 +1,58 @@
+/******************************************************************************
+ * $URL$
+ * $Id$
+ ******************************************************************************
+ *
+ * Copyright (c) 2003-2016 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *       http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *****************************************************************************/
+
+package org.sakaiproject.memory.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the calls to a cache's CacheLoader and the time spent in them.
+ * One of these is shared by every Sakai cache wrapper for the same underlying cache.
+ */
+public class CacheLoadStatistics {
+
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong loadNanos = new AtomicLong();
+
+    /**
+     * Record one CacheLoader call
+     * @param nanos the time the call took (in nanoseconds)
+     */
+    public void record(long nanos) {
+        loads.incrementAndGet();
+        loadNanos.addAndGet(nanos);
+    }
+
+    /**
+     * @return the number of CacheLoader calls
+     */
+    public long getLoads() {
+        return loads.get();
+    }
+
+    /**
+     * @return the total time spent in the CacheLoader (in milliseconds)
+     */
+    public long getLoadTime() {
+        return loadNanos.get() / 1000000L;
+    }
+
+}
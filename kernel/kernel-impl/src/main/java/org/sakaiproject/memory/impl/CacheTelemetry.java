@@ -0,0 +1,109 @@
+/******************************************************************************
+ * $URL$
+ * $Id$
+ ******************************************************************************
+ *
+ * Copyright (c) 2003-2016 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *       http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *****************************************************************************/
+
+package org.sakaiproject.memory.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sakaiproject.memory.api.CacheAdvice;
+import org.sakaiproject.memory.api.MemoryService;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Exposes the MemoryService cache advice as an MBean (org.sakaiproject:type=MemoryService,name=CacheTelemetry)
+ */
+public class CacheTelemetry implements CacheTelemetryMBean {
+
+    static final String OBJECT_NAME = "org.sakaiproject:type=MemoryService,name=CacheTelemetry";
+
+    private static final Logger log = LoggerFactory.getLogger(CacheTelemetry.class);
+
+    private final MemoryService memoryService;
+    private ObjectName objectName;
+
+    public CacheTelemetry(MemoryService memoryService) {
+        this.memoryService = memoryService;
+    }
+
+    /**
+     * Register this with the platform MBean server, failures are logged and otherwise ignored
+     */
+    public void register() {
+        try {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (mBeanServer.isRegistered(name)) {
+                mBeanServer.unregisterMBean(name);
+            }
+            mBeanServer.registerMBean(this, name);
+            objectName = name;
+        } catch (Exception e) {
+            log.warn("Unable to register cache telemetry MBean (" + OBJECT_NAME + "): " + e);
+        }
+    }
+
+    public void unregister() {
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (Exception e) {
+                log.warn("Unable to unregister cache telemetry MBean (" + OBJECT_NAME + "): " + e);
+            }
+            objectName = null;
+        }
+    }
+
+    @Override
+    public String[] getReport() {
+        return report(false);
+    }
+
+    @Override
+    public String[] getReportWithHeapSizes() {
+        return report(true);
+    }
+
+    @Override
+    public String[] getRecommendedConfig() {
+        List<String> lines = new ArrayList<String>();
+        for (CacheAdvice advice : memoryService.getCacheAdvice(false)) {
+            if (advice.isChangeRecommended()) {
+                lines.add(advice.getRecommendedConfig());
+            }
+        }
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    private String[] report(boolean sampleHeap) {
+        List<CacheAdvice> advice = memoryService.getCacheAdvice(sampleHeap);
+        String[] lines = new String[advice.size()];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = advice.get(i).toString();
+        }
+        return lines;
+    }
+
+}
@@ -0,0 +1,45 @@
+/******************************************************************************
+ * $URL$
+ * $Id$
+ ******************************************************************************
+ *
+ * Copyright (c) 2003-2016 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *       http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *****************************************************************************/
+
+package org.sakaiproject.memory.impl;
+
+/**
+ * JMX view of the cache workload and sizing advice, see {@link org.sakaiproject.memory.api.MemoryService#getCacheAdvice(boolean)}
+ */
+public interface CacheTelemetryMBean {
+
+    /**
+     * @return one line per cache with the workload seen over the advisor window and any recommended change
+     */
+    String[] getReport();
+
+    /**
+     * Same as {@link #getReport()} but also estimates the heap used by each cache, this can be slow for large caches
+     * @return one line per cache
+     */
+    String[] getReportWithHeapSizes();
+
+    /**
+     * @return the memory.* config lines for the caches which have a recommended change
+     */
+    String[] getRecommendedConfig();
+
+}
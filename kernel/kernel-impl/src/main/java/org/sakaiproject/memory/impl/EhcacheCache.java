@@ -49,6 +49,11 @@ public class EhcacheCache<K, V> extends BasicCache<K, V> implements CacheEventLi
      */
     protected Ehcache cache;
 
+    /**
+     * Counts the loader calls for this cache (shared with other wrappers of the same ehcache)
+     */
+    protected CacheLoadStatistics loadStatistics;
+
     /**
      * Construct the Cache
      * Set the listeners and cache refreshers later
@@ -56,7 +61,19 @@ public class EhcacheCache<K, V> extends BasicCache<K, V> implements CacheEventLi
      * @param cache the ehcache that backs this Sakai cache
      */
     public EhcacheCache(Ehcache cache) {
+        this(cache, new CacheLoadStatistics());
+    }
+
+    /**
+     * Construct the Cache
+     * Set the listeners and cache refreshers later
+     *
+     * @param cache the ehcache that backs this Sakai cache
+     * @param loadStatistics the loader call counters for this cache
+     */
+    public EhcacheCache(Ehcache cache, CacheLoadStatistics loadStatistics) {
         super(cache.getName());
+        this.loadStatistics = loadStatistics;
         this.cache = cache;
         // check if distributed
         if (cache.getCacheConfiguration() != null && cache.getCacheConfiguration().getTerracottaConfiguration() != null) {
@@ -86,9 +103,11 @@ public class EhcacheCache<K, V> extends BasicCache<K, V> implements CacheEventLi
         if (element == null) {
             if (loader != null) {
                 // trigger the cache loader on cache miss
+                final long start = System.nanoTime();
                 try {
                     //noinspection unchecked
                     value = (V) loader.load(key);
+                    loadStatistics.record(System.nanoTime() - start);
                 } catch (Exception e1) {
                     value = null;
                     log.error("Cache loader failed trying to load (" + key + ") for cache (" + getName() + "), return value will be null:" + e1, e1);
@@ -182,7 +201,7 @@ public class EhcacheCache<K, V> extends BasicCache<K, V> implements CacheEventLi
         if (this.cache == null) {
             throw new IllegalStateException("Cannot get stats, no cache exists");
         }
-        return new EhcacheCacheStatistics(this.cache);
+        return new EhcacheCacheStatistics(this.cache, this.loadStatistics);
     }
 
     @Override
@@ -369,10 +388,22 @@ public class EhcacheCache<K, V> extends BasicCache<K, V> implements CacheEventLi
     public static class EhcacheCacheStatistics implements CacheStatistics {
         final long hits;
         final long misses;
+        final long evictions;
+        final long size;
+        final long loads;
+        final long loadTime;
 
         public EhcacheCacheStatistics(Ehcache cache) {
+            this(cache, null);
+        }
+
+        public EhcacheCacheStatistics(Ehcache cache, CacheLoadStatistics loadStatistics) {
             this.hits = cache.getStatistics().getCacheHits();
             this.misses = cache.getStatistics().getCacheMisses();
+            this.evictions = cache.getStatistics().getEvictionCount();
+            this.size = cache.getStatistics().getObjectCount();
+            this.loads = loadStatistics != null ? loadStatistics.getLoads() : 0;
+            this.loadTime = loadStatistics != null ? loadStatistics.getLoadTime() : 0;
         }
 
         @Override
@@ -384,6 +415,26 @@ public class EhcacheCache<K, V> extends BasicCache<K, V> implements CacheEventLi
         public long getCacheMisses() {
             return misses;
         }
+
+        @Override
+        public long getCacheEvictions() {
+            return evictions;
+        }
+
+        @Override
+        public long getCacheLoads() {
+            return loads;
+        }
+
+        @Override
+        public long getCacheLoadTime() {
+            return loadTime;
+        }
+
+        @Override
+        public long getCacheSize() {
+            return size;
+        }
     }
 
 }
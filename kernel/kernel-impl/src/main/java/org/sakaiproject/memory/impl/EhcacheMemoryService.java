@@ -23,8 +23,10 @@ package org.sakaiproject.memory.impl;
 
 import net.sf.ehcache.CacheManager;
 import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
 import net.sf.ehcache.config.CacheConfiguration;
 import net.sf.ehcache.config.Configuration;
+import net.sf.ehcache.pool.sizeof.ReflectionSizeOf;
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,14 +34,17 @@ import org.sakaiproject.authz.api.SecurityService;
 import org.sakaiproject.component.api.ServerConfigurationService;
 import org.sakaiproject.component.cover.ComponentManager;
 import org.sakaiproject.memory.api.Cache;
+import org.sakaiproject.memory.api.CacheAdvice;
 import org.sakaiproject.memory.api.CacheRefresher;
 import org.sakaiproject.memory.api.MemoryService;
 import org.sakaiproject.memory.util.CacheInitializer;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Properties;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Ehcache based implementation of the MemoryService API which is meant to be friendly to distributed cache management
@@ -53,6 +58,10 @@ import java.util.UUID;
 public class EhcacheMemoryService implements MemoryService {
 
     final Logger log = LoggerFactory.getLogger(EhcacheMemoryService.class);
+    /**
+     * number of entries measured when estimating the heap used by a cache
+     */
+    static final int HEAP_SAMPLE_SIZE = 20;
 
     CacheManager cacheManager;
     /**
@@ -61,6 +70,14 @@ public class EhcacheMemoryService implements MemoryService {
      */
     SecurityService securityService;
     ServerConfigurationService serverConfigurationService;
+    /**
+     * loader call counters by cache name, shared by all the EhcacheCache wrappers for a cache
+     */
+    final ConcurrentHashMap<String, CacheLoadStatistics> loadStatistics = new ConcurrentHashMap<String, CacheLoadStatistics>();
+    /**
+     * lazy loaded, see #getCacheAdvice
+     */
+    volatile CacheAdvisor cacheAdvisor;
 
     public EhcacheMemoryService() {}
 
@@ -125,12 +142,12 @@ public class EhcacheMemoryService implements MemoryService {
 
     @Override
     public <K, V, C extends org.sakaiproject.memory.api.Configuration<K, V>> Cache createCache(String cacheName, C configuration){
-        return new EhcacheCache(makeEhcache(cacheName, configuration));
+        return new EhcacheCache(makeEhcache(cacheName, configuration), getLoadStatistics(cacheName));
     }
 
     @Override
     public Cache getCache(String cacheName) {
-        return new EhcacheCache(makeEhcache(cacheName, null));
+        return new EhcacheCache(makeEhcache(cacheName, null), getLoadStatistics(cacheName));
     }
 
     @Override
@@ -148,6 +165,7 @@ public class EhcacheMemoryService implements MemoryService {
         if (this.cacheManager != null) {
             this.cacheManager.removeCache(cacheName);
         }
+        loadStatistics.remove(cacheName);
     }
 
     @Override
@@ -210,7 +228,7 @@ public class EhcacheMemoryService implements MemoryService {
 
         // summary (cache descriptions)
         for (Ehcache cache : caches) {
-            Cache c = new EhcacheCache(cache);
+            Cache c = new EhcacheCache(cache, getLoadStatistics(cache.getName()));
             buf.append(c.getDescription()).append("\n");
         }
 
@@ -286,6 +304,72 @@ public class EhcacheMemoryService implements MemoryService {
         return rv;
     }
 
+    @Override
+    public List<CacheAdvice> getCacheAdvice(boolean sampleHeap) {
+        if (cacheAdvisor == null) {
+            cacheAdvisor = new CacheAdvisor(serverConfigurationService.getInt("memory.advisor.window", 900));
+        }
+        String[] allCacheNames = cacheManager.getCacheNames();
+        Arrays.sort(allCacheNames);
+        List<CacheAdvice> advice = new ArrayList<CacheAdvice>(allCacheNames.length);
+        for (String cacheName : allCacheNames) {
+            Ehcache cache = cacheManager.getCache(cacheName);
+            if (cache == null) {
+                continue; // removed since we got the names
+            }
+            EhcacheCache c = new EhcacheCache(cache, getLoadStatistics(cacheName));
+            long heapBytes = sampleHeap ? estimateHeapBytes(cache) : -1;
+            advice.add(cacheAdvisor.advise(cacheName, c.getCacheStatistics(), c.getConfiguration(), heapBytes));
+        }
+        return advice;
+    }
+
+    /**
+     * Estimates the heap used by the entries in a cache by measuring a small sample of them,
+     * this walks the object graphs of the sampled entries so it is only done when asked for
+     * @param cache the ehcache
+     * @return the estimated bytes OR -1 if the estimate failed
+     */
+    private long estimateHeapBytes(Ehcache cache) {
+        try {
+            int size = cache.getSize();
+            if (size <= 0) {
+                return 0;
+            }
+            List<?> keys = cache.getKeysNoDuplicateCheck();
+            List<Object> sample = new ArrayList<Object>(HEAP_SAMPLE_SIZE * 2);
+            for (Object key : keys) {
+                if (sample.size() >= HEAP_SAMPLE_SIZE * 2) {
+                    break;
+                }
+                Element element = cache.getQuiet(key); // does not touch the stats
+                if (element != null) {
+                    sample.add(key);
+                    sample.add(element.getObjectValue());
+                }
+            }
+            if (sample.isEmpty()) {
+                return 0;
+            }
+            long sampled = new ReflectionSizeOf().deepSizeOf(1000, true, sample.toArray()).getCalculated();
+            return sampled * size / (sample.size() / 2);
+        } catch (Exception e) {
+            log.debug("Unable to estimate heap size of cache (" + cache.getName() + "): " + e);
+            return -1;
+        }
+    }
+
+    private CacheLoadStatistics getLoadStatistics(String cacheName) {
+        CacheLoadStatistics stats = loadStatistics.get(cacheName);
+        if (stats == null) {
+            CacheLoadStatistics existing = loadStatistics.putIfAbsent(cacheName, stats = new CacheLoadStatistics());
+            if (existing != null) {
+                stats = existing;
+            }
+        }
+        return stats;
+    }
+
     /**
      * Simple code duplication reduction
      * Helps with generating the config strings
@@ -21,18 +21,28 @@
 
 package org.sakaiproject.memory.impl;
 
+import com.hazelcast.core.EntryEvent;
+import com.hazelcast.core.EntryListener;
 import com.hazelcast.core.IMap;
+import com.hazelcast.core.ITopic;
+import com.hazelcast.core.Message;
+import com.hazelcast.core.MessageListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sakaiproject.memory.api.CacheLoader;
 import org.sakaiproject.memory.api.CacheStatistics;
 
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Contains Hazelcast implementation related to a HC Map based cache.
+ * Optionally keeps a {@link NearCache} (local L1) in front of the distributed map,
+ * which is invalidated by Hazelcast entry events from every member of the cluster.
+ * Hazelcast 3.2 sends no entry events for {@link IMap#clear()} so clears are sent to the other members on a topic.
  *
  * @author Aaron Zeckoski (azeckoski @ unicon.net) (azeckoski @ gmail.com)
  */
@@ -41,6 +51,30 @@ public class HazelcastCache<K, V> extends BasicMapCache<K, V> {
 
     private IMap<K, V> cache;
 
+    /**
+     * Optional local L1, null if not configured for this cache
+     */
+    private NearCache<K, V> nearCache;
+
+    /**
+     * id of the entry listener which keeps the near cache in sync, null if there is no near cache
+     */
+    private String nearCacheListenerId;
+
+    /**
+     * topic on which a clear of this cache is announced to every member, null if there is no near cache
+     */
+    private ITopic<String> clearTopic;
+
+    /**
+     * id of the clear topic listener, null if there is no near cache
+     */
+    private String clearListenerId;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final CacheLoadStatistics loadStatistics = new CacheLoadStatistics();
+
     /**
      * Construct the Cache
      * Set the listeners and cache refreshers later
@@ -48,7 +82,99 @@ public class HazelcastCache<K, V> extends BasicMapCache<K, V> {
      * @param hcMap the hazelcast Map (IMap)
      */
     public HazelcastCache(IMap hcMap) {
-        super(hcMap.getName(), hcMap);
+        this(hcMap, null, null);
+    }
+
+    /**
+     * Construct the Cache with a local near cache in front of it
+     *
+     * @param hcMap the hazelcast Map (IMap)
+     * @param nearCache [OPTIONAL] the local L1 cache, null for none
+     * @param clearTopic the topic which announces clears of this cache, required if there is a near cache
+     */
+    public HazelcastCache(IMap hcMap, NearCache<K, V> nearCache, ITopic<String> clearTopic) {
+        super(hcMap.getName());
+        //noinspection unchecked
+        this.cache = hcMap;
+        //noinspection unchecked
+        super.cache = hcMap;
+        if (nearCache != null) {
+            this.nearCache = nearCache;
+            //noinspection unchecked
+            this.nearCacheListenerId = this.cache.addEntryListener(new NearCacheInvalidator(), false);
+            if (clearTopic == null) {
+                throw new IllegalArgumentException("clearTopic is required for a near cache on hcCache (" + getName() + ")");
+            }
+            this.clearTopic = clearTopic;
+            this.clearListenerId = clearTopic.addMessageListener(new MessageListener<String>() {
+                @Override
+                public void onMessage(Message<String> message) {
+                    HazelcastCache.this.nearCache.clear();
+                }
+            });
+        }
+    }
+
+    @Override
+    public V get(K key) {
+        V value;
+        Object reservation = null;
+        if (nearCache != null) {
+            value = nearCache.get(key);
+            if (value != null) {
+                return value;
+            }
+            // an invalidation arriving during the remote read drops this, so a stale value is never held
+            reservation = nearCache.reserve(key);
+        }
+        value = cache.get(key);
+        if (value == null) {
+            misses.incrementAndGet();
+            if (loader != null) {
+                // trigger the cache loader on cache miss
+                final long start = System.nanoTime();
+                try {
+                    //noinspection unchecked
+                    value = (V) loader.load(key);
+                    loadStatistics.record(System.nanoTime() - start);
+                } catch (Exception e1) {
+                    value = null;
+                    log.error("Cache loader failed trying to load (" + key + ") for cache (" + getName() + "), return value will be null:" + e1, e1);
+                }
+            }
+        } else {
+            hits.incrementAndGet();
+        }
+        if (nearCache != null) {
+            nearCache.put(key, value, reservation);
+        }
+        return value;
+    }
+
+    @Override
+    public void put(K key, V payload) {
+        if (nearCache != null) {
+            nearCache.invalidate(key);
+        }
+        cache.put(key, payload);
+    }
+
+    @Override
+    public boolean remove(K key) {
+        if (nearCache != null) {
+            nearCache.invalidate(key);
+        }
+        return cache.remove(key) != null;
+    }
+
+    @Override
+    public void clear() {
+        cache.clear();
+        if (nearCache != null) {
+            nearCache.clear();
+            // the other members get no entry events for the clear
+            clearTopic.publish(getName());
+        }
     }
 
     @Override
@@ -63,7 +189,8 @@ public class HazelcastCache<K, V> extends BasicMapCache<K, V> {
 
     @Override
     public String getDescription() {
-        return "HCMap("+getName()+"):"+cache.getLocalMapStats(); // TODO we really want the cluster stats
+        return "HCMap("+getName()+"):"+cache.getLocalMapStats() // TODO we really want the cluster stats
+                + (nearCache != null ? " " + nearCache : "");
     }
 
     @Override
@@ -73,15 +200,43 @@ public class HazelcastCache<K, V> extends BasicMapCache<K, V> {
 
     @Override
     public CacheStatistics getCacheStatistics() {
+        final long hitCount = hits.get();
+        final long missCount = misses.get();
+        final long nearHitCount = (nearCache != null) ? nearCache.getHits() : 0;
+        final long nearMissCount = (nearCache != null) ? nearCache.getMisses() : 0;
+        final long loadCount = loadStatistics.getLoads();
+        final long loadTime = loadStatistics.getLoadTime();
+        // entries held by this member only, the cluster wide size() is a remote call
+        final long size = cache.getLocalMapStats().getOwnedEntryCount();
         return new CacheStatistics() {
             @Override
             public long getCacheHits() {
-                return 0;
-            } // TODO get real numbers
+                return hitCount;
+            }
             @Override
             public long getCacheMisses() {
-                return 0;
-            } // TODO get real numbers
+                return missCount;
+            }
+            @Override
+            public long getNearCacheHits() {
+                return nearHitCount;
+            }
+            @Override
+            public long getNearCacheMisses() {
+                return nearMissCount;
+            }
+            @Override
+            public long getCacheLoads() {
+                return loadCount;
+            }
+            @Override
+            public long getCacheLoadTime() {
+                return loadTime;
+            }
+            @Override
+            public long getCacheSize() {
+                return size;
+            }
         };
     }
 
@@ -90,7 +245,21 @@ public class HazelcastCache<K, V> extends BasicMapCache<K, V> {
         Properties p = new Properties();
         p.put("name", getName());
         p.put("class", this.getClass().getSimpleName());
-        // TODO fill in more info about the cache (like stats)
+        p.put("distributed", isDistributed());
+        p.put("nearCache", nearCache != null);
+        if (nearCache != null) {
+            p.put("nearCacheMaxEntries", nearCache.getMaxEntries());
+            p.put("nearCacheTimeToLiveSecs", nearCache.getTimeToLiveSeconds());
+        }
+        if (includeExpensiveDetails) {
+            p.put("hits", hits.get());
+            p.put("misses", misses.get());
+            if (nearCache != null) {
+                p.put("nearCacheSize", nearCache.size());
+                p.put("nearCacheHits", nearCache.getHits());
+                p.put("nearCacheMisses", nearCache.getMisses());
+            }
+        }
         return p;
     }
 
@@ -98,12 +267,37 @@ public class HazelcastCache<K, V> extends BasicMapCache<K, V> {
 
     @Override
     public Map<K, V> getAll(Set<? extends K> keys) {
-        //noinspection unchecked
-        return cache.getAll((Set<K>) keys);
+        if (nearCache == null) {
+            //noinspection unchecked
+            return cache.getAll((Set<K>) keys);
+        }
+        HashMap<K, V> map = new HashMap<>();
+        HashMap<K, Object> remote = new HashMap<>();
+        for (K key : keys) {
+            V value = nearCache.get(key);
+            if (value != null) {
+                map.put(key, value);
+            } else {
+                remote.put(key, nearCache.reserve(key));
+            }
+        }
+        if (!remote.isEmpty()) {
+            Map<K, V> found = cache.getAll(remote.keySet());
+            for (Map.Entry<K, Object> entry : remote.entrySet()) {
+                nearCache.put(entry.getKey(), found.get(entry.getKey()), entry.getValue());
+            }
+            map.putAll(found);
+        }
+        return map;
     }
 
     @Override
     public void putAll(Map<? extends K, ? extends V> map) {
+        if (nearCache != null) {
+            for (K key : map.keySet()) {
+                nearCache.invalidate(key);
+            }
+        }
         //noinspection unchecked
         cache.putAll(map);
     }
@@ -115,14 +309,47 @@ public class HazelcastCache<K, V> extends BasicMapCache<K, V> {
                 if (key == null) {
                     throw new NullPointerException("keys Set for removeAll cannot contain nulls (but it does)");
                 }
-                cache.remove(key);
+                remove(key);
             }
         }
     }
 
     @Override
     public void close() {
+        if (nearCacheListenerId != null) {
+            this.cache.removeEntryListener(nearCacheListenerId);
+            nearCacheListenerId = null;
+        }
+        if (clearListenerId != null) {
+            clearTopic.removeMessageListener(clearListenerId);
+            clearListenerId = null;
+        }
+        if (nearCache != null) {
+            nearCache.clear();
+        }
         this.cache.destroy();
     }
 
+    /**
+     * Drops the near cache copy of an entry whenever it changes on any member of the cluster
+     */
+    private class NearCacheInvalidator implements EntryListener<K, V> {
+        @Override
+        public void entryAdded(EntryEvent<K, V> event) {
+            nearCache.invalidate(event.getKey());
+        }
+        @Override
+        public void entryRemoved(EntryEvent<K, V> event) {
+            nearCache.invalidate(event.getKey());
+        }
+        @Override
+        public void entryUpdated(EntryEvent<K, V> event) {
+            nearCache.invalidate(event.getKey());
+        }
+        @Override
+        public void entryEvicted(EntryEvent<K, V> event) {
+            nearCache.invalidate(event.getKey());
+        }
+    }
+
 }
@@ -29,6 +29,7 @@ import com.hazelcast.core.DistributedObject;
 import com.hazelcast.core.Hazelcast;
 import com.hazelcast.core.HazelcastInstance;
 import com.hazelcast.core.IMap;
+import com.hazelcast.core.ITopic;
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,11 +37,13 @@ import org.sakaiproject.authz.api.SecurityService;
 import org.sakaiproject.component.api.ServerConfigurationService;
 import org.sakaiproject.component.cover.ComponentManager;
 import org.sakaiproject.memory.api.Cache;
+import org.sakaiproject.memory.api.CacheAdvice;
 import org.sakaiproject.memory.api.CacheRefresher;
 import org.sakaiproject.memory.api.Configuration;
 import org.sakaiproject.memory.api.MemoryService;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Hazelcast based implementation of the MemoryService API which is automatically distributed by the nature of hazelcast
@@ -57,6 +60,18 @@ public class HazelcastMemoryService implements MemoryService {
     SecurityService securityService;
     HazelcastInstance hcInstance;
 
+    /**
+     * The Sakai caches handed out so far, keyed by name, so each name shares one near cache and one invalidation listener
+     */
+    final Map<String, HazelcastCache> caches = new ConcurrentHashMap<String, HazelcastCache>();
+    /**
+     * Suffix of the per cache topic used to clear near caches across the cluster (Hazelcast 3.2 sends no entry events for IMap.clear())
+     */
+    static final String NEAR_CACHE_CLEAR_TOPIC = ".nearcache.clear";
+    /**
+     * lazy loaded, see #getCacheAdvice
+     */
+    volatile CacheAdvisor cacheAdvisor;
 
     public HazelcastMemoryService() {}
 
@@ -99,6 +114,7 @@ public class HazelcastMemoryService implements MemoryService {
             // NOTHING TO DO HERE
             log.warn("destroy() HC instance shutdown failure: "+e);
         }
+        caches.clear();
         hcInstance = null; // release
         log.info("SHUTDOWN");
     }
@@ -119,12 +135,58 @@ public class HazelcastMemoryService implements MemoryService {
 
     @Override
     public <K, V, C extends Configuration<K, V>> Cache createCache(String cacheName, C configuration) {
-        return new HazelcastCache(makeHazelcastCache(cacheName, configuration));
+        return makeCache(cacheName, configuration);
     }
 
     @Override
     public Cache getCache(String cacheName) {
-        return new HazelcastCache(makeHazelcastCache(cacheName, null));
+        return makeCache(cacheName, null);
+    }
+
+    /**
+     * Get the existing Sakai cache for this name or make a new one, with a near cache in front if configured
+     * @param cacheName the name of the cache
+     * @param configuration [OPTIONAL] a config to use when building the cache
+     * @return the cache
+     */
+    private HazelcastCache makeCache(String cacheName, Configuration configuration) {
+        IMap hcMap = makeHazelcastCache(cacheName, configuration);
+        HazelcastCache cache = caches.get(hcMap.getName());
+        if (cache == null) {
+            synchronized (caches) {
+                cache = caches.get(hcMap.getName());
+                if (cache == null) {
+                    //noinspection unchecked
+                    NearCache nearCache = makeNearCache(hcMap.getName());
+                    ITopic clearTopic = (nearCache != null) ? hcInstance.getTopic(hcMap.getName() + NEAR_CACHE_CLEAR_TOPIC) : null;
+                    cache = new HazelcastCache(hcMap, nearCache, clearTopic);
+                    caches.put(hcMap.getName(), cache);
+                }
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Near caches are configured per cache name using:
+     * memory.nearcache.{cacheName}.maxEntries={int} (required, 0 or less means no near cache)
+     * memory.nearcache.{cacheName}.timeToLive={seconds} (default 60, must be > 0 so a missed invalidation cannot last)
+     *
+     * @param name the name of the cache
+     * @return the near cache OR null if none is configured for this cache
+     */
+    NearCache makeNearCache(String name) {
+        int maxEntries = serverConfigurationService.getInt("memory.nearcache." + name + ".maxEntries", 0);
+        if (maxEntries <= 0) {
+            return null;
+        }
+        int timeToLive = serverConfigurationService.getInt("memory.nearcache." + name + ".timeToLive", 60);
+        if (timeToLive <= 0) {
+            log.warn("Ignoring near cache for hcCache (" + name + "): timeToLive must be > 0 but was " + timeToLive);
+            return null;
+        }
+        log.info("Configured near cache for hcCache (" + name + "): maxEntries=" + maxEntries + ", timeToLive=" + timeToLive);
+        return new NearCache(maxEntries, timeToLive);
     }
 
     @Override
@@ -133,7 +195,10 @@ public class HazelcastMemoryService implements MemoryService {
             Collection<DistributedObject> distributedObjects = hcInstance.getDistributedObjects();
             ArrayList<String> names = new ArrayList<String>(distributedObjects.size());
             for (DistributedObject distributedObject : distributedObjects) {
-                names.add(distributedObject.getName());
+                if (distributedObject instanceof IMap) {
+                    // skip the near cache clear topics
+                    names.add(distributedObject.getName());
+                }
             }
             return names;
         } else {
@@ -143,7 +208,10 @@ public class HazelcastMemoryService implements MemoryService {
 
     @Override
     public void destroyCache(String cacheName) {
-        if (this.hcInstance != null) {
+        HazelcastCache cache = caches.remove(cacheName);
+        if (cache != null) {
+            cache.close();
+        } else if (this.hcInstance != null) {
             IMap hcMap = this.hcInstance.getMap(cacheName);
             if (hcMap != null) {
                 hcMap.destroy();
@@ -171,7 +239,12 @@ public class HazelcastMemoryService implements MemoryService {
             Collection<DistributedObject> distributedObjects = hcInstance.getDistributedObjects();
             for (DistributedObject distributedObject : distributedObjects) {
                 if (distributedObject instanceof IMap) {
-                    ((IMap)distributedObject).clear();
+                    HazelcastCache cache = caches.get(distributedObject.getName());
+                    if (cache != null) {
+                        cache.clear(); // also clears the near cache
+                    } else {
+                        ((IMap) distributedObject).clear();
+                    }
                 }
             }
         }
@@ -187,6 +260,21 @@ public class HazelcastMemoryService implements MemoryService {
         return getCache(cacheName);
     }
 
+    @Override
+    public List<CacheAdvice> getCacheAdvice(boolean sampleHeap) {
+        if (cacheAdvisor == null) {
+            cacheAdvisor = new CacheAdvisor(serverConfigurationService.getInt("memory.advisor.window", 900));
+        }
+        List<CacheAdvice> advice = new ArrayList<CacheAdvice>(caches.size());
+        for (HazelcastCache cache : new TreeMap<String, HazelcastCache>(caches).values()) {
+            IMap map = hcInstance.getMap(cache.getName());
+            // hazelcast does its own sizing so there is no config to advise on, only report the workload
+            long heapBytes = sampleHeap ? map.getLocalMapStats().getHeapCost() : -1;
+            advice.add(cacheAdvisor.advise(cache.getName(), cache.getCacheStatistics(), null, heapBytes));
+        }
+        return advice;
+    }
+
     @Override
     public String getStatus() {
         // MIRRORS the OLD status report
@@ -207,7 +295,10 @@ public class HazelcastMemoryService implements MemoryService {
 
         // summary (cache descriptions)
         for (Map.Entry<String, IMap> entry : caches.entrySet()) {
-            Cache c = new HazelcastCache(entry.getValue());
+            Cache c = this.caches.get(entry.getKey());
+            if (c == null) {
+                c = new HazelcastCache(entry.getValue());
+            }
             buf.append(c.getDescription()).append("\n");
         }
 
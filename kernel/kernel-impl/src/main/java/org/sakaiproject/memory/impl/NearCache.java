@@ -0,0 +1,291 @@
+/******************************************************************************
+ * $URL$
+ * $Id$
+ ******************************************************************************
+ *
+ * Copyright (c) 2003-2016 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *       http://opensource.org/licenses/ecl2
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ *****************************************************************************/
+
+package org.sakaiproject.memory.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.time.Clock;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A small bounded local (L1) cache which sits in front of a distributed cache so that hot entries
+ * can be read without a network round trip. Entries are evicted least recently used first once
+ * maxEntries is reached and are dropped once they are older than the time to live.
+ * The owning cache is responsible for calling {@link #invalidate(Object)} when an entry changes anywhere in the cluster.
+ * <p>
+ * Values are held in serialized form and every {@link #get(Object)} returns a fresh copy, the same as a read
+ * from the distributed cache would, so callers can never change what other callers see. Values which are not
+ * {@link Serializable} are not held.
+ * <p>
+ * A value read from the distributed cache may be overtaken by an invalidation before it gets here.
+ * To avoid holding such a stale value, callers {@link #reserve(Object)} the key before the remote read
+ * and then {@link #put(Object, Object, Object)} with the reservation, which is dropped by any invalidation in between.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class NearCache<K, V> {
+
+    private final int maxEntries;
+    private final long timeToLiveMillis;
+    private final Clock clock;
+    private final LinkedHashMap<K, Entry> map;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param maxEntries the most entries to hold locally (must be > 0)
+     * @param timeToLiveSeconds how long an entry may be served locally (must be > 0)
+     */
+    public NearCache(final int maxEntries, long timeToLiveSeconds) {
+        this(maxEntries, timeToLiveSeconds, Clock.systemUTC());
+    }
+
+    /**
+     * @param maxEntries the most entries to hold locally (must be > 0)
+     * @param timeToLiveSeconds how long an entry may be served locally (must be > 0)
+     * @param clock the clock used to age entries
+     */
+    public NearCache(final int maxEntries, long timeToLiveSeconds, Clock clock) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be > 0 for a near cache");
+        }
+        if (timeToLiveSeconds <= 0) {
+            // a missed invalidation would otherwise leave a stale entry in place for good
+            throw new IllegalArgumentException("timeToLiveSeconds must be > 0 for a near cache");
+        }
+        this.maxEntries = maxEntries;
+        this.timeToLiveMillis = timeToLiveSeconds * 1000L;
+        this.clock = clock;
+        this.map = new LinkedHashMap<K, Entry>(Math.min(maxEntries, 1024), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry> eldest) {
+                return size() > NearCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @param key the key
+     * @return a copy of the locally held value OR null if there is no unexpired local value
+     */
+    public V get(K key) {
+        Entry entry;
+        synchronized (map) {
+            entry = map.get(key);
+            if (entry != null && entry.bytes != null && clock.millis() - entry.created > timeToLiveMillis) {
+                map.remove(key);
+                entry = null;
+            }
+        }
+        if (entry == null || entry.bytes == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        V value = deserialize(entry.bytes);
+        if (value == null) {
+            invalidate(key);
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return value;
+    }
+
+    /**
+     * Mark that a value for this key is about to be read from the distributed cache
+     * @param key the key
+     * @return the reservation to pass to {@link #put(Object, Object, Object)}
+     */
+    public Object reserve(K key) {
+        Entry reservation = new Entry(null, 0);
+        synchronized (map) {
+            Entry current = map.get(key);
+            if (current == null || current.bytes == null) {
+                map.put(key, reservation);
+            }
+        }
+        return reservation;
+    }
+
+    /**
+     * Hold a value locally, only if the key was not invalidated since it was reserved.
+     * Null values are never held, the reservation is released instead.
+     * @param key the key
+     * @param value the value read after the reservation was made
+     * @param reservation from {@link #reserve(Object)}
+     */
+    public void put(K key, V value, Object reservation) {
+        if (key == null) {
+            return;
+        }
+        byte[] bytes = (value != null) ? serialize(value) : null;
+        synchronized (map) {
+            if (map.get(key) == reservation) {
+                if (bytes != null) {
+                    map.put(key, new Entry(bytes, clock.millis()));
+                } else {
+                    map.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Hold a value locally, null values are never held
+     * @param key the key
+     * @param value the value
+     */
+    public void put(K key, V value) {
+        if (key == null || value == null) {
+            return;
+        }
+        byte[] bytes = serialize(value);
+        if (bytes == null) {
+            return;
+        }
+        synchronized (map) {
+            map.put(key, new Entry(bytes, clock.millis()));
+        }
+    }
+
+    /**
+     * Drop the local copy (or reservation) of this key
+     * @param key the key
+     */
+    public void invalidate(K key) {
+        synchronized (map) {
+            map.remove(key);
+        }
+    }
+
+    /**
+     * Drop all local copies and reservations
+     */
+    public void clear() {
+        synchronized (map) {
+            map.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (map) {
+            return map.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getTimeToLiveSeconds() {
+        return timeToLiveMillis / 1000L;
+    }
+
+    @Override
+    public String toString() {
+        return "NearCache(max=" + maxEntries + ",ttl=" + getTimeToLiveSeconds() + "s): size=" + size() + " hits=" + hits + " misses=" + misses;
+    }
+
+    /**
+     * @return the serialized value OR null if it cannot be serialized
+     */
+    private byte[] serialize(V value) {
+        if (!(value instanceof Serializable)) {
+            return null;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.writeObject(value);
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return a copy of the value OR null if it cannot be read back
+     */
+    private V deserialize(byte[] bytes) {
+        try {
+            ObjectInputStream in = new ContextObjectInputStream(new ByteArrayInputStream(bytes));
+            //noinspection unchecked
+            return (V) in.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Resolves classes with the thread context class loader first, values are usually classes from the calling webapp
+     */
+    private static class ContextObjectInputStream extends ObjectInputStream {
+        ContextObjectInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            ClassLoader loader = Thread.currentThread().getContextClassLoader();
+            if (loader != null) {
+                try {
+                    return Class.forName(desc.getName(), false, loader);
+                } catch (ClassNotFoundException e) {
+                    // fall back to the default resolution
+                }
+            }
+            return super.resolveClass(desc);
+        }
+    }
+
+    /**
+     * A held value, or a reservation when bytes is null
+     */
+    private static class Entry {
+        final byte[] bytes;
+        final long created;
+
+        Entry(byte[] bytes, long created) {
+            this.bytes = bytes;
+            this.created = created;
+        }
+    }
+
+}
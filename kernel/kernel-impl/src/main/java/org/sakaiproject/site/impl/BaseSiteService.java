@@ -38,6 +38,7 @@ import org.sakaiproject.javax.PagingPosition;
 import org.sakaiproject.memory.api.Cache;
 import org.sakaiproject.memory.api.MemoryService;
 import org.sakaiproject.site.api.*;
+import org.sakaiproject.thread_local.api.RequestMemo;
 import org.sakaiproject.thread_local.api.ThreadLocalManager;
 import org.sakaiproject.time.api.Time;
 import org.sakaiproject.time.api.TimeService;
@@ -109,6 +110,9 @@ public abstract class BaseSiteService implements SiteService, Observer
 	/** Cache for sites accessible to a given user. */
 	protected Cache m_userSiteCache = null;
 
+	/** The RequestMemo region holding the sites already looked up in the current request. */
+	public static final String MEMO_REGION = SiteService.class.getName();
+
 	/** A set of observers watching site removals **/
 	protected Set<SiteRemovalAdvisor> siteRemovalAdvisors;
 
@@ -617,6 +621,18 @@ public abstract class BaseSiteService implements SiteService, Observer
 		return null;
 	}
 
+	/**
+	 * Drop a site from the current request's memo, so the next getSite() in this request sees the change.
+	 *
+	 * @param id
+	 *        The site id.
+	 */
+	protected void forgetMemoizedSite(String id)
+	{
+		RequestMemo memo = RequestMemo.current(threadLocalManager());
+		if (memo != null) memo.remove(MEMO_REGION, id);
+	}
+
 	/**
 	 * Cache a copy of a site if caching is enabled.
 	 *
@@ -738,9 +754,24 @@ public abstract class BaseSiteService implements SiteService, Observer
 			throw new IdUnusedException("null");
 		}
 
+		// the same site is often asked for many times in one request, load it once
+		// but hand each caller its own copy, as the site cache does, so unsaved edits don't leak
+		RequestMemo memo = RequestMemo.current(threadLocalManager());
+		if (memo != null)
+		{
+			Site memoized = (Site) memo.get(MEMO_REGION, id);
+			if (memoized != null) return new BaseSite(this, memoized, true);
+		}
+
 		try
 		{
-			return getDefinedSite(id);
+			Site rv = getDefinedSite(id);
+			if (memo != null)
+			{
+				memo.put(MEMO_REGION, id, rv);
+				rv = new BaseSite(this, rv, true);
+			}
+			return rv;
 		}
 		catch (IdUnusedException e)
 		{
@@ -908,6 +939,7 @@ public abstract class BaseSiteService implements SiteService, Observer
 		{
 			disableAzgSecurityAdvisor();
 		}
+		forgetMemoizedSite(site.getId());
 
 		// track it
 		eventTrackingService().post(eventTrackingService().newEvent(SECURE_UPDATE_SITE_MEMBERSHIP, site.getReference(), true));
@@ -938,6 +970,7 @@ public abstract class BaseSiteService implements SiteService, Observer
 		{
 			disableAzgSecurityAdvisor();
 		}
+		forgetMemoizedSite(site.getId());
 
 		// track it
 		eventTrackingService().post(eventTrackingService().newEvent(SECURE_UPDATE_GROUP_MEMBERSHIP, site.getReference(), true));
@@ -951,6 +984,8 @@ public abstract class BaseSiteService implements SiteService, Observer
 	 */
 	protected void doSave(BaseSite site, boolean isNew)
 	{
+		forgetMemoizedSite(site.getId());
+
 		if (isNew)
 		{
 			addLiveProperties(site);
@@ -1396,6 +1431,7 @@ public abstract class BaseSiteService implements SiteService, Observer
 		
 		// complete the edit
 		storage().remove(site);
+		forgetMemoizedSite(site.getId());
 
 		// track it
 		eventTrackingService().post(eventTrackingService().newEvent(SECURE_REMOVE_SITE, site.getReference(), true));
@@ -1704,6 +1740,7 @@ public abstract class BaseSiteService implements SiteService, Observer
 		{
 			// do the join
 			authzGroupService().joinGroup(siteReference(id), roleId);
+			forgetMemoizedSite(id);
 		}
 		catch(GroupNotDefinedException e)
 		{
@@ -1875,6 +1912,7 @@ public abstract class BaseSiteService implements SiteService, Observer
 		try
 		{
 			authzGroupService().unjoinGroup(siteReference(id));
+			forgetMemoizedSite(id);
 		}
 		catch (GroupNotDefinedException e)
 		{
@@ -537,6 +537,7 @@ public class BaseToolConfiguration extends org.sakaiproject.util.Placement imple
 	{
 		// TODO: security? version?
 		siteService.storage().saveToolConfig(this);
+		siteService.forgetMemoizedSite(getSiteId());
 
 		// track the site change
 		siteService.eventTrackingService().post(siteService.eventTrackingService().newEvent(
@@ -35,6 +35,8 @@ import org.sakaiproject.exception.InUseException;
 import org.sakaiproject.exception.PermissionException;
 import org.sakaiproject.memory.api.Cache;
 import org.sakaiproject.memory.api.MemoryService;
+import org.sakaiproject.thread_local.api.RequestMemo;
+import org.sakaiproject.thread_local.api.ThreadLocalManager;
 import org.sakaiproject.tool.api.Session;
 import org.sakaiproject.tool.api.SessionBindingEvent;
 import org.sakaiproject.tool.api.SessionBindingListener;
@@ -75,6 +77,8 @@ public abstract class BasePreferencesService implements PreferencesService, Sing
 	protected String m_relativeAccessPoint = null;
 	/** the cache for Preference objects **/
 	private Cache m_cache;
+	/** The RequestMemo region holding the preferences already looked up in the current request. */
+	protected static final String MEMO_REGION = PreferencesService.class.getName();
 	/**********************************************************************************************************************************************************************************************************************************************************
 	 * Abstractions, etc.
 	 *********************************************************************************************************************************************************************************************************************************************************/
@@ -201,6 +205,11 @@ public abstract class BasePreferencesService implements PreferencesService, Sing
 	 */
 	protected abstract UserDirectoryService userDirectoryService();
 
+	/**
+	 * @return the ThreadLocalManager collaborator.
+	 */
+	protected abstract ThreadLocalManager threadLocalManager();
+
 	/**********************************************************************************************************************************************************************************************************************************************************
 	 * Init and Destroy
 	 *********************************************************************************************************************************************************************************************************************************************************/
@@ -328,6 +337,7 @@ public abstract class BasePreferencesService implements PreferencesService, Sing
 			
 			//invalidate the cache
 			m_cache.remove(edit.getId());
+			forgetMemoizedPreferences(edit.getId());
 				
 			// complete the edit
 			m_storage.commit(edit);
@@ -404,6 +414,7 @@ public abstract class BasePreferencesService implements PreferencesService, Sing
 		m_storage.remove(edit);
 		
 		m_cache.remove(edit.getId());
+		forgetMemoizedPreferences(edit.getId());
 
 		// track it
 		eventTrackingService().post(eventTrackingService().newEvent(SECURE_REMOVE_PREFS, edit.getReference(), true));
@@ -425,8 +436,15 @@ public abstract class BasePreferencesService implements PreferencesService, Sing
 			return null;
 		}
 
-		// Try the cache
-		BasePreferences prefs = (BasePreferences) m_cache.get(id);
+		// Try what this request has already found
+		RequestMemo memo = RequestMemo.current(threadLocalManager());
+		BasePreferences prefs = (memo == null) ? null : (BasePreferences) memo.get(MEMO_REGION, id);
+		if (prefs != null) {
+			return prefs;
+		}
+
+		// Then the cache
+		prefs = (BasePreferences) m_cache.get(id);
 
 		// Failing that, try the storage
 		if (prefs == null) {
@@ -435,10 +453,23 @@ public abstract class BasePreferencesService implements PreferencesService, Sing
 
 		if (prefs != null) {
 			m_cache.put(id, prefs);
+			if (memo != null) memo.put(MEMO_REGION, id, prefs);
 		}
 		
 		return prefs;
 	}
+
+	/**
+	 * Drop the preferences from the current request's memo, so the next lookup in this request sees the change.
+	 * 
+	 * @param id
+	 *        The preferences id.
+	 */
+	protected void forgetMemoizedPreferences(String id)
+	{
+		RequestMemo memo = RequestMemo.current(threadLocalManager());
+		if (memo != null) memo.remove(MEMO_REGION, id);
+	}
 	
 	
 	/**
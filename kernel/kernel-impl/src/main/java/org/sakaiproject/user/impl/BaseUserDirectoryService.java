@@ -34,6 +34,8 @@ import org.sakaiproject.event.api.EventTrackingService;
 import org.sakaiproject.id.api.IdManager;
 import org.sakaiproject.memory.api.Cache;
 import org.sakaiproject.memory.api.MemoryService;
+import org.sakaiproject.thread_local.api.RequestMemo;
+import org.sakaiproject.thread_local.api.ThreadLocalManager;
 import org.sakaiproject.time.api.Time;
 import org.sakaiproject.time.api.TimeService;
 import org.sakaiproject.tool.api.SessionBindingEvent;
@@ -88,6 +90,9 @@ public abstract class BaseUserDirectoryService implements UserDirectoryService,
 
 	/** A cache of users */
 	protected Cache m_callCache = null;
+
+	/** The RequestMemo region holding the users already looked up in the current request, by reference. */
+	protected static final String MEMO_REGION = UserDirectoryService.class.getName();
 	
 	/** Optional service to provide site-specific aliases for a user's display ID and display name. */
 	protected ContextualUserDisplayService m_contextualUserDisplayService = null;
@@ -516,6 +521,11 @@ public abstract class BaseUserDirectoryService implements UserDirectoryService,
 	 */
     protected abstract FormattedText formattedText();
 
+	/**
+	 * @return the ThreadLocalManager collaborator.
+	 */
+	protected abstract ThreadLocalManager threadLocalManager();
+
 	/**********************************************************************************************************************************************************************************************************************************************************
 	 * Init and Destroy
 	 *********************************************************************************************************************************************************************************************************************************************************/
@@ -1767,7 +1777,14 @@ public abstract class BaseUserDirectoryService implements UserDirectoryService,
 
 	protected UserEdit getCachedUser(String ref)
 	{
-		// KNL-1241 removed caching in threadlocal
+		// KNL-1241 removed caching in threadlocal, the request memo is opt in (request.memo.enabled) and only bound while a request is being processed
+		RequestMemo memo = RequestMemo.current(threadLocalManager());
+		if (memo != null)
+		{
+			UserEdit userEdit = (UserEdit) memo.get(MEMO_REGION, ref);
+			if (userEdit != null) return userEdit;
+		}
+
 		UserEdit userEdit = null;
 		if (m_callCache != null)
 		{
@@ -1775,6 +1792,7 @@ public abstract class BaseUserDirectoryService implements UserDirectoryService,
 			if (cachedRef != null)
 			{
 				userEdit = (UserEdit) cachedRef;
+				if (memo != null) memo.put(MEMO_REGION, ref, userEdit);
 			}
 		}
 		return userEdit;
@@ -1782,7 +1800,11 @@ public abstract class BaseUserDirectoryService implements UserDirectoryService,
 
 	protected void putCachedUser(String ref, UserEdit user)
 	{
-		// KNL-1241 removed caching in threadlocal
+		RequestMemo memo = RequestMemo.current(threadLocalManager());
+		if (memo != null)
+		{
+			memo.put(MEMO_REGION, ref, user);
+		}
 		if (m_callCache != null)
 		{
 			m_callCache.put(ref, user);
@@ -1791,6 +1813,11 @@ public abstract class BaseUserDirectoryService implements UserDirectoryService,
 
 	protected void removeCachedUser(String ref)
 	{
+		RequestMemo memo = RequestMemo.current(threadLocalManager());
+		if (memo != null)
+		{
+			memo.remove(MEMO_REGION, ref);
+		}
 		if (m_callCache != null)
 		{
 			m_callCache.remove(ref);
@@ -0,0 +1,76 @@
+package org.sakai.memory.impl.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.sakaiproject.memory.api.CacheAdvice;
+import org.sakaiproject.memory.api.CacheStatistics;
+import org.sakaiproject.memory.api.SimpleConfiguration;
+import org.sakaiproject.memory.impl.CacheAdvisor;
+
+public class TestCacheAdvisor {
+
+	private CacheStatistics stats(final long hits, final long misses, final long evictions, final long loads, final long loadTime, final long size) {
+		return new CacheStatistics() {
+			public long getCacheHits() { return hits; }
+			public long getCacheMisses() { return misses; }
+			public long getCacheEvictions() { return evictions; }
+			public long getCacheLoads() { return loads; }
+			public long getCacheLoadTime() { return loadTime; }
+			public long getCacheSize() { return size; }
+		};
+	}
+
+	@Test
+	public void testGrowWhenFullAndEvicting() {
+		CacheAdvice advice = new CacheAdvisor(60).advise("c", stats(100, 100, 50, 100, 100, 1000), new SimpleConfiguration<Object, Object>(1000, 600, 0), -1);
+		Assert.assertTrue(advice.isChangeRecommended());
+		Assert.assertEquals(2000, advice.getRecommendedMaxEntries());
+		Assert.assertEquals("memory.c=maxElementsInMemory=2000,timeToLiveSeconds=600", advice.getRecommendedConfig());
+	}
+
+	@Test
+	public void testShrinkWhenMostlyEmpty() {
+		CacheAdvice advice = new CacheAdvisor(60).advise("c", stats(100, 10, 0, 10, 10, 600), new SimpleConfiguration<Object, Object>(10000, 600, 0), -1);
+		Assert.assertEquals(1200, advice.getRecommendedMaxEntries());
+		advice = new CacheAdvisor(60).advise("c", stats(100, 10, 0, 10, 10, 10), new SimpleConfiguration<Object, Object>(10000, 600, 0), -1);
+		Assert.assertEquals(1000, advice.getRecommendedMaxEntries());
+	}
+
+	@Test
+	public void testLongerTtlForSlowLoads() {
+		CacheAdvice advice = new CacheAdvisor(60).advise("c", stats(10, 90, 0, 90, 9000, 500), new SimpleConfiguration<Object, Object>(1000, 300, 0), -1);
+		Assert.assertEquals(100d, advice.getAverageLoadMillis(), 0.001d);
+		Assert.assertEquals(-1, advice.getRecommendedMaxEntries());
+		Assert.assertEquals(600, advice.getRecommendedTimeToLiveSeconds());
+	}
+
+	@Test
+	public void testNoChange() {
+		CacheAdvice advice = new CacheAdvisor(60).advise("c", stats(900, 100, 0, 100, 100, 500), new SimpleConfiguration<Object, Object>(1000, 300, 0), 5000);
+		Assert.assertFalse(advice.isChangeRecommended());
+		Assert.assertNull(advice.getRecommendedConfig());
+		Assert.assertEquals(10, advice.getBytesPerEntry());
+		Assert.assertEquals(0.9d, advice.getHitRatio(), 0.001d);
+	}
+
+	@Test
+	public void testNoSizingWithoutConfig() {
+		CacheAdvice advice = new CacheAdvisor(60).advise("c", stats(100, 100, 50, 100, 100, 1000), null, -1);
+		Assert.assertFalse(advice.isChangeRecommended());
+		Assert.assertEquals(100, advice.getHits());
+	}
+
+	@Test
+	public void testWindowDeltas() {
+		CacheAdvisor advisor = new CacheAdvisor(3600);
+		advisor.advise("c", stats(100, 100, 0, 0, 0, 10), null, -1);
+		// still inside the first window so the figures are relative to the advisor start
+		CacheAdvice advice = advisor.advise("c", stats(150, 120, 0, 0, 0, 10), null, -1);
+		Assert.assertEquals(150, advice.getHits());
+		// counters reset by a clear never go negative
+		advisor = new CacheAdvisor(0);
+		advisor.advise("c", stats(100, 100, 0, 0, 0, 10), null, -1);
+		advice = advisor.advise("c", stats(5, 5, 0, 0, 0, 10), null, -1);
+		Assert.assertTrue(advice.getHits() >= 0);
+	}
+}
@@ -0,0 +1,153 @@
+package org.sakai.memory.impl.test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.sakaiproject.memory.impl.NearCache;
+
+public class TestNearCache {
+
+	@Test
+	public void testHitAndMiss() {
+		NearCache<String, String> near = new NearCache<String, String>(10, 60);
+		Assert.assertNull(near.get("a"));
+		near.put("a", "A");
+		Assert.assertEquals("A", near.get("a"));
+		Assert.assertEquals(1, near.getHits());
+		Assert.assertEquals(1, near.getMisses());
+	}
+
+	@Test
+	public void testNullsNotHeld() {
+		NearCache<String, String> near = new NearCache<String, String>(10, 60);
+		near.put("a", null);
+		Assert.assertEquals(0, near.size());
+	}
+
+	@Test
+	public void testInvalidate() {
+		NearCache<String, String> near = new NearCache<String, String>(10, 60);
+		near.put("a", "A");
+		near.put("b", "B");
+		near.invalidate("a");
+		Assert.assertNull(near.get("a"));
+		Assert.assertEquals("B", near.get("b"));
+		near.clear();
+		Assert.assertEquals(0, near.size());
+	}
+
+	@Test
+	public void testLeastRecentlyUsedEvicted() {
+		NearCache<String, String> near = new NearCache<String, String>(2, 60);
+		near.put("a", "A");
+		near.put("b", "B");
+		near.get("a"); // b is now the eldest
+		near.put("c", "C");
+		Assert.assertEquals(2, near.size());
+		Assert.assertEquals("A", near.get("a"));
+		Assert.assertNull(near.get("b"));
+		Assert.assertEquals("C", near.get("c"));
+	}
+
+	@Test
+	public void testTimeToLive() {
+		TestClock clock = new TestClock();
+		NearCache<String, String> near = new NearCache<String, String>(10, 1, clock);
+		near.put("a", "A");
+		clock.advance(1000);
+		Assert.assertEquals("A", near.get("a"));
+		clock.advance(100);
+		Assert.assertNull(near.get("a"));
+		Assert.assertEquals(0, near.size());
+	}
+
+	@Test
+	public void testReservedPut() {
+		NearCache<String, String> near = new NearCache<String, String>(10, 60);
+		Object reservation = near.reserve("a");
+		near.put("a", "A", reservation);
+		Assert.assertEquals("A", near.get("a"));
+	}
+
+	@Test
+	public void testInvalidatedReservationNotHeld() {
+		NearCache<String, String> near = new NearCache<String, String>(10, 60);
+		Object reservation = near.reserve("a");
+		near.invalidate("a"); // changed elsewhere while the remote read was under way
+		near.put("a", "stale", reservation);
+		Assert.assertNull(near.get("a"));
+		Assert.assertEquals(0, near.size());
+	}
+
+	@Test
+	public void testNullReleasesReservation() {
+		NearCache<String, String> near = new NearCache<String, String>(10, 60);
+		Object reservation = near.reserve("a");
+		near.put("a", null, reservation);
+		Assert.assertEquals(0, near.size());
+	}
+
+	@Test
+	public void testCopiesReturned() {
+		NearCache<String, ArrayList<String>> near = new NearCache<String, ArrayList<String>>(10, 60);
+		ArrayList<String> value = new ArrayList<String>();
+		value.add("A");
+		near.put("a", value);
+		value.add("changed after put");
+		List<String> first = near.get("a");
+		Assert.assertEquals(1, first.size());
+		first.add("changed by a caller");
+		Assert.assertEquals(1, near.get("a").size());
+	}
+
+	@Test
+	public void testNotSerializableNotHeld() {
+		NearCache<String, Object> near = new NearCache<String, Object>(10, 60);
+		near.put("a", new Object());
+		Assert.assertEquals(0, near.size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBadSize() {
+		new NearCache<String, String>(0, 10);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBadTimeToLive() {
+		new NearCache<String, String>(10, 0);
+	}
+
+	private static class TestClock extends Clock {
+		private long millis = 0;
+
+		void advance(long by) {
+			millis += by;
+		}
+
+		@Override
+		public long millis() {
+			return millis;
+		}
+
+		@Override
+		public Instant instant() {
+			return Instant.ofEpochMilli(millis);
+		}
+
+		@Override
+		public ZoneId getZone() {
+			return ZoneOffset.UTC;
+		}
+
+		@Override
+		public Clock withZone(ZoneId zone) {
+			return this;
+		}
+	}
+}
@@ -6,6 +6,7 @@ import org.sakaiproject.authz.impl.BaseAuthzGroupService;
 import org.sakaiproject.component.api.ServerConfigurationService;
 import org.sakaiproject.entity.api.EntityManager;
 import org.sakaiproject.event.api.EventTrackingService;
+import org.sakaiproject.thread_local.api.ThreadLocalManager;
 import org.sakaiproject.time.api.TimeService;
 import org.sakaiproject.tool.api.SessionManager;
 import org.sakaiproject.user.api.UserDirectoryService;
@@ -67,4 +68,10 @@ public class ContreteAuthzGroupService extends BaseAuthzGroupService {
 		return null;
 	}
 
+	@Override
+	protected ThreadLocalManager threadLocalManager() {
+		// TODO Auto-generated method stub
+		return null;
+	}
+
 }
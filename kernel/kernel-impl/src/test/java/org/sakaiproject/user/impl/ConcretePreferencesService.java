@@ -6,6 +6,7 @@ import org.sakaiproject.component.api.ServerConfigurationService;
 import org.sakaiproject.entity.api.EntityManager;
 import org.sakaiproject.event.api.EventTrackingService;
 import org.sakaiproject.memory.api.MemoryService;
+import org.sakaiproject.thread_local.api.ThreadLocalManager;
 import org.sakaiproject.tool.api.SessionManager;
 import org.sakaiproject.user.api.UserDirectoryService;
 
@@ -66,4 +67,10 @@ public class ConcretePreferencesService extends BasePreferencesService {
 		return null;
 	}
 
+	@Override
+	protected ThreadLocalManager threadLocalManager() {
+		// TODO Auto-generated method stub
+		return null;
+	}
+
 }
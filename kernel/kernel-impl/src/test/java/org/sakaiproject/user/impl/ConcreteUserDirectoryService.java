@@ -88,4 +88,10 @@ public class ConcreteUserDirectoryService extends BaseUserDirectoryService {
 		return null;
 	}
 
+	@Override
+	protected ThreadLocalManager threadLocalManager() {
+		// TODO Auto-generated method stub
+		return null;
+	}
+
 }
@@ -401,6 +401,11 @@ public class SimplePageBean {
 	static MemoryService memoryService = (MemoryService)org.sakaiproject.component.cover.ComponentManager.get("org.sakaiproject.memory.api.MemoryService");
 	private static Cache groupCache = memoryService.newCache("org.sakaiproject.lessonbuildertool.tool.beans.SimplePageBean.groupCache");  // itemId => grouplist
 	private static Cache resourceCache = memoryService.newCache("org.sakaiproject.lessonbuildertool.tool.beans.SimplePageBean.resourceCache");
+	// user and item => TRUE, for assignments, tests and forums. Those need a call into another tool,
+	// which is the expensive part of checking prerequisites. Only completion is remembered. Something
+	// just submitted has to show up on the next view, while losing a completion is rare enough to
+	// wait for the cache to expire. See completionCacheKey.
+	private static Cache completionCache = memoryService.newCache("org.sakaiproject.lessonbuildertool.tool.beans.SimplePageBean.completionCache");
 	protected static final int DEFAULT_EXPIRATION = 10 * 60;
 
 	public static class PathEntry {
@@ -4912,6 +4917,11 @@ public class SimplePageBean {
 		Boolean cached = completeCache.get(itemId);
 		if (cached != null)
 		    return (boolean)cached;
+		if ((item.getType() == SimplePageItem.ASSIGNMENT || item.getType() == SimplePageItem.ASSESSMENT ||
+		     item.getType() == SimplePageItem.FORUM) && completionCache.get(completionCacheKey(item)) != null) {
+		    completeCache.put(itemId, true);
+		    return true;
+		}
 		if (item.getType() == SimplePageItem.RESOURCE || item.getType() == SimplePageItem.URL || item.getType() == SimplePageItem.BLTI) {
 			// Resource. Completed if viewed.
 			if (hasLogEntry(item.getId())) {
@@ -4955,11 +4965,14 @@ public class SimplePageBean {
 
 				if (!item.getSubrequirement()) {
 					completeCache.put(itemId, true);
+					completionCache.put(completionCacheKey(item), Boolean.TRUE);
 					return true;
 				} else if (submission.getGradeString() != null) {
 				    // assume that assignments always use string grade. this may change
 					boolean ret = isAssignmentComplete(type, submission, item.getRequirementText());
 					completeCache.put(itemId, ret);
+					if (ret)
+					    completionCache.put(completionCacheKey(item), Boolean.TRUE);
 					return ret;
 				} else {
 					completeCache.put(itemId, false);
@@ -4983,6 +4996,7 @@ public class SimplePageBean {
 				// for the moment don't find grade. just see if they submitted
 				if (forum.getSubmissionCount(user.getId()) > 0) {
 					completeCache.put(itemId, true);
+					completionCache.put(completionCacheKey(item), Boolean.TRUE);
 					return true;
 				} else {
 					completeCache.put(itemId, false);
@@ -5019,12 +5033,14 @@ public class SimplePageBean {
 			} else if (!item.getSubrequirement()) {
 				// All that was required was that the user submit the test
 				completeCache.put(itemId, true);
+				completionCache.put(completionCacheKey(item), Boolean.TRUE);
 				return true;
 			} else {
 				Double grade = submission.getGrade();
 			    // 1.99999 should match 2, so do a bit of rounding up
 			    if ((grade + 0.0001d) >= Double.valueOf(item.getRequirementText())) {
 			    	completeCache.put(itemId, true);
+			    	completionCache.put(completionCacheKey(item), Boolean.TRUE);
 			    	return true;
 			    } else {
 			    	completeCache.put(itemId, false);
@@ -5092,6 +5108,14 @@ public class SimplePageBean {
 		}
 	}
 
+    // the key includes everything about the item that completion depends on, so if the
+    // instructor points the item somewhere else or changes the requirement, the old
+    // entry is simply never used again
+	private String completionCacheKey(SimplePageItem item) {
+	    return getCurrentUserId() + ":" + item.getId() + ":" + item.getSakaiId() + ":" +
+		item.getSubrequirement() + ":" + item.getRequirementText();
+	}
+
 	private boolean isAssignmentComplete(int type, LessonSubmission submission, String requirementString) {
 		String grade = submission.getGradeString();
 
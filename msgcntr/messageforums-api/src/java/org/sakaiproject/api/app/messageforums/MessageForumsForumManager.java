@@ -200,6 +200,13 @@ public interface MessageForumsForumManager {
     public PrivateForum getPrivateForumByOwnerArea(final String owner, final Area area);
 
     public PrivateForum getPrivateForumByOwnerAreaNull(final String owner);
+
+    /**
+     * As {@link #getPrivateForumByOwnerAreaNull(String)}, for many owners at once.
+     * @param owners The user ids whose default private forums we want
+     * @return The private forums found, owners without one are left out
+     */
+    public List<PrivateForum> getPrivateForumsByOwnersAreaNull(final Collection<String> owners);
     
     public List getForumByTypeAndContextWithTopicsMembership(final String typeUuid, final String contextId);
     
@@ -177,7 +177,33 @@ public interface MessageForumsMessageManager {
      * or DELETED).    
      */
     public List<Object[]> findReadMessageCountsForMainPage(final Collection<Long> topicIds);
-    
+
+    /**
+     * @param topicIds The list of topic ids for which we want to gather the message counts.
+     *
+     * @return A list of arrays where each array will contain exactly three values.  Index 0, a Long,
+     * will be the topicId, index 1, a String, will be a userId and index 2, a Number, will be the
+     * number of messages under that topic that the user has read (excluding any messages flagged
+     * as DRAFT or DELETED).  Users who have read nothing in a topic are not returned.
+     */
+    public List<Object[]> findReadMessageCountsForAllUsersByTopicIds(final Collection<Long> topicIds);
+
+    /**
+     * As {@link #findReadMessageCountsForAllUsersByTopicIds(Collection)}, but only counting the
+     * read messages that have been approved or were authored by the user.
+     */
+    public List<Object[]> findReadViewableMessageCountsForAllUsersByTopicIds(final Collection<Long> topicIds);
+
+    /**
+     * @param topicIds The list of topic ids for which we want to gather the message counts.
+     *
+     * @return A list of arrays where each array will contain exactly three values.  Index 0, a Long,
+     * will be the topicId, index 1, a String, will be the author and index 2, a Number, will be the
+     * number of messages under that topic by that author which have not been approved (excluding
+     * any messages flagged as DRAFT or DELETED).
+     */
+    public List<Object[]> findUnapprovedMessageCountsByAuthorByTopicIds(final Collection<Long> topicIds);
+
     public List findMessagesByTopicId(Long topicId);
   
     public List findUndeletedMessagesByTopicId(Long topicId);
@@ -4370,14 +4370,17 @@ private   int   getNum(char letter,   String   a)
      */ 
     List tempPvtMsgLs= new ArrayList();
     
+    // don't run the search without criteria, it would match every message the user has
     if(searchOnDate && searchFromDate == null && searchToDate==null)
     {
        setErrorMessage(getResourceBundleString(MISSING_BEG_END_DATE));
+       return null;
     }
     
     if(!hasValue(searchText))
     {
        setErrorMessage(getResourceBundleString(ENTER_SEARCH_TEXT));
+       return null;
     }
     
     tempPvtMsgLs= prtMsgManager.searchPvtMsgs(getPrivateMessageTypeFromContext(msgNavMode), 
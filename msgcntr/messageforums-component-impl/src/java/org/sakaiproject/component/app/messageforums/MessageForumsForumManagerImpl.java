@@ -95,6 +95,11 @@ public class MessageForumsForumManagerImpl extends HibernateDaoSupport implement
 
     private static final String QUERY_BY_FORUM_OWNER_AREA_NULL = "findPrivateForumByOwnerAreaNull";
 
+    private static final String QUERY_BY_FORUM_OWNERS_AREA_NULL = "findPrivateForumsByOwnersAreaNull";
+
+    // Oracle's 1000 'in' clause limit
+    private static final int MAX_IN_CLAUSE_SIZE = 1000;
+
     private static final String QUERY_BY_FORUM_ID = "findForumById";
     
     private static final String QUERY_BY_FORUM_ID_WITH_ATTACHMENTS = "findForumByIdWithAttachments";    
@@ -107,13 +112,12 @@ public class MessageForumsForumManagerImpl extends HibernateDaoSupport implement
     private static final String QUERY_BY_TYPE_AND_CONTEXT_WITH_ALL_TOPICS_MEMBERSHIP = "findForumByTypeAndContextWithTopicsMemberhips";
 
            
-    private static final String QUERY_TOPIC_WITH_MESSAGES_AND_ATTACHMENTS = "findTopicByIdWithMessagesAndAttachments";        
     private static final String QUERY_TOPIC_WITH_MESSAGES = "findTopicByIdWithMessages";  
     private static final String QUERY_TOPIC_WITH_ATTACHMENTS = "findTopicWithAttachmentsById"; 
         
     private static final String QUERY_TOPICS_WITH_MESSAGES_FOR_FORUM = "findTopicsWithMessagesForForum";
-    private static final String QUERY_TOPICS_WITH_MESSAGES_AND_ATTACHMENTS_FOR_FORUM = "findTopicsWithMessagesAndAttachmentsForForum";
-    private static final String QUERY_TOPICS_WITH_MSGS_AND_ATTACHMENTS_AND_MEMBERSHIPS_FOR_FORUM = "findTopicsWithMessagesMembershipAndAttachmentsForForum";
+    private static final String QUERY_MESSAGES_WITH_ATTACHMENTS_BY_TOPIC_IDS = "findMessagesWithAttachmentsByTopicIds";
+    private static final String QUERY_TOPICS_WITH_MEMBERSHIPS_BY_IDS = "findTopicsWithMembershipsByIds";
 
     private static final String QUERY_FORUMS_FOR_MAIN_PAGE = "findForumsForMainPage";
             
@@ -241,9 +245,11 @@ public class MessageForumsForumManagerImpl extends HibernateDaoSupport implement
       
       HibernateCallback hcb = new HibernateCallback() {
         public Object doInHibernate(Session session) throws HibernateException, SQLException {
-            Query q = session.getNamedQuery(QUERY_TOPICS_WITH_MESSAGES_AND_ATTACHMENTS_FOR_FORUM);
+            Query q = session.getNamedQuery(QUERY_TOPICS_WITH_MESSAGES_FOR_FORUM);
             q.setParameter("id", forumId, Hibernate.LONG);            
-            return q.list();
+            List results = q.list();
+            initializeMessageAttachments(session, getTopicIds(results));
+            return results;
         }
     };
 
@@ -275,9 +281,13 @@ public class MessageForumsForumManagerImpl extends HibernateDaoSupport implement
       
       HibernateCallback hcb = new HibernateCallback() {
         public Object doInHibernate(Session session) throws HibernateException, SQLException {
-            Query q = session.getNamedQuery(QUERY_TOPICS_WITH_MSGS_AND_ATTACHMENTS_AND_MEMBERSHIPS_FOR_FORUM);
+            Query q = session.getNamedQuery(QUERY_TOPICS_WITH_MESSAGES_FOR_FORUM);
             q.setParameter("id", forumId, Hibernate.LONG);            
-            return q.list();
+            List results = q.list();
+            Collection<Long> topicIds = getTopicIds(results);
+            initializeMessageAttachments(session, topicIds);
+            initializeTopicMemberships(session, topicIds);
+            return results;
         }
     };
 
@@ -346,9 +356,13 @@ public class MessageForumsForumManagerImpl extends HibernateDaoSupport implement
 
      HibernateCallback hcb = new HibernateCallback() {
           public Object doInHibernate(Session session) throws HibernateException, SQLException {
-              Query q = session.getNamedQuery(QUERY_TOPIC_WITH_MESSAGES_AND_ATTACHMENTS);
+              Query q = session.getNamedQuery(QUERY_TOPIC_WITH_MESSAGES);
               q.setParameter("id", topicId, Hibernate.LONG);              
-              return q.uniqueResult();
+              Topic topic = (Topic) q.uniqueResult();
+              if (topic != null) {
+                  initializeMessageAttachments(session, Collections.singletonList(topicId));
+              }
+              return topic;
           }
       };
      
@@ -373,6 +387,44 @@ public class MessageForumsForumManagerImpl extends HibernateDaoSupport implement
       return (Topic) getHibernateTemplate().execute(hcb);
     }
     
+    /**
+     * Loads the attachments of every message in the given topics with a single query. Fetching them
+     * in the same query as the messages (and memberships) returns one row per message per attachment
+     * per membership, which gets very large for busy topics.
+     */
+    private void initializeMessageAttachments(Session session, Collection<Long> topicIds) {
+      if (topicIds.isEmpty()) {
+        return;
+      }
+      Query q = session.getNamedQuery(QUERY_MESSAGES_WITH_ATTACHMENTS_BY_TOPIC_IDS);
+      q.setParameterList("topicIds", topicIds);
+      q.list();
+    }
+
+    private void initializeTopicMemberships(Session session, Collection<Long> topicIds) {
+      if (topicIds.isEmpty()) {
+        return;
+      }
+      Query q = session.getNamedQuery(QUERY_TOPICS_WITH_MEMBERSHIPS_BY_IDS);
+      q.setParameterList("topicIds", topicIds);
+      q.list();
+    }
+
+    /**
+     * @param results [topic, forum] rows as returned by the topics for forum queries
+     */
+    private Collection<Long> getTopicIds(List results) {
+      Set<Long> topicIds = new HashSet<Long>();
+      for (Iterator i = results.iterator(); i.hasNext();) {
+        Object[] row = (Object[]) i.next();
+        if (row != null) {
+          Topic topic = (Topic) (row[0] instanceof Topic ? row[0] : row[1]);
+          topicIds.add(topic.getId());
+        }
+      }
+      return topicIds;
+    }
+    
     public Topic getTopicWithAttachmentsById(final Long topicId) {
 
         if (topicId == null) {
@@ -606,6 +658,35 @@ public class MessageForumsForumManagerImpl extends HibernateDaoSupport implement
 
       return (PrivateForum) getHibernateTemplate().execute(hcb);
     }
+
+    public List<PrivateForum> getPrivateForumsByOwnersAreaNull(final Collection<String> owners) {
+
+      if (owners == null) {
+          throw new IllegalArgumentException("Null Argument");
+      }
+      if (owners.isEmpty()) {
+          return new ArrayList<PrivateForum>();
+      }
+
+      LOG.debug("getPrivateForumsByOwnersAreaNull executing with " + owners.size() + " owners");
+
+      HibernateCallback hcb = new HibernateCallback() {
+          public Object doInHibernate(Session session) throws HibernateException, SQLException {
+              List<String> allOwners = new ArrayList<String>(owners);
+              List<PrivateForum> forums = new ArrayList<PrivateForum>();
+
+              for (int start = 0; start < allOwners.size(); start += MAX_IN_CLAUSE_SIZE) {
+                  Query q = session.getNamedQuery(QUERY_BY_FORUM_OWNERS_AREA_NULL);
+                  q.setParameterList("owners", allOwners.subList(start, Math.min(start + MAX_IN_CLAUSE_SIZE, allOwners.size())));
+                  forums.addAll(q.list());
+              }
+
+              return forums;
+          }
+      };
+
+      return (List<PrivateForum>) getHibernateTemplate().execute(hcb);
+    }
     
     public BaseForum getForumByIdWithAttachments(final Long forumId) {
       
@@ -83,6 +83,9 @@ public class MessageForumsMessageManagerImpl extends HibernateDaoSupport impleme
     private static final String QUERY_COUNT_BY_AUTHORED = "findAuhtoredMessageCountByTopicId";
     private static final String QUERY_MESSAGE_COUNTS_FOR_MAIN_PAGE = "findMessageCountsForMainPage";
     private static final String QUERY_READ_MESSAGE_COUNTS_FOR_MAIN_PAGE = "findReadMessageCountsForMainPage";
+    private static final String QUERY_READ_MESSAGE_COUNTS_FOR_ALL_USERS = "findReadMessageCountsForAllUsersByTopicIds";
+    private static final String QUERY_READ_VIEWABLE_MESSAGE_COUNTS_FOR_ALL_USERS = "findReadViewableMessageCountsForAllUsersByTopicIds";
+    private static final String QUERY_UNAPPROVED_MESSAGE_COUNTS_BY_AUTHOR = "findUnapprovedMessageCountsByAuthorByTopicIds";
     private static final String QUERY_BY_TOPIC_ID = "findMessagesByTopicId";
     private static final String QUERY_COUNT_VIEWABLE_BY_TOPIC_ID = "findViewableMessageCountByTopicIdByUserId";
     private static final String QUERY_COUNT_READ_VIEWABLE_BY_TOPIC_ID = "findReadViewableMessageCountByTopicIdByUserId";
@@ -1002,6 +1005,54 @@ public class MessageForumsMessageManagerImpl extends HibernateDaoSupport impleme
 
 
 
+    /*
+     * (non-Javadoc)
+     * @see org.sakaiproject.api.app.messageforums.MessageForumsMessageManager#findReadMessageCountsForAllUsersByTopicIds(java.util.Collection)
+     */
+    public List<Object[]> findReadMessageCountsForAllUsersByTopicIds(final Collection<Long> topicIds) {
+    	return findCountsByTopicIds(QUERY_READ_MESSAGE_COUNTS_FOR_ALL_USERS, topicIds);
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.sakaiproject.api.app.messageforums.MessageForumsMessageManager#findReadViewableMessageCountsForAllUsersByTopicIds(java.util.Collection)
+     */
+    public List<Object[]> findReadViewableMessageCountsForAllUsersByTopicIds(final Collection<Long> topicIds) {
+    	return findCountsByTopicIds(QUERY_READ_VIEWABLE_MESSAGE_COUNTS_FOR_ALL_USERS, topicIds);
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.sakaiproject.api.app.messageforums.MessageForumsMessageManager#findUnapprovedMessageCountsByAuthorByTopicIds(java.util.Collection)
+     */
+    public List<Object[]> findUnapprovedMessageCountsByAuthorByTopicIds(final Collection<Long> topicIds) {
+    	return findCountsByTopicIds(QUERY_UNAPPROVED_MESSAGE_COUNTS_BY_AUTHOR, topicIds);
+    }
+
+    /**
+     * Runs a named count query taking a "topicIds" list, in chunks to stay within Oracle's 'in' clause limit
+     */
+    private List<Object[]> findCountsByTopicIds(final String queryName, final Collection<Long> topicIds) {
+    	if (topicIds == null || topicIds.isEmpty()) return new ArrayList<Object[]>();
+
+    	HibernateCallback hcb = new HibernateCallback() {
+    		public Object doInHibernate(Session session) throws HibernateException, SQLException {
+    			List<Long> allTopicIds = new ArrayList<Long>(topicIds);
+    			List<Object[]> retrievedCounts = new ArrayList<Object[]>();
+
+    			for (int start = 0; start < allTopicIds.size(); start += MAX_IN_CLAUSE_SIZE) {
+    				Query q = session.getNamedQuery(queryName);
+    				q.setParameterList("topicIds", allTopicIds.subList(start, Math.min(start + MAX_IN_CLAUSE_SIZE, allTopicIds.size())));
+    				retrievedCounts.addAll(q.list());
+    			}
+
+    			return retrievedCounts;
+    		}
+    	};
+
+    	return (List<Object[]>) getHibernateTemplate().execute(hcb);
+    }
+
     public List<Object[]> findMessageCountTotal() {
     	HibernateCallback hcb = new HibernateCallback() {
             public Object doInHibernate(Session session) throws HibernateException, SQLException {
@@ -1711,6 +1762,11 @@ public class MessageForumsMessageManagerImpl extends HibernateDaoSupport impleme
 
       LOG.debug("findPvtMsgsBySearchText executing with searchText: " + searchText);
 
+      // the query only matches on the selected text fields, so there's nothing to find without one
+      if (!searchByText && !searchByAuthor && !searchByBody && !searchByLabel) {
+          return new ArrayList();
+      }
+
       HibernateCallback hcb = new HibernateCallback() {
           public Object doInHibernate(Session session) throws HibernateException, SQLException {
               Query q = session.getNamedQuery("findPvtMsgsBySearchText");
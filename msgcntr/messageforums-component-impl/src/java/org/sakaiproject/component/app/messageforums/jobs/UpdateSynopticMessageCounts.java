@@ -290,6 +290,17 @@ public class UpdateSynopticMessageCounts implements Job{
 		ResultSet usersMap = null;
 
 		try{
+			//the forum counts for everyone in the site are worked out from a few bulk queries over the
+			//site's topics, rather than running two count queries per topic for every member
+			HashMap<Long, DecoratedForumInfo> siteForumsHM = null;
+			SiteMessageCounts siteMessageCounts = null;
+			if (isMessageForumsPageInSite || isForumsPageInSite){
+				siteForumsHM = allTopicsAndForumsHM.get(siteId);
+				if(siteForumsHM != null){
+					siteMessageCounts = getSiteMessageCounts(siteForumsHM);
+				}
+			}
+
 			String allUsersQuery = "select USER_ID from SAKAI_SITE_USER where SITE_ID = ?";
 			if(updateNewMembersOnly){
 				allUsersQuery += " and USER_ID not in (select USER_ID from MFR_SYNOPTIC_ITEM where SITE_ID = ?)";
@@ -327,13 +338,13 @@ public class UpdateSynopticMessageCounts implements Job{
 					}
 				}
 
-				boolean isSuperUser = SecurityService.isSuperUser(userId); 
-
 				//forums count:
-				HashMap<Long, DecoratedForumInfo> dfHM = null;
+				HashMap<Long, DecoratedForumInfo> dfHM = siteForumsHM;
 				if (isMessageForumsPageInSite || isForumsPageInSite){			
-					dfHM = allTopicsAndForumsHM.get(siteId);
 					if(dfHM != null){
+						boolean isSuperUser = SecurityService.isSuperUser(userId);
+						boolean isInstructor = getForumManager().isInstructor(userId, "/site/" + siteId);
+
 						//site has forums added to the tool
 						Set<Entry<Long, DecoratedForumInfo>> dfEntrySet = dfHM.entrySet();
 
@@ -342,7 +353,6 @@ public class UpdateSynopticMessageCounts implements Job{
 							Long dfId = entry.getKey();
 
 							DecoratedForumInfo dForum = entry.getValue();
-							boolean isInstructor = getForumManager().isInstructor(userId, "/site/" + siteId);
 
 							// Only count unread messages for forums the user can view:
 							if (dForum.getIsDraft().equals(Boolean.FALSE)
@@ -375,13 +385,13 @@ public class UpdateSynopticMessageCounts implements Job{
 											if (!isTopicModerated.booleanValue() || (isTopicModerated.booleanValue() && 
 													getUiPermissionsManager().isModeratePostings(topicId, dForum.getIsLocked(), dForum.getIsDraft(), isTopicLocked, isTopicDraft, userId, siteId)))
 											{
-												unreadForum += getMessageManager().findUnreadMessageCountByTopicIdByUserId(topicId, userId);
+												unreadForum += siteMessageCounts.getUnreadMessageCount(topicId, userId);
 											}
 											else
 											{	
 												// b/c topic is moderated and user does not have mod perm, user may only
 												// see approved msgs or pending/denied msgs authored by user
-												unreadForum += getMessageManager().findUnreadViewableMessageCountByTopicIdByUserId(topicId, userId);
+												unreadForum += siteMessageCounts.getUnreadViewableMessageCount(topicId, userId);
 
 											}
 										}
@@ -496,6 +506,43 @@ public class UpdateSynopticMessageCounts implements Job{
 		
 	}
 	
+	private SiteMessageCounts getSiteMessageCounts(HashMap<Long, DecoratedForumInfo> forumsHM){
+		List<Long> topicIds = new ArrayList<Long>();
+		for (DecoratedForumInfo dForum : forumsHM.values()) {
+			for (DecoratedTopicsInfo topic : dForum.getTopics()) {
+				topicIds.add(topic.getTopicId());
+			}
+		}
+
+		SiteMessageCounts counts = new SiteMessageCounts();
+		for (Object[] row : getMessageManager().findMessageCountsForMainPage(topicIds)) {
+			counts.messageCounts.put((Long) row[0], ((Number) row[1]).intValue());
+		}
+		addCountsByTopicAndUser(counts.readCounts, getMessageManager().findReadMessageCountsForAllUsersByTopicIds(topicIds));
+		addCountsByTopicAndUser(counts.readViewableCounts, getMessageManager().findReadViewableMessageCountsForAllUsersByTopicIds(topicIds));
+		addCountsByTopicAndUser(counts.unapprovedCounts, getMessageManager().findUnapprovedMessageCountsByAuthorByTopicIds(topicIds));
+		for (Entry<Long, Map<String, Integer>> entry : counts.unapprovedCounts.entrySet()) {
+			int total = 0;
+			for (Integer count : entry.getValue().values()) {
+				total += count;
+			}
+			counts.unapprovedTotals.put(entry.getKey(), total);
+		}
+		return counts;
+	}
+
+	private void addCountsByTopicAndUser(Map<Long, Map<String, Integer>> countsHM, List<Object[]> rows){
+		for (Object[] row : rows) {
+			Long topicId = (Long) row[0];
+			Map<String, Integer> userCounts = countsHM.get(topicId);
+			if (userCounts == null) {
+				userCounts = new HashMap<String, Integer>();
+				countsHM.put(topicId, userCounts);
+			}
+			userCounts.put((String) row[1], ((Number) row[2]).intValue());
+		}
+	}
+
 	public HashMap<String, HashMap<String, Integer>> getSiteAndUserMessageCountHM(ResultSet rs){
 		HashMap<String, HashMap<String, Integer>> returnHM = new HashMap<String, HashMap<String, Integer>>();
 		
@@ -584,6 +631,46 @@ public class UpdateSynopticMessageCounts implements Job{
 		this.siteService = siteService;
 	}
 	
+	/**
+	 * The message counts of every topic in a site, from which each member's unread counts are derived
+	 * the same way as MessageForumsMessageManager.findUnreadMessageCountByTopicIdByUserId and
+	 * findUnreadViewableMessageCountByTopicIdByUserId work them out for a single user.
+	 */
+	private static class SiteMessageCounts{
+
+		private Map<Long, Integer> messageCounts = new HashMap<Long, Integer>();
+		private Map<Long, Map<String, Integer>> readCounts = new HashMap<Long, Map<String, Integer>>();
+		private Map<Long, Map<String, Integer>> readViewableCounts = new HashMap<Long, Map<String, Integer>>();
+		private Map<Long, Map<String, Integer>> unapprovedCounts = new HashMap<Long, Map<String, Integer>>();
+		private Map<Long, Integer> unapprovedTotals = new HashMap<Long, Integer>();
+
+		public int getUnreadMessageCount(Long topicId, String userId){
+			return getCount(messageCounts, topicId) - getCount(readCounts, topicId, userId);
+		}
+
+		/**
+		 * Only the approved messages and the user's own pending or denied messages are viewable
+		 */
+		public int getUnreadViewableMessageCount(Long topicId, String userId){
+			int viewable = getCount(messageCounts, topicId) - getCount(unapprovedTotals, topicId) + getCount(unapprovedCounts, topicId, userId);
+			return viewable - getCount(readViewableCounts, topicId, userId);
+		}
+
+		private int getCount(Map<Long, Integer> countsHM, Long topicId){
+			Integer count = countsHM.get(topicId);
+			return count != null ? count.intValue() : 0;
+		}
+
+		private int getCount(Map<Long, Map<String, Integer>> countsHM, Long topicId, String userId){
+			Map<String, Integer> userCounts = countsHM.get(topicId);
+			if (userCounts == null) {
+				return 0;
+			}
+			Integer count = userCounts.get(userId);
+			return count != null ? count.intValue() : 0;
+		}
+	}
+
 	public class DecoratedForumInfo{
 		
 		private Long forumId;
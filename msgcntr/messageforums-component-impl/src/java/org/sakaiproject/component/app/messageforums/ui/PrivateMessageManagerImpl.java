@@ -20,6 +20,8 @@
  **********************************************************************************/
 package org.sakaiproject.component.app.messageforums.ui;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -91,6 +93,11 @@ public class PrivateMessageManagerImpl extends HibernateDaoSupport implements
   private static final String QUERY_AGGREGATE_COUNT = "findAggregatePvtMsgCntForUserInContext";  
   private static final String QUERY_MESSAGES_BY_USER_TYPE_AND_CONTEXT = "findPrvtMsgsByUserTypeContext";
   private static final String QUERY_MESSAGES_BY_ID_WITH_RECIPIENTS = "findPrivateMessageByIdWithRecipients";
+
+  private static final String INSERT_RECIPIENT_SQL = "insert into MFR_PVT_MSG_USR_T "
+      + "(messageSurrogateKey, user_index_col, USER_ID, TYPE_UUID, CONTEXT_ID, READ_STATUS, BCC, REPLIED) "
+      + "values (?, ?, ?, ?, ?, ?, ?, ?)";
+  private static final int RECIPIENT_BATCH_SIZE = 100;
   
   private static final String MESSAGECENTER_BUNDLE = "org.sakaiproject.api.app.messagecenter.bundle.Messages";
   
@@ -1173,6 +1180,21 @@ public class PrivateMessageManagerImpl extends HibernateDaoSupport implements
     		pfMap.put(pf1.getOwner(), pf1);
     	}
 
+    	// look up the default forums of recipients without a forum in this site in one go
+    	List<String> ownersWithoutForum = new ArrayList<String>();
+    	for (User u : recipients.keySet()) {
+    		if (!pfMap.containsKey(u.getId())) {
+    			ownersWithoutForum.add(u.getId());
+    		}
+    	}
+    	Map<String, PrivateForum> oldPfMap = new HashMap<String, PrivateForum>();
+    	for (PrivateForum oldPf : forumManager.getPrivateForumsByOwnersAreaNull(ownersWithoutForum)) {
+    		oldPfMap.put(oldPf.getOwner(), oldPf);
+    	}
+
+    	String receivedType = typeManager.getReceivedPrivateMessageType();
+    	String contextId = getContextId();
+
 		boolean forwardingEnabled = false;
 		List<InternetAddress> fAddresses = new ArrayList<InternetAddress>();
     	//this only needs to be done if the message is not being sent
@@ -1200,7 +1222,7 @@ public class PrivateMessageManagerImpl extends HibernateDaoSupport implements
     		if( pf == null)  
     		{
     			//only check for default settings if the pf is null
-    			PrivateForum oldPf = forumManager.getPrivateForumByOwnerAreaNull(userId);
+    			PrivateForum oldPf = oldPfMap.get(userId);
 				if (oldPf != null && oldPf.getAutoForward().booleanValue() && oldPf.getAutoForwardEmail() != null) {
 					//forwardAddress = oldPf.getAutoForwardEmail();
     				forwardingEnabled = true;
@@ -1214,7 +1236,7 @@ public class PrivateMessageManagerImpl extends HibernateDaoSupport implements
 
 
     			PrivateMessageRecipientImpl receiver = new PrivateMessageRecipientImpl(
-    					userId, typeManager.getReceivedPrivateMessageType(), getContextId(),
+    					userId, receivedType, contextId,
     					isRecipientCurrentUser, bcc);
     			recipientList.add(receiver);                    
     		}      
@@ -1245,9 +1267,7 @@ public class PrivateMessageManagerImpl extends HibernateDaoSupport implements
 
     recipientList.add(sender);
 
-    message.setRecipients(recipientList);
-
-    savePrivateMessage(message, false);
+    saveRecipientsInBatches(message, recipientList);
   }
     catch (MessagingException e) 
     {
@@ -1255,6 +1275,60 @@ public class PrivateMessageManagerImpl extends HibernateDaoSupport implements
 	}
   }
 
+  /**
+   * Saves a sent message with one MFR_PVT_MSG_USR_T row per recipient. For a whole site that can be
+   * thousands of rows, so they are inserted in JDBC batches instead of one statement each through
+   * the recipients collection.
+   */
+  private void saveRecipientsInBatches(final PrivateMessage message, final List recipientList)
+  {
+    // save the message with no recipients, this also drops the rows of a draft being sent
+    message.setRecipients(new ArrayList());
+    savePrivateMessage(message, false);
+
+    HibernateCallback hcb = new HibernateCallback()
+    {
+      public Object doInHibernate(Session session) throws HibernateException,
+          SQLException
+      {
+        session.flush();
+        Connection conn = session.connection();
+        PreparedStatement statement = conn.prepareStatement(INSERT_RECIPIENT_SQL);
+        try
+        {
+          for (int i = 0; i < recipientList.size(); i++)
+          {
+            PrivateMessageRecipient recipient = (PrivateMessageRecipient) recipientList.get(i);
+            statement.setLong(1, message.getId());
+            statement.setInt(2, i);
+            statement.setString(3, recipient.getUserId());
+            statement.setString(4, recipient.getTypeUuid());
+            statement.setString(5, recipient.getContextId());
+            statement.setBoolean(6, Boolean.TRUE.equals(recipient.getRead()));
+            statement.setBoolean(7, Boolean.TRUE.equals(recipient.getBcc()));
+            statement.setBoolean(8, Boolean.TRUE.equals(recipient.getReplied()));
+            statement.addBatch();
+            if ((i + 1) % RECIPIENT_BATCH_SIZE == 0)
+            {
+              statement.executeBatch();
+            }
+          }
+          statement.executeBatch();
+        }
+        finally
+        {
+          statement.close();
+        }
+        // detach the message so the recipients set below are not written again by hibernate
+        session.evict(message);
+        return null;
+      }
+    };
+
+    getHibernateTemplate().execute(hcb);
+    message.setRecipients(recipientList);
+  }
+
   public boolean isEmailForwardDisabled(){
 	  return ServerConfigurationService.getBoolean("mc.messages.forwardEmailDisabled", false);
   }
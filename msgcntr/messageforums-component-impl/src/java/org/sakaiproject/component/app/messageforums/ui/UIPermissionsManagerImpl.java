@@ -1086,6 +1086,15 @@ public class UIPermissionsManagerImpl implements UIPermissionsManager {
 			initMembershipForSite();
 		}
 
+		// new forums have no id yet and nothing to share with other checks
+		Map userItemsInThread = (Map) ThreadLocalManager.get("message_center_user_membership_items");
+		String userItemsKey = forum.getId() == null ? null : "forum/" + forum.getId() + "/" + getCurrentUserId() + "/" + getContextId();
+		List userItems = userItemsKey == null ? null : (List) userItemsInThread.get(userItemsKey);
+		if (userItems != null)
+		{
+			return userItems.iterator();
+		}
+
 		Set forumItemsInThread = (Set) ThreadLocalManager.get("message_center_membership_forum");
 		Set thisForumItemSet = new HashSet();
 		Iterator iter = forumItemsInThread.iterator();
@@ -1166,6 +1175,9 @@ public class UIPermissionsManagerImpl implements UIPermissionsManager {
 //        forumItems.add(membershipItem);
 //      }
 //    }
+    if (userItemsKey != null) {
+      userItemsInThread.put(userItemsKey, forumItems);
+    }
     return forumItems.iterator();
   }
 
@@ -1213,6 +1225,15 @@ public class UIPermissionsManagerImpl implements UIPermissionsManager {
 			initMembershipForSite(siteId, userId);
 		}
 
+		// every permission check on a topic needs the same items, only resolve them once per request
+		Map userItemsInThread = (Map) ThreadLocalManager.get("message_center_user_membership_items");
+		String userItemsKey = "topic/" + topicId + "/" + userId + "/" + siteId;
+		List userItems = (List) userItemsInThread.get(userItemsKey);
+		if (userItems != null)
+		{
+			return userItems.iterator();
+		}
+
 		Set topicItemsInThread = (Set) ThreadLocalManager.get("message_center_membership_topic");
 		Set thisTopicItemSet = new HashSet();
 		Iterator iter = topicItemsInThread.iterator();
@@ -1280,6 +1301,7 @@ public class UIPermissionsManagerImpl implements UIPermissionsManager {
 //        topicItems.add(membershipItem);
 //      }
 //    }
+    userItemsInThread.put(userItemsKey, topicItems);
     return topicItems.iterator();
   }
   
@@ -1545,6 +1567,7 @@ public class UIPermissionsManagerImpl implements UIPermissionsManager {
   	ThreadLocalManager.set("message_center_membership_area", areaItems);
   	ThreadLocalManager.set("message_center_membership_forum", forumItems);
   	ThreadLocalManager.set("message_center_membership_topic", topicItems);
+  	ThreadLocalManager.set("message_center_user_membership_items", new HashMap());
 	ThreadLocalManager.set("message_center_permission_set", Boolean.valueOf(true));
   }
   
@@ -0,0 +1,52 @@
+/**********************************************************************************
+ * $URL$
+ * $Id$
+ ***********************************************************************************
+ *
+ * Copyright (c) 2016 The Sakai Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.opensource.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **********************************************************************************/
+
+package org.sakaiproject.presence.api;
+
+/**
+ * <p>
+ * A PresenceListener is told when a session joins or leaves a location on this server.
+ * </p>
+ */
+public interface PresenceListener
+{
+	/**
+	 * A session has become present at a location.
+	 * 
+	 * @param locationId
+	 *        The location id.
+	 * @param sessionId
+	 *        The usage session id.
+	 * @param userId
+	 *        The id of the user owning the session.
+	 */
+	void presenceAdded(String locationId, String sessionId, String userId);
+
+	/**
+	 * A session is no longer present at a location.
+	 * 
+	 * @param locationId
+	 *        The location id.
+	 * @param sessionId
+	 *        The usage session id.
+	 */
+	void presenceRemoved(String locationId, String sessionId);
+}
@@ -161,4 +161,20 @@ public interface PresenceService
 	 * @return The time (seconds) after which a presence will timeout.
 	 */
 	int getTimeout();
+
+	/**
+	 * Register a listener to be told about presence changes made on this server.
+	 * 
+	 * @param listener
+	 *        The PresenceListener.
+	 */
+	void addPresenceListener(PresenceListener listener);
+
+	/**
+	 * Stop telling a listener about presence changes.
+	 * 
+	 * @param listener
+	 *        The PresenceListener.
+	 */
+	void removePresenceListener(PresenceListener listener);
 }
@@ -156,4 +156,20 @@ public class PresenceService
 
 		return service.getTimeout();
 	}
+
+	public static void addPresenceListener(org.sakaiproject.presence.api.PresenceListener param0)
+	{
+		org.sakaiproject.presence.api.PresenceService service = getInstance();
+		if (service == null) return;
+
+		service.addPresenceListener(param0);
+	}
+
+	public static void removePresenceListener(org.sakaiproject.presence.api.PresenceListener param0)
+	{
+		org.sakaiproject.presence.api.PresenceService service = getInstance();
+		if (service == null) return;
+
+		service.removePresenceListener(param0);
+	}
 }
@@ -21,13 +21,17 @@
 
 package org.sakaiproject.presence.impl;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -43,6 +47,8 @@ import org.sakaiproject.event.api.NotificationEdit;
 import org.sakaiproject.event.api.NotificationService;
 import org.sakaiproject.event.api.UsageSession;
 import org.sakaiproject.event.api.UsageSessionService;
+import org.sakaiproject.memory.api.MemoryService;
+import org.sakaiproject.presence.api.PresenceListener;
 import org.sakaiproject.presence.api.PresenceService;
 import org.sakaiproject.tool.api.Session;
 import org.sakaiproject.tool.api.SessionBindingEvent;
@@ -79,6 +85,15 @@ public abstract class BasePresenceService implements PresenceService, PresenceUp
 	/** The maintenance. */
 	protected Maintenance m_maintenance = null;
 
+	/** The name of the cache holding the presence index. */
+	protected final static String INDEX_CACHE = "org.sakaiproject.presence.api.PresenceService.index";
+
+	/** The in-memory presence index, or null if not enabled. */
+	protected PresenceIndex m_index = null;
+
+	/** Listeners told about presence changes on this server. */
+	protected List<PresenceListener> m_listeners = new CopyOnWriteArrayList<PresenceListener>();
+
 
 	/**********************************************************************************************************************************************************************************************************************************************************
 	 * Constructors, Dependencies and their setter methods
@@ -153,6 +168,55 @@ public abstract class BasePresenceService implements PresenceService, PresenceUp
 		m_privacyManager = service;
 	}
 
+	/** Dependency: MemoryService */
+	protected MemoryService m_memoryService = null;
+
+	/**
+	 * Dependency: MemoryService.
+	 * 
+	 * @param service
+	 *        The MemoryService.
+	 */
+	public void setMemoryService(MemoryService service)
+	{
+		m_memoryService = service;
+	}
+
+	/** Configuration: keep an in-memory presence index rather than reading presence from storage on every request. */
+	protected boolean m_indexEnabled = false;
+
+	/**
+	 * Configuration: keep an in-memory presence index.
+	 * 
+	 * @param value
+	 *        true to answer presence lists from the index.
+	 */
+	public void setIndexEnabled(String value)
+	{
+		m_indexEnabled = Boolean.valueOf(value);
+	}
+
+	/** Configuration: seconds after loading a location from storage that the index loads it again. */
+	protected int m_indexReloadSeconds = 60;
+
+	/**
+	 * Configuration: SECONDS after loading a location from storage that the index loads it again, which is how long changes made on
+	 * other servers can take to show when the index cache is not clustered.
+	 * 
+	 * @param value
+	 *        reload seconds.
+	 */
+	public void setIndexReloadSeconds(String value)
+	{
+		try
+		{
+			m_indexReloadSeconds = Integer.parseInt(value);
+		}
+		catch (Exception ignore)
+		{
+		}
+	}
+
 	/** Configuration: default value in seconds till a non-refreshed presence entry times out. */
 	protected int m_timeout = 60;
 
@@ -191,6 +255,13 @@ public abstract class BasePresenceService implements PresenceService, PresenceUp
 			// storage
 			m_storage = newStorage();
 
+			// the index, if wanted
+			if (m_indexEnabled && m_memoryService != null)
+			{
+				m_index = new PresenceIndex(m_memoryService.<String, PresenceIndex.Location>getCache(INDEX_CACHE), m_indexReloadSeconds);
+				M_log.info("init(): presence index enabled, cache: " + INDEX_CACHE + ", reload: " + m_indexReloadSeconds + "s");
+			}
+
 			// start the maintenance thread
 			m_maintenance = new Maintenance();
 			m_maintenance.start();
@@ -246,6 +317,8 @@ public abstract class BasePresenceService implements PresenceService, PresenceUp
 	public void destroy()
 	{
 		m_storage = null;
+		m_index = null;
+		m_listeners.clear();
 		M_log.info("destroy()");
 	}
 
@@ -298,6 +371,7 @@ public abstract class BasePresenceService implements PresenceService, PresenceUp
 
 			// update the storage
 			m_storage.setPresence(curSession.getId(), locationId);
+			presenceAdded(locationId, curSession, timeout);
 
 			// generate the event
 			Event event = m_eventTrackingService.newEvent(EVENT_PRESENCE, presenceReference(locationId), true);
@@ -311,6 +385,14 @@ public abstract class BasePresenceService implements PresenceService, PresenceUp
 			Presence p = new Presence(curSession, locationId, timeout);
 			ts.setAttribute(locationId, p);
 		}
+		else if (m_index != null)
+		{
+			UsageSession curSession = m_usageSessionService.getSession();
+			if (curSession != null)
+			{
+				m_index.refresh(locationId, curSession.getId(), curSession.getUserId(), timeout);
+			}
+		}
 
 		// retire any expired presence
 		checkPresenceForExpiration();
@@ -330,6 +412,7 @@ public abstract class BasePresenceService implements PresenceService, PresenceUp
 
 			// tell maintenance
 			m_storage.removePresence(curSession.getId(), locationId);
+			presenceRemoved(locationId, curSession.getId());
 
 			// generate the event
 			Event event = m_eventTrackingService.newEvent(EVENT_ABSENCE, presenceReference(locationId), true);
@@ -361,6 +444,7 @@ public abstract class BasePresenceService implements PresenceService, PresenceUp
 		// send presence end events for these
 		for (String locationId  : presence)
 		{
+			presenceRemoved(locationId, sessionId);
 			Event event = m_eventTrackingService.newEvent(PresenceService.EVENT_ABSENCE, 
 					presenceReference(locationId), true);
 			m_eventTrackingService.post(event, session);
@@ -376,7 +460,16 @@ public abstract class BasePresenceService implements PresenceService, PresenceUp
 	public List<UsageSession> getPresence(String locationId)
 	{
 		// get the sessions at this location
-		List<UsageSession> sessions = m_storage.getSessions(locationId);
+		List<UsageSession> sessions = null;
+		Map<String, String> present = (m_index == null) ? null : m_index.getPresent(locationId);
+		if (present != null)
+		{
+			sessions = m_usageSessionService.getSessions(new ArrayList<String>(present.keySet()));
+		}
+		else
+		{
+			sessions = loadSessions(locationId);
+		}
 
 		// sort
 		Collections.sort(sessions);
@@ -391,19 +484,8 @@ public abstract class BasePresenceService implements PresenceService, PresenceUp
 	@SuppressWarnings("unchecked")
 	public List<User> getPresentUsers(String locationId)
 	{
-		// get the sessions
-		List<UsageSession> sessions = m_storage.getSessions(locationId);
-
 		// form a list of user ids
-		List<String> userIds = new Vector<String>();
-		
-		for (UsageSession s : sessions)
-		{	
-			if (!userIds.contains(s.getUserId()))
-			{
-				userIds.add(s.getUserId());
-			}
-		}
+		List<String> userIds = getPresentUserIds(locationId);
 
 		// get the users for these ids
 		List<User> users = m_userDirectoryService.getUsers(userIds);
@@ -420,19 +502,8 @@ public abstract class BasePresenceService implements PresenceService, PresenceUp
 	@SuppressWarnings("unchecked")
 	public List<User> getPresentUsers(String locationId, String siteId)
 	{
-		// get the sessions
-		List<UsageSession> sessions = m_storage.getSessions(locationId);
-
 		// form a list of user ids
-		List<String> userIds = new Vector<String>();
-		
-		for (UsageSession s : sessions)
-		{
-			if (!userIds.contains(s.getUserId()))
-			{
-				userIds.add(s.getUserId());
-			}
-		}
+		List<String> userIds = getPresentUserIds(locationId);
 		
 		Set<String> userIdsSet = m_privacyManager.findViewable("/site/" + siteId, new HashSet(userIds));
 
@@ -458,6 +529,113 @@ public abstract class BasePresenceService implements PresenceService, PresenceUp
 
 	} // getLocations
 
+	/**
+	 * {@inheritDoc}
+	 */
+	public void addPresenceListener(PresenceListener listener)
+	{
+		if (listener != null) m_listeners.add(listener);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void removePresenceListener(PresenceListener listener)
+	{
+		m_listeners.remove(listener);
+	}
+
+	/**
+	 * Access the ids of the users present at a location, from the index if we have one.
+	 * 
+	 * @param locationId
+	 *        The location to check.
+	 * @return The distinct user ids present at the location.
+	 */
+	protected List<String> getPresentUserIds(String locationId)
+	{
+		Set<String> userIds = new LinkedHashSet<String>();
+
+		Map<String, String> present = (m_index == null) ? null : m_index.getPresent(locationId);
+		if (present != null)
+		{
+			userIds.addAll(present.values());
+		}
+		else
+		{
+			for (UsageSession s : loadSessions(locationId))
+			{
+				userIds.add(s.getUserId());
+			}
+		}
+
+		return new Vector<String>(userIds);
+	}
+
+	/**
+	 * Read the sessions at a location from storage, indexing them if we keep an index.
+	 * 
+	 * @param locationId
+	 *        The location to read.
+	 * @return The List of sessions (UsageSession) present at this location.
+	 */
+	protected List<UsageSession> loadSessions(String locationId)
+	{
+		List<UsageSession> sessions = m_storage.getSessions(locationId);
+		if (m_index != null)
+		{
+			m_index.load(locationId, sessions, m_timeout);
+		}
+
+		return sessions;
+	}
+
+	/**
+	 * Update the index and tell the listeners that a session has joined a location.
+	 */
+	protected void presenceAdded(String locationId, UsageSession session, int timeout)
+	{
+		if (m_index != null)
+		{
+			m_index.join(locationId, session.getId(), session.getUserId(), timeout);
+		}
+
+		for (PresenceListener listener : m_listeners)
+		{
+			try
+			{
+				listener.presenceAdded(locationId, session.getId(), session.getUserId());
+			}
+			catch (Exception e)
+			{
+				M_log.warn("presenceAdded(): listener failed: " + e);
+			}
+		}
+	}
+
+	/**
+	 * Update the index and tell the listeners that a session has left a location.
+	 */
+	protected void presenceRemoved(String locationId, String sessionId)
+	{
+		if (m_index != null)
+		{
+			m_index.leave(locationId, sessionId);
+		}
+
+		for (PresenceListener listener : m_listeners)
+		{
+			try
+			{
+				listener.presenceRemoved(locationId, sessionId);
+			}
+			catch (Exception e)
+			{
+				M_log.warn("presenceRemoved(): listener failed: " + e);
+			}
+		}
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -680,6 +858,7 @@ public abstract class BasePresenceService implements PresenceService, PresenceUp
 			if (m_active)
 			{
 				m_storage.removePresence(m_session.getId(), m_locationId);
+				presenceRemoved(m_locationId, m_session.getId());
 
 				// generate the event
 				Event event = m_eventTrackingService.newEvent(EVENT_ABSENCE, presenceReference(m_locationId), true);
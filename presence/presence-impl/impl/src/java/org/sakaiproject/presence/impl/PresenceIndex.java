@@ -0,0 +1,280 @@
+/**********************************************************************************
+ * $URL$
+ * $Id$
+ ***********************************************************************************
+ *
+ * Copyright (c) 2016 The Sakai Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.opensource.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **********************************************************************************/
+
+package org.sakaiproject.presence.impl;
+
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sakaiproject.event.api.UsageSession;
+import org.sakaiproject.memory.api.Cache;
+
+/**
+ * <p>
+ * PresenceIndex keeps, for each location, the sessions present there (with their user and expiry time) in a memory service Cache, so that
+ * presence lists can be answered without going to the database. Each location is reloaded from storage once it is older than the reload
+ * interval, however often it has been written since, so changes made on other app servers are seen within that interval even when the
+ * cache is not clustered (see memory.cluster.names).
+ * </p>
+ * <p>
+ * A location missing from the cache, or due a reload, is "not indexed": callers load it from storage with {@link #load(String, List, int)}.
+ * Joins and leaves for locations that are not indexed are ignored, as storage already has them and the next load will pick them up.
+ * </p>
+ */
+public class PresenceIndex
+{
+	/** Our log (commons). */
+	private static Logger M_log = LoggerFactory.getLogger(PresenceIndex.class);
+
+	/** Number of lock stripes guarding read-modify-write of a location entry in a distributed cache. */
+	protected static final int LOCKS = 64;
+
+	/** The cache holding location id -> Location. */
+	protected Cache<String, Location> m_cache = null;
+
+	/** true if the cache hands out copies, so a changed location has to be put back to be seen. */
+	protected boolean m_distributed = false;
+
+	/** Milliseconds after loading from storage that a location is loaded again. */
+	protected long m_reloadMillis = 0;
+
+	/** Lock stripes. */
+	protected final Object[] m_locks = new Object[LOCKS];
+
+	/**
+	 * Construct.
+	 *
+	 * @param cache
+	 *        The cache to keep the index in.
+	 * @param reloadSeconds
+	 *        Seconds after loading from storage that a location is loaded again.
+	 */
+	public PresenceIndex(Cache<String, Location> cache, int reloadSeconds)
+	{
+		m_cache = cache;
+		m_distributed = cache.isDistributed();
+		m_reloadMillis = reloadSeconds * 1000L;
+		for (int i = 0; i < LOCKS; i++)
+		{
+			m_locks[i] = new Object();
+		}
+	}
+
+	/**
+	 * Access the sessions present at a location.
+	 *
+	 * @param locationId
+	 *        The location id.
+	 * @return A map of session id to user id for the unexpired sessions present, or null if the location is not indexed.
+	 */
+	public Map<String, String> getPresent(String locationId)
+	{
+		Location location = m_cache.get(locationId);
+		long now = System.currentTimeMillis();
+		if (location == null || now - location.loaded > m_reloadMillis) return null;
+
+		Map<String, String> rv = new LinkedHashMap<String, String>();
+		for (Map.Entry<String, Member> e : location.members.entrySet())
+		{
+			if (e.getValue().expires > now)
+			{
+				rv.put(e.getKey(), e.getValue().userId);
+			}
+		}
+
+		return rv;
+	}
+
+	/**
+	 * Index a location from the sessions storage says are present there.
+	 *
+	 * @param locationId
+	 *        The location id.
+	 * @param sessions
+	 *        The sessions present.
+	 * @param timeout
+	 *        Seconds till these entries expire if not refreshed.
+	 */
+	public void load(String locationId, List<UsageSession> sessions, int timeout)
+	{
+		long now = System.currentTimeMillis();
+		long expires = now + timeout * 1000L;
+		Location location = new Location(now);
+		for (UsageSession s : sessions)
+		{
+			location.members.put(s.getId(), new Member(s.getUserId(), expires));
+		}
+
+		synchronized (lock(locationId))
+		{
+			m_cache.put(locationId, location);
+		}
+	}
+
+	/**
+	 * Record a session's presence at a location.
+	 *
+	 * @param locationId
+	 *        The location id.
+	 * @param sessionId
+	 *        The usage session id.
+	 * @param userId
+	 *        The session's user id.
+	 * @param timeout
+	 *        Seconds till this entry expires if not refreshed.
+	 */
+	public void join(String locationId, String sessionId, String userId, int timeout)
+	{
+		update(locationId, sessionId, new Member(userId, System.currentTimeMillis() + timeout * 1000L));
+	}
+
+	/**
+	 * Extend a session's presence at a location. To keep cache traffic down the entry is only rewritten once half its lifetime has
+	 * passed, so the frequent courier refreshes mostly cost a cache read.
+	 *
+	 * @param locationId
+	 *        The location id.
+	 * @param sessionId
+	 *        The usage session id.
+	 * @param userId
+	 *        The session's user id.
+	 * @param timeout
+	 *        Seconds till this entry expires if not refreshed.
+	 */
+	public void refresh(String locationId, String sessionId, String userId, int timeout)
+	{
+		Location location = m_cache.get(locationId);
+		if (location == null) return;
+
+		Member current = location.members.get(sessionId);
+		long now = System.currentTimeMillis();
+		if (current != null && current.expires - now > timeout * 500L) return;
+
+		update(locationId, sessionId, new Member(userId, now + timeout * 1000L));
+	}
+
+	/**
+	 * Remove a session's presence from a location.
+	 *
+	 * @param locationId
+	 *        The location id.
+	 * @param sessionId
+	 *        The usage session id.
+	 */
+	public void leave(String locationId, String sessionId)
+	{
+		update(locationId, sessionId, null);
+	}
+
+	/**
+	 * Drop the whole index.
+	 */
+	public void clear()
+	{
+		m_cache.clear();
+		if (M_log.isDebugEnabled()) M_log.debug("clear()");
+	}
+
+	/**
+	 * Change one session of an indexed location, in place. The location keeps its load time, so writes never put off its reload.
+	 *
+	 * @param member
+	 *        The session's new membership, or null to remove it.
+	 */
+	protected void update(String locationId, String sessionId, Member member)
+	{
+		if (!m_distributed)
+		{
+			// the cache holds the location itself, so changing it is all that is needed
+			Location location = m_cache.get(locationId);
+			if (location != null) location.change(sessionId, member);
+			return;
+		}
+
+		synchronized (lock(locationId))
+		{
+			Location location = m_cache.get(locationId);
+			if (location != null && location.change(sessionId, member))
+			{
+				m_cache.put(locationId, location);
+			}
+		}
+	}
+
+	protected Object lock(String locationId)
+	{
+		return m_locks[(locationId.hashCode() & 0x7fffffff) % LOCKS];
+	}
+
+	/**
+	 * The sessions present at a location and when they were loaded from storage. Serializable so it can live in a clustered cache.
+	 */
+	public static class Location implements Serializable
+	{
+		private static final long serialVersionUID = 1L;
+
+		/** Timestamp in milliseconds this location was loaded from storage. */
+		protected final long loaded;
+
+		/** Session id -> Member. */
+		protected final ConcurrentHashMap<String, Member> members = new ConcurrentHashMap<String, Member>();
+
+		public Location(long loaded)
+		{
+			this.loaded = loaded;
+		}
+
+		/**
+		 * @return true if the members changed.
+		 */
+		protected boolean change(String sessionId, Member member)
+		{
+			if (member == null) return members.remove(sessionId) != null;
+			members.put(sessionId, member);
+			return true;
+		}
+	}
+
+	/**
+	 * A session's membership of a location: the user and when it expires. Serializable so it can live in a clustered cache.
+	 */
+	public static class Member implements Serializable
+	{
+		private static final long serialVersionUID = 1L;
+
+		/** The session's user id. */
+		protected final String userId;
+
+		/** Timestamp in milliseconds to expire. */
+		protected final long expires;
+
+		public Member(String userId, long expires)
+		{
+			this.userId = userId;
+			this.expires = expires;
+		}
+	}
+}
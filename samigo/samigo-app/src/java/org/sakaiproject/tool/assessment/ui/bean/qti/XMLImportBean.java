@@ -504,15 +504,9 @@ public class XMLImportBean implements Serializable
    */
   private QuestionPoolFacade createImportedQuestionPool(String fullFileName, int qti) throws Exception
   {
-    //trim = true so that xml processing instruction at top line, even if not.
-    Document document;
-	try {
-		document = XmlUtil.readDocument(fullFileName, true);
-	} catch (Exception e) {
-		throw(e);
-	}
+    // the file is streamed rather than read into a document, as pools may hold many thousands of questions
     QTIService qtiService = new QTIService();
-    return qtiService.createImportedQuestionPool(document, qti);
+    return qtiService.createImportedQuestionPool(fullFileName, qti);
   }  
   
   public QuestionPoolBean getQuestionPoolBean()
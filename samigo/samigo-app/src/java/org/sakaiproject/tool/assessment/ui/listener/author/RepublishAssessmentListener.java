@@ -132,15 +132,11 @@ public class RepublishAssessmentListener implements ActionListener {
 					}
 					currentAgent = adata.getAgentId();
 				}
-				service.storeGrades(adata, true, publishedAssessment, publishedItemHash, publishedItemTextHash, publishedAnswerHash, true);
-			}
-		}
-		else {
-			while (iter.hasNext()) {
-				AssessmentGradingData adata = (AssessmentGradingData) iter.next();
-				service.storeGrades(adata, true, publishedAssessment, publishedItemHash, publishedItemTextHash, publishedAnswerHash, true);
 			}
 		}
+		// rescore every submission against the hashes above and save them all at once,
+		// the gradebook gets the new scores in updateGB
+		service.regradeAssessmentGradings(list, publishedAssessment, publishedItemHash, publishedItemTextHash, publishedAnswerHash);
 	}
 
 	private void updateGB(PublishedAssessmentFacade assessment) {
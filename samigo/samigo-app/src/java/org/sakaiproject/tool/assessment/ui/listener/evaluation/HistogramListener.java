@@ -7,12 +7,15 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Objects;
 import java.util.Set;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
@@ -28,9 +31,11 @@ import javax.faces.event.ValueChangeListener;
 import javax.servlet.http.HttpServletRequest;
 
 import org.apache.commons.beanutils.BeanUtils;
+import org.apache.commons.lang.SerializationUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 //import org.hibernate.Hibernate;
+import org.sakaiproject.component.cover.ServerConfigurationService;
 import org.sakaiproject.tool.assessment.api.SamigoApiFactory;
 import org.sakaiproject.tool.assessment.data.dao.assessment.PublishedSectionData;
 import org.sakaiproject.tool.assessment.data.dao.grading.AssessmentGradingComparatorByScoreAndUniqueIdentifier;
@@ -61,6 +66,7 @@ import org.sakaiproject.tool.assessment.ui.bean.evaluation.ItemBarBean;
 import org.sakaiproject.tool.assessment.ui.bean.evaluation.QuestionScoresBean;
 import org.sakaiproject.tool.assessment.ui.bean.evaluation.TotalScoresBean;
 import org.sakaiproject.tool.assessment.ui.listener.util.ContextUtil;
+import org.sakaiproject.tool.assessment.util.ScoreStatistics;
 import org.sakaiproject.util.ResourceLoader;
 
 /**
@@ -89,6 +95,17 @@ public class HistogramListener
   implements ActionListener, ValueChangeListener
 {
   private static Logger log = LoggerFactory.getLogger(HistogramListener.class);
+
+  // question statistics (HistogramQuestionScoresBeans) of the assessments recently viewed, by getItemAnalysisKey();
+  // a change to any of the gradings changes the key, so stale entries are simply never used again and age out.
+  // The beans are changed again after the analysis, so each request works on its own copy (see copyItemAnalysis)
+  private static final int ITEM_ANALYSIS_CACHE_SIZE = ServerConfigurationService.getInt("samigo.statistics.cacheSize", 20);
+  private static final Map<String, ArrayList> itemAnalysisCache = Collections.synchronizedMap(
+    new LinkedHashMap<String, ArrayList>(16, 0.75f, true) {
+      protected boolean removeEldestEntry(Map.Entry<String, ArrayList> eldest) {
+        return size() > ITEM_ANALYSIS_CACHE_SIZE;
+      }
+    });
   //private static BeanSort bs;
   //private static ContextUtil cu;
   //private static EvaluationListenerUtil util;
@@ -219,11 +236,6 @@ public class HistogramListener
 		  delegate = new GradingService();
 		  PublishedAssessmentService pubService = new PublishedAssessmentService();
 		  List<AssessmentGradingData> allscores = delegate.getTotalScores(publishedId, which);
-          //set the ItemGradingData manually here. or we cannot
-          //retrieve it later.
-          for(AssessmentGradingData agd: allscores){
-          	agd.setItemGradingSet(delegate.getItemGradingSet(String.valueOf(agd.getAssessmentGradingId())));
-          }
           if (allscores.isEmpty()) {
 			// Similar case in Bug 1537, but clicking Statistics link instead of assignment title.
 			// Therefore, redirect the the same page.
@@ -334,15 +346,22 @@ public class HistogramListener
 
 			  List<? extends SectionDataIfc> parts = pub.getSectionArraySorted();
                           histogramScores.setAssesmentParts((List<PublishedSectionData>)parts);
-			  ArrayList info = new ArrayList();
-			  Iterator partsIter = parts.iterator();
+			  String itemAnalysisKey = getItemAnalysisKey(pub, which, anonymous, scores, rb);
+			  ArrayList info = copyItemAnalysis(itemAnalysisCache.get(itemAnalysisKey));
+			  boolean analyseItems = (info == null);
+			  if (analyseItems) {
+				  info = new ArrayList();
+			  }
+			  // with the question statistics cached there are no parts to go through
+			  Iterator partsIter = analyseItems ? parts.iterator() : Collections.emptyIterator();
 			  int secseq = 1;
-			  double totalpossible = 0;
-			  boolean hasRandompart = false;
+			  double totalpossible = parts.isEmpty() ? 0 : pub.getTotalScore().doubleValue();
+			  boolean hasRandompart = hasRandomDrawPart(parts);
 			  boolean isRandompart = false;
                           String poolName = null;
 			  
-			  HashMap itemScoresMap = delegate.getItemScores(Long.valueOf(publishedId), Long.valueOf(0), which);
+			  // the gradings are already loaded, so only the item gradings need fetching
+			  HashMap itemScoresMap = analyseItems ? delegate.getItemScores(Long.valueOf(0), allscores, false) : new HashMap();
 			  HashMap itemScores = new HashMap();
 			  			  
 			  if (totalScores.getReleaseToAnonymous()) {
@@ -486,7 +505,7 @@ public class HistogramListener
                             if(questionScores.getNumResponses() != 0){
                                 //need to only get gradings for students that answered this question
                                 List<AssessmentGradingData> filteredGradings =
-                            		filterGradingData(submissionsSortedForDiscrim, questionScores.getItemId());
+                            		filterGradingData(submissionsSortedForDiscrim, (List<ItemGradingData>) itemScores.get(questionScores.getItemId()));
                                 
                                 // SAM-2228: loop control issues because of unsynchronized collection access
                                 int filteredGradingsSize = filteredGradings.size();
@@ -549,10 +568,10 @@ public class HistogramListener
 					  info.add(questionScores);
 				  } // end-while - items
 
-
-				  totalpossible = pub.getTotalScore().doubleValue();
-
 			  } // end-while - parts
+			  if (analyseItems) {
+				  itemAnalysisCache.put(itemAnalysisKey, copyItemAnalysis(info));
+			  }
 			  histogramScores.setInfo(info);
 			  histogramScores.setRandomType(hasRandompart);
 
@@ -2421,17 +2440,16 @@ private void getCalculatedQuestionScores(List<ItemGradingData> scores, Histogram
     // or for a non-autograded question
     // depending on data's instanceof 
 
-    Iterator iter = scoreList.iterator();
-    ArrayList doubles = new ArrayList();
-    while (iter.hasNext())
+    // one pass over the gradings into a primitive array, so a large class
+    // doesn't need a boxed copy of every score
+    double[] scores = new double[Math.max(1, scoreList.size())];
+    for (int i = 0; i < scoreList.size(); i++)
     {
-      Object data = iter.next();
+      Object data = scoreList.get(i);
+      double score;
       if (data instanceof AssessmentGradingData) {
     	  Double finalScore = ((AssessmentGradingData) data).getFinalScore();
-    	  if (finalScore == null) {
-    		  finalScore = Double.valueOf("0");
-    	  }
-        doubles.add(finalScore);
+    	  score = (finalScore == null) ? 0 : finalScore.doubleValue();
       }
       else
       {
@@ -2442,45 +2460,35 @@ private void getCalculatedQuestionScores(List<ItemGradingData> scores, Histogram
         if (((ItemGradingData) data).getOverrideScore() != null)
           overrideScore =
             ((ItemGradingData) data).getOverrideScore().doubleValue();
-        doubles.add(Double.valueOf(autoScore + overrideScore));
+        score = autoScore + overrideScore;
       }
+      scores[i] = Double.valueOf(castingNum(score,2)).doubleValue();
     }
 
-    if (doubles.isEmpty())
-      doubles.add(new Double(0.0));
-    Object[] array = doubles.toArray();
-    Arrays.sort(array);
-
-    double[] scores = new double[array.length];
-    for (int i=0; i<array.length; i++)
-{
-      scores[i] = Double.valueOf(castingNum((Double)array[i],2)).doubleValue();
-}
+    // sorts scores
+    ScoreStatistics stats = new ScoreStatistics(scores);
 
     HashMap statMap = new HashMap();
 
-    double min = scores[0];
-    double max = scores[scores.length - 1];
-    double total = calTotal(scores);
-    double mean = calMean(scores, total);
-    int interval = 0;
-    interval = calInterval(min, max); // SAM-2409
-    int[] numStudents = calNumStudents(scores, min, max, interval);
+    double min = stats.getMin();
+    double max = stats.getMax();
+    int interval = stats.getInterval(); // SAM-2409
+    int[] numStudents = stats.getHistogram(interval);
    
     statMap.put("maxScore", castingNum(max,2));
     statMap.put("interval", Integer.valueOf(interval));
     statMap.put("numResponses", Integer.valueOf(scoreList.size()));
     // statMap.put("numResponses", Integer.valueOf(scores.length));
 
-    statMap.put("totalScore",castingNum(total,2));
-    statMap.put("mean", castingNum(mean,2));
-    statMap.put("median", castingNum(calMedian(scores),2));
-    statMap.put("mode", castingNumForMode(calMode(scores)));
+    statMap.put("totalScore",castingNum(stats.getTotal(),2));
+    statMap.put("mean", castingNum(stats.getMean(),2));
+    statMap.put("median", castingNum(stats.getMedian(),2));
+    statMap.put("mode", castingNumForMode(stats.getMode()));
 
     statMap.put("numStudentCollection", numStudents);
     statMap.put(
       "rangeCollection", calRange(scores, numStudents, min, max, interval));
-    statMap.put("standDev", castingNum(calStandDev(scores, mean),2));
+    statMap.put("standDev", castingNum(stats.getStandardDeviation(),2));
     //NEW
     //statMap.put("columnHeight", calColumnHeight(numStudents));
     statMap.put("columnHeight", calColumnHeight(numStudents,scoreList.size()));
@@ -2488,11 +2496,11 @@ private void getCalculatedQuestionScores(List<ItemGradingData> scores, Histogram
     statMap.put("arrayLength", Integer.valueOf(numStudents.length));
     statMap.put(
       "range",
-      castingNum(scores[0],2) + " - " +
-        castingNum(scores[scores.length - 1],2));
-    statMap.put("q1", castingNum(calQuartiles(scores, 0.25),2));
-    statMap.put("q2", castingNum(calQuartiles(scores, 0.5),2));
-    statMap.put("q3", castingNum(calQuartiles(scores, 0.75),2));
+      castingNum(min,2) + " - " +
+        castingNum(max,2));
+    statMap.put("q1", castingNum(stats.getQuartile(0.25),2));
+    statMap.put("q2", castingNum(stats.getQuartile(0.5),2));
+    statMap.put("q3", castingNum(stats.getQuartile(0.75),2));
     statMap.put("q4", castingNum(max,2));
 
     return statMap;
@@ -2501,142 +2509,6 @@ private void getCalculatedQuestionScores(List<ItemGradingData> scores, Histogram
   /*** What follows is Huong Nguyen's statistics code. ***/
   /*** We love you Huong! --rmg                        ***/
 
-  /**
-   * Calculate the total score for all students
-   * @param scores array of scores
-   * @return the total
-   */
-  private static double calTotal(double[] scores)
-  {
-    double total = 0;
-    for(int i = 0; i < scores.length; i++)
-    {
-      total = total + scores[i];
-    }
-    return total;
-  }
-
-  /**
-   * Calculate mean.
-   *
-   * @param scores array of scores
-   * @param total the total of all scores
-   *
-   * @return mean
-   */
-  private static double calMean(double[] scores, double total)
-  {
-    return total / scores.length;
-  }
-
-  /**
-   * Calculate median.
-   *
-   * @param scores array of scores
-   *
-   * @return median
-   */
-  private static double calMedian(double[] scores)
-  {
-    double median;
-    if(((scores.length) % 2) == 0)
-    {
-      median =
-        (scores[(scores.length / 2)] + scores[(scores.length / 2) - 1]) / 2;
-    }
-
-    else
-    {
-      median = scores[(scores.length - 1) / 2];
-    }
-
-    return median;
-  }
-
- /**
-   * Calculate mode
-   *
-   * @param scores array of scores
-   *
-   * @return mode
-   */
-
-    private static String calMode(double[]scores){
-	//	double[]scores={1,2,3,4,3,6,5,5,6};
-	Arrays.sort(scores);
-	String maxString=""+scores[0];
-	int maxCount=1;
-	int currentCount=1;
-	for(int i=1;i<scores.length;i++){
-	    if(!(""+scores[i]).equals(""+scores[i-1])){
-		currentCount=1;
-		if(maxCount==currentCount)
-		    maxString=maxString+", "+scores[i];
-	    }
-	    else{
-		currentCount++;
-		if(maxCount==currentCount)
-		    maxString=maxString+", "+scores[i];
-		if(maxCount<currentCount){
-		    maxString=""+scores[i];
-                    maxCount=currentCount;
-		}
-		
-	    }
-	   
-	}
-	return maxString;
-    }
-
-
-
-  /**
-   * Calculate standard Deviation
-   *
-   * @param scores array of scores
-   * @param mean the mean
-   * @param total the total
-   *
-   * @return the standard deviation
-   */
-  private static double calStandDev(double[] scores, double mean)
-  {
-    double total = 0;  
-  
-    for(int i = 0; i < scores.length; i++)
-    {
-      total = total + ((scores[i] - mean) * (scores[i] - mean));
-    }
-
-    return Math.sqrt(total / (scores.length - 1));
-
-  }
-
-  /**
-   * Calculate the interval to use for histograms.
-   *
-   * @param scores array of scores
-   * @param min the minimum score
-   * @param max the maximum score
-   *
-   * @return the interval
-   */
-  private static int calInterval(double min, double max) // SAM-2409
-  {
-    int interval;
-
-    if((max - min) < 10)
-    {
-      interval = 1;
-    }
-    else
-    {
-      interval = (int) Math.ceil((Math.ceil(max) - Math.floor(min)) / 10); // SAM-2409
-    }
-
-    return interval;
-  }
-
   /**
    * Calculate the number for each answer.
    *
@@ -2707,64 +2579,6 @@ private void getCalculatedQuestionScores(List<ItemGradingData> scores, Histogram
   }
   */
 
-  /**
-   * Calculate the number of students per interval for histograms.
-   *
-   * @param scores array of scores
-   * @param min the minimum score
-   * @param max the maximum score
-   * @param interval the interval
-   *
-   * @return number of students per interval
-   */
-  private static int[] calNumStudents(
-    double[] scores, double min, double max, int interval)
-  {
-
-    if(min > max)
-    {
-      //log.info("max(" + max + ") <min(" + min + ")");
-      max = min;
-    }
-    
-    min = Math.floor(min); // SAM-2409
-    max = Math.ceil(max); // SAM-2409
-
-    int[] numStudents = new int[(int) Math.ceil((max - min) / interval)];
-
-    // this handles a case where there are no num students, treats as if
-    // a single value of 0
-    if(numStudents.length == 0)
-    {
-      numStudents = new int[1];
-      numStudents[0] = 0;
-    }
-
-    for(int i = 0; i < scores.length; i++)
-    {
-      if(scores[i] <= (min + interval))
-      {
-        numStudents[0]++;
-      }
-      else
-      {
-        for(int j = 1; j < (numStudents.length); j++)
-        {
-          if(
-            ((scores[i] > (min + (j * interval))) &&
-              (scores[i] <= (min + ((j + 1) * interval)))))
-          {
-            numStudents[j]++;
-
-            break;
-          }
-        }
-      }
-    }
-
-    return numStudents;
-  }
-
   /**
    * Get range text for each interval
    *
@@ -2908,30 +2722,6 @@ private void getCalculatedQuestionScores(List<ItemGradingData> scores, Histogram
     return height;
   }
 
-  /**
-   * Calculate quartiles.
-   *
-   * @param scores score array
-   * @param r the quartile rank
-   *
-   * @return the quartile
-   */
-  private static double calQuartiles(double[] scores, double r)
-  {
-    int k;
-    double f;
-    k = (int) (Math.floor((r * (scores.length - 1)) + 1));
-    f = (r * (scores.length - 1)) - Math.floor(r * (scores.length - 1));
-
-    // special handling if insufficient data to calculate
-    if(k < 2)
-    {
-        return scores[0];
-    }
-
-    return scores[k - 1] + (f * (scores[k] - scores[k - 1]));
-  }
-
   /**
    * DOCUMENTATION PENDING
    *
@@ -3266,18 +3056,69 @@ private void getCalculatedQuestionScores(List<ItemGradingData> scores, Histogram
 		});
 	}
 
-	private List<AssessmentGradingData> filterGradingData(List<AssessmentGradingData> submissionsSortedForDiscrim, Long itemId) {
+	private List<AssessmentGradingData> filterGradingData(List<AssessmentGradingData> submissionsSortedForDiscrim, List<ItemGradingData> itemGradings) {
         List<AssessmentGradingData> submissionsForItemSortedForDiscrim = new ArrayList<AssessmentGradingData>();
+        if (itemGradings == null) {
+            return submissionsForItemSortedForDiscrim;
+        }
+        Set<Long> gradingIds = new HashSet<Long>();
+        for(ItemGradingData igd: itemGradings){
+            gradingIds.add(igd.getAssessmentGradingId());
+        }
         for(AssessmentGradingData agd: submissionsSortedForDiscrim){
-            Set<ItemGradingData> itemGradings = agd.getItemGradingSet();
-            for(ItemGradingData igd: itemGradings){
-                if(igd.getPublishedItemId().equals(itemId)){
-                    submissionsForItemSortedForDiscrim.add(agd);
-                    break;
-                }
+            if(gradingIds.contains(agd.getAssessmentGradingId())){
+                submissionsForItemSortedForDiscrim.add(agd);
             }
         }
         return submissionsForItemSortedForDiscrim;
     }
 
+	private boolean hasRandomDrawPart(List<? extends SectionDataIfc> parts) {
+		for (SectionDataIfc section : parts) {
+			String authortype = section.getSectionMetaDataByLabel(SectionDataIfc.AUTHOR_TYPE);
+			try {
+				if (SectionDataIfc.RANDOM_DRAW_FROM_QUESTIONPOOL.equals(Integer.valueOf(authortype))) {
+					return true;
+				}
+			} catch (NumberFormatException e) {
+				// not random draw
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * The cached HistogramQuestionScoresBeans are shared by every instructor's request, while the caller goes on to
+	 * set display flags and counts on them, so the cache only ever holds and hands out deep copies.
+	 * @return a deep copy of the question statistics OR null for null
+	 */
+	private ArrayList copyItemAnalysis(ArrayList info) {
+		if (info == null) {
+			return null;
+		}
+		return (ArrayList) SerializationUtils.clone(info);
+	}
+
+	/**
+	 * Key the question statistics of an assessment by everything they are worked out from: the published assessment
+	 * and when it was last changed, the submissions included (which, and those of the students in the selected sections)
+	 * along with their scores and grading state, the anonymity (which orders the quartiles) and the locale of the labels.
+	 */
+	private String getItemAnalysisKey(PublishedAssessmentIfc pub, String which, boolean anonymous, List scores, ResourceLoader rb) {
+		long hash = 17;
+		for (Object o : scores) {
+			AssessmentGradingData data = (AssessmentGradingData) o;
+			hash = 31 * hash + data.getAssessmentGradingId();
+			hash = 31 * hash + Objects.hashCode(data.getFinalScore());
+			hash = 31 * hash + Objects.hashCode(data.getTotalAutoScore());
+			hash = 31 * hash + Objects.hashCode(data.getTotalOverrideScore());
+			hash = 31 * hash + Objects.hashCode(data.getStatus());
+			hash = 31 * hash + Objects.hashCode(data.getSubmittedDate());
+			hash = 31 * hash + Objects.hashCode(data.getGradedDate());
+		}
+		Date lastModified = pub.getLastModifiedDate();
+		return pub.getPublishedAssessmentId() + "/" + (lastModified == null ? 0 : lastModified.getTime()) + "/" + which + "/" + anonymous
+			+ "/" + rb.getLocale() + "/" + scores.size() + "/" + hash;
+	}
+
 }
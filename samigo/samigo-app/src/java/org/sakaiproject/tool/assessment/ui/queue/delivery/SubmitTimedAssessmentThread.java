@@ -66,9 +66,27 @@ public class SubmitTimedAssessmentThread extends TimerTask
     while (iter.hasNext()){
       TimedAssessmentGradingModel timedAG = (TimedAssessmentGradingModel)iter.next();
       log.debug("****** going through timedAG in queue, timedAG"+timedAG);
+      if (process(timedAG, (new Date()).getTime())){
+        removeTimedAGList.add(timedAG);
+      }
+    }
+    Iterator i = removeTimedAGList.iterator();
+    while(i.hasNext()) {
+    	log.debug("removing from queue");
+    	queue.remove((TimedAssessmentGradingModel)i.next());
+    }
+  }
+
+  /**
+   * Submit a timed attempt for grade if its time is up, or tell the caller it can be dropped from the
+   * queue once it has been submitted and the transaction buffer has also passed.
+   * @param timedAG the timed attempt
+   * @param currentTime the time now in millisec
+   * @return true if timedAG is finished with and should be removed from the queue
+   */
+  public boolean process(TimedAssessmentGradingModel timedAG, long currentTime){
       boolean submitted = timedAG.getSubmittedForGrade();
       long bufferedExpirationTime = timedAG.getBufferedExpirationDate().getTime(); // in millesec
-      long currentTime = (new Date()).getTime(); // in millisec
 
       log.debug("****** submitted="+submitted);
       log.debug("****** currentTime="+currentTime);
@@ -76,84 +94,104 @@ public class SubmitTimedAssessmentThread extends TimerTask
       log.debug("****** expired="+(currentTime > bufferedExpirationTime));
       if (!submitted){
         if (currentTime > bufferedExpirationTime){ // time's up, i.e. timeLeft + latency buffer reached
-          timedAG.setSubmittedForGrade(true);
           // set all the properties right and persist status to DB
           GradingService service = new GradingService();
-          AssessmentGradingData ag = service.load(timedAG.getAssessmentGradingId().toString(), false);
-          if (!ag.getForGrade()) {
-            // Change user id for the Gradebook update (if required) and so the event is associated with the correct userid
-            Session s = SessionManager.getCurrentSession();
-            if (s != null) {
-              s.setUserId(ag.getAgentId());
+          Date submitDate = new Date();
+          // kept so the claim below can be undone if the submission fails part way
+          AssessmentGradingData unclaimed = service.load(timedAG.getAssessmentGradingId().toString(), false);
+          // the attempt may be queued on more than one server (see TimedAssessmentQueue.recover),
+          // only the one which flips forGrade in the DB goes on to submit it
+          boolean claimed = service.claimUnSubmittedAssessmentGrading(timedAG.getAssessmentGradingId(), submitDate);
+          timedAG.setSubmittedForGrade(true);
+          if (claimed) {
+            AssessmentGradingData ag;
+            // the claim is committed on its own, so if grading fails it is released again for the next run to retry
+            try {
+              ag = service.load(timedAG.getAssessmentGradingId().toString(), false);
+              // Change user id for the Gradebook update (if required) and so the event is associated with the correct userid
+              Session s = SessionManager.getCurrentSession();
+              if (s != null) {
+                s.setUserId(ag.getAgentId());
+              }
+
+              ag.setForGrade(Boolean.TRUE);
+              ag.setTimeElapsed(timedAG.getTimeLimit());
+              ag.setStatus(AssessmentGradingData.SUBMITTED); // this will change status 0 -> 1
+              ag.setIsLate(islate(ag.getPublishedAssessmentId()));
+              ag.setSubmittedDate(submitDate);
+              // SAK-7302, users taking a timed assessment may exit without completing the assessment
+              // set these two scores to 0 instaed of null
+              if (ag.getFinalScore() == null) ag.setFinalScore(Double.valueOf("0"));
+              if (ag.getTotalAutoScore() == null) ag.setTotalAutoScore(Double.valueOf("0"));
+              service.completeItemGradingData(ag);
+              service.saveOrUpdateAssessmentGrading(ag);
+              notifyGradebookByScoringType(ag, timedAG.getPublishedAssessment());
+            } catch (RuntimeException e) {
+              log.error("Failed to submit timed assessment submissionId=" + timedAG.getAssessmentGradingId() + ", it will be retried", e);
+              try {
+                service.releaseAssessmentGradingClaim(timedAG.getAssessmentGradingId(), unclaimed.getStatus(), unclaimed.getSubmittedDate());
+                timedAG.setSubmittedForGrade(false);
+              } catch (RuntimeException e2) {
+                log.error("Failed to release timed assessment submissionId=" + timedAG.getAssessmentGradingId() + " for retry", e2);
+              }
+              return false;
             }
 
-            ag.setForGrade(Boolean.TRUE);
-            ag.setTimeElapsed(timedAG.getTimeLimit());
-            ag.setStatus(AssessmentGradingData.SUBMITTED); // this will change status 0 -> 1
-            ag.setIsLate(islate(ag.getPublishedAssessmentId()));
-            Date submitDate = new Date();
-            ag.setSubmittedDate(submitDate);
-            // SAK-7302, users taking a timed assessment may exit without completing the assessment
-            // set these two scores to 0 instaed of null
-    	    if (ag.getFinalScore() == null) ag.setFinalScore(Double.valueOf("0"));
-    	    if (ag.getTotalAutoScore() == null) ag.setTotalAutoScore(Double.valueOf("0"));
-    	    service.completeItemGradingData(ag);
-            service.saveOrUpdateAssessmentGrading(ag);
-          EventLogService eventService = new EventLogService();
-          EventLogFacade eventLogFacade = new EventLogFacade();
-
-          List eventLogDataList = eventService.getEventLogData(ag.getAssessmentGradingId());
-          EventLogData eventLogData= (EventLogData) eventLogDataList.get(0);
-          eventLogData.setErrorMsg(eventLogMessages.getString("timer_submit"));
-          eventLogData.setEndDate(submitDate);
-          if(eventLogData.getStartDate() != null) {
-        	  double minute= 1000*60;
-        	  int eclipseTime = (int)Math.ceil(((submitDate.getTime() - eventLogData.getStartDate().getTime())/minute));
-        	  eventLogData.setEclipseTime(eclipseTime); 
-          } else {
-        	  eventLogData.setEclipseTime(null); 
-        	  eventLogData.setErrorMsg(eventLogMessages.getString("error_take"));
-          }
-            eventLogFacade.setData(eventLogData);
-            eventService.saveOrUpdateEventLog(eventLogFacade);
-
-            PublishedAssessmentService publishedAssessmentService = new PublishedAssessmentService();
-            String siteId = publishedAssessmentService.getPublishedAssessmentOwner(ag.getPublishedAssessmentId());
-            
-            EventTrackingService.post(EventTrackingService.newEvent("sam.assessment.thread_submit", "siteId=" + AgentFacade.getCurrentSiteId() + ", submissionId=" + ag.getAssessmentGradingId(), siteId, true, NotificationService.NOTI_REQUIRED));
-
-            Map<String, Object> notiValues = new HashMap<>();
-
-            notiValues.put("assessmentGradingID", ag.getAssessmentGradingId());
-            notiValues.put("userID", ag.getAgentId());
-            notiValues.put("submissionDate", submitDate.toString());
-            notiValues.put("publishedAssessmentID", ag.getPublishedAssessmentId());
-
-            PublishedAssessmentFacade publishedAssessment = publishedAssessmentService.getPublishedAssessment( ag.getPublishedAssessmentId().toString() );
-            String confirmationNumber = ag.getAssessmentGradingId() + "-" + publishedAssessment.getPublishedAssessmentId() + "-"
-                                            + ag.getAgentId() + "-" + ag.getSubmittedDate().toString();
-            notiValues.put( "confirmationNumber", confirmationNumber );
-
-            EventTrackingService.post(EventTrackingService.newEvent(SamigoConstants.EVENT_ASSESSMENT_TIMED_SUBMITTED, notiValues.toString(), siteId, true, SamigoConstants.NOTI_EVENT_ASSESSMENT_TIMED_SUBMITTED));
-            notifyGradebookByScoringType(ag, timedAG.getPublishedAssessment());
-            log.debug("**** 4a. time's up, timeLeft+latency buffer reached, saved to DB");
-            log.info("Submitted timed assessment assessmentId=" + eventLogData.getAssessmentId() + " userEid=" + eventLogData.getUserEid() + " siteId=" + siteId + ", submissionId=" + ag.getAssessmentGradingId());
+            // the attempt is graded now, so failures from here on are only logged
+            try {
+              EventLogService eventService = new EventLogService();
+              EventLogFacade eventLogFacade = new EventLogFacade();
+
+              List eventLogDataList = eventService.getEventLogData(ag.getAssessmentGradingId());
+              if (!eventLogDataList.isEmpty()) {
+                EventLogData eventLogData= (EventLogData) eventLogDataList.get(0);
+                eventLogData.setErrorMsg(eventLogMessages.getString("timer_submit"));
+                eventLogData.setEndDate(submitDate);
+                if(eventLogData.getStartDate() != null) {
+                  double minute= 1000*60;
+                  int eclipseTime = (int)Math.ceil(((submitDate.getTime() - eventLogData.getStartDate().getTime())/minute));
+                  eventLogData.setEclipseTime(eclipseTime); 
+                } else {
+                  eventLogData.setEclipseTime(null); 
+                  eventLogData.setErrorMsg(eventLogMessages.getString("error_take"));
+                }
+                eventLogFacade.setData(eventLogData);
+                eventService.saveOrUpdateEventLog(eventLogFacade);
+              }
+
+              PublishedAssessmentService publishedAssessmentService = new PublishedAssessmentService();
+              String siteId = publishedAssessmentService.getPublishedAssessmentOwner(ag.getPublishedAssessmentId());
+
+              EventTrackingService.post(EventTrackingService.newEvent("sam.assessment.thread_submit", "siteId=" + AgentFacade.getCurrentSiteId() + ", submissionId=" + ag.getAssessmentGradingId(), siteId, true, NotificationService.NOTI_REQUIRED));
+
+              Map<String, Object> notiValues = new HashMap<>();
+
+              notiValues.put("assessmentGradingID", ag.getAssessmentGradingId());
+              notiValues.put("userID", ag.getAgentId());
+              notiValues.put("submissionDate", submitDate.toString());
+              notiValues.put("publishedAssessmentID", ag.getPublishedAssessmentId());
+
+              PublishedAssessmentFacade publishedAssessment = publishedAssessmentService.getPublishedAssessment( ag.getPublishedAssessmentId().toString() );
+              String confirmationNumber = ag.getAssessmentGradingId() + "-" + publishedAssessment.getPublishedAssessmentId() + "-"
+                                              + ag.getAgentId() + "-" + ag.getSubmittedDate().toString();
+              notiValues.put( "confirmationNumber", confirmationNumber );
+
+              EventTrackingService.post(EventTrackingService.newEvent(SamigoConstants.EVENT_ASSESSMENT_TIMED_SUBMITTED, notiValues.toString(), siteId, true, SamigoConstants.NOTI_EVENT_ASSESSMENT_TIMED_SUBMITTED));
+              log.debug("**** 4a. time's up, timeLeft+latency buffer reached, saved to DB");
+              log.info("Submitted timed assessment assessmentId=" + ag.getPublishedAssessmentId() + " userId=" + ag.getAgentId() + " siteId=" + siteId + ", submissionId=" + ag.getAssessmentGradingId());
+            } catch (RuntimeException e) {
+              log.warn("Timed assessment submissionId=" + ag.getAssessmentGradingId() + " was submitted but its event log or notification failed", e);
+            }
           }
         }
       }
       else{ //submitted, remove from queue if transaction buffer is also reached
         if (currentTime > (bufferedExpirationTime + timedAG.getTransactionBuffer()*1000L)){
-          //queue.remove(timedAG);
-          removeTimedAGList.add(timedAG);
           log.debug("**** 4b. transaction buffer reached");
+          return true;
         }
       }
-    }
-    Iterator i = removeTimedAGList.iterator();
-    while(i.hasNext()) {
-    	log.debug("removing from queue");
-    	queue.remove((TimedAssessmentGradingModel)i.next());
-    }
+      return false;
   }
 
   private Boolean islate(Long publishedId) {
@@ -22,17 +22,41 @@
 
 package org.sakaiproject.tool.assessment.ui.queue.delivery;
 import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.Iterator;
-import java.util.Timer;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.sakaiproject.component.cover.ServerConfigurationService;
+import org.sakaiproject.tool.assessment.data.dao.grading.AssessmentGradingData;
+import org.sakaiproject.tool.assessment.facade.PublishedAssessmentFacade;
+import org.sakaiproject.tool.assessment.services.GradingService;
+import org.sakaiproject.tool.assessment.services.assessment.PublishedAssessmentService;
 import org.sakaiproject.tool.assessment.ui.model.delivery.TimedAssessmentGradingModel;
+import org.sakaiproject.tool.assessment.util.ExtendedTimeService;
 
 /**
  * <p>Title: </p>
- * <p>Description: </p>
+ * <p>Description: Holds the timed assessments being taken, and submits each one for grade when its time is up.
+ * Attempts are kept in a delay queue ordered by their next deadline (the buffered expiration, then the end of the
+ * transaction buffer), and a single scheduler thread sleeps until the earliest one is due, handing it to a small
+ * pool of submitter threads, rather than scanning every attempt every few seconds.</p>
+ * <p>The deadlines are not node local: they follow from the attempt date and time limit already stored with each
+ * assessment grading, so at startup {@link #recover()} queues the unsubmitted timed attempts begun on any server,
+ * giving the server the student is on a transaction buffer's head start before taking over. This is off
+ * by default (samigo.timedAssessment.recover).</p>
  * <p>Copyright: Copyright (c) 2004</p>
  * <p>Company: </p>
  * @author not attributable
@@ -42,12 +66,21 @@ import org.sakaiproject.tool.assessment.ui.model.delivery.TimedAssessmentGrading
 public class TimedAssessmentQueue { 
   private static TimedAssessmentQueue instance; 
   private ConcurrentHashMap queue;
-    // private SubmitTimedAssessmentThread thread;
-  private Timer timer;
+  private DelayQueue<Deadline> deadlines;
+  private volatile Thread scheduler;
+  private ExecutorService submitters;
+  private SubmitTimedAssessmentThread submitter;
+
+  // lag between an attempt's buffered expiration and the server starting to submit it, in millisec
+  private AtomicLong submittedCount = new AtomicLong();
+  private AtomicLong totalLag = new AtomicLong();
+  private AtomicLong maxLag = new AtomicLong();
 
   private static Logger log = LoggerFactory.getLogger(TimedAssessmentQueue.class);
   private TimedAssessmentQueue() { 
     queue = new ConcurrentHashMap ();
+    deadlines = new DelayQueue<Deadline>();
+    submitter = new SubmitTimedAssessmentThread();
   } 
 
   public static synchronized TimedAssessmentQueue getInstance() { 
@@ -58,31 +91,203 @@ public class TimedAssessmentQueue {
   } 
   
   public void add(TimedAssessmentGradingModel timedAG){
-	  synchronized (queue) {
-		  queue.put(timedAG.getAssessmentGradingId(), timedAG);
-		  log.debug("***1. TimedAssessmentQueue.add, before schedule timer="+timer);
-		  scheduleTask();
-		  log.debug("***2. TimedAssessmentQueue.add, after schedule timer="+timer);
-	  }
+	  queue.put(timedAG.getAssessmentGradingId(), timedAG);
+	  schedule(timedAG);
+	  log.debug("***1. TimedAssessmentQueue.add, next deadline="+nextDeadline(timedAG));
+  }
+
+  /**
+   * Put timedAG (back) on the delay queue for its next deadline, starting the scheduler if need be.
+   */
+  private void schedule(TimedAssessmentGradingModel timedAG){
+    startScheduler();
+    deadlines.offer(new Deadline(timedAG, nextDeadline(timedAG)));
+  }
+
+  // SubmitTimedAssessmentThread acts once the current time is past these, hence the extra millisec
+  private long nextDeadline(TimedAssessmentGradingModel timedAG){
+    long bufferedExpirationTime = timedAG.getBufferedExpirationDate().getTime();
+    if (!timedAG.getSubmittedForGrade()){
+      return bufferedExpirationTime + 1;
+    }
+    return bufferedExpirationTime + timedAG.getTransactionBuffer()*1000L + 1;
+  }
+
+  private synchronized void startScheduler(){
+    if (scheduler != null){
+      return;
+    }
+    int threads = ServerConfigurationService.getInt("samigo.timedAssessment.submitThreads", 4);
+    submitters = Executors.newFixedThreadPool(Math.max(1, threads), new ThreadFactory(){
+      private AtomicInteger count = new AtomicInteger();
+      public Thread newThread(Runnable r){
+        Thread t = new Thread(r, "TimedAssessmentSubmitter-" + count.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+      }
+    });
+    scheduler = new Thread(new Runnable(){
+      public void run(){
+        dispatch();
+      }
+    }, "TimedAssessmentQueue");
+    scheduler.setDaemon(true);
+    scheduler.start();
+  }
+
+  /**
+   * Stop the scheduler and submitter threads. Attempts still queued are left to be recovered on the next startup.
+   */
+  public synchronized void destroy(){
+    if (scheduler != null){
+      scheduler.interrupt();
+      submitters.shutdownNow();
+      scheduler = null;
+      submitters = null;
+    }
+    log.info("destroy(): " + getStatus());
+  }
+
+  private void dispatch(){
+    Thread self = Thread.currentThread();
+    ExecutorService pool = submitters;
+    while (scheduler == self){
+      final Deadline deadline;
+      try {
+        deadline = deadlines.take();
+      }
+      catch (InterruptedException e){
+        break;
+      }
+      // skip deadlines for attempts removed (submitted by the student) or replaced since they were scheduled
+      if (queue.get(deadline.timedAG.getAssessmentGradingId()) != deadline.timedAG){
+        continue;
+      }
+      try {
+        pool.execute(new Runnable(){
+          public void run(){
+            fire(deadline);
+          }
+        });
+      }
+      catch (RuntimeException e){
+        // pool shut down
+        break;
+      }
+    }
   }
 
-  private void scheduleTask(){
-    if (timer == null){
-      timer  = new Timer();
-      timer.scheduleAtFixedRate(new SubmitTimedAssessmentThread(), 0, 3*1000); //delay=0s, every 3s 
+  private void fire(Deadline deadline){
+    TimedAssessmentGradingModel timedAG = deadline.timedAG;
+    boolean wasSubmitted = timedAG.getSubmittedForGrade();
+    long now = System.currentTimeMillis();
+    boolean finished = false;
+    try {
+      finished = submitter.process(timedAG, now);
+    }
+    catch (Exception e){
+      log.error("Error submitting timed assessment, assessmentGradingId=" + timedAG.getAssessmentGradingId(), e);
+    }
+
+    if (!wasSubmitted && timedAG.getSubmittedForGrade()){
+      recordLag(timedAG, now - timedAG.getBufferedExpirationDate().getTime());
+    }
+
+    if (finished){
+      remove(timedAG);
+    }
+    else if (queue.get(timedAG.getAssessmentGradingId()) == timedAG){
+      schedule(timedAG);
+    }
+  }
+
+  private void recordLag(TimedAssessmentGradingModel timedAG, long lag){
+    lag = Math.max(0, lag);
+    submittedCount.incrementAndGet();
+    totalLag.addAndGet(lag);
+    long max = maxLag.get();
+    while (lag > max && !maxLag.compareAndSet(max, lag)){
+      max = maxLag.get();
+    }
+    if (lag > timedAG.getLatencyBuffer()*1000L){
+      log.warn("Timed assessment submitted " + lag + "ms after its buffered expiration, assessmentGradingId="
+          + timedAG.getAssessmentGradingId() + ", " + getStatus());
+    }
+    else if (log.isDebugEnabled()){
+      log.debug("Timed assessment submitted " + lag + "ms after its buffered expiration, assessmentGradingId="
+          + timedAG.getAssessmentGradingId());
     }
   }
 
+  /**
+   * Queue the timed attempts begun (here or on another server) in the last samigo.timedAssessment.recoverHours hours
+   * that are not yet submitted, so that they are still submitted when their time is up if the server they were
+   * started on has gone. Their deadline is worked out from the attempt date and the (extended) time limit, capped
+   * by the retract date, with an extra transaction buffer so the server the student is using gets to submit first.
+   * Every server that recovers an attempt queues it, so the submission itself is claimed atomically in the DB
+   * (see {@link GradingService#claimUnSubmittedAssessmentGrading(Long, Date)}) and only happens once.
+   * Off unless samigo.timedAssessment.recover is set.
+   * @return the number of attempts queued
+   */
+  public int recover(){
+    if (!ServerConfigurationService.getBoolean("samigo.timedAssessment.recover", false)){
+      return 0;
+    }
+    int hours = ServerConfigurationService.getInt("samigo.timedAssessment.recoverHours", 24);
+    long now = System.currentTimeMillis();
+    List<AssessmentGradingData> unsubmitted = new GradingService().getUnSubmittedTimedAssessmentGradingList(new Date(now - hours*3600000L));
+
+    PublishedAssessmentService publishedAssessmentService = new PublishedAssessmentService();
+    Map<Long, PublishedAssessmentFacade> published = new HashMap<Long, PublishedAssessmentFacade>();
+    int count = 0;
+    for (AssessmentGradingData ag : unsubmitted){
+      if (queue.containsKey(ag.getAssessmentGradingId())){
+        continue;
+      }
+      try {
+        PublishedAssessmentFacade publishedAssessment = published.get(ag.getPublishedAssessmentId());
+        if (publishedAssessment == null){
+          publishedAssessment = publishedAssessmentService.getPublishedAssessment(ag.getPublishedAssessmentId().toString());
+          published.put(ag.getPublishedAssessmentId(), publishedAssessment);
+        }
+
+        ExtendedTimeService extendedTime = new ExtendedTimeService(publishedAssessment, ag.getAgentId());
+        Integer timeLimit = publishedAssessment.getAssessmentAccessControl().getTimeLimit();
+        if (extendedTime.hasExtendedTime() && extendedTime.getTimeLimit() > 0){
+          timeLimit = extendedTime.getTimeLimit();
+        }
+        if (timeLimit == null || timeLimit <= 0){
+          continue;
+        }
+
+        long expiration = ag.getAttemptDate().getTime() + timeLimit*1000L;
+        if (extendedTime.getRetractDate() != null && extendedTime.getRetractDate().getTime() < expiration){
+          expiration = extendedTime.getRetractDate().getTime();
+        }
+        int timeLeft = (int) Math.floor((expiration - now)/1000.0d);
+
+        TimedAssessmentGradingModel model = new TimedAssessmentGradingModel();
+        int transactionBuffer = model.getTransactionBuffer();
+        int latencyBuffer = model.getLatencyBuffer() + transactionBuffer;
+        Date begin = new Date(now);
+        TimedAssessmentGradingModel timedAG = new TimedAssessmentGradingModel(ag.getAssessmentGradingId(),
+            timeLimit, timeLeft, latencyBuffer, transactionBuffer, begin, begin, false, null, publishedAssessment);
+        if (queue.putIfAbsent(timedAG.getAssessmentGradingId(), timedAG) == null){
+          schedule(timedAG);
+          count++;
+        }
+      }
+      catch (Exception e){
+        log.warn("Could not recover timed assessment, assessmentGradingId=" + ag.getAssessmentGradingId() + ": " + e);
+      }
+    }
+    log.info("recover(): queued " + count + " unsubmitted timed assessments of " + unsubmitted.size() + " started in the last " + hours + " hours");
+    return count;
+  }
+
   public void remove(TimedAssessmentGradingModel timedAG){
-	  synchronized (queue) {
-		  queue.remove(timedAG.getAssessmentGradingId());
-		  if (isEmpty()){
-			  log.debug("*** before destroy, timer="+timer);
-			  timer.cancel();
-			  timer = null;
-			  log.debug("*** after destroy, timer="+timer);
-		  }
-	  }
+	  queue.remove(timedAG.getAssessmentGradingId(), timedAG);
+	  log.debug("*** TimedAssessmentQueue.remove, size="+queue.size());
   }
   
   public TimedAssessmentGradingModel get(Long assessmentGradingId){
@@ -91,6 +296,7 @@ public class TimedAssessmentQueue {
 
   public void emptyQueue(){
     queue.clear();
+    deadlines.clear();
   }
 
   public boolean isEmpty(){
@@ -106,5 +312,52 @@ public class TimedAssessmentQueue {
     return c.iterator();
   }
 
-} 
+  public long getSubmittedCount(){
+    return submittedCount.get();
+  }
 
+  /**
+   * @return the average time, in millisec, between an attempt's buffered expiration and the server submitting it
+   */
+  public long getAverageLag(){
+    long count = submittedCount.get();
+    return count == 0 ? 0 : totalLag.get() / count;
+  }
+
+  /**
+   * @return the longest time, in millisec, between an attempt's buffered expiration and the server submitting it
+   */
+  public long getMaxLag(){
+    return maxLag.get();
+  }
+
+  public String getStatus(){
+    return "queued=" + queue.size() + ", deadlines=" + deadlines.size() + ", submitted=" + getSubmittedCount()
+        + ", averageLag=" + getAverageLag() + "ms, maxLag=" + getMaxLag() + "ms";
+  }
+
+  /**
+   * An entry in the delay queue: an attempt and the time it next needs looking at.
+   */
+  private static class Deadline implements Delayed {
+    private final TimedAssessmentGradingModel timedAG;
+    private final long time; // in millisec
+
+    Deadline(TimedAssessmentGradingModel timedAG, long time){
+      this.timedAG = timedAG;
+      this.time = time;
+    }
+
+    public long getDelay(TimeUnit unit){
+      return unit.convert(time - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public int compareTo(Delayed other){
+      if (other instanceof Deadline){
+        return Long.compare(time, ((Deadline) other).time);
+      }
+      return Long.compare(getDelay(TimeUnit.MILLISECONDS), other.getDelay(TimeUnit.MILLISECONDS));
+    }
+  }
+
+} 
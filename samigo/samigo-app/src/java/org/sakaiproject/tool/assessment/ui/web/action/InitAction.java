@@ -53,6 +53,7 @@ import org.sakaiproject.tool.assessment.shared.api.questionpool.QuestionPoolServ
 import org.sakaiproject.tool.assessment.api.SamigoApiFactory;
 import org.sakaiproject.tool.assessment.services.assessment.AssessmentEntityProducer;
 import org.sakaiproject.tool.assessment.facade.FavoriteColChoicesFacadeQueriesAPI;
+import org.sakaiproject.tool.assessment.ui.queue.delivery.TimedAssessmentQueue;
 
 public class InitAction extends HttpServlet{
 
@@ -154,5 +155,17 @@ private static Logger log = LoggerFactory.getLogger(InitAction.class);
 
     AssessmentEntityProducer producer = (AssessmentEntityProducer) ComponentManager.get("org.sakaiproject.tool.assessment.services.assessment.AssessmentEntityProducer");
     log.debug("AssessmentEntityProducer: "+producer);
+
+    // take over the deadlines of timed assessments started before this server came up
+    try {
+      TimedAssessmentQueue.getInstance().recover();
+    }
+    catch (Exception e) {
+      log.warn("Unable to recover timed assessments: " + e.getMessage(), e);
+    }
+  }
+
+  public void destroy(){
+    TimedAssessmentQueue.getInstance().destroy();
   }
 }
@@ -23,6 +23,8 @@
 
 package org.sakaiproject.tool.assessment.qti.helper;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -519,19 +521,8 @@ public class AuthoringHelper
   }
 
   private boolean validateImportXml(Document doc) throws SAXException, IOException{
-      // 1. Lookup a factory for the W3C XML Schema language
-      SchemaFactory factory =
-          SchemaFactory.newInstance("http://www.w3.org/2001/XMLSchema");
-
-      // 2. Compile the schema.
-      // Here the schema is loaded from a java.io.File, but you could use
-      // a java.net.URL or a javax.xml.transform.Source instead.
-      String schemaFile = VALIDATE_XSD_PATH + "qtiv1p2.xsd";
-      log.debug("schemaFile = " + schemaFile);
-      Schema schema = factory.newSchema(new StreamSource(AuthoringHelper.class.getClassLoader().getResourceAsStream(schemaFile)));
-
       // 3. Get a validator from the schema.
-      Validator validator = schema.newValidator();
+      Validator validator = getImportValidator();
 
       // 4. Parse the document you want to check.
       Source source = new DOMSource(doc);
@@ -548,6 +539,37 @@ public class AuthoringHelper
       return false;
   }
 
+  /**
+   * Validate a QTI file while parsing it, without reading it into a document.
+   */
+  private boolean validateImportXml(File file) throws SAXException, IOException, ParserConfigurationException{
+      try {
+          ItemStreamReader.validate(new FileInputStream(file), getImportValidator());
+          log.debug("The xml is valid.");
+          return true;
+      }
+      catch (SAXException ex) {
+          log.debug("The xml is not valid QTI format.", ex);
+      }
+      return false;
+  }
+
+  private Validator getImportValidator() throws SAXException{
+      // 1. Lookup a factory for the W3C XML Schema language
+      SchemaFactory factory =
+          SchemaFactory.newInstance("http://www.w3.org/2001/XMLSchema");
+
+      // 2. Compile the schema.
+      // Here the schema is loaded from a java.io.File, but you could use
+      // a java.net.URL or a javax.xml.transform.Source instead.
+      String schemaFile = VALIDATE_XSD_PATH + "qtiv1p2.xsd";
+      log.debug("schemaFile = " + schemaFile);
+      Schema schema = factory.newSchema(new StreamSource(AuthoringHelper.class.getClassLoader().getResourceAsStream(schemaFile)));
+
+      // 3. Get a validator from the schema.
+      return schema.newValidator();
+  }
+
   protected String getAgentString(){
 	  return AgentFacade.getAgentString();
   }
@@ -765,21 +787,12 @@ public class AuthoringHelper
   */
    public QuestionPoolFacade createImportedQuestionPool(Document document) 
    {
- 	QuestionPoolFacade questionpool = new QuestionPoolFacade();
- 	QuestionPoolService questionPoolService = new QuestionPoolService();
- 	
  	try
  	{
-       // identify user to assign as question pool owner
-       String me = AgentFacade.getAgentString();
-
- 	  // create the questionpool as an assessment
  	  ExtractionHelper exHelper = new ExtractionHelper(this.qtiVersion);
- 	  ItemService itemService = new ItemService();
  	  // we need to remove a default namespace if present
   	  Document removeNamespace = exHelper.getTransformDocument(exHelper.REMOVE_NAMESPACE_TRANSFORM);
   	  Document flatNamespaceXml = XmlUtil.transformDocument(document, removeNamespace);
-  	  Assessment assessmentXml = new Assessment(flatNamespaceXml);
 
   	  // validate xml first
   	  boolean success = validateImportXml(flatNamespaceXml);
@@ -788,6 +801,74 @@ public class AuthoringHelper
   	  }
   	  // else continue;
 
+  	  return createImportedQuestionPool(exHelper, new Assessment(flatNamespaceXml), null);
+ 	}
+ 	catch (RuntimeException e)
+ 	{
+ 		throw e;
+ 	}
+ 	catch (Exception e)
+ 	{
+ 		log.error(e.getMessage(), e);
+ 		throw new RuntimeException(e);
+ 	}
+   }
+
+  /**
+  * Import an assessment XML file in QTI format as a question pool, without reading the whole file
+  * into memory: the file is validated while it is parsed, then read once without its items to create
+  * the pool, and once more to extract & persist the items one at a time.
+  * import process assumes assessment structure, not objectbank or itembank
+  * @param file the assessment XML file in QTI format
+  * @return a persisted question pool
+  */
+   public QuestionPoolFacade createImportedQuestionPool(File file) 
+   {
+ 	try
+ 	{
+  	  // validate xml first
+  	  boolean success = validateImportXml(file);
+  	  if (!success) {
+  		  throw( new RuntimeException("Invalid QTI XML format."));
+  	  }
+  	  // else continue;
+
+ 	  ExtractionHelper exHelper = new ExtractionHelper(this.qtiVersion);
+ 	  Document assessmentDoc = ItemStreamReader.readDocument(new FileInputStream(file), getItemElementName());
+  	  return createImportedQuestionPool(exHelper, new Assessment(assessmentDoc), file);
+ 	}
+ 	catch (RuntimeException e)
+ 	{
+ 		throw e;
+ 	}
+ 	catch (Exception e)
+ 	{
+ 		log.error(e.getMessage(), e);
+ 		throw new RuntimeException(e);
+ 	}
+   }
+
+  /**
+   * Create a question pool from an assessment and save its items.
+   * @param exHelper the extraction helper
+   * @param assessmentXml the assessment
+   * @param file if not null, the file the assessment was read from, which the items are streamed
+   * from, rather than taken from the sections of the assessment
+   * @return a persisted question pool
+   */
+   private QuestionPoolFacade createImportedQuestionPool(final ExtractionHelper exHelper, Assessment assessmentXml, File file) 
+   {
+ 	QuestionPoolFacade questionpool = new QuestionPoolFacade();
+ 	QuestionPoolService questionPoolService = new QuestionPoolService();
+ 	
+ 	try
+ 	{
+       // identify user to assign as question pool owner
+       final String me = AgentFacade.getAgentString();
+
+ 	  // create the questionpool as an assessment
+ 	  final ItemService itemService = new ItemService();
+
  	  Map assessmentMap = exHelper.mapAssessment(assessmentXml);
  	  String title = (String) assessmentMap.get("title");
  	  
@@ -824,42 +905,42 @@ public class AuthoringHelper
  	  }
  	  
  	  
-      // process each section and each item within assessment each section
-      List sectionList = exHelper.getSectionXmlList(assessmentXml);
-      int sectionListSize = sectionList.size();
-      log.debug("sections=" + sectionListSize);
-             
       // initialize setQuestionPoolItems so items can be added
       Set itemSet = new HashSet();
       questionpool.setQuestionPoolItems(itemSet);
-       
-      for (int sec = 0; sec < sectionListSize; sec++) {
-           Section sectionXml = (Section) sectionList.get(sec);
-           Map sectionMap = exHelper.mapSection(sectionXml);
-           // for single section, do not create subpool
-
-           List itemList = exHelper.getItemXmlList(sectionXml);
-           for (int itm = 0; itm < itemList.size(); itm++) // for each item
-           {
-               log.debug("items=" + itemList.size());
-               Item itemXml = (Item) itemList.get(itm);
-
-               ItemFacade item = new ItemFacade();
-               exHelper.updateItem(item, itemXml);
-               // make sure required fields are set
-               item.setCreatedBy(me);
-               item.setCreatedDate(questionpool.getLastModified());
-               item.setLastModifiedBy(me);
-               item.setLastModifiedDate(questionpool.getLastModified());
-               item.setStatus(ItemDataIfc.ACTIVE_STATUS);
-               itemService.saveItem(item);
-               
-               QuestionPoolItemData questionPoolItem = new QuestionPoolItemData();
-               questionPoolItem.setQuestionPoolId(questionpool.getQuestionPoolId());
-               questionPoolItem.setItemId(item.getItemId());         
-               questionpool.addQuestionPoolItem((QuestionPoolItemIfc) questionPoolItem);
-               
-             } // ... end for each item
+
+      if (file != null) {
+           // read the items one at a time, so only one is in memory
+           final QuestionPoolFacade pool = questionpool;
+           int items = ItemStreamReader.readItems(new FileInputStream(file), getItemElementName(), new ItemStreamReader.ItemHandler() {
+               public void handleItem(Document itemDoc, int count) throws Exception {
+                   saveImportedQuestionPoolItem(exHelper, itemService, pool, new Item(itemDoc, qtiVersion), me);
+                   if (count % 500 == 0) {
+                       log.info("Imported " + count + " items into question pool " + pool.getQuestionPoolId());
+                   }
+               }
+           });
+           log.debug("items=" + items);
+      }
+      else {
+          // process each section and each item within assessment each section
+          List sectionList = exHelper.getSectionXmlList(assessmentXml);
+          int sectionListSize = sectionList.size();
+          log.debug("sections=" + sectionListSize);
+             
+          for (int sec = 0; sec < sectionListSize; sec++) {
+               Section sectionXml = (Section) sectionList.get(sec);
+               Map sectionMap = exHelper.mapSection(sectionXml);
+               // for single section, do not create subpool
+
+               List itemList = exHelper.getItemXmlList(sectionXml);
+               for (int itm = 0; itm < itemList.size(); itm++) // for each item
+               {
+                   log.debug("items=" + itemList.size());
+                   Item itemXml = (Item) itemList.get(itm);
+                   saveImportedQuestionPoolItem(exHelper, itemService, questionpool, itemXml, me);
+                 } // ... end for each item
+          }
       }
       // need error message if more than one section, for now
        
@@ -875,6 +956,30 @@ public class AuthoringHelper
  		throw new RuntimeException(e);		
  	}
    }
+
+   private void saveImportedQuestionPoolItem(ExtractionHelper exHelper, ItemService itemService,
+		   QuestionPoolFacade questionpool, Item itemXml, String me)
+   {
+       ItemFacade item = new ItemFacade();
+       exHelper.updateItem(item, itemXml);
+       // make sure required fields are set
+       item.setCreatedBy(me);
+       item.setCreatedDate(questionpool.getLastModified());
+       item.setLastModifiedBy(me);
+       item.setLastModifiedDate(questionpool.getLastModified());
+       item.setStatus(ItemDataIfc.ACTIVE_STATUS);
+       itemService.saveItem(item);
+       
+       QuestionPoolItemData questionPoolItem = new QuestionPoolItemData();
+       questionPoolItem.setQuestionPoolId(questionpool.getQuestionPoolId());
+       questionPoolItem.setItemId(item.getItemId());         
+       questionpool.addQuestionPoolItem((QuestionPoolItemIfc) questionPoolItem);
+   }
+
+   private String getItemElementName()
+   {
+       return qtiVersion == QTIVersion.VERSION_1_2 ? "item" : "assessmentItem";
+   }
  
 
   /**
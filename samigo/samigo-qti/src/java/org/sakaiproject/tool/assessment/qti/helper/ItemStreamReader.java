@@ -0,0 +1,437 @@
+/**********************************************************************************
+ * $URL$
+ * $Id$
+ ***********************************************************************************
+ *
+ * Copyright (c) 2016 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.opensource.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **********************************************************************************/
+
+package org.sakaiproject.tool.assessment.qti.helper;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.sax.SAXSource;
+import javax.xml.validation.Validator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.CDATASection;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.Text;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.XMLFilterImpl;
+
+/**
+ * Reads a QTI document without holding all of it in memory, for imports of question pools with
+ * many thousands of items. {@link #readDocument(InputStream, String)} returns the document without
+ * its items, and {@link #readItems(InputStream, String, ItemHandler)} hands each item of each
+ * section over as a document of its own, one at a time.
+ * <p>
+ * As with ExtractionHelper.REMOVE_NAMESPACE_TRANSFORM, elements in the default QTI namespace are
+ * read as elements without a namespace.
+ */
+public class ItemStreamReader
+{
+  private static Logger log = LoggerFactory.getLogger(ItemStreamReader.class);
+
+  public static final String QTI_NAMESPACE = "http://www.imsglobal.org/xsd/ims_qtiasiv1p2";
+
+  private static final String SECTION = "section";
+
+  private static final String REPORT_CDATA = "http://java.sun.com/xml/stream/properties/report-cdata-event";
+
+  /**
+   * Receives the items of a QTI document, in document order.
+   */
+  public interface ItemHandler
+  {
+    /**
+     * @param itemDoc a document holding just the item
+     * @param count the number of items read so far, including this one
+     */
+    void handleItem(Document itemDoc, int count) throws Exception;
+  }
+
+  private ItemStreamReader()
+  {
+  }
+
+  /**
+   * Read the whole document except for the item elements.
+   * @param in the QTI xml, which is closed
+   * @param itemElementName the item element, "item" for QTI 1.2
+   * @return the document without items
+   */
+  public static Document readDocument(InputStream in, String itemElementName) throws Exception
+  {
+    Document document = createDocument();
+    read(in, itemElementName, document, null);
+    return document;
+  }
+
+  /**
+   * Read the items of each section, one at a time.
+   * @param in the QTI xml, which is closed
+   * @param itemElementName the item element, "item" for QTI 1.2
+   * @param handler receives each item
+   * @return the number of items read
+   */
+  public static int readItems(InputStream in, String itemElementName, ItemHandler handler) throws Exception
+  {
+    return read(in, itemElementName, null, handler);
+  }
+
+  /**
+   * Validate the QTI xml against a schema for QTI without a namespace, as the document read by
+   * this class would be, while parsing it.
+   * @param in the QTI xml, which is closed
+   * @param validator the validator of the schema
+   * @throws SAXException if the xml is not valid
+   */
+  public static void validate(InputStream in, Validator validator) throws SAXException, IOException, ParserConfigurationException
+  {
+    SAXParserFactory factory = SAXParserFactory.newInstance();
+    factory.setNamespaceAware(true);
+    factory.setFeature("http://xml.org/sax/features/external-general-entities", false);
+    factory.setFeature("http://xml.org/sax/features/external-parameter-entities", false);
+    factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+    XMLReader reader = new RemoveNamespaceFilter(factory.newSAXParser().getXMLReader());
+    try
+    {
+      validator.validate(new SAXSource(reader, new InputSource(skipLeadingWhitespace(in))));
+    }
+    finally
+    {
+      in.close();
+    }
+  }
+
+  private static int read(InputStream in, String itemElementName, Document document, ItemHandler handler) throws Exception
+  {
+    XMLStreamReader reader = createInputFactory().createXMLStreamReader(skipLeadingWhitespace(in));
+    Deque<Node> parents = new ArrayDeque<Node>();
+    if (document != null)
+    {
+      parents.push(document);
+    }
+    int sectionDepth = 0;
+    int count = 0;
+    try
+    {
+      while (reader.hasNext())
+      {
+        int event = reader.next();
+        if (event == XMLStreamConstants.START_ELEMENT)
+        {
+          if (itemElementName.equals(reader.getLocalName()))
+          {
+            if (handler != null && sectionDepth > 0)
+            {
+              Document itemDoc = createDocument();
+              itemDoc.appendChild(readElement(reader, itemDoc));
+              handler.handleItem(itemDoc, ++count);
+            }
+            else
+            {
+              skipElement(reader);
+            }
+            continue;
+          }
+          if (SECTION.equals(reader.getLocalName()))
+          {
+            sectionDepth++;
+          }
+          if (document != null)
+          {
+            Element element = createElement(reader, document);
+            parents.peek().appendChild(element);
+            parents.push(element);
+          }
+        }
+        else if (event == XMLStreamConstants.END_ELEMENT)
+        {
+          if (SECTION.equals(reader.getLocalName()))
+          {
+            sectionDepth--;
+          }
+          if (document != null)
+          {
+            parents.pop();
+          }
+        }
+        else if (document != null && parents.size() > 1)
+        {
+          appendContent(reader, event, document, parents.peek());
+        }
+      }
+    }
+    finally
+    {
+      reader.close();
+      in.close();
+    }
+    log.debug("read {} items", count);
+    return count;
+  }
+
+  /**
+   * Read the element the reader is at, and everything in it, leaving the reader at its end.
+   */
+  private static Element readElement(XMLStreamReader reader, Document document) throws XMLStreamException
+  {
+    Element root = createElement(reader, document);
+    Node parent = root;
+    int depth = 1;
+    while (depth > 0)
+    {
+      int event = reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT)
+      {
+        Element element = createElement(reader, document);
+        parent.appendChild(element);
+        parent = element;
+        depth++;
+      }
+      else if (event == XMLStreamConstants.END_ELEMENT)
+      {
+        parent = parent.getParentNode();
+        depth--;
+      }
+      else
+      {
+        appendContent(reader, event, document, parent);
+      }
+    }
+    return root;
+  }
+
+  private static void skipElement(XMLStreamReader reader) throws XMLStreamException
+  {
+    int depth = 1;
+    while (depth > 0)
+    {
+      int event = reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT)
+      {
+        depth++;
+      }
+      else if (event == XMLStreamConstants.END_ELEMENT)
+      {
+        depth--;
+      }
+    }
+  }
+
+  private static Element createElement(XMLStreamReader reader, Document document)
+  {
+    String uri = reader.getNamespaceURI();
+    Element element;
+    if (isEmptyOrQti(uri))
+    {
+      element = document.createElementNS(null, reader.getLocalName());
+    }
+    else
+    {
+      element = document.createElementNS(uri, qualifiedName(reader.getPrefix(), reader.getLocalName()));
+    }
+
+    for (int i = 0; i < reader.getNamespaceCount(); i++)
+    {
+      String namespace = reader.getNamespaceURI(i);
+      if (QTI_NAMESPACE.equals(namespace))
+      {
+        continue;
+      }
+      String prefix = reader.getNamespacePrefix(i);
+      String name = (prefix == null || prefix.length() == 0) ? XMLConstants.XMLNS_ATTRIBUTE : XMLConstants.XMLNS_ATTRIBUTE + ":" + prefix;
+      element.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, name, namespace);
+    }
+
+    for (int i = 0; i < reader.getAttributeCount(); i++)
+    {
+      String attributeUri = reader.getAttributeNamespace(i);
+      if (isEmptyOrQti(attributeUri))
+      {
+        element.setAttributeNS(null, reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+      }
+      else
+      {
+        element.setAttributeNS(attributeUri,
+            qualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)), reader.getAttributeValue(i));
+      }
+    }
+    return element;
+  }
+
+  /**
+   * Append text, CDATA or a comment to a node. The parser may split long text into several events,
+   * which are joined again so each run of text is a single node, as when parsed into a DOM.
+   */
+  private static void appendContent(XMLStreamReader reader, int event, Document document, Node parent)
+  {
+    Node last = parent.getLastChild();
+    switch (event)
+    {
+      case XMLStreamConstants.CHARACTERS:
+      case XMLStreamConstants.SPACE:
+        if (last != null && last.getNodeType() == Node.TEXT_NODE)
+        {
+          ((Text) last).appendData(reader.getText());
+        }
+        else
+        {
+          parent.appendChild(document.createTextNode(reader.getText()));
+        }
+        break;
+      case XMLStreamConstants.CDATA:
+        if (last != null && last.getNodeType() == Node.CDATA_SECTION_NODE)
+        {
+          ((CDATASection) last).appendData(reader.getText());
+        }
+        else
+        {
+          parent.appendChild(document.createCDATASection(reader.getText()));
+        }
+        break;
+      case XMLStreamConstants.COMMENT:
+        parent.appendChild(document.createComment(reader.getText()));
+        break;
+      default:
+        break;
+    }
+  }
+
+  private static boolean isEmptyOrQti(String uri)
+  {
+    return uri == null || uri.length() == 0 || QTI_NAMESPACE.equals(uri);
+  }
+
+  private static String qualifiedName(String prefix, String localName)
+  {
+    return (prefix == null || prefix.length() == 0) ? localName : prefix + ":" + localName;
+  }
+
+  /**
+   * Files may have blank lines before the xml declaration, which XmlUtil.readDocument(path, true) trims.
+   */
+  private static InputStream skipLeadingWhitespace(InputStream in) throws IOException
+  {
+    InputStream buffered = new BufferedInputStream(in);
+    while (true)
+    {
+      buffered.mark(1);
+      int b = buffered.read();
+      if (b == -1 || !Character.isWhitespace(b))
+      {
+        buffered.reset();
+        return buffered;
+      }
+    }
+  }
+
+  private static XMLInputFactory createInputFactory()
+  {
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+    // keep CDATA sections apart from text, as a DOM parser does
+    if (factory.isPropertySupported(REPORT_CDATA))
+    {
+      factory.setProperty(REPORT_CDATA, Boolean.TRUE);
+    }
+    return factory;
+  }
+
+  private static Document createDocument() throws ParserConfigurationException
+  {
+    DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+    factory.setNamespaceAware(true);
+    return factory.newDocumentBuilder().newDocument();
+  }
+
+  /**
+   * Passes on SAX events with the default QTI namespace taken off the elements.
+   */
+  private static class RemoveNamespaceFilter extends XMLFilterImpl
+  {
+    RemoveNamespaceFilter(XMLReader parent)
+    {
+      super(parent);
+    }
+
+    @Override
+    public void startPrefixMapping(String prefix, String uri) throws SAXException
+    {
+      if (!QTI_NAMESPACE.equals(uri))
+      {
+        super.startPrefixMapping(prefix, uri);
+      }
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException
+    {
+      if (QTI_NAMESPACE.equals(uri))
+      {
+        AttributesImpl attributes = new AttributesImpl(atts);
+        for (int i = attributes.getLength() - 1; i >= 0; i--)
+        {
+          if (QTI_NAMESPACE.equals(attributes.getValue(i)) && attributes.getQName(i).startsWith(XMLConstants.XMLNS_ATTRIBUTE))
+          {
+            attributes.removeAttribute(i);
+          }
+        }
+        super.startElement("", localName, localName, attributes);
+      }
+      else
+      {
+        super.startElement(uri, localName, qName, atts);
+      }
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) throws SAXException
+    {
+      if (QTI_NAMESPACE.equals(uri))
+      {
+        super.endElement("", localName, localName);
+      }
+      else
+      {
+        super.endElement(uri, localName, qName);
+      }
+    }
+  }
+}
@@ -21,6 +21,7 @@
 
 package org.sakaiproject.tool.assessment.services.qti;
 
+import java.io.File;
 import java.util.ArrayList;
 
 import org.slf4j.Logger;
@@ -156,6 +157,28 @@ public class QTIService implements QTIServiceAPI
 		  throw new QTIServiceException(ex);
 	  }
   } 
+
+  /**
+   * Import an assessment XML file in QTI format as a question pool. The file is streamed and its
+   * items are extracted & persisted one at a time, so large pools do not have to fit in memory.
+   * @param documentPath the pathname to a file with the assessment XML document in QTI format
+   * @param qtiVersion QTIVersion.VERSION_1_2;
+   * @return a persisted question pool
+   */
+  public QuestionPoolFacade createImportedQuestionPool(String documentPath, int qtiVersion)
+  {
+	  testQtiVersion(qtiVersion);
+
+	  try
+	  {
+		  AuthoringHelper helper = new AuthoringHelper(qtiVersion);
+	      return helper.createImportedQuestionPool(new File(documentPath));
+	  }
+	  catch (Exception ex)
+	  {
+		  throw new QTIServiceException(ex);
+	  }
+  }
   
 
   /**
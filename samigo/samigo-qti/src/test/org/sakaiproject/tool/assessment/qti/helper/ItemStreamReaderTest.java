@@ -0,0 +1,78 @@
+package org.sakaiproject.tool.assessment.qti.helper;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import junit.framework.TestCase;
+
+public class ItemStreamReaderTest extends TestCase {
+
+	private static final String QTI =
+		"\n\n<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+		"<questestinterop xmlns=\"http://www.imsglobal.org/xsd/ims_qtiasiv1p2\">\n" +
+		"<assessment ident=\"A1\" title=\"Pool\">\n" +
+		"<qtimetadata><qtimetadatafield><fieldlabel>DESCRIPTION</fieldlabel><fieldentry>About</fieldentry></qtimetadatafield></qtimetadata>\n" +
+		"<section ident=\"S1\">\n" +
+		"<item ident=\"I1\" title=\"One\"><presentation><material><mattext><![CDATA[<p>first</p>]]></mattext></material></presentation></item>\n" +
+		"<item ident=\"I2\" title=\"Two\"><presentation><material><mattext>second</mattext></material></presentation></item>\n" +
+		"</section>\n" +
+		"<section ident=\"S2\">\n" +
+		"<item ident=\"I3\" title=\"Three\"/>\n" +
+		"</section>\n" +
+		"</assessment>\n" +
+		"</questestinterop>\n";
+
+	public void testReadDocumentLeavesOutItems() throws Exception {
+		Document document = ItemStreamReader.readDocument(stream(QTI), "item");
+		Element root = document.getDocumentElement();
+		assertEquals("questestinterop", root.getNodeName());
+		assertNull(root.getNamespaceURI());
+		assertEquals(0, document.getElementsByTagName("item").getLength());
+		assertEquals(2, document.getElementsByTagName("section").getLength());
+		Element assessment = (Element) document.getElementsByTagName("assessment").item(0);
+		assertEquals("Pool", assessment.getAttribute("title"));
+		assertEquals("About", document.getElementsByTagName("fieldentry").item(0).getFirstChild().getNodeValue());
+	}
+
+	public void testReadItemsOneAtATime() throws Exception {
+		final List<Document> items = new ArrayList<Document>();
+		int count = ItemStreamReader.readItems(stream(QTI), "item", new ItemStreamReader.ItemHandler() {
+			public void handleItem(Document itemDoc, int count) {
+				assertEquals(items.size() + 1, count);
+				items.add(itemDoc);
+			}
+		});
+		assertEquals(3, count);
+		assertEquals(3, items.size());
+		assertEquals("I1", items.get(0).getDocumentElement().getAttribute("ident"));
+		assertEquals("I3", items.get(2).getDocumentElement().getAttribute("ident"));
+		assertNull(items.get(0).getDocumentElement().getNamespaceURI());
+
+		Node mattext = items.get(0).getElementsByTagName("mattext").item(0);
+		assertEquals(Node.CDATA_SECTION_NODE, mattext.getFirstChild().getNodeType());
+		assertEquals("<p>first</p>", mattext.getFirstChild().getNodeValue());
+		assertEquals("second", items.get(1).getElementsByTagName("mattext").item(0).getFirstChild().getNodeValue());
+	}
+
+	public void testItemsOutsideSectionsAreSkipped() throws Exception {
+		String qti = "<questestinterop><item ident=\"X\"/><assessment title=\"T\"><section><item ident=\"Y\"/></section></assessment></questestinterop>";
+		final List<String> idents = new ArrayList<String>();
+		ItemStreamReader.readItems(stream(qti), "item", new ItemStreamReader.ItemHandler() {
+			public void handleItem(Document itemDoc, int count) {
+				idents.add(itemDoc.getDocumentElement().getAttribute("ident"));
+			}
+		});
+		assertEquals(1, idents.size());
+		assertEquals("Y", idents.get(0));
+	}
+
+	private InputStream stream(String xml) throws Exception {
+		return new ByteArrayInputStream(xml.getBytes("UTF-8"));
+	}
+}
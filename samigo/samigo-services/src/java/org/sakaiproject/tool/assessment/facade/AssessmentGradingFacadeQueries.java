@@ -42,6 +42,7 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -53,6 +54,7 @@ import java.util.TreeSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.hibernate.Criteria;
+import org.hibernate.Hibernate;
 import org.hibernate.HibernateException;
 import org.hibernate.Query;
 import org.hibernate.Session;
@@ -121,6 +123,9 @@ import org.sakaiproject.tool.assessment.services.PersistenceService;
 public class AssessmentGradingFacadeQueries extends HibernateDaoSupport implements AssessmentGradingFacadeQueriesAPI{
   private static final Logger log = LoggerFactory.getLogger(AssessmentGradingFacadeQueries.class);
 
+  /** The number of records saved between flushes of the session in saveOrUpdateAssessmentGradings */
+  private static final int SAVE_BATCH_SIZE = 100;
+
   /**
    * Default empty Constructor
    */
@@ -333,11 +338,34 @@ public class AssessmentGradingFacadeQueries extends HibernateDaoSupport implemen
       	};
       };
       List list = getHibernateTemplate().executeFind(hcb);
+
+      // load the item gradings of all the submissions in one query, rather than one query per submission
+      final HibernateCallback hcb2 = new HibernateCallback(){
+      	public Object doInHibernate(Session session) throws HibernateException, SQLException {
+      		Query q = session.createQuery(
+      				"from ItemGradingData i where i.assessmentGradingId in " +
+      				"(select a.assessmentGradingId from AssessmentGradingData a where a.publishedAssessmentId=? and a.status <> ?)");
+      		q.setLong(0, publishedId);
+    		q.setInteger(1, AssessmentGradingData.NO_SUBMISSION);
+      		return q.list();
+      	};
+      };
+      List<ItemGradingData> itemGradings = getHibernateTemplate().executeFind(hcb2);
+      Map<Long, Set<ItemGradingData>> itemGradingSets = new HashMap<Long, Set<ItemGradingData>>();
+      for (ItemGradingData itemGrading : itemGradings) {
+    	  Set<ItemGradingData> itemGradingSet = itemGradingSets.get(itemGrading.getAssessmentGradingId());
+    	  if (itemGradingSet == null) {
+    		  itemGradingSet = new HashSet<ItemGradingData>();
+    		  itemGradingSets.put(itemGrading.getAssessmentGradingId(), itemGradingSet);
+    	  }
+    	  itemGradingSet.add(itemGrading);
+      }
+
       Iterator iter = list.iterator();
       while (iter.hasNext()) {
     	  AssessmentGradingData adata = (AssessmentGradingData) iter.next();
-    	  Set itemGradingSet = getItemGradingSet(adata.getAssessmentGradingId());
-    	  adata.setItemGradingSet(itemGradingSet);
+    	  Set<ItemGradingData> itemGradingSet = itemGradingSets.get(adata.getAssessmentGradingId());
+    	  adata.setItemGradingSet(itemGradingSet != null ? itemGradingSet : new HashSet<ItemGradingData>());
       }
       
       return list;
@@ -1879,6 +1907,62 @@ public class AssessmentGradingFacadeQueries extends HibernateDaoSupport implemen
     }
   }
 
+  /**
+   * Save many assessment gradings and their item gradings in a single transaction, flushing the
+   * session every SAVE_BATCH_SIZE records so it does not grow with the number of submissions.
+   * As in GradingService.storeGrades the item gradings are saved on their own, so the item grading
+   * sets of the assessment gradings are emptied.
+   */
+  public void saveOrUpdateAssessmentGradings(Collection<AssessmentGradingData> c) {
+    final List<ItemGradingData> itemGradings = new ArrayList<ItemGradingData>();
+    final List<AssessmentGradingData> assessmentGradings = new ArrayList<AssessmentGradingData>();
+    for (AssessmentGradingData data : c) {
+      if (data == null) {
+        continue;
+      }
+      if (data.getItemGradingSet() != null) {
+        itemGradings.addAll(data.getItemGradingSet());
+      }
+      data.setItemGradingSet(new HashSet<ItemGradingData>());
+      assessmentGradings.add(data);
+    }
+    itemGradings.removeAll(Collections.singleton(null));
+
+    final HibernateCallback hcb = new HibernateCallback(){
+      public Object doInHibernate(Session session) throws HibernateException, SQLException {
+        int count = 0;
+        for (ItemGradingData itemGrading : itemGradings) {
+          session.saveOrUpdate(itemGrading);
+          if (++count % SAVE_BATCH_SIZE == 0) {
+            session.flush();
+            session.clear();
+          }
+        }
+        for (AssessmentGradingData data : assessmentGradings) {
+          session.saveOrUpdate(data);
+          if (++count % SAVE_BATCH_SIZE == 0) {
+            session.flush();
+            session.clear();
+          }
+        }
+        session.flush();
+        return null;
+      };
+    };
+
+    int retryCount = persistenceHelper.getRetryCount();
+    while (retryCount > 0){ 
+      try {
+        getHibernateTemplate().execute(hcb);
+        retryCount = 0;
+      }
+      catch (Exception e) {
+        log.warn("problem inserting/updating assessmentGradings: {}", e.getMessage());
+        retryCount = persistenceHelper.retryDeadlock(e, retryCount);
+      }
+    }
+  }
+
   public PublishedAssessmentIfc getPublishedAssessmentByAssessmentGradingId(final Long assessmentGradingId){
     PublishedAssessmentIfc pub = null;
     final String query = "select p from PublishedAssessmentData p, AssessmentGradingData a "+
@@ -3458,8 +3542,48 @@ public class AssessmentGradingFacadeQueries extends HibernateDaoSupport implemen
 		return list;
 	}
 	
+	// attempts due to be auto submitted, see autoSubmitAssessments()
+	private static final String AUTO_SUBMIT_FROM = " from AssessmentGradingData a, PublishedAccessControl c " +
+						" where a.publishedAssessmentId = c.assessment.publishedAssessmentId " +
+						" and c.retractDate <= :retractDate" +
+						" and a.status not in (5) and (a.hasAutoSubmissionRun = 0 or a.hasAutoSubmissionRun is null) and c.autoSubmit = 1 " +
+						" and a.attemptDate is not null " +
+						" and (a.attemptDate <= c.retractDate " +
+							" or (c.dueDate <= :dueDate and c.lateHandling = 2) " +
+// This clause is to find which items also have extendedTime, but I feel like it's unnecessary and will fit into one of the other two criteria?
+//							" or a.publishedAssessmentId in (select p.assessment.publishedAssessmentId from PublishedMetaData p where p.label='extendedTime1') " +
+						"     ) ";
+
+	@Override
+	public List<Long> getAutoSubmitPublishedAssessmentIds() {
+		java.util.Date currentTime = new java.util.Date();
+
+		Session session = getHibernateTemplate().getSessionFactory().getCurrentSession();
+
+		Query query = session.createQuery("select distinct a.publishedAssessmentId " + AUTO_SUBMIT_FROM +
+						" order by a.publishedAssessmentId");
+		query.setTimestamp("dueDate",currentTime);
+		query.setTimestamp("retractDate",currentTime);
+
+		return query.list();
+	}
+
 	@Override
 	public int autoSubmitAssessments() {
+		HashMap toGradebookPublishedAssessmentSiteIdMap = null;
+		if (IntegrationContextFactory.getInstance() != null) {
+			toGradebookPublishedAssessmentSiteIdMap = new PublishedAssessmentService().getToGradebookPublishedAssessmentSiteIdMap();
+		}
+
+		int failures = 0;
+		for (Long publishedAssessmentId : getAutoSubmitPublishedAssessmentIds()) {
+			failures += autoSubmitAssessments(publishedAssessmentId, toGradebookPublishedAssessmentSiteIdMap);
+		}
+		return failures;
+	}
+
+	@Override
+	public int autoSubmitAssessments(Long publishedAssessmentId, Map toGradebookPublishedAssessmentSiteIdMap) {
 		java.util.Date currentTime = new java.util.Date();
 		
 		Session session = getHibernateTemplate().getSessionFactory().getCurrentSession();
@@ -3467,46 +3591,45 @@ public class AssessmentGradingFacadeQueries extends HibernateDaoSupport implemen
 		Query query = session.createQuery("select new AssessmentGradingData(a.assessmentGradingId, a.publishedAssessmentId, " +
 						" a.agentId, a.submittedDate, a.isLate, a.forGrade, a.totalAutoScore, a.totalOverrideScore, " +
 						" a.finalScore, a.comments, a.status, a.gradedBy, a.gradedDate, a.attemptDate, a.timeElapsed) " +
-						" from AssessmentGradingData a, PublishedAccessControl c " +
-						" where a.publishedAssessmentId = c.assessment.publishedAssessmentId " +
-						" and c.retractDate <= :retractDate" +
-						" and a.status not in (5) and (a.hasAutoSubmissionRun = 0 or a.hasAutoSubmissionRun is null) and c.autoSubmit = 1 " +
-						" and a.attemptDate is not null " +
-						" and (a.attemptDate <= c.retractDate " +
-							" or (c.dueDate <= :dueDate and c.lateHandling = 2) " +
-// This clause is to find which items also have extendedTime, but I feel like it's unnecessary and will fit into one of the other two criteria?
-//							" or a.publishedAssessmentId in (select p.assessment.publishedAssessmentId from PublishedMetaData p where p.label='extendedTime1') " +
-						"     ) " +
-						" order by a.publishedAssessmentId, a.agentId, a.forGrade desc, a.assessmentGradingId");
+						AUTO_SUBMIT_FROM +
+						" and a.publishedAssessmentId = :publishedAssessmentId " +
+						" order by a.agentId, a.forGrade desc, a.assessmentGradingId");
 	    
 		query.setTimestamp("dueDate",currentTime);
 		query.setTimestamp("retractDate",currentTime);
+		query.setLong("publishedAssessmentId", publishedAssessmentId);
 		
 		List<AssessmentGradingData> list = query.list();
+		if (list.isEmpty()) {
+			return 0;
+		}
 
 	    Iterator iter = list.iterator();
 	    String lastAgentId = "";
-	    Long lastPublishedAssessmentId = Long.valueOf(0);
 	    AssessmentGradingData adata = null;
 	    HashMap sectionSetMap = new HashMap();
 	    
 	    EventLogService eventService = new EventLogService();
 	    EventLogFacade eventLogFacade = new EventLogFacade();
 	    PublishedAssessmentService publishedAssessmentService = new PublishedAssessmentService();
-	    
+
+		// every attempt here is at the same assessment, so look it up once
+		PublishedAssessmentFacade assessment = null;
+		PublishedAssessmentFacade publishedAssessment = null;
+		
 		GradebookExternalAssessmentService g = null;
 		boolean updateGrades = false;
-		HashMap toGradebookPublishedAssessmentSiteIdMap = null;
 		GradebookServiceHelper gbsHelper = null;
 		if (IntegrationContextFactory.getInstance() != null) {
 			boolean integrated = IntegrationContextFactory.getInstance().isIntegrated();
 			if (integrated) {
 				g = (GradebookExternalAssessmentService) SpringBeanLocator.getInstance().getBean("org.sakaiproject.service.gradebook.GradebookExternalAssessmentService");
 			}
-			toGradebookPublishedAssessmentSiteIdMap = publishedAssessmentService.getToGradebookPublishedAssessmentSiteIdMap();
 			gbsHelper = IntegrationContextFactory.getInstance().getGradebookServiceHelper();
-			updateGrades = true;
+			updateGrades = toGradebookPublishedAssessmentSiteIdMap != null && toGradebookPublishedAssessmentSiteIdMap.containsKey(publishedAssessmentId);
 		}
+		// scores to send to the gradebook, in one update once all the attempts are done
+		Map<String, Double> studentScores = new LinkedHashMap<>();
 		boolean autoSubmitCurrent;
 		boolean updateCurrentGrade;
 		int failures = 0;
@@ -3519,11 +3642,15 @@ public class AssessmentGradingFacadeQueries extends HibernateDaoSupport implemen
 	    		adata = (AssessmentGradingData) iter.next();
 	    		adata.setHasAutoSubmissionRun(Boolean.TRUE);
 	    		
+				if (assessment == null) {
+					assessment = (PublishedAssessmentFacade)publishedAssessmentService.getAssessment(publishedAssessmentId);
+					publishedAssessment = publishedAssessmentService.getPublishedAssessment(publishedAssessmentId.toString());
+				}
+
 				Date endDate = new Date();
 				if (Boolean.FALSE.equals(adata.getForGrade())){
 
 						// SAM-1088 getting the assessment so we can check to see if last user attempt was after due date
-						PublishedAssessmentFacade assessment = (PublishedAssessmentFacade)publishedAssessmentService.getAssessment(adata.getPublishedAssessmentId());
 						Date dueDate = assessment.getAssessmentAccessControl().getDueDate();
 						ExtendedTimeService assessmentExtended = new ExtendedTimeService(assessment,adata.getAgentId());
 						//If it has extended time, just continue for now, no method to tell if the time is passed
@@ -3561,8 +3688,7 @@ public class AssessmentGradingFacadeQueries extends HibernateDaoSupport implemen
     				autoSubmitCurrent = true;
     				updateCurrentGrade = true;
     				adata.setIsAutoSubmitted(Boolean.TRUE);
-    				if (lastPublishedAssessmentId.equals(adata.getPublishedAssessmentId()) 
-    						&& lastAgentId.equals(adata.getAgentId())) {
+    				if (lastAgentId.equals(adata.getAgentId())) {
     					adata.setStatus(AssessmentGradingData.AUTOSUBMIT_UPDATED);
 
         				// Check: needed updating gradebook
@@ -3583,18 +3709,21 @@ public class AssessmentGradingFacadeQueries extends HibernateDaoSupport implemen
     				completeItemGradingData(adata, sectionSetMap);
     			}
 
-	    		lastPublishedAssessmentId = adata.getPublishedAssessmentId();
     			lastAgentId = adata.getAgentId();
 
-				PublishedAssessmentFacade publishedAssessment = publishedAssessmentService.getPublishedAssessment(adata.getPublishedAssessmentId().toString());
-				// this call happens in a separate transaction, so a rollback only affects this iteration
+				// this call happens in a separate transaction, so a rollback only affects this iteration;
+				// the gradebook is updated below, for all the attempts together
 				boolean success = PersistenceService.getInstance().getAutoSubmitQueries().autoSubmitSingleAssessment(adata,
-						autoSubmitCurrent, updateCurrentGrade, publishedAssessment, persistenceHelper, updateGrades, eventService, eventLogFacade,
+						autoSubmitCurrent, updateCurrentGrade, publishedAssessment, persistenceHelper, false, eventService, eventLogFacade,
 						toGradebookPublishedAssessmentSiteIdMap, gbsHelper, g);
 				if (!success)
 				{
 					++failures;
 				}
+				else if (updateGrades && autoSubmitCurrent && updateCurrentGrade)
+				{
+					studentScores.put(adata.getAgentId(), adata.getFinalScore());
+				}
 
     			adata = null;
 	    	}catch (Exception e) {
@@ -3606,10 +3735,38 @@ public class AssessmentGradingFacadeQueries extends HibernateDaoSupport implemen
 	    		}
 			}
 	    }
+
+		if (!studentScores.isEmpty() && !updateAutoSubmitScores(publishedAssessmentId, studentScores,
+				(String) toGradebookPublishedAssessmentSiteIdMap.get(publishedAssessmentId), gbsHelper, g)) {
+			failures += studentScores.size();
+		}
 	    
 		return failures;
 	}
 
+	/**
+	 * Send the scores of the attempts auto submitted at one assessment to the gradebook in a single update.
+	 * @return false if the gradebook could not be updated
+	 */
+	private boolean updateAutoSubmitScores(Long publishedAssessmentId, Map<String, Double> studentScores, String siteId,
+			GradebookServiceHelper gbsHelper, GradebookExternalAssessmentService g) {
+		if (gbsHelper == null || !gbsHelper.gradebookExists(GradebookFacade.getGradebookUId(siteId), g)) {
+			return true;
+		}
+		int retryCount = persistenceHelper.getRetryCount();
+		while (retryCount > 0) {
+			try {
+				gbsHelper.updateExternalAssessmentScores(publishedAssessmentId, studentScores, g);
+				return true;
+			}
+			catch (Exception e) {
+				log.error("Error while updating external assessment scores during auto submitting published assessment id: " + publishedAssessmentId, e);
+				retryCount = persistenceHelper.retryDeadlock(e, retryCount);
+			}
+		}
+		return false;
+	}
+
 	private String makeHeader(String section, int sectionNumber, String question, String headerType, int questionNumber, String pool, String poolName) {
 		StringBuilder sb = new StringBuilder(section);
                 sb.append(" ");
@@ -4164,4 +4321,54 @@ public class AssessmentGradingFacadeQueries extends HibernateDaoSupport implemen
 
 		  return assessmentGradings;
 	  }
+
+	  public List<AssessmentGradingData> getUnSubmittedTimedAssessmentGradingList(final Date attemptedSince) {
+		  final HibernateCallback hcb = new HibernateCallback(){
+			  public Object doInHibernate(Session session) throws HibernateException, SQLException {
+				  Query q = session.createQuery(
+						  "select a from AssessmentGradingData a, PublishedAccessControl c " +
+						  "where a.publishedAssessmentId = c.assessment.publishedAssessmentId " +
+						  "and a.forGrade = :forGrade and a.status not in (5) " +
+						  "and a.attemptDate is not null and a.attemptDate >= :attemptedSince " +
+						  "and c.timeLimit > 0 order by a.attemptDate");
+				  q.setBoolean("forGrade", false);
+				  q.setTimestamp("attemptedSince", attemptedSince);
+				  return q.list();
+			  };
+		  };
+		  return getHibernateTemplate().executeFind(hcb);
+	  }
+
+	  public boolean claimUnSubmittedAssessmentGrading(final Long assessmentGradingId, final Date submittedDate) {
+		  final HibernateCallback hcb = new HibernateCallback(){
+			  public Integer doInHibernate(Session session) throws HibernateException, SQLException {
+				  Query q = session.createQuery(
+						  "update AssessmentGradingData set forGrade = :forGrade, status = :status, submittedDate = :submittedDate " +
+						  "where assessmentGradingId = :id and forGrade = :notForGrade");
+				  q.setBoolean("forGrade", true);
+				  q.setInteger("status", AssessmentGradingData.SUBMITTED);
+				  q.setTimestamp("submittedDate", submittedDate);
+				  q.setLong("id", assessmentGradingId);
+				  q.setBoolean("notForGrade", false);
+				  return q.executeUpdate();
+			  };
+		  };
+		  return ((Integer) getHibernateTemplate().execute(hcb)).intValue() == 1;
+	  }
+
+	  public void releaseAssessmentGradingClaim(final Long assessmentGradingId, final Integer status, final Date submittedDate) {
+		  final HibernateCallback hcb = new HibernateCallback(){
+			  public Integer doInHibernate(Session session) throws HibernateException, SQLException {
+				  Query q = session.createQuery(
+						  "update AssessmentGradingData set forGrade = :notForGrade, status = :status, submittedDate = :submittedDate " +
+						  "where assessmentGradingId = :id");
+				  q.setBoolean("notForGrade", false);
+				  q.setInteger("status", status);
+				  q.setParameter("submittedDate", submittedDate, Hibernate.TIMESTAMP);
+				  q.setLong("id", assessmentGradingId);
+				  return q.executeUpdate();
+			  };
+		  };
+		  getHibernateTemplate().execute(hcb);
+	  }
 }
@@ -206,6 +206,12 @@ public interface AssessmentGradingFacadeQueriesAPI
 
   public void saveOrUpdateAll(Collection<ItemGradingData> c);
 
+  /**
+   * Save many assessment gradings, with their item gradings, in one batched write.
+   * The item grading sets of the assessment gradings are emptied once they are saved.
+   */
+  public void saveOrUpdateAssessmentGradings(Collection<AssessmentGradingData> c);
+
   public PublishedAssessmentIfc getPublishedAssessmentByAssessmentGradingId(Long assessmentGradingId);
 
   public PublishedAssessmentIfc getPublishedAssessmentByPublishedItemId(Long publishedItemId);
@@ -264,6 +270,20 @@ public interface AssessmentGradingFacadeQueriesAPI
    * @return number of attempts/submissions that could not be processed due to error
    */
   public int autoSubmitAssessments();
+
+  /**
+   * Find the published assessments that have attempts due to be autosubmitted
+   * @return the published assessment ids, in order
+   */
+  public List<Long> getAutoSubmitPublishedAssessmentIds();
+
+  /**
+   * Autosubmits the attempts due at one published assessment, sending their scores to the gradebook in one update
+   * @param publishedAssessmentId the published assessment
+   * @param toGradebookPublishedAssessmentSiteIdMap map of assessments that send grades to gradebook, or null if not integrating with gradebook
+   * @return number of attempts/submissions that could not be processed due to error
+   */
+  public int autoSubmitAssessments(Long publishedAssessmentId, Map toGradebookPublishedAssessmentSiteIdMap);
   
   public ItemGradingAttachment createItemGradingtAttachment(ItemGradingData itemGrading, String resourceId, String filename, String protocol);
   
@@ -287,4 +307,24 @@ public interface AssessmentGradingFacadeQueriesAPI
   
   public List getUnSubmittedAssessmentGradingDataList(Long publishedAssessmentId, String agentIdString);
 
+  /**
+   * Find the attempts at timed assessments that have been started since a given time and not yet submitted for grade.
+   * The timed assessment queue uses this at startup to take over the deadlines of attempts begun on other (or earlier) app servers.
+   */
+  public List<AssessmentGradingData> getUnSubmittedTimedAssessmentGradingList(Date attemptedSince);
+
+  /**
+   * Atomically mark an attempt submitted for grade, only if it is not already. Whoever gets true back owns the
+   * rest of the submission (grading, gradebook, notifications), so a timed attempt is only ever submitted once
+   * however many servers have it queued.
+   * @return true if this call marked the attempt submitted, false if it already was
+   */
+  public boolean claimUnSubmittedAssessmentGrading(Long assessmentGradingId, Date submittedDate);
+
+  /**
+   * Undo {@link #claimUnSubmittedAssessmentGrading(Long, Date)} when the submission could not be completed,
+   * putting back the status and submitted date the attempt had before, so the next run of the queue retries it.
+   */
+  public void releaseAssessmentGradingClaim(Long assessmentGradingId, Integer status, Date submittedDate);
+
 }
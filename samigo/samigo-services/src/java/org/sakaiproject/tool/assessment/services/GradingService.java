@@ -35,6 +35,7 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
@@ -44,6 +45,10 @@ import java.util.Random;
 import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -54,6 +59,7 @@ import org.apache.commons.math3.exception.MathParseException;
 import org.apache.commons.math3.util.Precision;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.sakaiproject.component.cover.ServerConfigurationService;
 import org.sakaiproject.event.cover.EventTrackingService;
 import org.sakaiproject.samigo.util.SamigoConstants;
 import org.sakaiproject.service.gradebook.shared.GradebookExternalAssessmentService;
@@ -72,7 +78,10 @@ import org.sakaiproject.tool.assessment.data.ifc.assessment.ItemTextIfc;
 import org.sakaiproject.tool.assessment.data.ifc.assessment.PublishedAssessmentIfc;
 import org.sakaiproject.tool.assessment.data.ifc.grading.StudentGradingSummaryIfc;
 import org.sakaiproject.tool.assessment.data.ifc.shared.TypeIfc;
+import org.sakaiproject.thread_local.cover.ThreadLocalManager;
+import org.sakaiproject.tool.api.Session;
 import org.sakaiproject.tool.assessment.facade.AgentFacade;
+import org.sakaiproject.tool.assessment.facade.AssessmentGradingFacadeQueriesAPI;
 import org.sakaiproject.tool.assessment.facade.GradebookFacade;
 import org.sakaiproject.tool.assessment.facade.TypeFacade;
 import org.sakaiproject.tool.assessment.facade.TypeFacadeQueriesAPI;
@@ -80,7 +89,9 @@ import org.sakaiproject.tool.assessment.integration.context.IntegrationContextFa
 import org.sakaiproject.tool.assessment.integration.helper.ifc.GradebookServiceHelper;
 import org.sakaiproject.tool.assessment.services.assessment.PublishedAssessmentService;
 import org.sakaiproject.tool.assessment.util.SamigoExpressionError;
+import org.sakaiproject.tool.assessment.util.SamigoExpression;
 import org.sakaiproject.tool.assessment.util.SamigoExpressionParser;
+import org.sakaiproject.tool.cover.SessionManager;
 
 
 /**
@@ -121,6 +132,16 @@ public class GradingService
   final Pattern CALCQ_FORMULA_PATTERN = Pattern.compile(OPEN_BRACKET + OPEN_BRACKET + CALCQ_VAR_FORM_NAME_EXPRESSION + CLOSE_BRACKET + CLOSE_BRACKET);
   final Pattern CALCQ_FORMULA_SPLIT_PATTERN = Pattern.compile("(" + OPEN_BRACKET + OPEN_BRACKET + CALCQ_VAR_FORM_NAME + CLOSE_BRACKET + CLOSE_BRACKET + ")");
   final Pattern CALCQ_CALCULATION_PATTERN = Pattern.compile("\\[\\[([^\\[\\]]+?)\\]\\]?"); // non-greedy
+  final Pattern CALCQ_FORMULA_VARIABLE_PATTERN = Pattern.compile(OPEN_BRACKET + "([^\\{\\}]+)" + CLOSE_BRACKET);
+
+  // compiled calculated question formulas by formula text, see compileFormula()
+  private static final int COMPILED_FORMULAS_SIZE = 1000;
+  private static final Map<String, CompiledFormula> compiledFormulas = Collections.synchronizedMap(
+      new LinkedHashMap<String, CompiledFormula>(16, 0.75f, true) {
+          protected boolean removeEldestEntry(Map.Entry<String, CompiledFormula> eldest) {
+              return size() > COMPILED_FORMULAS_SIZE;
+          }
+      });
 
   private Logger log = LoggerFactory.getLogger(GradingService.class);
 
@@ -1215,8 +1236,9 @@ public class GradingService
       
 
       // save#2: now, we need to get the full set so we can calculate the total score accumulate for the
-      // whole assessment.
-      Set fullItemGradingSet = getItemGradingSet(data.getAssessmentGradingId().toString());
+      // whole assessment. On regrade data already holds the full set (see getAllAssessmentGradingData),
+      // which may not have been saved yet.
+      Set fullItemGradingSet = regrade ? itemGradingSet : getItemGradingSet(data.getAssessmentGradingId().toString());
       double totalAutoScore = getTotalAutoScore(fullItemGradingSet);
       data.setTotalAutoScore( Double.valueOf(totalAutoScore));
      
@@ -1260,6 +1282,34 @@ public class GradingService
     }
   }
 
+  /**
+   * Regrade all the submissions of a published assessment, e.g. after a republish that changed an answer key.
+   * The published item, item text and answer hashes are built once by the caller and shared by every
+   * submission; each submission is rescored in memory and all of them are then written in one batched
+   * update. The gradebook is not notified, the caller is expected to send all the scores at once afterwards.
+   *
+   * @param assessmentGradings the submissions, with their full item grading sets, as returned by getAllAssessmentGradingData
+   */
+  public void regradeAssessmentGradings(List<AssessmentGradingData> assessmentGradings, PublishedAssessmentIfc pub,
+		  HashMap publishedItemHash, HashMap publishedItemTextHash,
+		  HashMap publishedAnswerHash) throws GradebookServiceException, FinFormatException {
+	  if (assessmentGradings == null || assessmentGradings.isEmpty()) {
+		  return;
+	  }
+	  long start = System.currentTimeMillis();
+	  for (AssessmentGradingData data : assessmentGradings) {
+		  storeGrades(data, true, pub, publishedItemHash, publishedItemTextHash, publishedAnswerHash, false);
+	  }
+	  try {
+		  PersistenceService.getInstance().
+		  	getAssessmentGradingFacadeQueries().saveOrUpdateAssessmentGradings(assessmentGradings);
+	  } catch (Exception e) {
+		  log.error(e.getMessage(), e);
+		  throw new RuntimeException(e);
+	  }
+	  log.debug("regraded {} submissions in {} ms", assessmentGradings.size(), System.currentTimeMillis() - start);
+  }
+
   private double getTotalAutoScore(Set itemGradingSet){
       //log.debug("*** no. of itemGrading="+itemGradingSet.size());
     double totalAutoScore =0;
@@ -2878,8 +2928,7 @@ Here are the definition and 12 cases I came up with (lydia, 01/2006):
           String answerData = getAnswerData(longFormula); // returns just tolerance and precision
           int decimalPlaces = getAnswerDecimalPlaces(answerData);
           
-          String substitutedFormula = replaceMappedVariablesWithNumbers(formula,variables);
-          String formulaValue = processFormulaIntoValue(substitutedFormula, decimalPlaces);
+          String formulaValue = processFormulaIntoValue(formula, variables, decimalPlaces);
           values.put(i + 1, formulaValue + answerData); // later answerData will be used for scoring
       }
       return values;
@@ -2913,15 +2962,14 @@ Here are the definition and 12 cases I came up with (lydia, 01/2006):
           try {
               Map<Integer, String> evaluatedFormulas = calculateFormulaValues(variablesWithValues, item);
               answerList.putAll(evaluatedFormulas);
-              // replace the variables in the text with values
+              // replace the variables and calculations in the text with values
               String instructions = item.getInstruction();
-              instructions = replaceMappedVariablesWithNumbers(instructions, variablesWithValues);
-              // then replace the calculations with values (must happen AFTER the variable replacement)
               try {
-                  instructions = replaceCalculationsWithValues(instructions, 5); // what decimal precision should we use here?
+                  instructions = replaceCalculationsWithValues(instructions, variablesWithValues, 5); // what decimal precision should we use here?
                   // if could not process the calculation into a result then throws IllegalStateException which will be caught below and cause the numbers to regenerate
               } catch (SamigoExpressionError e1) {
                   log.warn("Samigo calculated item ("+item.getItemId()+") calculation invalid: "+e1.get());
+                  instructions = replaceMappedVariablesWithNumbers(instructions, variablesWithValues);
               }
               // only pull out the segments if the formulas worked
               instructionSegments = extractInstructionSegments(instructions);
@@ -3096,6 +3144,33 @@ Here are the definition and 12 cases I came up with (lydia, 01/2006):
       return expression;
   }
 
+  /**
+   * CALCULATED_QUESTION
+   * replaceCalculationsWithValues() substitutes the variables in a string, as replaceMappedVariablesWithNumbers()
+   * does, and the calculations with their values, as replaceCalculationsWithValues(String, int) does
+   * afterwards, but evaluates the calculations from their compiled formulas, see processFormulaIntoValue(String, Map, int).
+   * @param expression - the string which will be scanned for variables and calculations
+   * @param variables - the values of the variables
+   * @return the input string with variables and calculations replaced with number values.
+   * @throws IllegalStateException if the formula value cannot be calculated
+   * @throws SamigoExpressionError if the formula cannot be parsed
+   */
+  public String replaceCalculationsWithValues(String expression, Map<String, String> variables, int decimalPlaces) throws SamigoExpressionError {
+      if (StringUtils.isEmpty(expression)) {
+          return "";
+      }
+      String substituted = replaceMappedVariablesWithNumbers(expression, variables);
+      Matcher keyMatcher = CALCQ_CALCULATION_PATTERN.matcher(expression);
+      while (keyMatcher.find()) {
+          String formula = keyMatcher.group(1);
+          // a variable at either end of the calculation gets no multiplier, so substitutes the same on its own
+          String replace = CALCULATION_OPEN+replaceMappedVariablesWithNumbers(formula, variables)+CALCULATION_CLOSE;
+          String formulaValue = processFormulaIntoValue(formula, variables, decimalPlaces);
+          substituted = StringUtils.replace(substituted, replace, formulaValue);
+      }
+      return substituted;
+  }
+
   /**
    * CALCULATED_QUESTION
    * Process a single formula into a final string representing the calculated value of the formula
@@ -3127,6 +3202,128 @@ Here are the definition and 12 cases I came up with (lydia, 01/2006):
       return value;
   }
 
+  /**
+   * CALCULATED_QUESTION
+   * Process a single formula with variables (e.g. {a} * {b}) into a final string representing the calculated
+   * value of the formula for the given values of the variables. This gives the same value as
+   * replaceMappedVariablesWithNumbers() followed by processFormulaIntoValue(String, int), but the formula
+   * is only parsed the first time it is seen; after that it is evaluated from its compiled form.
+   * 
+   * @param formula the formula to process
+   * @param variables the values of the variables
+   * @param decimalPlaces number of decimals to include in the final output
+   * @return the value of the formula OR empty string if there is nothing to process
+   * @throws IllegalStateException if the formula value cannot be calculated (typically caused by 0 divisors and the like)
+   * @throws SamigoExpressionError if the formula cannot be parsed
+   */
+  public String processFormulaIntoValue(String formula, Map<String, String> variables, int decimalPlaces) throws SamigoExpressionError {
+      if (StringUtils.isEmpty(formula)) {
+          return "";
+      }
+      CompiledFormula compiled = compileFormula(formula);
+      if (compiled.expression == null) {
+          return processFormulaIntoValue(replaceMappedVariablesWithNumbers(formula, variables), decimalPlaces);
+      }
+      if (decimalPlaces < 0) {
+          decimalPlaces = 0;
+      }
+      double value = compiled.evaluate(variables);
+      // infinity and NaN cannot be processed correctly
+      if (Double.isInfinite(value)) {
+          throw new SamigoExpressionError(402, cleanFormula(replaceMappedVariablesWithNumbers(formula, variables)));
+      } else if (Double.isNaN(value)) {
+          throw new SamigoExpressionError(401, cleanFormula(replaceMappedVariablesWithNumbers(formula, variables)));
+      }
+      String numericString = toScientificNotation(Double.toString(value), decimalPlaces+1);
+      if (this.isAnswerValid(numericString)) {
+          return toScientificNotation(numericString, decimalPlaces);
+      } else {
+          throw new IllegalStateException("Invalid calculation formula ("+cleanFormula(replaceMappedVariablesWithNumbers(formula, variables))+") result ("+numericString+"), result could not be calculated");
+      }
+  }
+
+  /**
+   * CALCULATED_QUESTION
+   * Compiles a formula with variables, keeping it for the next time it is needed. Each variable is
+   * given a name the parser accepts, and "*" is written before and after it wherever
+   * replaceMappedVariablesWithNumbers() would write one, so the compiled formula works out the same.
+   * A formula that only parses once the numbers are written in (e.g. {a}e2) is kept without an expression,
+   * and has to be worked out that way.
+   * @param formula the formula with variables
+   * @return the compiled formula
+   */
+  private CompiledFormula compileFormula(String formula) {
+      CompiledFormula compiled = compiledFormulas.get(formula);
+      if (compiled == null) {
+          List<String> variables = new ArrayList<String>();
+          List<String> names = new ArrayList<String>();
+          StringBuilder expression = new StringBuilder();
+          Matcher matcher = CALCQ_FORMULA_VARIABLE_PATTERN.matcher(formula);
+          int end = 0;
+          while (matcher.find()) {
+              expression.append(formula, end, matcher.start());
+              end = matcher.end();
+
+              String variable = matcher.group(1);
+              int index = variables.indexOf(variable);
+              if (index < 0) {
+                  index = variables.size();
+                  variables.add(variable);
+                  names.add("__v" + index);
+              }
+              // the name ends with a digit, so a variable straight after this one is multiplied by it as well
+              if (expression.length() > 0 && (Character.isDigit(expression.charAt(expression.length() - 1)) || expression.charAt(expression.length() - 1) == ')')) {
+                  expression.append('*');
+              }
+              expression.append(names.get(index));
+              if (end < formula.length() && (Character.isDigit(formula.charAt(end)) || formula.charAt(end) == '(')) {
+                  expression.append('*');
+              }
+          }
+          expression.append(formula, end, formula.length());
+
+          SamigoExpression compiledExpression = null;
+          try {
+              SamigoExpressionParser parser = new SamigoExpressionParser();
+              compiledExpression = parser.compile(cleanFormula(expression.toString()), names);
+          } catch (SamigoExpressionError e) {
+              log.debug("Calculated question formula {} not compiled: {}", formula, e.get());
+          }
+          compiled = new CompiledFormula(variables, compiledExpression);
+          compiledFormulas.put(formula, compiled);
+      }
+      return compiled;
+  }
+
+  /**
+   * A formula compiled with the variables named in it
+   */
+  private static class CompiledFormula {
+      private final List<String> variables;
+      private final SamigoExpression expression;
+
+      CompiledFormula(List<String> variables, SamigoExpression expression) {
+          this.variables = variables;
+          this.expression = expression;
+      }
+
+      double evaluate(Map<String, String> values) throws SamigoExpressionError {
+          double[] args = new double[variables.size()];
+          for (int i = 0; i < args.length; i++) {
+              String value = values.get(variables.get(i));
+              if (value == null) {
+                  throw new SamigoExpressionError(103, variables.get(i));
+              }
+              try {
+                  args[i] = Double.parseDouble(value);
+              } catch (NumberFormatException e) {
+                  throw new SamigoExpressionError(500, "Invalid value " + value + " of variable " + variables.get(i));
+              }
+          }
+          return expression.evaluate(args);
+      }
+  }
+
   /**
    * Cleans up formula text so that whitespaces are normalized or removed
    * @param formula formula with variables or without
@@ -3339,10 +3536,52 @@ Here are the definition and 12 cases I came up with (lydia, 01/2006):
 	    return list;
   }
   
+  /**
+   * Autosubmit the attempts that are due, one published assessment at a time. With samigo.autoSubmit.threads
+   * above 1 the assessments are shared among that many worker threads, each in its own transaction.
+   * @return number of attempts/submissions that could not be processed due to error
+   */
   public int autoSubmitAssessments() {
+	  int threads = ServerConfigurationService.getInt("samigo.autoSubmit.threads", 4);
 	  try {
-		  return PersistenceService.getInstance().
-		  getAssessmentGradingFacadeQueries().autoSubmitAssessments();
+		  final AssessmentGradingFacadeQueriesAPI queries = PersistenceService.getInstance().getAssessmentGradingFacadeQueries();
+		  if (threads <= 1) {
+			  return queries.autoSubmitAssessments();
+		  }
+
+		  List<Long> publishedAssessmentIds = queries.getAutoSubmitPublishedAssessmentIds();
+		  if (publishedAssessmentIds.isEmpty()) {
+			  return 0;
+		  }
+		  final Map toGradebookPublishedAssessmentSiteIdMap = (IntegrationContextFactory.getInstance() != null)
+				  ? new PublishedAssessmentService().getToGradebookPublishedAssessmentSiteIdMap() : null;
+
+		  // the workers act as the user running the job
+		  final Session session = SessionManager.getCurrentSession();
+		  ExecutorService workers = Executors.newFixedThreadPool(Math.min(threads, publishedAssessmentIds.size()));
+		  List<Future<Integer>> results = new ArrayList<>();
+		  for (final Long publishedAssessmentId : publishedAssessmentIds) {
+			  results.add(workers.submit(new Callable<Integer>() {
+				  public Integer call() {
+					  SessionManager.setCurrentSession(session);
+					  try {
+						  return queries.autoSubmitAssessments(publishedAssessmentId, toGradebookPublishedAssessmentSiteIdMap);
+					  } catch (Exception e) {
+						  log.error("Error while auto submitting published assessment id: " + publishedAssessmentId, e);
+						  return 1;
+					  } finally {
+						  ThreadLocalManager.clear();
+					  }
+				  }
+			  }));
+		  }
+		  workers.shutdown();
+
+		  int failures = 0;
+		  for (Future<Integer> result : results) {
+			  failures += result.get();
+		  }
+		  return failures;
 	  } catch (Exception e) {
 		  log.error(e.getMessage(), e);
 		  return 1;
@@ -3502,6 +3741,21 @@ Here are the definition and 12 cases I came up with (lydia, 01/2006):
 	  return PersistenceService.getInstance().getAssessmentGradingFacadeQueries().
 			  getUnSubmittedAssessmentGradingDataList(publishedAssessmentId, agentIdString);
   }
+
+  public List<AssessmentGradingData> getUnSubmittedTimedAssessmentGradingList(Date attemptedSince)  {
+	  return PersistenceService.getInstance().getAssessmentGradingFacadeQueries().
+			  getUnSubmittedTimedAssessmentGradingList(attemptedSince);
+  }
+
+  public boolean claimUnSubmittedAssessmentGrading(Long assessmentGradingId, Date submittedDate)  {
+	  return PersistenceService.getInstance().getAssessmentGradingFacadeQueries().
+			  claimUnSubmittedAssessmentGrading(assessmentGradingId, submittedDate);
+  }
+
+  public void releaseAssessmentGradingClaim(Long assessmentGradingId, Integer status, Date submittedDate)  {
+	  PersistenceService.getInstance().getAssessmentGradingFacadeQueries().
+			  releaseAssessmentGradingClaim(assessmentGradingId, status, submittedDate);
+  }
 }
 
 /**
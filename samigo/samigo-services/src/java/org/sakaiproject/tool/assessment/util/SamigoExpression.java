@@ -0,0 +1,241 @@
+/**********************************************************************************
+ * $URL$
+ * $Id$
+ ***********************************************************************************
+ *
+ * Copyright (c) 2016 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.opensource.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **********************************************************************************/
+
+package org.sakaiproject.tool.assessment.util;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.sakaiproject.tool.assessment.util.SamigoExpressionParser.FUNCTION;
+import org.sakaiproject.tool.assessment.util.SamigoExpressionParser.OPERATOR;
+
+/**
+ * An expression compiled by {@link SamigoExpressionParser#compile(String, List)}, which can be
+ * evaluated any number of times, for different values of its variables, without parsing it again.
+ * Instances are immutable and so can be shared between threads.
+ */
+public class SamigoExpression
+{
+  private final Node root;
+  private final List<String> variables;
+
+  SamigoExpression(final Node root, final List<String> variables)
+  {
+    this.root = root;
+    this.variables = Collections.unmodifiableList(variables);
+  }
+
+  /**
+   * @return the names of the variables, in the order their values are given to {@link #evaluate(double...)}
+   */
+  public List<String> getVariables()
+  {
+    return variables;
+  }
+
+  /**
+   * evaluates the expression
+   * @param values the values of the variables, in the order of {@link #getVariables()}
+   * On error, an error of type Error is thrown
+   */
+  public double evaluate(final double... values) throws SamigoExpressionError
+  {
+    if (values.length < variables.size())
+    {
+      throw new SamigoExpressionError(103, variables.get(values.length));
+    }
+    return root.eval(values);
+  }
+
+
+  /**
+   * evaluate an operator for given values
+   */
+  static double eval_operator(final OPERATOR op_id, final double lhs, final double rhs) throws SamigoExpressionError
+  {
+    switch (op_id)
+    {
+      // level 2
+      case AND:           return (int)lhs & (int)rhs;
+      case OR:            return (int)lhs | (int)rhs;
+      case BITSHIFTLEFT:  return (int)lhs << (int)rhs;
+      case BITSHIFTRIGHT: return (int)lhs >> (int)rhs;
+
+      // level 3
+      case EQUAL:     return (lhs == rhs) ? 1.0 : 0.0;
+      case UNEQUAL:   return (lhs != rhs) ? 1.0 : 0.0;
+      case SMALLER:   return (lhs < rhs)  ? 1.0 : 0.0;
+      case LARGER:    return (lhs > rhs)  ? 1.0 : 0.0;
+      case SMALLEREQ: return (lhs <= rhs) ? 1.0 : 0.0;
+      case LARGEREQ:  return (lhs >= rhs) ? 1.0 : 0.0;
+
+      // level 4
+      case PLUS:      return lhs + rhs;
+      case MINUS:     return lhs - rhs;
+
+      // level 5
+      case MULTIPLY:  return lhs * rhs;
+      case DIVIDE:    return lhs / rhs;
+      case MODULUS:   return SamigoExpressionFunctions.modulus(lhs, rhs);
+      case XOR:       return (int)lhs ^ (int)rhs;
+
+      // level 6
+      case POW:       return Math.pow(lhs, rhs);
+
+      // level 7
+      case FACTORIAL: return SamigoExpressionFunctions.factorial(lhs);
+    }
+
+    throw new SamigoExpressionError(104);
+  }
+
+
+  /**
+   * evaluate a function
+   */
+  static double eval_function(final FUNCTION fn_id, final double value) throws SamigoExpressionError
+  {
+    switch (fn_id)
+    {
+      // arithmetic
+      case ABS:   return Math.abs(value);
+      case EXP:   return Math.exp(value);
+      case SIGN:  return SamigoExpressionFunctions.sign(value);
+      case SQRT:  return Math.sqrt(value);
+      case LOG:   return Math.log(value);
+      case LOG10: return Math.log10(value);
+
+      // trigonometric
+      case SIN:   return Math.sin(value);
+      case COS:   return Math.cos(value);
+      case TAN:   return Math.tan(value);
+      case ASIN:  return Math.asin(value);
+      case ACOS:  return Math.acos(value);
+      case ATAN:  return Math.atan(value);
+
+      // probability
+      case FACTORIAL: return SamigoExpressionFunctions.factorial(value);
+    }
+
+    throw new SamigoExpressionError(102, fn_id.name());
+  }
+
+
+/// nodes of the expression tree
+  abstract static class Node
+  {
+    abstract double eval(double[] values) throws SamigoExpressionError;
+  }
+
+  static class Constant extends Node
+  {
+    private final double value;
+
+    Constant(final double value)
+    {
+      this.value = value;
+    }
+
+    double eval(final double[] values)
+    {
+      return value;
+    }
+  }
+
+  static class Variable extends Node
+  {
+    private final int index;
+
+    Variable(final int index)
+    {
+      this.index = index;
+    }
+
+    double eval(final double[] values)
+    {
+      return values[index];
+    }
+  }
+
+  static class Negate extends Node
+  {
+    private final Node operand;
+    private final boolean rejectNegative;
+
+    /**
+     * @param rejectNegative true if the operand is a variable written straight after the minus
+     */
+    Negate(final Node operand, final boolean rejectNegative)
+    {
+      this.operand = operand;
+      this.rejectNegative = rejectNegative;
+    }
+
+    double eval(final double[] values) throws SamigoExpressionError
+    {
+      double value = operand.eval(values);
+      // variables stand for the numbers that used to be written into the expression text,
+      // where a negative number straight after a unary minus ("--3") is a syntax error
+      if (rejectNegative && Math.copySign(1.0, value) < 0)
+      {
+        throw new SamigoExpressionError(7);
+      }
+      return -value;
+    }
+  }
+
+  static class Operator extends Node
+  {
+    private final OPERATOR op_id;
+    private final Node lhs;
+    private final Node rhs;
+
+    Operator(final OPERATOR op_id, final Node lhs, final Node rhs)
+    {
+      this.op_id = op_id;
+      this.lhs = lhs;
+      this.rhs = rhs;
+    }
+
+    double eval(final double[] values) throws SamigoExpressionError
+    {
+      double left = lhs.eval(values);
+      return eval_operator(op_id, left, rhs.eval(values));
+    }
+  }
+
+  static class Function extends Node
+  {
+    private final FUNCTION fn_id;
+    private final Node argument;
+
+    Function(final FUNCTION fn_id, final Node argument)
+    {
+      this.fn_id = fn_id;
+      this.argument = argument;
+    }
+
+    double eval(final double[] values) throws SamigoExpressionError
+    {
+      return eval_function(fn_id, argument.eval(values));
+    }
+  }
+}
@@ -65,34 +65,14 @@ public class SamigoExpressionParser
     try
     {
       // initialize all variables
-      expr = new_expr;     // copy the given expression to expr
       ans = 0.0;
 
-      // get the first character in expr
-      getFirstChar();
+      SamigoExpression expression = compile(new_expr, Collections.<String>emptyList());
+      ans = expression.evaluate();
 
-      getToken();
-      
-      // check whether the given expression is empty
-      if (token_type == TOKENTYPE.DELIMETER && expr_c == '\0')
+      if (assign_name != null)
       {
-          throw new SamigoExpressionError(row(), col(), 4);
-      }
-
-      ans = parse_level1();
-
-      // check for garbage at the end of the expression
-      if (token_type != TOKENTYPE.DELIMETER || token.length() > 0)
-      {
-        if (token_type == TOKENTYPE.DELIMETER)
-        {
-          // user entered a not existing operator like "//"
-          throw new SamigoExpressionError(row(), col(), 101, token);
-        }
-        else
-        {
-          throw new SamigoExpressionError(row(), col(), 5, token);
-        }
+        user_var.put(assign_name.toUpperCase(), new Double(ans));
       }
 
       // infinity and NaN cannot be processed correctly
@@ -116,6 +96,55 @@ public class SamigoExpressionParser
     return ans_str;
   }
 
+  /**
+   * parses the given expression, without evaluating it, so it can be evaluated
+   * again and again for different values of the given variables
+   * @param new_expr the expression
+   * @param variables the names of the variables the expression may use, besides
+   * "pi", "e" and the variables defined in this parser
+   * On error, an error of type Error is thrown
+   */
+  public SamigoExpression compile(final String new_expr, final List<String> variables) throws SamigoExpressionError
+  {
+    // initialize all variables
+    expr = new_expr;     // copy the given expression to expr
+    assign_name = null;
+    expr_var = new ArrayList<String>();
+    for (String variable : variables)
+    {
+      expr_var.add(variable.toUpperCase());
+    }
+
+    // get the first character in expr
+    getFirstChar();
+
+    getToken();
+
+    // check whether the given expression is empty
+    if (token_type == TOKENTYPE.DELIMETER && expr_c == '\0')
+    {
+        throw new SamigoExpressionError(row(), col(), 4);
+    }
+
+    SamigoExpression.Node root = parse_level1();
+
+    // check for garbage at the end of the expression
+    if (token_type != TOKENTYPE.DELIMETER || token.length() > 0)
+    {
+      if (token_type == TOKENTYPE.DELIMETER)
+      {
+        // user entered a not existing operator like "//"
+        throw new SamigoExpressionError(row(), col(), 101, token);
+      }
+      else
+      {
+        throw new SamigoExpressionError(row(), col(), 5, token);
+      }
+    }
+
+    return new SamigoExpression(root, new ArrayList<String>(variables));
+  }
+
 
   /**
    * checks if the given char c is a minus
@@ -356,7 +385,7 @@ public class SamigoExpressionParser
   /**
    * assignment of variable or function
    */
-  double parse_level1() throws SamigoExpressionError
+  SamigoExpression.Node parse_level1() throws SamigoExpressionError
   {
     if (token_type == TOKENTYPE.VARIABLE)
     {
@@ -375,14 +404,14 @@ public class SamigoExpressionParser
         getToken();
         
         // assignment
-        double ans;
+        SamigoExpression.Node ans;
         getToken();
         ans = parse_level2();
         
         // check whether the token is a legal name
         if (isLegalVariableName(var_name))
         {
-          user_var.put(var_name.toUpperCase(), new Double(ans));
+          assign_name = var_name;
         }
         else
         {
@@ -399,10 +428,10 @@ public class SamigoExpressionParser
   /**
    * conditional operators and bitshift
    */
-  double parse_level2() throws SamigoExpressionError
+  SamigoExpression.Node parse_level2() throws SamigoExpressionError
   {
     OPERATOR op_id;
-    double ans;
+    SamigoExpression.Node ans;
     ans = parse_level3();
 
     op_id = get_operator_id(token);
@@ -412,7 +441,7 @@ public class SamigoExpressionParser
            op_id == OPERATOR.BITSHIFTRIGHT)
     {
       getToken();
-      ans = eval_operator(op_id, ans, parse_level3());
+      ans = new SamigoExpression.Operator(op_id, ans, parse_level3());
       op_id = get_operator_id(token);
     }
 
@@ -422,10 +451,10 @@ public class SamigoExpressionParser
   /**
    * conditional operators
    */
-  double parse_level3() throws SamigoExpressionError
+  SamigoExpression.Node parse_level3() throws SamigoExpressionError
   {
     OPERATOR op_id;
-    double ans;
+    SamigoExpression.Node ans;
     ans = parse_level4();
 
     op_id = get_operator_id(token);
@@ -437,7 +466,7 @@ public class SamigoExpressionParser
            op_id == OPERATOR.LARGEREQ)
     {
       getToken();
-      ans = eval_operator(op_id, ans, parse_level4());
+      ans = new SamigoExpression.Operator(op_id, ans, parse_level4());
       op_id = get_operator_id(token);
     }
 
@@ -447,10 +476,10 @@ public class SamigoExpressionParser
   /**
    * add or subtract
    */
-  double parse_level4() throws SamigoExpressionError
+  SamigoExpression.Node parse_level4() throws SamigoExpressionError
   {
     OPERATOR op_id;
-    double ans;
+    SamigoExpression.Node ans;
     ans = parse_level5();
 
     op_id = get_operator_id(token);
@@ -458,7 +487,7 @@ public class SamigoExpressionParser
            op_id == OPERATOR.MINUS)
     {
       getToken();
-      ans = eval_operator(op_id, ans, parse_level5());
+      ans = new SamigoExpression.Operator(op_id, ans, parse_level5());
       op_id = get_operator_id(token);
     }
 
@@ -469,10 +498,10 @@ public class SamigoExpressionParser
   /**
    * multiply, divide, modulus, xor
    */
-  double parse_level5() throws SamigoExpressionError
+  SamigoExpression.Node parse_level5() throws SamigoExpressionError
   {
     OPERATOR op_id;
-    double ans;
+    SamigoExpression.Node ans;
     ans = parse_level6();
 
     op_id = get_operator_id(token);
@@ -482,7 +511,7 @@ public class SamigoExpressionParser
            op_id == OPERATOR.XOR)
     {
       getToken();
-      ans = eval_operator(op_id, ans, parse_level6());
+      ans = new SamigoExpression.Operator(op_id, ans, parse_level6());
       op_id = get_operator_id(token);
     }
 
@@ -493,17 +522,17 @@ public class SamigoExpressionParser
   /**
    * power
    */
-  double parse_level6() throws SamigoExpressionError
+  SamigoExpression.Node parse_level6() throws SamigoExpressionError
   {
     OPERATOR op_id;
-    double ans;
+    SamigoExpression.Node ans;
     ans = parse_level7();
 
     op_id = get_operator_id(token);
     while (op_id == OPERATOR.POW)
     {
       getToken();
-      ans = eval_operator(op_id, ans, parse_level7());
+      ans = new SamigoExpression.Operator(op_id, ans, parse_level7());
       op_id = get_operator_id(token);
     }
 
@@ -513,10 +542,10 @@ public class SamigoExpressionParser
   /**
    * Factorial
    */
-  double parse_level7() throws SamigoExpressionError
+  SamigoExpression.Node parse_level7() throws SamigoExpressionError
   {
     OPERATOR op_id;
-    double ans;
+    SamigoExpression.Node ans;
     ans = parse_level8();
 
     op_id = get_operator_id(token);
@@ -525,7 +554,7 @@ public class SamigoExpressionParser
       getToken();
       // factorial does not need a value right from the
       // operator, so zero is filled in.
-      ans = eval_operator(op_id, ans, 0.0);
+      ans = new SamigoExpression.Operator(op_id, ans, new SamigoExpression.Constant(0.0));
       op_id = get_operator_id(token);
     }
 
@@ -535,16 +564,19 @@ public class SamigoExpressionParser
   /**
    * Unary minus
    */
-  double parse_level8() throws SamigoExpressionError
+  SamigoExpression.Node parse_level8() throws SamigoExpressionError
   {
-    double ans;
+    SamigoExpression.Node ans;
 
     OPERATOR op_id = get_operator_id(token);
     if (op_id == OPERATOR.MINUS)
     {
       getToken();
+      // only a variable written straight after the minus stands where "--3" used to be written;
+      // inside parentheses or a function its value is fine either way
+      boolean bareVariable = (token_type == TOKENTYPE.VARIABLE);
       ans = parse_level9();
-      ans = -ans;
+      ans = new SamigoExpression.Negate(ans, bareVariable && ans instanceof SamigoExpression.Variable);
     }
     else
     {
@@ -558,16 +590,17 @@ public class SamigoExpressionParser
   /**
    * functions
    */
-  double parse_level9() throws SamigoExpressionError
+  SamigoExpression.Node parse_level9() throws SamigoExpressionError
   {
     String fn_name;
-    double ans;
+    SamigoExpression.Node ans;
 
     if (token_type == TOKENTYPE.FUNCTION)
     {
       fn_name = token;
       getToken();
-      ans = eval_function(fn_name, parse_level10());
+      ans = parse_level10();
+      ans = new SamigoExpression.Function(get_function_id(fn_name), ans);
     }
     else
     {
@@ -581,7 +614,7 @@ public class SamigoExpressionParser
   /**
    * parenthesized expression or value
    */
-  double parse_level10() throws SamigoExpressionError
+  SamigoExpression.Node parse_level10() throws SamigoExpressionError
   {
     // check if it is a parenthesized expression
     if (token_type == TOKENTYPE.DELIMETER)
@@ -589,7 +622,7 @@ public class SamigoExpressionParser
       if (token.equals("("))
       {
         getToken();
-        double ans = parse_level2();
+        SamigoExpression.Node ans = parse_level2();
         if (token_type != TOKENTYPE.DELIMETER || !token.equals(")"))
         {
           throw new SamigoExpressionError(row(), col(), 3);
@@ -604,15 +637,15 @@ public class SamigoExpressionParser
   }
 
 
-  double parse_number() throws SamigoExpressionError
+  SamigoExpression.Node parse_number() throws SamigoExpressionError
   {
-    double ans = 0.0;
+    SamigoExpression.Node ans;
 
     switch (token_type)
     {
       case NUMBER:
         // this is a number
-        ans = Double.parseDouble(token);
+        ans = new SamigoExpression.Constant(Double.parseDouble(token));
         getToken();
         break;
 
@@ -679,74 +712,33 @@ public class SamigoExpressionParser
 
 
   /**
-   * evaluate an operator for given valuess
-   */
-  double eval_operator(final OPERATOR op_id, final double lhs, final double rhs) throws SamigoExpressionError
-  {
-  switch (op_id)
-    {
-      // level 2
-      case AND:           return (int)lhs & (int)rhs;
-      case OR:            return (int)lhs | (int)rhs;
-      case BITSHIFTLEFT:  return (int)lhs << (int)rhs;
-      case BITSHIFTRIGHT: return (int)lhs >> (int)rhs;
-
-      // level 3
-      case EQUAL:     return (lhs == rhs) ? 1.0 : 0.0;
-      case UNEQUAL:   return (lhs != rhs) ? 1.0 : 0.0;
-      case SMALLER:   return (lhs < rhs)  ? 1.0 : 0.0;
-      case LARGER:    return (lhs > rhs)  ? 1.0 : 0.0;
-      case SMALLEREQ: return (lhs <= rhs) ? 1.0 : 0.0;
-      case LARGEREQ:  return (lhs >= rhs) ? 1.0 : 0.0;
-
-      // level 4
-      case PLUS:      return lhs + rhs;
-      case MINUS:     return lhs - rhs;
-
-      // level 5
-      case MULTIPLY:  return lhs * rhs;
-      case DIVIDE:    return lhs / rhs;
-      case MODULUS:   return SamigoExpressionFunctions.modulus(lhs, rhs);
-      case XOR:       return (int)lhs ^ (int)rhs;
-
-      // level 6
-      case POW:       return Math.pow(lhs, rhs);
-
-      // level 7
-      case FACTORIAL: return SamigoExpressionFunctions.factorial(lhs);
-    }
-
-    throw new SamigoExpressionError(row(), col(), 104);
-  }
-
-
-  /**
-   * evaluate a function
+   * returns the id of the given function
+   * On error, an error of type Error is thrown
    */
-  double eval_function(final String fn_name, final double value) throws SamigoExpressionError
+  FUNCTION get_function_id(final String fn_name) throws SamigoExpressionError
   {
     // first make the function name upper case
     String fnUpper = fn_name.toUpperCase();
 
     // arithmetic
-    if (fnUpper.equals("ABS"))   {return Math.abs(value);}
-    if (fnUpper.equals("EXP"))   {return Math.exp(value);}
-    if (fnUpper.equals("SIGN"))  {return SamigoExpressionFunctions.sign(value);}
-    if (fnUpper.equals("SQRT"))  {return Math.sqrt(value);}
+    if (fnUpper.equals("ABS"))   {return FUNCTION.ABS;}
+    if (fnUpper.equals("EXP"))   {return FUNCTION.EXP;}
+    if (fnUpper.equals("SIGN"))  {return FUNCTION.SIGN;}
+    if (fnUpper.equals("SQRT"))  {return FUNCTION.SQRT;}
     if (fnUpper.equals("LOG") 
-        || fnUpper.equals("LN")) {return Math.log(value);}
-    if (fnUpper.equals("LOG10")) {return Math.log10(value);}
+        || fnUpper.equals("LN")) {return FUNCTION.LOG;}
+    if (fnUpper.equals("LOG10")) {return FUNCTION.LOG10;}
 
     // trigonometric
-    if (fnUpper.equals("SIN"))   {return Math.sin(value);}
-    if (fnUpper.equals("COS"))   {return Math.cos(value);}
-    if (fnUpper.equals("TAN"))   {return Math.tan(value);}
-    if (fnUpper.equals("ASIN"))  {return Math.asin(value);}
-    if (fnUpper.equals("ACOS"))  {return Math.acos(value);}
-    if (fnUpper.equals("ATAN"))  {return Math.atan(value);}
+    if (fnUpper.equals("SIN"))   {return FUNCTION.SIN;}
+    if (fnUpper.equals("COS"))   {return FUNCTION.COS;}
+    if (fnUpper.equals("TAN"))   {return FUNCTION.TAN;}
+    if (fnUpper.equals("ASIN"))  {return FUNCTION.ASIN;}
+    if (fnUpper.equals("ACOS"))  {return FUNCTION.ACOS;}
+    if (fnUpper.equals("ATAN"))  {return FUNCTION.ATAN;}
 
     // probability
-    if (fnUpper.equals("FACTORIAL")) {return SamigoExpressionFunctions.factorial(value);}
+    if (fnUpper.equals("FACTORIAL")) {return FUNCTION.FACTORIAL;}
 
     // unknown function
     throw new SamigoExpressionError(row(), col(), 102, fn_name);
@@ -756,20 +748,27 @@ public class SamigoExpressionParser
   /**
    * evaluate a variable
    */
-  double eval_variable(final String var_name) throws SamigoExpressionError
+  SamigoExpression.Node eval_variable(final String var_name) throws SamigoExpressionError
   {
     // first make the variable name uppercase
     String varUpper = var_name.toUpperCase();
 
     // check for built-in variables
-    if (varUpper.equals("E"))  {return Math.E;}
-    if (varUpper.equals("PI")) {return Math.PI;}
+    if (varUpper.equals("E"))  {return new SamigoExpression.Constant(Math.E);}
+    if (varUpper.equals("PI")) {return new SamigoExpression.Constant(Math.PI);}
+
+    // check for the variables of the expression, given values when it is evaluated
+    int index = expr_var.indexOf(varUpper);
+    if (index > -1)
+    {
+      return new SamigoExpression.Variable(index);
+    }
 
     // check for user defined variables
     if (user_var.containsKey(varUpper))
     {
       double ans = user_var.get(varUpper).doubleValue();
-      return ans;
+      return new SamigoExpression.Constant(ans);
     }
 
     // unknown variable
@@ -800,7 +799,7 @@ public class SamigoExpressionParser
 /// private enumerations
   private enum TOKENTYPE {NOTHING, DELIMETER, NUMBER, VARIABLE, FUNCTION, UNKNOWN}
 
-  private enum OPERATOR {UNKNOWN, 
+  enum OPERATOR {UNKNOWN, 
                  AND, OR, BITSHIFTLEFT, BITSHIFTRIGHT,         // level 2
                  EQUAL, UNEQUAL, SMALLER, LARGER, SMALLEREQ, LARGEREQ, // level 3
                  PLUS, MINUS,                     // level 4
@@ -808,6 +807,10 @@ public class SamigoExpressionParser
                  POW,                             // level 6
                  FACTORIAL}                       // level 7
 
+  enum FUNCTION {ABS, EXP, SIGN, SQRT, LOG, LOG10,  // arithmetic
+                 SIN, COS, TAN, ASIN, ACOS, ATAN, // trigonometric
+                 FACTORIAL}                       // probability
+
 /// private data
   private String expr;          /// holds the expression
   private int expr_pos;         /// points to the current position in expr
@@ -820,6 +823,9 @@ public class SamigoExpressionParser
   private String ans_str;       /// holds a string containing the result
                                 /// of the expression
 
+  private String assign_name;   /// name of the variable assigned by the expression, if any
+  private List<String> expr_var = new ArrayList<String>(); /// variables of the expression being compiled
+
   /// list with variables defined by user
   private Map<String, Double> user_var = new HashMap<String, Double>(); 
 }
\ No newline at end of file
@@ -0,0 +1,185 @@
+/**********************************************************************************
+ * $URL$
+ * $Id$
+ ***********************************************************************************
+ *
+ * Copyright (c) 2016 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.opensource.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **********************************************************************************/
+
+package org.sakaiproject.tool.assessment.util;
+
+import java.util.Arrays;
+
+/**
+ * Summary statistics of a set of scores, as shown on the assessment and question statistics pages.
+ * The scores are sorted once, then the total, mean, variance, mode and histogram are all worked out
+ * in a single pass over the primitive array; median and quartiles are read straight off the sorted scores.
+ */
+public class ScoreStatistics {
+
+	private final double[] scores;
+	private final double total;
+	private final double variance;
+	private final String mode;
+
+	/**
+	 * @param scores the scores, which are sorted in place; must not be empty
+	 */
+	public ScoreStatistics(double[] scores) {
+		if (scores.length == 0) {
+			throw new IllegalArgumentException("no scores");
+		}
+		Arrays.sort(scores);
+		this.scores = scores;
+
+		double sum = 0;
+		// Welford's running mean and sum of squared differences from it
+		double runningMean = 0;
+		double m2 = 0;
+		StringBuilder modes = new StringBuilder().append(scores[0]);
+		int maxCount = 1;
+		int currentCount = 1;
+		for (int i = 0; i < scores.length; i++) {
+			double score = scores[i];
+			sum += score;
+			double delta = score - runningMean;
+			runningMean += delta / (i + 1);
+			m2 += delta * (score - runningMean);
+
+			if (i == 0) {
+				continue;
+			}
+			if (Double.compare(score, scores[i - 1]) != 0) {
+				currentCount = 1;
+			} else {
+				currentCount++;
+			}
+			if (currentCount == maxCount) {
+				modes.append(", ").append(score);
+			} else if (currentCount > maxCount) {
+				modes.setLength(0);
+				modes.append(score);
+				maxCount = currentCount;
+			}
+		}
+		this.total = sum;
+		this.variance = m2 / (scores.length - 1);
+		this.mode = modes.toString();
+	}
+
+	public int getCount() {
+		return scores.length;
+	}
+
+	public double getMin() {
+		return scores[0];
+	}
+
+	public double getMax() {
+		return scores[scores.length - 1];
+	}
+
+	public double getTotal() {
+		return total;
+	}
+
+	public double getMean() {
+		return total / scores.length;
+	}
+
+	public double getMedian() {
+		int n = scores.length;
+		if (n % 2 == 0) {
+			return (scores[n / 2] + scores[n / 2 - 1]) / 2;
+		}
+		return scores[(n - 1) / 2];
+	}
+
+	/**
+	 * @return the most frequent scores, in order, separated by ", "
+	 */
+	public String getMode() {
+		return mode;
+	}
+
+	/**
+	 * @return the sample standard deviation (NaN for a single score)
+	 */
+	public double getStandardDeviation() {
+		return Math.sqrt(variance);
+	}
+
+	/**
+	 * @param r the quartile rank, e.g. 0.25
+	 * @return the score at that rank, interpolating between neighbours
+	 */
+	public double getQuartile(double r) {
+		int k = (int) (Math.floor((r * (scores.length - 1)) + 1));
+		double f = (r * (scores.length - 1)) - Math.floor(r * (scores.length - 1));
+
+		// special handling if insufficient data to calculate
+		if (k < 2) {
+			return scores[0];
+		}
+		return scores[k - 1] + (f * (scores[k] - scores[k - 1]));
+	}
+
+	/**
+	 * The histogram interval: 1 for a narrow spread of scores, otherwise a tenth of the spread rounded up (SAM-2409).
+	 */
+	public int getInterval() {
+		double min = getMin();
+		double max = getMax();
+		if ((max - min) < 10) {
+			return 1;
+		}
+		return (int) Math.ceil((Math.ceil(max) - Math.floor(min)) / 10);
+	}
+
+	/**
+	 * Count the scores in each histogram column. The first column takes the scores up to and including
+	 * floor(min) + interval, each later column those above its lower bound up to and including its upper bound.
+	 * @param interval the column width
+	 * @return the number of scores per column, always at least one column
+	 */
+	public int[] getHistogram(int interval) {
+		double min = Math.floor(getMin()); // SAM-2409
+		double max = Math.ceil(getMax()); // SAM-2409
+
+		int columns = (int) Math.ceil((max - min) / interval);
+		int[] counts = new int[Math.max(1, columns)];
+
+		for (int i = 0; i < scores.length; i++) {
+			double score = scores[i];
+			int j = (int) Math.ceil((score - min) / interval) - 1;
+			if (j < 0) {
+				j = 0;
+			}
+			if (j >= counts.length) {
+				j = counts.length - 1;
+			}
+			// correct for rounding at the column bounds
+			while (j > 0 && score <= min + j * interval) {
+				j--;
+			}
+			while (j < counts.length - 1 && score > min + (j + 1) * interval) {
+				j++;
+			}
+			counts[j]++;
+		}
+		return counts;
+	}
+}
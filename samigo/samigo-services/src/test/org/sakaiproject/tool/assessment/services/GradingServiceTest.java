@@ -472,6 +472,46 @@ public class GradingServiceTest {
 
     }
 
+    @Test
+    public void testCompiledFormulas() throws Exception {
+        String[] formulas = {"{A} + {B}", "({A}+{B})/({A}-{B})*100", "5{A}", "{A}{B}", "({A}+1){B}", "{A}(2)",
+                "2^{B}", "-{A}^2", "-({A})", "2*-({B}+0)", "{A} % 3", "sqrt({A})", "{A}e2"};
+        String[][] values = {{"1", "2"}, {"-3", "0.5"}, {"2.5", "-1"}, {"10", "10"}, {"1E+3", "-0.25"}};
+        for (String formula : formulas) {
+            for (final String[] value : values) {
+                Map<String, String> map = new HashMap<String, String>() {{
+                    put("A", value[0]);
+                    put("B", value[1]);
+                }};
+                Assert.assertEquals(formula + " " + map, evaluate(gradingService.replaceMappedVariablesWithNumbers(formula, map), null),
+                        evaluate(formula, map));
+                // compiled the first time, reused after
+                Assert.assertEquals(formula + " " + map, evaluate(formula, map), evaluate(formula, map));
+            }
+        }
+
+        Map<String, String> map = new HashMap<String, String>() {{
+            put("A", "1");
+            put("B", "2");
+        }};
+        String result = gradingService.replaceCalculationsWithValues("{A} and {B}, total=[[{A} + {B}]], twice=[[2*({A}+{B})]]", map, 2);
+        Assert.assertEquals("1 and 2, total=3, twice=6", result);
+    }
+
+    // the value of the formula, or the type of error it gives
+    private String evaluate(String formula, Map<String, String> variables) {
+        try {
+            if (variables == null) {
+                return gradingService.processFormulaIntoValue(formula, 3);
+            }
+            return gradingService.processFormulaIntoValue(formula, variables, 3);
+        } catch (SamigoExpressionError e) {
+            return "SamigoExpressionError";
+        } catch (IllegalStateException e) {
+            return "IllegalStateException";
+        }
+    }
+
     @Test
     public void testApplyPrecisionToNumberString() {
         String result;
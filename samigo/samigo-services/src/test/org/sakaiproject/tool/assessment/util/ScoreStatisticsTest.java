@@ -0,0 +1,71 @@
+/**********************************************************************************
+ * $URL$
+ * $Id$
+ ***********************************************************************************
+ *
+ * Copyright (c) 2016 The Apereo Foundation
+ *
+ * Licensed under the Educational Community License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.opensource.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ **********************************************************************************/
+
+package org.sakaiproject.tool.assessment.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ScoreStatisticsTest {
+
+    @Test
+    public void testSummary() {
+        ScoreStatistics stats = new ScoreStatistics(new double[] {6, 2, 4, 4, 3, 5, 5, 1});
+        Assert.assertEquals(8, stats.getCount());
+        Assert.assertEquals(1, stats.getMin(), 0);
+        Assert.assertEquals(6, stats.getMax(), 0);
+        Assert.assertEquals(30, stats.getTotal(), 0);
+        Assert.assertEquals(3.75, stats.getMean(), 0);
+        Assert.assertEquals(4, stats.getMedian(), 0);
+        Assert.assertEquals("4.0, 5.0", stats.getMode());
+        // sum of squared differences from the mean is 19.5
+        Assert.assertEquals(Math.sqrt(19.5 / 7), stats.getStandardDeviation(), 1e-12);
+    }
+
+    @Test
+    public void testQuartiles() {
+        ScoreStatistics stats = new ScoreStatistics(new double[] {1, 2, 3, 4, 5});
+        Assert.assertEquals(2, stats.getQuartile(0.25), 0);
+        Assert.assertEquals(3, stats.getQuartile(0.5), 0);
+        Assert.assertEquals(4, stats.getQuartile(0.75), 0);
+        Assert.assertEquals(1, new ScoreStatistics(new double[] {1, 9}).getQuartile(0.25), 0);
+    }
+
+    @Test
+    public void testHistogram() {
+        ScoreStatistics stats = new ScoreStatistics(new double[] {0, 10, 11, 20, 55.5, 100});
+        Assert.assertEquals(10, stats.getInterval());
+        // columns (0-10], (10-20], ... with the first also taking 0
+        Assert.assertArrayEquals(new int[] {2, 2, 0, 0, 0, 1, 0, 0, 0, 1}, stats.getHistogram(10));
+
+        ScoreStatistics narrow = new ScoreStatistics(new double[] {3.5, 4, 4.5});
+        Assert.assertEquals(1, narrow.getInterval());
+        Assert.assertArrayEquals(new int[] {2, 1}, narrow.getHistogram(1));
+
+        ScoreStatistics same = new ScoreStatistics(new double[] {7, 7});
+        Assert.assertArrayEquals(new int[] {2}, same.getHistogram(same.getInterval()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoScores() {
+        new ScoreStatistics(new double[0]);
+    }
+}
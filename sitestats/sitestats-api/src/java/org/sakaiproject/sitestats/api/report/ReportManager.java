@@ -18,6 +18,9 @@
  */
 package org.sakaiproject.sitestats.api.report;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
 import java.util.List;
 
 import org.sakaiproject.javax.PagingPosition;
@@ -131,4 +134,26 @@ public interface ReportManager {
 	 * @return The csv document
 	 */
 	public byte[] getReportAsPDF(Report report);
+	
+	/**
+	 * Writes an excel (xlsx) workbook representing the table, streaming rows to the output.
+	 * @param report The Report object to export.
+	 * @param sheetName The name of the workbook sheet.
+	 * @param out The stream to write the workbook to (not closed).
+	 */
+	public void writeReportAsExcel(Report report, String sheetName, OutputStream out) throws IOException;
+	
+	/**
+	 * Writes a CSV document representing the table, one line at a time.
+	 * @param report The Report object to export.
+	 * @param writer The writer to write the csv document to (not closed).
+	 */
+	public void writeReportAsCsv(Report report, Writer writer) throws IOException;
+	
+	/**
+	 * Writes a PDF representing the table.
+	 * @param report The Report object to export.
+	 * @param out The stream to write the PDF to (not closed).
+	 */
+	public void writeReportAsPDF(Report report, OutputStream out);
 }
@@ -83,6 +83,8 @@ import org.sakaiproject.component.api.ServerConfigurationService;
 import org.sakaiproject.db.api.SqlReader;
 import org.sakaiproject.db.api.SqlService;
 import org.sakaiproject.event.api.UsageSessionService;
+import org.sakaiproject.memory.api.Cache;
+import org.sakaiproject.memory.api.MemoryService;
 import org.sakaiproject.sitestats.api.ServerWideReportManager;
 import org.sakaiproject.sitestats.api.ServerWideStatsRecord;
 import org.sakaiproject.sitestats.api.StatsManager;
@@ -119,9 +121,15 @@ public class ServerWideReportManagerImpl implements ServerWideReportManager
 	@Setter
 	private ServerConfigurationService serverConfigurationService;
 
+	@Setter
+	private MemoryService memoryService;
+
 	private String dbVendor;
 	private String externalDbName;
 
+	/** Report rows, keyed by day and query, as they only change as each day is consolidated */
+	private Cache<String, List> reportCache;
+
 	public void init (){
 		//setup the vendor
 		dbVendor = StringUtils.lowerCase(serverConfigurationService.getString("vendor@org.sakaiproject.db.api.SqlService", null));
@@ -135,6 +143,7 @@ public class ServerWideReportManagerImpl implements ServerWideReportManager
 			log.info("ServerWideReportManagerImpl will query for Sitestats data in the main Sakai database");
 		}
 		
+		reportCache = memoryService.getCache(ServerWideReportManagerImpl.class.getName());
 	}
 
 	public void destroy (){}
@@ -158,7 +167,7 @@ public class ServerWideReportManagerImpl implements ServerWideReportManager
 				" where EVENT_ID='user.login'" +
 				" group by TO_DATE(TO_CHAR(ACTIVITY_DATE, 'YYYY-MM-\"01\"'), 'YYYY-MM-DD')");
 
-		List result = sqlService.dbRead (getSqlForVendor(mysql, oracle), null, new SqlReader () {
+		List result = readReport(getSqlForVendor(mysql, oracle), new SqlReader () {
 			public Object readSqlResultRecord (ResultSet result)
 			{
 				ServerWideStatsRecord info = new ServerWideStatsRecordImpl ();
@@ -196,7 +205,7 @@ public class ServerWideReportManagerImpl implements ServerWideReportManager
 				" from " + getExternalDbNameAsPrefix() + "SST_USERSTATS" +
 				" group by TO_DATE(TO_CHAR(LOGIN_DATE, 'YYYY-MM-\"01\"'),'YYYY-MM-DD')";
 			 	
-		List result = sqlService.dbRead (getSqlForVendor(mysql, oracle), null, new SqlReader () {
+		List result = readReport(getSqlForVendor(mysql, oracle), new SqlReader () {
 			public Object readSqlResultRecord (ResultSet result)
 			{
 				ServerWideStatsRecord info = new ServerWideStatsRecordImpl ();
@@ -237,7 +246,7 @@ public class ServerWideReportManagerImpl implements ServerWideReportManager
 				" where EVENT_ID='user.login'" +
 				" group by next_day(ACTIVITY_DATE - 7, 2)";
 		
-		List result = sqlService.dbRead (getSqlForVendor(mysql, oracle), null, new SqlReader () {
+		List result = readReport(getSqlForVendor(mysql, oracle), new SqlReader () {
 			public Object readSqlResultRecord (ResultSet result)
 			{
 				ServerWideStatsRecord info = new ServerWideStatsRecordImpl ();
@@ -275,7 +284,7 @@ public class ServerWideReportManagerImpl implements ServerWideReportManager
 				" from " + getExternalDbNameAsPrefix() + "SST_USERSTATS" +
 				" group by next_day(LOGIN_DATE - 7, 2)";
 		
-		List result = sqlService.dbRead (getSqlForVendor(mysql, oracle), null, new SqlReader () {
+		List result = readReport(getSqlForVendor(mysql, oracle), new SqlReader () {
 			public Object readSqlResultRecord (ResultSet result)
 			{
 				ServerWideStatsRecord info = new ServerWideStatsRecordImpl ();
@@ -317,7 +326,7 @@ public class ServerWideReportManagerImpl implements ServerWideReportManager
 				" and ACTIVITY_DATE > (SYSDATE - 90)" +
 				" group by trunc(ACTIVITY_DATE, 'DDD')";
 		
-		List result = sqlService.dbRead (getSqlForVendor(mysql, oracle), null, new SqlReader () {
+		List result = readReport(getSqlForVendor(mysql, oracle), new SqlReader () {
 			public Object readSqlResultRecord (ResultSet result)
 			{
 				ServerWideStatsRecord info = new ServerWideStatsRecordImpl ();
@@ -357,7 +366,7 @@ public class ServerWideReportManagerImpl implements ServerWideReportManager
 				" where LOGIN_DATE > (SYSDATE - 90)" +
 				" group by trunc(LOGIN_DATE, 'DDD')";
 		
-		List result = sqlService.dbRead (getSqlForVendor(mysql, oracle), null, new SqlReader () {
+		List result = readReport(getSqlForVendor(mysql, oracle), new SqlReader () {
 			public Object readSqlResultRecord (ResultSet result)
 			{
 				ServerWideStatsRecord info = new ServerWideStatsRecordImpl ();
@@ -422,7 +431,7 @@ public class ServerWideReportManagerImpl implements ServerWideReportManager
 		oracle = oracle + "group by " + oraclePeriod;
 		
 
-		List result = sqlService.dbRead (getSqlForVendor(mysql, oracle), null, new SqlReader () {
+		List result = readReport(getSqlForVendor(mysql, oracle), new SqlReader () {
 			public Object readSqlResultRecord (ResultSet result)
 			{
 				ServerWideStatsRecord info = new ServerWideStatsRecordImpl ();
@@ -488,7 +497,7 @@ public class ServerWideReportManagerImpl implements ServerWideReportManager
 		}
 		oracle = oracle + " group by " + oraclePeriod;
 
-		List result = sqlService.dbRead (getSqlForVendor(mysql, oracle), null, new SqlReader () {
+		List result = readReport(getSqlForVendor(mysql, oracle), new SqlReader () {
 			public Object readSqlResultRecord (ResultSet result)
 			{
 				ServerWideStatsRecord info = new ServerWideStatsRecordImpl ();
@@ -582,7 +591,7 @@ public class ServerWideReportManagerImpl implements ServerWideReportManager
 				"       group by next_day(LOGIN_DATE - 7, 2), user_id, login_count) s" +
 				" group by s.week_start";
 
-		List result = sqlService.dbRead (getSqlForVendor(mysql, oracle), null, new SqlReader () {
+		List result = readReport(getSqlForVendor(mysql, oracle), new SqlReader () {
 			public Object readSqlResultRecord (ResultSet result)
 			{
 				ServerWideStatsRecord info = new ServerWideStatsRecordImpl ();
@@ -1597,6 +1606,23 @@ public class ServerWideReportManagerImpl implements ServerWideReportManager
 		return Color.white;
 	}
 	
+	/**
+	 * Read the rows of a history report, running its query at most once a day. Only for the reports
+	 * over SST_SERVERSTATS and SST_USERSTATS which drop their last, incomplete period, so the rows
+	 * they show only change as each day is consolidated. Reports on live data (today's sessions,
+	 * tools, recent events) must keep reading with sqlService.dbRead.
+	 * @return a copy of the rows, so callers are free to trim it
+	 */
+	private List readReport(String sql, SqlReader reader) {
+		String cacheKey = new SimpleDateFormat("yyyy-MM-dd").format(new Date()) + ":" + sql;
+		List rows = reportCache.get(cacheKey);
+		if(rows == null) {
+			rows = sqlService.dbRead(sql, null, reader);
+			reportCache.put(cacheKey, rows);
+		}
+		return new ArrayList(rows);
+	}
+	
 	/**
 	 * Helper method to return the appropriate SQL for the DB vendor
 	 * Everything should be lowercase.
@@ -21,17 +21,25 @@ package org.sakaiproject.sitestats.impl;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Observable;
 import java.util.Observer;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
@@ -68,6 +76,8 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 	private Logger								LOG									= LoggerFactory.getLogger(StatsUpdateManagerImpl.class);
 	private final static String				PRESENCE_SUFFIX						= "-presence";
 	private final static int				PRESENCE_SUFFIX_LENGTH				= PRESENCE_SUFFIX.length();
+	/** Consolidated stats looked up per query, keeping each 'in' list below Oracle's limit of 1000 */
+	private final static int				STAT_LOOKUP_BATCH_SIZE				= 500;
 
 	/** Spring bean members */
 	private boolean							collectThreadEnabled				= true;
@@ -86,27 +96,20 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 
 	/** Collect Thread and Semaphore */
 	private Thread							collectThread;
-	private List<Event>						collectThreadQueue					= new ArrayList<Event>();
+	private Queue<Event>					collectThreadQueue					= new ConcurrentLinkedQueue<Event>();
+	private AtomicInteger					collectThreadQueueSize				= new AtomicInteger();
 	private Object							collectThreadSemaphore				= new Object();
 	private boolean							collectThreadRunning				= false;
 
-	/** Collect thread queue maps */
-	private Map<String, EventStat>					eventStatMap			= Collections.synchronizedMap(new HashMap<String, EventStat>());
-	private Map<String, ResourceStat>				resourceStatMap			= Collections.synchronizedMap(new HashMap<String, ResourceStat>());
-	private Map<String, LessonBuilderStat>			lessonBuilderStatMap	= Collections.synchronizedMap(new HashMap<String, LessonBuilderStat>());
-	private Map<String, SiteActivity>				activityMap				= Collections.synchronizedMap(new HashMap<String, SiteActivity>());
-	private Map<String, SiteVisits>					visitsMap				= Collections.synchronizedMap(new HashMap<String, SiteVisits>());
-	private Map<String, SitePresenceConsolidation>	presencesMap			= Collections.synchronizedMap(new HashMap<String, SitePresenceConsolidation>());
-	private Map<UniqueVisitsKey, Integer>			uniqueVisitsMap			= Collections.synchronizedMap(new HashMap<UniqueVisitsKey, Integer>());
-	private Map<String, ServerStat>					serverStatMap			= Collections.synchronizedMap(new HashMap<String, ServerStat>());
-	private Map<String, UserStat>					userStatMap				= Collections.synchronizedMap(new HashMap<String, UserStat>());
+	/** Events consolidated since the last db update */
+	private volatile ConsolidatedEvents		consolidatedEvents					= new ConsolidatedEvents();
+	/** Shared while consolidating events, exclusive only to swap in empty maps for a db update */
+	private final ReentrantReadWriteLock	consolidatedEventsLock				= new ReentrantReadWriteLock();
 
-	private Map<String, String>				lessonPageCreateEventMap		=  new HashMap<String, String>();
+	private Map<String, String>				lessonPageCreateEventMap		=  new ConcurrentHashMap<String, String>();
 
 	private boolean							initialized							= false;
 	
-	private final ReentrantLock				lock								= new ReentrantLock();
-	
 	/** Metrics */
 	private boolean							isIdle								= true;
 	private long							totalEventsProcessed				= 0;
@@ -366,7 +369,7 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 	// Metrics related methods
 	// ################################################################	
 	public int getQueueSize() {
-		return collectThreadQueue.size();
+		return collectThreadQueueSize.get();
 	}
 	
 	public boolean isIdle() {
@@ -458,12 +461,12 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 	// ################################################################	
 	/** Method called whenever an new event is generated from EventTrackingService: do not call this method! */
 	public void update(Observable obs, Object o) {
-		// At the moment this isn't threadsafe, but as sakai event handling is single threaded this shoudn't be a problem,
-		// but it's not a formal contract.
+		// The queue is lock free, so the event observers never wait on the update thread
 		if(o instanceof Event){
 			Event e = (Event) o;
 			Event eventWithPreciseDate = buildEvent(getToday(), e.getEvent(), e.getResource(), e.getContext(), e.getUserId(), e.getSessionId());
-			collectThreadQueue.add(eventWithPreciseDate);
+			collectThreadQueue.offer(eventWithPreciseDate);
+			collectThreadQueueSize.incrementAndGet();
 		}
 	}
 	
@@ -475,11 +478,13 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 				// do update job
 				isIdle = false;
 				long startTime = System.currentTimeMillis();
-				int eventCount = collectThreadQueue.size();
+				int eventCount = collectThreadQueueSize.get();
 				if(eventCount > 0) {
 					//long startTime2 = System.currentTimeMillis();
-					while(collectThreadQueue.size() > 0){
-						preProcessEvent(collectThreadQueue.remove(0));
+					Event event;
+					while((event = collectThreadQueue.poll()) != null){
+						collectThreadQueueSize.decrementAndGet();
+						preProcessEvent(event);
 					}
 					//long endTime2 = System.currentTimeMillis();
 					//LOG.debug("Time spent pre-processing " + eventCount + " event(s): " + (endTime2-startTime2) + " ms");
@@ -629,36 +634,45 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 			return;
 
 		Date date = getTruncatedDate(dateTime);
+		ConsolidatedEvents events = beginConsolidation();
+		try{
+			doConsolidateEvent(events, dateTime, date, eventId, resourceRef, userId, siteId);
+		}finally{
+			endConsolidation();
+		}
+	}
+	
+	private void doConsolidateEvent(ConsolidatedEvents events, Date dateTime, Date date, String eventId, String resourceRef, final String userId, final String siteId) {
 		// update		
 		if(isRegisteredEvent(eventId) && !StatsManager.SITEVISITEND_EVENTID.equals(eventId)){
 			// add to eventStatMap
 			String key = userId+siteId+eventId+date;
-			synchronized(eventStatMap){
-				EventStat e1 = eventStatMap.get(key);
-				if(e1 == null){
-					e1 = new EventStatImpl();
-					e1.setUserId(userId);
-					e1.setSiteId(siteId);
-					e1.setEventId(eventId);
-					e1.setDate(date);
-				}
+			EventStat e1 = events.eventStatMap.get(key);
+			if(e1 == null){
+				e1 = new EventStatImpl();
+				e1.setUserId(userId);
+				e1.setSiteId(siteId);
+				e1.setEventId(eventId);
+				e1.setDate(date);
+				e1 = putIfAbsent(events.eventStatMap, key, e1);
+			}
+			synchronized(e1){
 				e1.setCount(e1.getCount() + 1);
-				eventStatMap.put(key, e1);
 			}
 			
 			if(!StatsManager.SITEVISIT_EVENTID.equals(eventId)){
 				// add to activityMap
 				String key2 = siteId+date+eventId;
-				synchronized(activityMap){
-					SiteActivity e2 = activityMap.get(key2);
-					if(e2 == null){
-						e2 = new SiteActivityImpl();
-						e2.setSiteId(siteId);
-						e2.setDate(date);
-						e2.setEventId(eventId);
-					}
+				SiteActivity e2 = events.activityMap.get(key2);
+				if(e2 == null){
+					e2 = new SiteActivityImpl();
+					e2.setSiteId(siteId);
+					e2.setDate(date);
+					e2.setEventId(eventId);
+					e2 = putIfAbsent(events.activityMap, key2, e2);
+				}
+				synchronized(e2){
 					e2.setCount(e2.getCount() + 1);
-					activityMap.put(key2, e2);
 				}
 			}
 		}	
@@ -672,18 +686,18 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 				resourceAction = eventId;
 			}
 			String key = userId+siteId+resourceRef+resourceAction+date;
-			synchronized(resourceStatMap){
-				ResourceStat e1 = resourceStatMap.get(key);
-				if(e1 == null){
-					e1 = new ResourceStatImpl();
-					e1.setUserId(userId);
-					e1.setSiteId(siteId);
-					e1.setResourceRef(resourceRef);
-					e1.setResourceAction(resourceAction);
-					e1.setDate(date);
-				}
+			ResourceStat e1 = events.resourceStatMap.get(key);
+			if(e1 == null){
+				e1 = new ResourceStatImpl();
+				e1.setUserId(userId);
+				e1.setSiteId(siteId);
+				e1.setResourceRef(resourceRef);
+				e1.setResourceAction(resourceAction);
+				e1.setDate(date);
+				e1 = putIfAbsent(events.resourceStatMap, key, e1);
+			}
+			synchronized(e1){
 				e1.setCount(e1.getCount() + 1);
-				resourceStatMap.put(key, e1);
 			}
 		} else if (eventId.startsWith(StatsManager.LESSONS_EVENTID_PREFIX)) {
 			String[] resourceParts = resourceRef.split("/");
@@ -746,64 +760,61 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 					}
 
 					if (creatorUserId == null || !creatorUserId.equals(userId)) {
-						addToLessonBuilderStatMap(key, userId, siteId, resourceRef, pageId, lessonBuilderAction, date);
+						addToLessonBuilderStatMap(events, key, userId, siteId, resourceRef, pageId, lessonBuilderAction, date);
 					}
 				} else {
-					addToLessonBuilderStatMap(key, userId, siteId, resourceRef, pageId, lessonBuilderAction, date);
+					addToLessonBuilderStatMap(events, key, userId, siteId, resourceRef, pageId, lessonBuilderAction, date);
 				}
 			}
 		} else if(StatsManager.SITEVISIT_EVENTID.equals(eventId)){
 			// add to visitsMap
 			String key = siteId+date;
-			lock.lock();
-			try{
-				SiteVisits e1 = visitsMap.get(key);
-				if(e1 == null){
-					e1 = new SiteVisitsImpl();
-					e1.setSiteId(siteId);
-					e1.setDate(date);
-				}
+			SiteVisits e1 = events.visitsMap.get(key);
+			if(e1 == null){
+				e1 = new SiteVisitsImpl();
+				e1.setSiteId(siteId);
+				e1.setDate(date);
+				e1 = putIfAbsent(events.visitsMap, key, e1);
+			}
+			synchronized(e1){
 				e1.setTotalVisits(e1.getTotalVisits() + 1);
-				// unique visits are determined when updating to db:
-				//	 --> e1.setTotalUnique(totalUnique);
-				visitsMap.put(key, e1);
-				// place entry on map so we can update unique visits later
-				UniqueVisitsKey keyUniqueVisits = new UniqueVisitsKey(siteId, date);
-				uniqueVisitsMap.put(keyUniqueVisits, Integer.valueOf(1));
-				
-				// site presence started
-				if(M_sm.isEnableSitePresences()) {
-					String pKey = siteId+userId+date;
-					SitePresenceConsolidation spc = presencesMap.get(pKey);
-					if(spc == null) {
-						SitePresence sp = new SitePresenceImpl();
-						sp.setSiteId(siteId);
-						sp.setUserId(userId);
-						sp.setDate(date);
-						spc = new SitePresenceConsolidation(sp);
-					}
+			}
+			// unique visits are determined when updating to db:
+			//	 --> e1.setTotalUnique(totalUnique);
+			// place entry on map so we can update unique visits later
+			UniqueVisitsKey keyUniqueVisits = new UniqueVisitsKey(siteId, date);
+			events.uniqueVisitsMap.put(keyUniqueVisits, Integer.valueOf(1));
+			
+			// site presence started
+			if(M_sm.isEnableSitePresences()) {
+				String pKey = siteId+userId+date;
+				SitePresenceConsolidation spc = events.presencesMap.get(pKey);
+				if(spc == null) {
+					SitePresence sp = new SitePresenceImpl();
+					sp.setSiteId(siteId);
+					sp.setUserId(userId);
+					sp.setDate(date);
+					spc = putIfAbsent(events.presencesMap, pKey, new SitePresenceConsolidation(sp));
+				}
+				synchronized(spc){
 					spc.sitePresence.setLastVisitStartTime(dateTime);
-					presencesMap.put(pKey, spc);					
 				}
-			}finally{
-				lock.unlock();
 			}
 			
 		}else if(StatsManager.SITEVISITEND_EVENTID.equals(eventId)){
 			// site presence ended
 			if(M_sm.isEnableSitePresences()) {
 				String pKey = siteId+userId+date;
-				lock.lock();
-				try{
-					SitePresenceConsolidation spc = presencesMap.get(pKey);
-					if(spc == null) {
-						SitePresence sp = new SitePresenceImpl();
-						sp.setSiteId(siteId);
-						sp.setUserId(userId);
-						sp.setDate(date);
-						sp.setLastVisitStartTime(null);
-						spc = new SitePresenceConsolidation(sp, dateTime);
-					}
+				SitePresenceConsolidation spc = events.presencesMap.get(pKey);
+				if(spc == null) {
+					SitePresence sp = new SitePresenceImpl();
+					sp.setSiteId(siteId);
+					sp.setUserId(userId);
+					sp.setDate(date);
+					sp.setLastVisitStartTime(null);
+					spc = putIfAbsent(events.presencesMap, pKey, new SitePresenceConsolidation(sp, dateTime));
+				}
+				synchronized(spc){
 					if(spc.sitePresence.getLastVisitStartTime() != null) {
 						long existingDuration = spc.sitePresence.getDuration();
 						long start = spc.sitePresence.getLastVisitStartTime().getTime();
@@ -815,30 +826,27 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 						spc.sitePresence.setDuration(existingDuration + additionalDuration);						
 						spc.sitePresence.setLastVisitStartTime(null);	
 					}
-					presencesMap.put(pKey, spc);
-				}finally{
-					lock.unlock();
 				}
 			}
 		} 
 		
 	}
 
-	private void addToLessonBuilderStatMap(String key, String userId, String siteId, String pageRef, long pageId, String action, Date date) {
+	private void addToLessonBuilderStatMap(ConsolidatedEvents events, String key, String userId, String siteId, String pageRef, long pageId, String action, Date date) {
 
-		synchronized (lessonBuilderStatMap) {
-			LessonBuilderStat e1 = lessonBuilderStatMap.get(key);
-			if (e1 == null) {
-				e1 = new LessonBuilderStatImpl();
-				e1.setUserId(userId);
-				e1.setSiteId(siteId);
-				e1.setPageRef(pageRef);
-				e1.setPageId(pageId);
-				e1.setPageAction(action);
-				e1.setDate(date);
-			}
+		LessonBuilderStat e1 = events.lessonBuilderStatMap.get(key);
+		if (e1 == null) {
+			e1 = new LessonBuilderStatImpl();
+			e1.setUserId(userId);
+			e1.setSiteId(siteId);
+			e1.setPageRef(pageRef);
+			e1.setPageId(pageId);
+			e1.setPageAction(action);
+			e1.setDate(date);
+			e1 = putIfAbsent(events.lessonBuilderStatMap, key, e1);
+		}
+		synchronized (e1) {
 			e1.setCount(e1.getCount() + 1);
-			lessonBuilderStatMap.put(key, e1);
 		}
 	}
 
@@ -853,15 +861,20 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 				
 		// add to serverStatMap
 		String key = eventId+date;
-		synchronized(serverStatMap){
-			ServerStat s = serverStatMap.get(key);
+		ConsolidatedEvents events = beginConsolidation();
+		try{
+			ServerStat s = events.serverStatMap.get(key);
 			if(s == null){
 				s = new ServerStatImpl();
 				s.setEventId(eventId);
 				s.setDate(date);
+				s = putIfAbsent(events.serverStatMap, key, s);
+			}
+			synchronized(s){
+				s.setCount(s.getCount() + 1);
 			}
-			s.setCount(s.getCount() + 1);
-			serverStatMap.put(key, s);
+		}finally{
+			endConsolidation();
 		}
 		
 	}
@@ -873,128 +886,143 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 				
 		// add to userStatMap
 		String key = userId+date;
-		synchronized(userStatMap){
-			UserStat s = userStatMap.get(key);
+		ConsolidatedEvents events = beginConsolidation();
+		try{
+			UserStat s = events.userStatMap.get(key);
 			if(s == null){
 				s = new UserStatImpl();
 				s.setUserId(userId);
 				s.setDate(date);
+				s = putIfAbsent(events.userStatMap, key, s);
 			}
-			s.setCount(s.getCount() + 1);
-			userStatMap.put(key, s);
+			synchronized(s){
+				s.setCount(s.getCount() + 1);
+			}
+		}finally{
+			endConsolidation();
 		}
 		
 	}
 	
 
+	/** @return the maps to consolidate events into, which must be released with {@link #endConsolidation()} */
+	private ConsolidatedEvents beginConsolidation() {
+		consolidatedEventsLock.readLock().lock();
+		return consolidatedEvents;
+	}
+	
+	private void endConsolidation() {
+		consolidatedEventsLock.readLock().unlock();
+	}
+	
+	/** @return the value already mapped to the key, or the given value if there was none */
+	private static <T> T putIfAbsent(ConcurrentMap<String, T> map, String key, T value) {
+		T existing = map.putIfAbsent(key, value);
+		return existing != null ? existing : value;
+	}
+	
+
 	// ################################################################
 	// Db update methods
 	// ################################################################	
-	@SuppressWarnings("unchecked")
+	/**
+	 * Swap the consolidated events for empty maps, waiting only for events being consolidated
+	 * right now, so that events keep being consolidated while these are written to the db.
+	 * @return the events consolidated so far, or null if there are none
+	 */
+	private ConsolidatedEvents swapConsolidatedEvents() {
+		if(consolidatedEvents.isEmpty()) {
+			return null;
+		}
+		consolidatedEventsLock.writeLock().lock();
+		try{
+			ConsolidatedEvents events = consolidatedEvents;
+			consolidatedEvents = new ConsolidatedEvents();
+			return events;
+		}finally{
+			consolidatedEventsLock.writeLock().unlock();
+		}
+	}
+	
 	private synchronized boolean doUpdateConsolidatedEvents() {
 		long startTime = System.currentTimeMillis();
-		if(eventStatMap.size() > 0 || resourceStatMap.size() > 0
-				|| activityMap.size() > 0 || uniqueVisitsMap.size() > 0 
-				|| visitsMap.size() > 0 || presencesMap.size() > 0
-				|| serverStatMap.size() > 0 || userStatMap.size() > 0) {
+		final StringBuilder stageTimes = new StringBuilder();
+		final ConsolidatedEvents events = swapConsolidatedEvents();
+		if(events != null) {
 			Object r = getHibernateTemplate().execute(new HibernateCallback() {			
 				public Object doInHibernate(Session session) throws HibernateException, SQLException {
 					Transaction tx = null;
 					try{
 						tx = session.beginTransaction();
+						long stageStart;
 						// do: EventStat
-						if(eventStatMap.size() > 0) {
-							Collection<EventStat> tmp1 = null;
-							synchronized(eventStatMap){
-								tmp1 = eventStatMap.values();
-								eventStatMap = Collections.synchronizedMap(new HashMap<String, EventStat>());
-							}
-							doUpdateEventStatObjects(session, tmp1);
+						if(!events.eventStatMap.isEmpty()) {
+							stageStart = System.currentTimeMillis();
+							doUpdateEventStatObjects(session, events.eventStatMap.values());
+							appendStageTime(stageTimes, "EventStat", stageStart);
 						}
 
 						// do: ResourceStat
-						if(resourceStatMap.size() > 0) {
-							Collection<ResourceStat> tmp2 = null;
-							synchronized(resourceStatMap){
-								tmp2 = resourceStatMap.values();
-								resourceStatMap = Collections.synchronizedMap(new HashMap<String, ResourceStat>());
-							}
-							doUpdateResourceStatObjects(session, tmp2);
+						if(!events.resourceStatMap.isEmpty()) {
+							stageStart = System.currentTimeMillis();
+							doUpdateResourceStatObjects(session, events.resourceStatMap.values());
+							appendStageTime(stageTimes, "ResourceStat", stageStart);
 						}
 
 						// do: Lessons ResourceStat
-						if (lessonBuilderStatMap.size() > 0) {
-							Collection<LessonBuilderStat> tmp3 = null;
-							synchronized (lessonBuilderStatMap) {
-								tmp3 = lessonBuilderStatMap.values();
-								lessonBuilderStatMap = Collections.synchronizedMap(new HashMap<String, LessonBuilderStat>());
-							}
-							doUpdateLessonBuilderStatObjects(session, tmp3);
+						if (!events.lessonBuilderStatMap.isEmpty()) {
+							stageStart = System.currentTimeMillis();
+							doUpdateLessonBuilderStatObjects(session, events.lessonBuilderStatMap.values());
+							appendStageTime(stageTimes, "LessonBuilderStat", stageStart);
 						}
 						
 						// do: SiteActivity
-						if(activityMap.size() > 0) {
-							Collection<SiteActivity> tmp3 = null;
-							synchronized(activityMap){
-								tmp3 = activityMap.values();
-								activityMap = Collections.synchronizedMap(new HashMap<String, SiteActivity>());
-							}
-							doUpdateSiteActivityObjects(session, tmp3);
+						if(!events.activityMap.isEmpty()) {
+							stageStart = System.currentTimeMillis();
+							doUpdateSiteActivityObjects(session, events.activityMap.values());
+							appendStageTime(stageTimes, "SiteActivity", stageStart);
 						}
 	
 						// do: SiteVisits
-						if(uniqueVisitsMap.size() > 0 || visitsMap.size() > 0) {	
+						if(!events.uniqueVisitsMap.isEmpty() || !events.visitsMap.isEmpty()) {	
 							// determine unique visits for event related sites
-							Map<UniqueVisitsKey, Integer> tmp4;
-							synchronized(uniqueVisitsMap){
-								tmp4 = uniqueVisitsMap;
-								uniqueVisitsMap = Collections.synchronizedMap(new HashMap<UniqueVisitsKey, Integer>());
-							}
-							tmp4 = doGetSiteUniqueVisits(session, tmp4);
+							stageStart = System.currentTimeMillis();
+							Map<UniqueVisitsKey, Integer> uniqueVisits = doGetSiteUniqueVisits(session, events.uniqueVisitsMap);
+							appendStageTime(stageTimes, "UniqueVisits", stageStart);
 						
 							// do: SiteVisits
-							if(visitsMap.size() > 0) {
-								Collection<SiteVisits> tmp5 = null;
-								synchronized(visitsMap){
-									tmp5 = visitsMap.values();
-									visitsMap = Collections.synchronizedMap(new HashMap<String, SiteVisits>());
-								}
-								doUpdateSiteVisitsObjects(session, tmp5, tmp4);
+							if(!events.visitsMap.isEmpty()) {
+								stageStart = System.currentTimeMillis();
+								doUpdateSiteVisitsObjects(session, events.visitsMap.values(), uniqueVisits);
+								appendStageTime(stageTimes, "SiteVisits", stageStart);
 							}
 						}
 						
 						// do: SitePresences
-						if(presencesMap.size() > 0) {
-							Collection<SitePresenceConsolidation> tmp6 = null;
-							synchronized(presencesMap){
-								tmp6 = presencesMap.values();
-								presencesMap = Collections.synchronizedMap(new HashMap<String, SitePresenceConsolidation>());
-							}
-							doUpdateSitePresencesObjects(session, tmp6);
+						if(!events.presencesMap.isEmpty()) {
+							stageStart = System.currentTimeMillis();
+							doUpdateSitePresencesObjects(session, events.presencesMap.values());
+							appendStageTime(stageTimes, "SitePresences", stageStart);
 						}
 						
 						// do: ServerStats
-						if(serverStatMap.size() > 0) {
-							Collection<ServerStat> tmp7 = null;
-							synchronized(serverStatMap){
-								tmp7 = serverStatMap.values();
-								serverStatMap = Collections.synchronizedMap(new HashMap<String, ServerStat>());
-							}
-							doUpdateServerStatObjects(session, tmp7);
+						if(!events.serverStatMap.isEmpty()) {
+							stageStart = System.currentTimeMillis();
+							doUpdateServerStatObjects(session, events.serverStatMap.values());
+							appendStageTime(stageTimes, "ServerStats", stageStart);
 						}
 						
 						// do: UserStats
-						if(userStatMap.size() > 0) {
-							Collection<UserStat> tmp8 = null;
-							synchronized(userStatMap){
-								tmp8 = userStatMap.values();
-								userStatMap = Collections.synchronizedMap(new HashMap<String, UserStat>());
-							}
-							doUpdateUserStatObjects(session, tmp8);
+						if(!events.userStatMap.isEmpty()) {
+							stageStart = System.currentTimeMillis();
+							doUpdateUserStatObjects(session, events.userStatMap.values());
+							appendStageTime(stageTimes, "UserStats", stageStart);
 						}
 	
 						// commit ALL
+						stageStart = System.currentTimeMillis();
 						tx.commit();
+						appendStageTime(stageTimes, "commit", stageStart);
 					}catch(Exception e){
 						if(tx != null) tx.rollback();
 						LOG.warn("Unable to commit transaction: ", e);
@@ -1004,47 +1032,33 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 				}			
 			});
 			long endTime = System.currentTimeMillis();
-			LOG.debug("Time spent in doUpdateConsolidatedEvents(): " + (endTime-startTime) + " ms");
+			LOG.debug("Time spent in doUpdateConsolidatedEvents(): " + (endTime-startTime) + " ms (" + stageTimes + ")");
 			return ((Boolean) r).booleanValue();
 		}else{
 			return true;
 		}
 	}
 	
+	private void appendStageTime(StringBuilder stageTimes, String stage, long stageStart) {
+		if(stageTimes.length() > 0) {
+			stageTimes.append(", ");
+		}
+		stageTimes.append(stage).append(": ").append(System.currentTimeMillis() - stageStart).append(" ms");
+	}
+	
 	private void doUpdateEventStatObjects(Session session, Collection<EventStat> o) {
 		if(o == null) return;
 		List<EventStat> objects = new ArrayList<EventStat>(o);
 		Collections.sort(objects);
 		Iterator<EventStat> i = objects.iterator();
+		Map<List<Object>, EventStat> existingStats = doGetExistingStats(session, EventStatImpl.class, objects, EVENT_STAT_KEY);
 		
 		while(i.hasNext()){
 			EventStat eUpdate = i.next();
 			String eExistingSiteId = null;
 			EventStat eExisting = null;
 			try{
-				Criteria c = session.createCriteria(EventStatImpl.class);
-				c.add(Expression.eq("siteId", eUpdate.getSiteId()));
-				c.add(Expression.eq("eventId", eUpdate.getEventId()));
-				c.add(Expression.eq("userId", eUpdate.getUserId()));
-				c.add(Expression.eq("date", eUpdate.getDate()));
-				try{
-					eExisting = (EventStat) c.uniqueResult();
-				}catch(HibernateException ex){
-					try{
-						List events = c.list();
-						if ((events!=null) && (events.size()>0)){
-							LOG.debug("More than 1 result when unique result expected.", ex);
-							eExisting = (EventStat) c.list().get(0);
-						}else{
-							LOG.debug("No result found", ex);
-							eExisting = null;
-						}
-					}catch(Exception ex3){
-						eExisting = null;
-					}
-				}catch(Exception ex2){
-					LOG.warn("Probably ddbb error when loading data at java object", ex2);
-				}
+				eExisting = existingStats.get(EVENT_STAT_KEY.getKey(eUpdate));
 				if(eExisting == null) 
 					eExisting = eUpdate;
 				else
@@ -1065,35 +1079,13 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 		List<ResourceStat> objects = new ArrayList<ResourceStat>(o);
 		Collections.sort(objects);
 		Iterator<ResourceStat> i = objects.iterator();
+		Map<List<Object>, ResourceStat> existingStats = doGetExistingStats(session, ResourceStatImpl.class, objects, RESOURCE_STAT_KEY);
 		while(i.hasNext()){
 			ResourceStat eUpdate = i.next();
 			ResourceStat eExisting = null;
 			String eExistingSiteId = null;
 			try{
-				Criteria c = session.createCriteria(ResourceStatImpl.class);
-				c.add(Expression.eq("siteId", eUpdate.getSiteId()));
-				c.add(Expression.eq("resourceRef", eUpdate.getResourceRef()));
-				c.add(Expression.eq("resourceAction", eUpdate.getResourceAction()));
-				c.add(Expression.eq("userId", eUpdate.getUserId()));
-				c.add(Expression.eq("date", eUpdate.getDate()));
-				try{
-					eExisting = (ResourceStat) c.uniqueResult();
-				}catch(HibernateException ex){
-					try{
-						List events = c.list();
-						if ((events!=null) && (events.size()>0)){
-							LOG.debug("More than 1 result when unique result expected.", ex);
-							eExisting = (ResourceStat) c.list().get(0);
-						}else{
-							LOG.debug("No result found", ex);
-							eExisting = null;
-						}
-					}catch(Exception ex3){
-						eExisting = null;
-					}
-				}catch(Exception ex2){
-					LOG.warn("Probably ddbb error when loading data at java object", ex2);
-				}
+				eExisting = existingStats.get(RESOURCE_STAT_KEY.getKey(eUpdate));
 				if(eExisting == null) 
 					eExisting = eUpdate;
 				else
@@ -1114,35 +1106,13 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 		List<LessonBuilderStat> objects = new ArrayList<LessonBuilderStat>(o);
 		Collections.sort(objects);
 		Iterator<LessonBuilderStat> i = objects.iterator();
+		Map<List<Object>, LessonBuilderStat> existingStats = doGetExistingStats(session, LessonBuilderStatImpl.class, objects, LESSON_BUILDER_STAT_KEY);
 		while (i.hasNext()) {
 			LessonBuilderStat eUpdate = i.next();
 			LessonBuilderStat eExisting = null;
 			String eExistingSiteId = null;
 			try {
-				Criteria c = session.createCriteria(LessonBuilderStatImpl.class);
-				c.add(Expression.eq("siteId", eUpdate.getSiteId()));
-				c.add(Expression.eq("pageRef", eUpdate.getPageRef()));
-				c.add(Expression.eq("pageAction", eUpdate.getPageAction()));
-				c.add(Expression.eq("userId", eUpdate.getUserId()));
-				c.add(Expression.eq("date", eUpdate.getDate()));
-				try {
-					eExisting = (LessonBuilderStat) c.uniqueResult();
-				} catch (HibernateException ex){
-					try {
-						List events = c.list();
-						if ((events!=null) && (events.size()>0)){
-							LOG.debug("More than 1 result when unique result expected.", ex);
-							eExisting = (LessonBuilderStat) c.list().get(0);
-						} else{
-							LOG.debug("No result found", ex);
-							eExisting = null;
-						}
-					} catch (Exception ex3) {
-						eExisting = null;
-					}
-				} catch(Exception ex2) {
-					LOG.warn("Probably ddbb error when loading data at java object", ex2);
-				}
+				eExisting = existingStats.get(LESSON_BUILDER_STAT_KEY.getKey(eUpdate));
 				if (eExisting == null) {
 					eExisting = eUpdate;
 				} else {
@@ -1163,33 +1133,13 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 		List<SiteActivity> objects = new ArrayList<SiteActivity>(o);
 		Collections.sort(objects);
 		Iterator<SiteActivity> i = objects.iterator();
+		Map<List<Object>, SiteActivity> existingStats = doGetExistingStats(session, SiteActivityImpl.class, objects, SITE_ACTIVITY_KEY);
 		while(i.hasNext()){
 			SiteActivity eUpdate = i.next();
 			SiteActivity eExisting = null;
 			String eExistingSiteId = null;
 			try{
-				Criteria c = session.createCriteria(SiteActivityImpl.class);
-				c.add(Expression.eq("siteId", eUpdate.getSiteId()));
-				c.add(Expression.eq("eventId", eUpdate.getEventId()));
-				c.add(Expression.eq("date", eUpdate.getDate()));
-				try{
-					eExisting = (SiteActivity) c.uniqueResult();
-				}catch(HibernateException ex){
-					try{
-						List events = c.list();
-						if ((events!=null) && (events.size()>0)){
-							LOG.debug("More than 1 result when unique result expected.", ex);
-							eExisting = (SiteActivity) c.list().get(0);
-						}else{
-							LOG.debug("No result found", ex);
-							eExisting = null;
-						}
-					}catch(Exception ex3){
-						eExisting = null;
-					}
-				}catch(Exception ex2){
-					LOG.warn("Probably ddbb error when loading data at java object", ex2);
-				}
+				eExisting = existingStats.get(SITE_ACTIVITY_KEY.getKey(eUpdate));
 				if(eExisting == null) 
 					eExisting = eUpdate;
 				else
@@ -1210,32 +1160,13 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 		List<SiteVisits> objects = new ArrayList<SiteVisits>(o);
 		Collections.sort(objects);
 		Iterator<SiteVisits> i = objects.iterator();
+		Map<List<Object>, SiteVisits> existingStats = doGetExistingStats(session, SiteVisitsImpl.class, objects, SITE_VISITS_KEY);
 		while(i.hasNext()){
 			SiteVisits eUpdate = i.next();
 			SiteVisits eExisting = null;
 			String eExistingSiteId = null;
 			try{
-				Criteria c = session.createCriteria(SiteVisitsImpl.class);
-				c.add(Expression.eq("siteId", eUpdate.getSiteId()));
-				c.add(Expression.eq("date", eUpdate.getDate()));
-				try{
-					eExisting = (SiteVisits) c.uniqueResult();
-				}catch(HibernateException ex){
-					try{
-						List events = c.list();
-						if ((events!=null) && (events.size()>0)){
-							LOG.debug("More than 1 result when unique result expected.", ex);
-							eExisting = (SiteVisits) c.list().get(0);
-						}else{
-							LOG.debug("No result found", ex);
-							eExisting = null;
-						}
-					}catch(Exception ex3){
-						eExisting = null;
-					}
-				}catch(Exception ex2){
-					LOG.warn("Probably ddbb error when loading data at java object", ex2);
-				}
+				eExisting = existingStats.get(SITE_VISITS_KEY.getKey(eUpdate));
 				if(eExisting == null){
 					eExisting = eUpdate;
 				}else{
@@ -1304,31 +1235,12 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 		List<ServerStat> objects = new ArrayList<ServerStat>(o);
 		Collections.sort(objects);
 		Iterator<ServerStat> i = objects.iterator();
+		Map<List<Object>, ServerStat> existingStats = doGetExistingStats(session, ServerStatImpl.class, objects, SERVER_STAT_KEY);
 		while(i.hasNext()){
 			ServerStat eUpdate = i.next();
 			ServerStat eExisting = null;
 			try{
-				Criteria c = session.createCriteria(ServerStatImpl.class);
-				c.add(Expression.eq("eventId", eUpdate.getEventId()));
-				c.add(Expression.eq("date", eUpdate.getDate()));
-				try{
-					eExisting = (ServerStat) c.uniqueResult();
-				}catch(HibernateException ex){
-					try{
-						List events = c.list();
-						if ((events!=null) && (events.size()>0)){
-							LOG.debug("More than 1 result when unique result expected.", ex);
-							eExisting = (ServerStat) c.list().get(0);
-						}else{
-							LOG.debug("No result found", ex);
-							eExisting = null;
-						}
-					}catch(Exception ex3){
-						eExisting = null;
-					}
-				}catch(Exception ex2){
-					LOG.warn("Probably ddbb error when loading data at java object", ex2);
-				}
+				eExisting = existingStats.get(SERVER_STAT_KEY.getKey(eUpdate));
 				if(eExisting == null) {
 					eExisting = eUpdate;
 				}else{
@@ -1347,32 +1259,13 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 		List<UserStat> objects = new ArrayList<UserStat>(o);
 		Collections.sort(objects);
 		Iterator<UserStat> i = objects.iterator();
+		Map<List<Object>, UserStat> existingStats = doGetExistingStats(session, UserStatImpl.class, objects, USER_STAT_KEY);
 		while(i.hasNext()){
 			UserStat eUpdate = i.next();
 			UserStat eExisting = null;
 			String eExistingUserId = null;
 			try{
-				Criteria c = session.createCriteria(UserStatImpl.class);
-				c.add(Expression.eq("userId", eUpdate.getUserId()));
-				c.add(Expression.eq("date", eUpdate.getDate()));
-				try{
-					eExisting = (UserStat) c.uniqueResult();
-				}catch(HibernateException ex){
-					try{
-						List events = c.list();
-						if ((events!=null) && (events.size()>0)){
-							LOG.debug("More than 1 result when unique result expected.", ex);
-							eExisting = (UserStat) c.list().get(0);
-						}else{
-							LOG.debug("No result found", ex);
-							eExisting = null;
-						}
-					}catch(Exception ex3){
-						eExisting = null;
-					}
-				}catch(Exception ex2){
-					LOG.warn("Probably ddbb error when loading data at java object", ex2);
-				}
+				eExisting = existingStats.get(USER_STAT_KEY.getKey(eUpdate));
 				if(eExisting == null) {
 					eExisting = eUpdate;
 				}else{
@@ -1435,16 +1328,24 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 		if(o == null) return;
 		List<SitePresenceConsolidation> objects = new ArrayList<SitePresenceConsolidation>(o);
 		Collections.sort(objects);
+		List<SitePresence> presences = new ArrayList<SitePresence>(objects.size());
+		List<SitePresenceTotal> presenceTotals = new ArrayList<SitePresenceTotal>(objects.size());
+		for(SitePresenceConsolidation spc : objects){
+			presences.add(spc.sitePresence);
+			presenceTotals.add(new SitePresenceTotalImpl(spc.sitePresence));
+		}
+		Map<List<Object>, SitePresence> existingPresences = doGetExistingStats(session, SitePresenceImpl.class, presences, SITE_PRESENCE_KEY);
+		Map<List<Object>, SitePresenceTotal> existingTotals = doGetExistingStats(session, SitePresenceTotalImpl.class, presenceTotals, SITE_PRESENCE_TOTAL_KEY);
 		Iterator<SitePresenceConsolidation> i = objects.iterator();
 		while(i.hasNext()){
 			try{
 				SitePresenceConsolidation spc = i.next();
 				SitePresence sp = spc.sitePresence;
-				SitePresence spExisting = doGetSitePresence(session, sp.getSiteId(), sp.getUserId(), sp.getDate());
+				SitePresence spExisting = existingPresences.get(SITE_PRESENCE_KEY.getKey(sp));
 				if(spExisting == null) {
 					session.save(sp);
 					if (!spc.firstEventIsPresEnd) {
-						doUpdateSitePresenceTotal(session, sp);
+						doUpdateSitePresenceTotal(session, sp, existingTotals);
 					}
 				}else{
 					long previousTotalPresence = spExisting.getDuration();
@@ -1461,7 +1362,7 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 					spExisting.setLastVisitStartTime(sp.getLastVisitStartTime());
 					session.update(spExisting);
 					if (!spc.firstEventIsPresEnd) {
-						doUpdateSitePresenceTotal(session, spExisting);
+						doUpdateSitePresenceTotal(session, spExisting, existingTotals);
 					}
 				}
 			}catch(HibernateException e){
@@ -1472,12 +1373,15 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 		}
 	}
 
-	private void doUpdateSitePresenceTotal(Session session, SitePresence sp) throws Exception {
+	private void doUpdateSitePresenceTotal(Session session, SitePresence sp, Map<List<Object>, SitePresenceTotal> existingTotals) throws Exception {
 
 		SitePresenceTotal spt = new SitePresenceTotalImpl(sp);
-		SitePresenceTotal sptExisting = doGetSitePresenceTotal(session, sp.getSiteId(), sp.getUserId());
+		List<Object> key = SITE_PRESENCE_TOTAL_KEY.getKey(spt);
+		SitePresenceTotal sptExisting = existingTotals.get(key);
 		if (sptExisting == null) {
 			session.save(spt);
+			// a later presence of the same user in the same site, on another day, must update this total
+			existingTotals.put(key, spt);
 		} else {
 			sptExisting.incrementTotalVisits();
 			sptExisting.setLastVisitTime(sp.getLastVisitStartTime());
@@ -1486,67 +1390,161 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 	}
 
 	// ################################################################
-	// Special site presence methods (visit time tracking)
+	// Consolidated stats lookup
 	// ################################################################
+	/**
+	 * Load the stored rows for a list of consolidated stats with one query per batch of
+	 * {@link #STAT_LOOKUP_BATCH_SIZE} stats, rather than one query per stat. Each batch is
+	 * matched with an 'in' list per key property, which may also return rows for other key
+	 * combinations; these are discarded when the results are keyed.
+	 * @return The stored rows, keyed by {@link StatKey#getKey(Object)}.
+	 */
 	@SuppressWarnings("unchecked")
-	private SitePresence doGetSitePresence(Session session, String siteId, String userId, Date date) {
-		SitePresence eDb = null;
-		Criteria c = session.createCriteria(SitePresenceImpl.class);
-		c.add(Expression.eq("siteId", siteId));
-		c.add(Expression.eq("userId", userId));
-		c.add(Expression.eq("date", date));
-		
-		try{
-			eDb = (SitePresence) c.uniqueResult();
-		}catch(HibernateException ex){
+	private <T> Map<List<Object>, T> doGetExistingStats(Session session, Class<?> statClass, List<T> stats, StatKey<T> statKey) {
+		Map<List<Object>, T> existing = new HashMap<List<Object>, T>();
+		Set<List<Object>> wanted = new HashSet<List<Object>>();
+		for(int start = 0; start < stats.size(); start += STAT_LOOKUP_BATCH_SIZE) {
+			List<T> batch = stats.subList(start, Math.min(start + STAT_LOOKUP_BATCH_SIZE, stats.size()));
+			List<Set<Object>> values = new ArrayList<Set<Object>>();
+			for(int p = 0; p < statKey.properties.length; p++) {
+				values.add(new HashSet<Object>());
+			}
+			for(T stat : batch) {
+				List<Object> key = statKey.getKey(stat);
+				wanted.add(key);
+				for(int p = 0; p < key.size(); p++) {
+					Object value = key.get(p);
+					if(value instanceof Long && statKey.isDate(p)) {
+						value = new Date((Long) value);
+					}
+					if(value != null) {
+						values.get(p).add(value);
+					}
+				}
+			}
+			Criteria c = session.createCriteria(statClass);
+			boolean matchable = true;
+			for(int p = 0; p < statKey.properties.length; p++) {
+				if(values.get(p).isEmpty()) {
+					// a null key property never matches a stored row
+					matchable = false;
+					break;
+				}
+				c.add(Expression.in(statKey.properties[p], values.get(p)));
+			}
+			if(!matchable) {
+				continue;
+			}
 			try{
-				List es = c.list();
-				if(es != null && es.size() > 0){
-					LOG.debug("More than 1 result when unique result expected.", ex);
-					eDb = (SitePresence) es.get(0);
-				}else{
-					eDb = null;
+				for(T stored : (List<T>) c.list()) {
+					List<Object> key = statKey.getKey(stored);
+					if(!wanted.contains(key)) {
+						continue;
+					}
+					if(existing.containsKey(key)) {
+						LOG.debug("More than 1 result when unique result expected: " + key);
+					}else{
+						existing.put(key, stored);
+					}
 				}
-			}catch (Exception e3){
-				LOG.debug("Probably ddbb error when loading data at java object", e3);
-				eDb = null;
+			}catch(Exception ex){
+				LOG.warn("Probably ddbb error when loading data at java object", ex);
 			}
-			
-		}catch(Exception ex2){
-			LOG.debug("Probably ddbb error when loading data at java object", ex2);
 		}
-		return eDb;
+		return existing;
 	}
-
-	@SuppressWarnings("unchecked")
-	private SitePresenceTotal doGetSitePresenceTotal(Session session, String siteId, String userId) {
-
-		SitePresenceTotal eDb = null;
-		Criteria c = session.createCriteria(SitePresenceTotalImpl.class);
-		c.add(Expression.eq("siteId", siteId));
-		c.add(Expression.eq("userId", userId));
-
-		try {
-			eDb = (SitePresenceTotal) c.uniqueResult();
-		} catch (HibernateException ex) {
-			try {
-				List es = c.list();
-				if (es != null && es.size() > 0) {
-					LOG.debug("More than 1 result when unique result expected.", ex);
-					eDb = (SitePresenceTotal) es.get(0);
-				} else {
-					eDb = null;
+	
+	/** The properties identifying a consolidated stat row, and how to read them */
+	private static abstract class StatKey<T> {
+		public final String[] properties;
+		
+		public StatKey(String... properties) {
+			this.properties = properties;
+		}
+		
+		/** @return the values of the key properties, in the same order */
+		protected abstract Object[] getValues(T stat);
+		
+		/** @return the key of a stat, with dates reduced to the day as they are stored */
+		public List<Object> getKey(T stat) {
+			Object[] values = getValues(stat);
+			for(int p = 0; p < values.length; p++) {
+				if(values[p] instanceof Date) {
+					values[p] = Long.valueOf(getDayStart((Date) values[p]));
 				}
-			} catch (Exception e3) {
-				LOG.debug("Probably ddbb error when loading data at java object", e3);
-				eDb = null;
 			}
-		} catch (Exception ex2) {
-			LOG.debug("Probably ddbb error when loading data at java object", ex2);
+			return Arrays.asList(values);
+		}
+		
+		public boolean isDate(int p) {
+			return "date".equals(properties[p]);
+		}
+		
+		private static long getDayStart(Date date) {
+			Calendar c = Calendar.getInstance();
+			c.setTime(date);
+			c.set(Calendar.HOUR_OF_DAY, 0);
+			c.set(Calendar.MINUTE, 0);
+			c.set(Calendar.SECOND, 0);
+			c.set(Calendar.MILLISECOND, 0);
+			return c.getTimeInMillis();
 		}
-		return eDb;
 	}
 	
+	private static final StatKey<EventStat> EVENT_STAT_KEY = new StatKey<EventStat>("siteId", "eventId", "userId", "date") {
+		protected Object[] getValues(EventStat s) {
+			return new Object[] {s.getSiteId(), s.getEventId(), s.getUserId(), s.getDate()};
+		}
+	};
+	
+	private static final StatKey<ResourceStat> RESOURCE_STAT_KEY = new StatKey<ResourceStat>("siteId", "resourceRef", "resourceAction", "userId", "date") {
+		protected Object[] getValues(ResourceStat s) {
+			return new Object[] {s.getSiteId(), s.getResourceRef(), s.getResourceAction(), s.getUserId(), s.getDate()};
+		}
+	};
+	
+	private static final StatKey<LessonBuilderStat> LESSON_BUILDER_STAT_KEY = new StatKey<LessonBuilderStat>("siteId", "pageRef", "pageAction", "userId", "date") {
+		protected Object[] getValues(LessonBuilderStat s) {
+			return new Object[] {s.getSiteId(), s.getPageRef(), s.getPageAction(), s.getUserId(), s.getDate()};
+		}
+	};
+	
+	private static final StatKey<SiteActivity> SITE_ACTIVITY_KEY = new StatKey<SiteActivity>("siteId", "eventId", "date") {
+		protected Object[] getValues(SiteActivity s) {
+			return new Object[] {s.getSiteId(), s.getEventId(), s.getDate()};
+		}
+	};
+	
+	private static final StatKey<SiteVisits> SITE_VISITS_KEY = new StatKey<SiteVisits>("siteId", "date") {
+		protected Object[] getValues(SiteVisits s) {
+			return new Object[] {s.getSiteId(), s.getDate()};
+		}
+	};
+	
+	private static final StatKey<SitePresence> SITE_PRESENCE_KEY = new StatKey<SitePresence>("siteId", "userId", "date") {
+		protected Object[] getValues(SitePresence s) {
+			return new Object[] {s.getSiteId(), s.getUserId(), s.getDate()};
+		}
+	};
+	
+	private static final StatKey<SitePresenceTotal> SITE_PRESENCE_TOTAL_KEY = new StatKey<SitePresenceTotal>("siteId", "userId") {
+		protected Object[] getValues(SitePresenceTotal s) {
+			return new Object[] {s.getSiteId(), s.getUserId()};
+		}
+	};
+	
+	private static final StatKey<ServerStat> SERVER_STAT_KEY = new StatKey<ServerStat>("eventId", "date") {
+		protected Object[] getValues(ServerStat s) {
+			return new Object[] {s.getEventId(), s.getDate()};
+		}
+	};
+	
+	private static final StatKey<UserStat> USER_STAT_KEY = new StatKey<UserStat>("userId", "date") {
+		protected Object[] getValues(UserStat s) {
+			return new Object[] {s.getUserId(), s.getDate()};
+		}
+	};
+	
 
 	// ################################################################
 	// Utility methods
@@ -1726,6 +1724,28 @@ public class StatsUpdateManagerImpl extends HibernateDaoSupport implements Runna
 		return c.getTime();
 	}
 
+	/**
+	 * The events consolidated between two db updates. The maps are concurrent, so events can be
+	 * consolidated from several threads at once, and each consolidated stat is updated holding its own monitor.
+	 */
+	private static class ConsolidatedEvents {
+		public final ConcurrentMap<String, EventStat>					eventStatMap			= new ConcurrentHashMap<String, EventStat>();
+		public final ConcurrentMap<String, ResourceStat>				resourceStatMap			= new ConcurrentHashMap<String, ResourceStat>();
+		public final ConcurrentMap<String, LessonBuilderStat>			lessonBuilderStatMap	= new ConcurrentHashMap<String, LessonBuilderStat>();
+		public final ConcurrentMap<String, SiteActivity>				activityMap				= new ConcurrentHashMap<String, SiteActivity>();
+		public final ConcurrentMap<String, SiteVisits>					visitsMap				= new ConcurrentHashMap<String, SiteVisits>();
+		public final ConcurrentMap<String, SitePresenceConsolidation>	presencesMap			= new ConcurrentHashMap<String, SitePresenceConsolidation>();
+		public final ConcurrentMap<UniqueVisitsKey, Integer>			uniqueVisitsMap			= new ConcurrentHashMap<UniqueVisitsKey, Integer>();
+		public final ConcurrentMap<String, ServerStat>					serverStatMap			= new ConcurrentHashMap<String, ServerStat>();
+		public final ConcurrentMap<String, UserStat>					userStatMap				= new ConcurrentHashMap<String, UserStat>();
+		
+		public boolean isEmpty() {
+			return eventStatMap.isEmpty() && resourceStatMap.isEmpty() && lessonBuilderStatMap.isEmpty()
+				&& activityMap.isEmpty() && visitsMap.isEmpty() && presencesMap.isEmpty()
+				&& uniqueVisitsMap.isEmpty() && serverStatMap.isEmpty() && userStatMap.isEmpty();
+		}
+	}
+	
 	private static class UniqueVisitsKey {
 		public String siteId;
 		public Date date;
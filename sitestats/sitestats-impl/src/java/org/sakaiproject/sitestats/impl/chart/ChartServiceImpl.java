@@ -71,6 +71,8 @@ import org.jfree.data.xy.XYDataset;
 import org.jfree.ui.RectangleInsets;
 import org.jfree.util.SortOrder;
 import org.sakaiproject.exception.IdUnusedException;
+import org.sakaiproject.memory.api.Cache;
+import org.sakaiproject.memory.api.MemoryService;
 import org.sakaiproject.site.api.SiteService;
 import org.sakaiproject.sitestats.api.EventStat;
 import org.sakaiproject.sitestats.api.LessonBuilderStat;
@@ -99,10 +101,13 @@ public class ChartServiceImpl implements ChartService {
 	private static Logger				LOG									= LoggerFactory.getLogger(EventRegistryServiceImpl.class);
 	private static ResourceLoader	msgs								= new ResourceLoader("Messages");
 	private static final int		MIN_CHART_WIDTH_TO_DRAW_ALL_DAYS	= 640;
+	/** Overview charts are reused for this long before being redrawn from fresh summary data */
+	private static final long		CHART_CACHE_PERIOD					= 5 * 60 * 1000;
 
 	/** Utility */
 	private Map<Integer, String>	weekDaysMap							= null;
 	private Map<Integer, String>	monthNamesMap						= null;
+	private Cache<String, byte[]>	chartCache							= null;
 
 	/** Sakai services */
 	private StatsManager			M_sm;
@@ -110,6 +115,7 @@ public class ChartServiceImpl implements ChartService {
 	private UserDirectoryService	M_uds;
 	private PreferencesService		M_ps;
 	private EventRegistryService	M_ers;
+	private MemoryService			M_ms;
 
 	// ################################################################
 	// Spring methods
@@ -129,6 +135,13 @@ public class ChartServiceImpl implements ChartService {
 	public void setEventRegistryService(EventRegistryService eventRegistryService) {
 		this.M_ers = eventRegistryService;
 	}
+	public void setMemoryService(MemoryService memoryService) {
+		this.M_ms = memoryService;
+	}
+
+	public void init() {
+		chartCache = M_ms.getCache(ChartServiceImpl.class.getName());
+	}
 	
 
 	// ################################################################
@@ -142,9 +155,23 @@ public class ChartServiceImpl implements ChartService {
 			int width, int height, 
 			boolean render3d, float transparency, boolean itemLabelsVisible) {
 		
+		String cacheKey = getChartCacheKey("visits", siteId, viewType, null, width, height, transparency, itemLabelsVisible);
+		byte[] chart = chartCache.get(cacheKey);
+		if(chart == null) {
+			chart = doGenerateVisitsChart(siteId, viewType, width, height, transparency, itemLabelsVisible);
+			chartCache.put(cacheKey, chart);
+		}
+		return chart;
+	}
+
+	private byte[] doGenerateVisitsChart(
+			String siteId, String viewType,
+			int width, int height,
+			float transparency, boolean itemLabelsVisible) {
+		
 		CategoryDataset dataset = null;
 		boolean smallFontInDomainAxis = false;
-		render3d = false;
+		boolean render3d = false;
 		if(StatsManager.VIEW_WEEK.equals(viewType)) {
 			dataset = getVisitsWeekDataSet(siteId);
 		}else if(StatsManager.VIEW_MONTH.equals(viewType)) {
@@ -167,8 +194,22 @@ public class ChartServiceImpl implements ChartService {
 			int width, int height, 
 			boolean render3d, float transparency, boolean itemLabelsVisible) {
 		
+		String cacheKey = getChartCacheKey("activity", siteId, viewType, chartType, width, height, transparency, itemLabelsVisible);
+		byte[] chart = chartCache.get(cacheKey);
+		if(chart == null) {
+			chart = doGenerateActivityChart(siteId, viewType, chartType, width, height, transparency, itemLabelsVisible);
+			chartCache.put(cacheKey, chart);
+		}
+		return chart;
+	}
+
+	private byte[] doGenerateActivityChart(
+			String siteId, String viewType, String chartType,
+			int width, int height,
+			float transparency, boolean itemLabelsVisible) {
+		
 		boolean smallFontInDomainAxis = false;
-		render3d = false;
+		boolean render3d = false;
 		if(StatsManager.CHARTTYPE_PIE.equals(chartType)) {
 			DefaultPieDataset dataset = null;
 			if(StatsManager.VIEW_WEEK.equals(viewType))
@@ -1188,6 +1229,22 @@ public class ChartServiceImpl implements ChartService {
 		return monthNamesMap;
 	}
 	
+	/**
+	 * Overview charts carry localized labels and summary data that keeps changing as events
+	 * are consolidated, so the key includes the user locale and the current cache period.
+	 */
+	private String getChartCacheKey(String chart, String siteId, String viewType, String chartType,
+			int width, int height, float transparency, boolean itemLabelsVisible) {
+		StringBuilder key = new StringBuilder();
+		key.append(chart).append(':').append(siteId);
+		key.append(':').append(viewType).append(':').append(chartType);
+		key.append(':').append(width).append('x').append(height);
+		key.append(':').append(transparency).append(':').append(itemLabelsVisible);
+		key.append(':').append(msgs.getLocale());
+		key.append(':').append(System.currentTimeMillis() / CHART_CACHE_PERIOD);
+		return key.toString();
+	}
+	
 	private boolean canUseNormalFontSize(int chartWidth) {
 		return chartWidth >= MIN_CHART_WIDTH_TO_DRAW_ALL_DAYS;
 	}
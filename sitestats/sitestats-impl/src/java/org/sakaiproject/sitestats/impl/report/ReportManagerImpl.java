@@ -21,10 +21,10 @@ package org.sakaiproject.sitestats.impl.report;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.apache.fop.apps.*;
-import org.apache.poi.hssf.usermodel.HSSFRow;
-import org.apache.poi.hssf.usermodel.HSSFSheet;
-import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.util.WorkbookUtil;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.hibernate.Criteria;
 import org.hibernate.HibernateException;
 import org.hibernate.Session;
@@ -74,6 +74,9 @@ import javax.xml.transform.stream.StreamSource;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.sql.SQLException;
 import java.text.SimpleDateFormat;
 import java.util.*;
@@ -92,6 +95,9 @@ public class ReportManagerImpl extends HibernateDaoSupport implements ReportMana
 	private FopFactory				fopFactory		= FopFactory.newInstance();
 	private Templates				cachedXmlFoXSLT	= null;
 	private static final String		XML_FO_XSL_FILE	= "xmlReportToFo.xsl";
+
+	/** Excel: number of rows kept in memory while streaming a workbook */
+	private static final int		EXCEL_ROW_ACCESS_WINDOW	= 100;
 	
 	/** Date formatters. */
 	private SimpleDateFormat		dateMonthFrmt 	= new SimpleDateFormat("yyyy-MM");
@@ -689,10 +695,26 @@ public class ReportManagerImpl extends HibernateDaoSupport implements ReportMana
 	 * @see org.sakaiproject.sitestats.api.report.ReportManager#getReportAsExcel(org.sakaiproject.sitestats.api.report.Report, java.lang.String)
 	 */
 	public byte[] getReportAsExcel(Report report, String sheetName) {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try{
+			writeReportAsExcel(report, sheetName, baos);
+		}catch(IOException e){
+			LOG.error("Error writing Excel bytes from SiteStats report", e);
+			return new byte[0];
+		}
+		return baos.toByteArray();
+	}
+
+	/* (non-Javadoc)
+	 * @see org.sakaiproject.sitestats.api.report.ReportManager#writeReportAsExcel(org.sakaiproject.sitestats.api.report.Report, java.lang.String, java.io.OutputStream)
+	 */
+	public void writeReportAsExcel(Report report, String sheetName, OutputStream out) throws IOException {
 		List<Stat> statsObjects = report.getReportData();
-		HSSFWorkbook wb = new HSSFWorkbook();
-		HSSFSheet sheet = wb.createSheet(WorkbookUtil.createSafeSheetName(sheetName));
-		HSSFRow headerRow = sheet.createRow(0);
+		// only keep a window of rows in memory, older rows are flushed to a temporary file
+		SXSSFWorkbook wb = new SXSSFWorkbook(EXCEL_ROW_ACCESS_WINDOW);
+		Sheet sheet = wb.createSheet(WorkbookUtil.createSafeSheetName(sheetName));
+		int rowNum = 0;
+		Row headerRow = sheet.createRow(rowNum++);
 		
 		// Add the column headers
 		int ix = 0;
@@ -739,7 +761,7 @@ public class ReportManagerImpl extends HibernateDaoSupport implements ReportMana
 		// Fill the spreadsheet cells
 		Iterator<Stat> i = statsObjects.iterator();
 		while (i.hasNext()){
-			HSSFRow row = sheet.createRow(sheet.getLastRowNum() + 1);
+			Row row = sheet.createRow(rowNum++);
 			Stat se = i.next();
 			ix = 0;
 			if (isReportColumnAvailable(report.getReportDefinition().getReportParams(), StatsManager.T_SITE)) {
@@ -826,21 +848,10 @@ public class ReportManagerImpl extends HibernateDaoSupport implements ReportMana
 			}
 		}
 
-		ByteArrayOutputStream baos = null;
 		try{
-			baos = new ByteArrayOutputStream();
-			wb.write(baos);
-		}catch(IOException e){
-			LOG.error("Error writing Excel bytes from SiteStats report", e);
+			wb.write(out);
 		}finally{
-			if(baos != null) {
-				try{ baos.close(); }catch(IOException e){ /* ignore */ }
-			}
-		}
-		if(baos != null) {
-			return baos.toByteArray();
-		}else{
-			return new byte[0];
+			wb.dispose();
 		}
 	}
 
@@ -848,6 +859,19 @@ public class ReportManagerImpl extends HibernateDaoSupport implements ReportMana
 	 * @see org.sakaiproject.sitestats.api.report.ReportManager#getReportAsCsv(org.sakaiproject.sitestats.api.report.Report)
 	 */
 	public String getReportAsCsv(Report report) {
+		StringWriter writer = new StringWriter();
+		try{
+			writeReportAsCsv(report, writer);
+		}catch(IOException e){
+			LOG.error("Error writing CSV from SiteStats report", e);
+		}
+		return writer.toString();
+	}
+
+	/* (non-Javadoc)
+	 * @see org.sakaiproject.sitestats.api.report.ReportManager#writeReportAsCsv(org.sakaiproject.sitestats.api.report.Report, java.io.Writer)
+	 */
+	public void writeReportAsCsv(Report report, Writer writer) throws IOException {
 		List<Stat> statsObjects = report.getReportData();
 		StringBuilder sb = new StringBuilder();
 		boolean isFirst = true;
@@ -939,11 +963,13 @@ public class ReportManagerImpl extends HibernateDaoSupport implements ReportMana
 			isFirst = false;
 		}
 		sb.append("\n");
+		writer.write(sb.toString());
 
-		// Add the data
+		// Add the data, one line at a time
 		Iterator<Stat> i = statsObjects.iterator();
 		while (i.hasNext()){
 			Stat se = i.next();
+			sb.setLength(0);
 			isFirst = true;
 			//site
 			if(isReportColumnAvailable(report.getReportDefinition().getReportParams(), StatsManager.T_SITE)){
@@ -1095,18 +1121,26 @@ public class ReportManagerImpl extends HibernateDaoSupport implements ReportMana
 				isFirst = false;
 			}
 			sb.append("\n");
+			writer.write(sb.toString());
 		}
-		return sb.toString();
+		writer.flush();
 	}
 	
 	/* (non-Javadoc)
 	 * @see org.sakaiproject.sitestats.api.report.ReportManager#getReportAsPDF(org.sakaiproject.sitestats.api.report.Report)
 	 */
 	public byte[] getReportAsPDF(Report report) {
-		ByteArrayOutputStream out = null;
+		// Setup a buffer to obtain the content length
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writeReportAsPDF(report, out);
+		return out.toByteArray();
+	}
+
+	/* (non-Javadoc)
+	 * @see org.sakaiproject.sitestats.api.report.ReportManager#writeReportAsPDF(org.sakaiproject.sitestats.api.report.Report, java.io.OutputStream)
+	 */
+	public void writeReportAsPDF(Report report, OutputStream out) {
 		try{
-			// Setup a buffer to obtain the content length
-		    out = new ByteArrayOutputStream();		    
 		    fopFactory.setURIResolver(new LibraryURIResolver());			
 		    FOUserAgent foUserAgent = fopFactory.newFOUserAgent();			
 			
@@ -1139,17 +1173,7 @@ public class ReportManagerImpl extends HibernateDaoSupport implements ReportMana
 			LOG.error("TransformerException while writing SiteStats PDF report", e);
 		}catch(Exception e){
 			LOG.error("Exception while generating SiteStats PDF report", e);
-		}finally{
-			try{
-				if(out != null) {
-					out.close();
-					return out.toByteArray();
-				}
-			}catch(IOException e){
-				LOG.error("IOException while writing SiteStats PDF report", e);
-			}
 		}
-		return null;
 	}
 	
 
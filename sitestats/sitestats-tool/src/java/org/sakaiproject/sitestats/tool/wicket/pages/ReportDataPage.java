@@ -18,8 +18,11 @@
  */
 package org.sakaiproject.sitestats.tool.wicket.pages;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
@@ -586,18 +589,16 @@ public class ReportDataPage extends BasePage {
 
 	protected void exportXls() {
 		String fileName = getExportFileName();
-		byte[] hssfWorkbookBytes = Locator.getFacade().getReportManager().getReportAsExcel(report, fileName);
 		
 		RequestCycle.get().scheduleRequestHandlerAfterCurrent(new EmptyRequestHandler());
 		WebResponse response = (WebResponse) getResponse();
-		response.setContentType("application/vnd.ms-excel");
-		response.setAttachmentHeader(fileName + ".xls");
+		response.setContentType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+		response.setAttachmentHeader(fileName + ".xlsx");
 		response.setHeader("Cache-Control", "max-age=0");		
-		response.setContentLength(hssfWorkbookBytes.length);
 		OutputStream out = null;
 		try{
 			out = response.getOutputStream();
-			out.write(hssfWorkbookBytes);
+			Locator.getFacade().getReportManager().writeReportAsExcel(report, fileName, out);
 			out.flush();
 		}catch(IOException e){
 			LOG.error(e.getMessage());
@@ -612,18 +613,16 @@ public class ReportDataPage extends BasePage {
 
 	protected void exportCsv() {
 		String fileName = getExportFileName();
-		String csvString = Locator.getFacade().getReportManager().getReportAsCsv(report);
 		
 		RequestCycle.get().scheduleRequestHandlerAfterCurrent(new EmptyRequestHandler());
 		WebResponse response = (WebResponse) getResponse();
 		response.setContentType("text/comma-separated-values");
 		response.setAttachmentHeader(fileName + ".csv");
 		response.setHeader("Cache-Control", "max-age=0");
-		response.setContentLength(csvString.length());
-		OutputStream out = null;
+		Writer out = null;
 		try{
-			out = response.getOutputStream();
-			out.write(csvString.getBytes());
+			out = new BufferedWriter(new OutputStreamWriter(response.getOutputStream()));
+			Locator.getFacade().getReportManager().writeReportAsCsv(report, out);
 			out.flush();
 		}catch(IOException e){
 			LOG.error(e.getMessage());
@@ -638,18 +637,16 @@ public class ReportDataPage extends BasePage {
 
 	protected void exportPdf() {
 		String fileName = getExportFileName();
-		byte[] pdf = Locator.getFacade().getReportManager().getReportAsPDF(report);
 
 		RequestCycle.get().scheduleRequestHandlerAfterCurrent(new EmptyRequestHandler());
 		WebResponse response = (WebResponse) getResponse();
 		response.setContentType("application/pdf");
 		response.setAttachmentHeader(fileName + ".pdf");
 		response.setHeader("Cache-Control", "max-age=0");
-		response.setContentLength(pdf.length);
 		OutputStream out = null;
 		try{
 			out = response.getOutputStream();
-			out.write(pdf);
+			Locator.getFacade().getReportManager().writeReportAsPDF(report, out);
 			out.flush();
 		}catch(IOException e){
 			LOG.error(e.getMessage());